@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.utils.DevNullPrintStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompilation time of the largest test contracts, with and without method detection.
+ * Run with ./gradlew jmh from the project directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DecompilerBenchmark {
+
+	@Param({"reentrancy2", "repeated-calls-tn2", "repeated-calls-tp", "TODReceiver"})
+	public String contract;
+
+	private byte[] binary;
+	private PrintStream log;
+
+
+	@Setup
+	public void setup() throws IOException {
+		binary = CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/" + contract + ".bin.hex");
+		log = new DevNullPrintStream();
+	}
+
+
+	@Benchmark
+	public List<Instruction> decompile() {
+		return Decompiler.decompile(binary, log);
+	}
+
+
+	@Benchmark
+	public List<Instruction> decompileFallback() {
+		return DecompilerFallback.decompile(binary, log);
+	}
+
+}
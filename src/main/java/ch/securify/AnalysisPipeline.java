@@ -0,0 +1,372 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify;
+
+import ch.securify.analysis.MethodSummary;
+import ch.securify.decompiler.IndexedProgram;
+import ch.securify.decompiler.OpcodeHistogram;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
+import ch.securify.model.Contract;
+import ch.securify.model.ContractResult;
+import ch.securify.patterns.AbstractPattern;
+import ch.securify.utils.Hex;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Analysis of many contracts as a pipeline of stages, so that the decompilation of one contract overlaps with the
+ * dataflow fixpoint (Soufflé) of another and the pattern checks of a third one.
+ *
+ * Stages: decompile (including constant propagation) -> dataflow -> patterns -> output. Each stage has its own
+ * worker threads and reads from a bounded queue, so that a slow stage throttles the ones before it. After the
+ * decompilation, the analysis units of a contract move through the pipeline separately; the fixpoint of a unit is
+ * disposed as soon as its patterns have been checked, so that the live fixpoints are bounded by the queues.
+ */
+public class AnalysisPipeline {
+
+    /**
+     * Analysis state of a contract while it moves through the pipeline.
+     */
+    private static class Job {
+        final Contract contract;
+        final ContractResult contractResult = new ContractResult();
+        List<Main.AnalysisUnit> units;
+        // units whose dataflow has been computed, they are checked in order
+        boolean[] computed;
+        int checkedUnits;
+        // set when the analysis of the contract ended, the remaining units are skipped
+        volatile String status;
+        // set when the finished contract has been passed on to the output
+        boolean forwarded;
+
+        Job(Contract contract) {
+            this.contract = contract;
+        }
+    }
+
+    /**
+     * Item passed between the stages: an analysis unit of a contract, or the entire contract before it has been
+     * split into units and once it is finished.
+     */
+    private static class Task {
+        final Job job;
+        // index of the unit in job.units, -1 for the entire contract
+        final int unit;
+
+        Task(Job job, int unit) {
+            this.job = job;
+            this.unit = unit;
+        }
+    }
+
+    // marks the end of the input of a stage
+    private static final Task END = new Task(null, -1);
+
+    private class Stage {
+        final String name;
+        final int threads;
+        final BlockingQueue<Task> input;
+        // returns the tasks passed on to the next stage
+        final Function<Task, List<Task>> action;
+        // returns the tasks passed on to the next stage if the action failed
+        final Function<Task, List<Task>> recovery;
+        Stage next;
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong busyNanos = new AtomicLong();
+        final List<Thread> workers = new ArrayList<>();
+
+        Stage(String name, int threads, Function<Task, List<Task>> action, Function<Task, List<Task>> recovery) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("Invalid number of threads for stage " + name + ": " + threads);
+            }
+            this.name = name;
+            this.threads = threads;
+            this.input = new ArrayBlockingQueue<>(2 * threads);
+            this.action = action;
+            this.recovery = recovery;
+        }
+
+        void start() {
+            running.set(threads);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(this::work, "securify-" + name + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        private void work() {
+            try {
+                while (true) {
+                    Task task = input.take();
+                    if (task == END) {
+                        // the last thread of this stage ends the next one
+                        if (running.decrementAndGet() == 0 && next != null) {
+                            for (int i = 0; i < next.threads; i++) {
+                                next.input.put(END);
+                            }
+                        }
+                        return;
+                    }
+
+                    long start = System.nanoTime();
+                    List<Task> results;
+                    try {
+                        results = action.apply(task);
+                    } catch (Throwable e) {
+                        // the worker must survive, otherwise the pipeline never ends
+                        synchronized (task.job) {
+                            fail(task.job, e);
+                        }
+                        results = recovery.apply(task);
+                    }
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    if (next != null) {
+                        for (Task result : results) {
+                            next.input.put(result);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final Supplier<List<AbstractPattern>> patternFactory;
+    private final Main.DataflowComputation dataflowComputation;
+    private final List<Stage> stages = new ArrayList<>();
+    private long startNanos, endNanos;
+
+    /**
+     * @param patternFactory creates fresh pattern instances for each contract
+     * @param decompileThreads threads decompiling contracts
+     * @param dataflowThreads threads computing dataflow fixpoints, i.e. concurrent Soufflé processes
+     * @param patternThreads threads checking patterns
+     * @param output receives the address and result line of each contract, in the output format of
+     *               {@link BatchAnalysis}; called from a single thread
+     */
+    public AnalysisPipeline(Supplier<List<AbstractPattern>> patternFactory, int decompileThreads, int dataflowThreads,
+                            int patternThreads, BiConsumer<String, String> output) {
+        this(patternFactory, Main::createDataflow, decompileThreads, dataflowThreads, patternThreads, output);
+    }
+
+    AnalysisPipeline(Supplier<List<AbstractPattern>> patternFactory, Main.DataflowComputation dataflowComputation,
+                     int decompileThreads, int dataflowThreads, int patternThreads, BiConsumer<String, String> output) {
+        this.patternFactory = patternFactory;
+        this.dataflowComputation = dataflowComputation;
+        // a failed contract or unit is passed on, the patterns stage skips the remaining units of a failed contract
+        stages.add(new Stage("decompile", decompileThreads, this::decompile, Collections::singletonList));
+        stages.add(new Stage("dataflow", dataflowThreads, this::computeDataflow, Collections::singletonList));
+        stages.add(new Stage("patterns", patternThreads, this::checkPatterns, this::checkPatterns));
+        stages.add(new Stage("output", 1, task -> {
+            Job job = task.job;
+            output.accept(job.contract.getContractAddress(),
+                    BatchAnalysis.resultLine(job.contract.getContractAddress(), job.status, job.contractResult));
+            return Collections.emptyList();
+        }, task -> Collections.emptyList()));
+        for (int i = 0; i + 1 < stages.size(); i++) {
+            stages.get(i).next = stages.get(i + 1);
+        }
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        stages.forEach(Stage::start);
+    }
+
+    /**
+     * Add a contract to the pipeline, blocks while the first stage is busy.
+     */
+    public void submit(Contract contract) throws InterruptedException {
+        stages.get(0).input.put(new Task(new Job(contract), -1));
+    }
+
+    /**
+     * Wait until all submitted contracts have been analyzed.
+     */
+    public void finish() throws InterruptedException {
+        Stage first = stages.get(0);
+        for (int i = 0; i < first.threads; i++) {
+            first.input.put(END);
+        }
+        for (Stage stage : stages) {
+            for (Thread worker : stage.workers) {
+                worker.join();
+            }
+        }
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Print the fraction of the time each stage was busy, relative to the threads it had.
+     */
+    public void printUtilization(PrintStream out) {
+        long wallNanos = Math.max(1, endNanos - startNanos);
+        out.println("Stage utilization (" + wallNanos / 1000000 + " ms):");
+        for (Stage stage : stages) {
+            out.format("%12s: %3d threads, %5.1f%% busy\n", stage.name, stage.threads,
+                    100.0 * stage.busyNanos.get() / wallNanos / stage.threads);
+        }
+    }
+
+    /**
+     * @return a task for each analysis unit of the contract, or the contract if there is nothing to check
+     */
+    private List<Task> decompile(Task task) {
+        Job job = task.job;
+        Contract contract = job.contract;
+        if (contract.getBinary() != null ? contract.getBinary().length == 0 : contract.getCode().isEmpty()) {
+            job.status = BatchAnalysis.STATUS_EMPTY;
+            return Collections.singletonList(task);
+        }
+
+        OpcodeHistogram histogram;
+        IndexedProgram program;
+        Map<_VirtualMethodHead, MethodSummary> summaries;
+        try {
+            byte[] bin = contract.getBinary() != null ? contract.getBinary()
+                    : Hex.decode(CompilationHelpers.sanitizeLibraries(contract.getCode()));
+            histogram = OpcodeHistogram.of(bin);
+            program = Main.decompileProgram(bin, job.contractResult.metrics);
+            summaries = Main.summarizeMethods(program, job.contractResult.metrics);
+        } catch (Exception | StackOverflowError e) {
+            if (e instanceof Exception) {
+                Main.handleSecurifyError(job.contractResult, "decompilation_error", (Exception) e);
+            }
+            fail(job, e);
+            return Collections.singletonList(task);
+        }
+        job.contractResult.decompiled = true;
+        job.units = Main.splitIntoAnalysisUnits(program, summaries, patternFactory.get(), histogram, job.contractResult);
+        job.computed = new boolean[job.units.size()];
+        if (job.units.isEmpty()) {
+            return Collections.singletonList(task);
+        }
+
+        List<Task> tasks = new ArrayList<>(job.units.size());
+        for (int i = 0; i < job.units.size(); i++) {
+            tasks.add(new Task(job, i));
+        }
+        return tasks;
+    }
+
+    private List<Task> computeDataflow(Task task) {
+        Job job = task.job;
+        if (task.unit >= 0 && job.status == null) {
+            try {
+                Main.AnalysisUnit unit = job.units.get(task.unit);
+                unit.dataflow = dataflowComputation.compute(unit);
+            } catch (Exception e) {
+                synchronized (job) {
+                    Main.handleSecurifyError(job.contractResult, "pattern_error", e);
+                    fail(job, e);
+                }
+            }
+        }
+        return Collections.singletonList(task);
+    }
+
+    /**
+     * Check the units of a contract in their original order, as the patterns accumulate their findings over the
+     * units. A unit that arrives before its predecessors is checked by the thread that checks its predecessors.
+     * Once the contract failed, the remaining units are only disposed.
+     *
+     * @return the finished contract once all its units have been checked, at most once per contract
+     */
+    private List<Task> checkPatterns(Task task) {
+        Job job = task.job;
+        synchronized (job) {
+            if (task.unit < 0) {
+                // not decompiled, empty or nothing to check
+                finish(job);
+                return forwardFinished(job);
+            }
+
+            job.computed[task.unit] = true;
+            while (job.checkedUnits < job.units.size() && job.computed[job.checkedUnits]) {
+                checkUnit(job, job.units.get(job.checkedUnits++));
+            }
+            if (job.checkedUnits < job.units.size()) {
+                return Collections.emptyList();
+            }
+            finish(job);
+            return forwardFinished(job);
+        }
+    }
+
+    private static List<Task> forwardFinished(Job job) {
+        if (job.forwarded) {
+            return Collections.emptyList();
+        }
+        job.forwarded = true;
+        return Collections.singletonList(new Task(job, -1));
+    }
+
+    private static void checkUnit(Job job, Main.AnalysisUnit unit) {
+        try {
+            if (job.status == null && unit.dataflow != null) {
+                try {
+                    Main.checkAnalysisUnit(unit, job.contractResult, null);
+                } catch (Exception | StackOverflowError e) {
+                    if (e instanceof Exception) {
+                        Main.handleSecurifyError(job.contractResult, "pattern_error", (Exception) e);
+                    }
+                    fail(job, e);
+                }
+            }
+        } finally {
+            if (unit.dataflow != null) {
+                try {
+                    unit.dataflow.dispose();
+                } catch (Exception e) {
+                    // best effort, the workspace is temporary
+                }
+                unit.dataflow = null;
+            }
+        }
+    }
+
+    private static void finish(Job job) {
+        if (job.status == null) {
+            job.contractResult.finished = true;
+            job.status = BatchAnalysis.STATUS_SUCCESS;
+        }
+    }
+
+    private static void fail(Job job, Throwable e) {
+        job.contractResult.error = e.toString();
+        job.contractResult.finished = true;
+        job.status = BatchAnalysis.STATUS_ERROR;
+    }
+
+}
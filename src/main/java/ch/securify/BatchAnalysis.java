@@ -0,0 +1,439 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify;
+
+import ch.securify.model.Contract;
+import ch.securify.model.ContractResult;
+import ch.securify.patterns.AbstractPattern;
+import ch.securify.utils.Hex;
+import ch.securify.utils.PackedCorpus;
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Analyzes a corpus of deployed contracts on a pool of worker threads.
+ *
+ * The corpus is either a JSONL file with one object per line (fields address and code/bytecode), a CSV file with
+ * a header naming the address and code/bytecode columns, or a {@link PackedCorpus}. Results are appended to the output file as one JSON object
+ * per line, in the {address, status, result} format read by {@link ch.securify.utils.SummarizeResults}. The output
+ * file doubles as checkpoint: contracts already in it are skipped, so a killed run continues where it stopped.
+ */
+public class BatchAnalysis {
+
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_ERROR = "error";
+    public static final String STATUS_EMPTY = "empty";
+
+    // address of the result of a corpus entry without address, followed by the index of the entry
+    static final String UNNAMED_ENTRY_PREFIX = "#";
+
+    private static final Gson gson = new Gson();
+
+    private final Supplier<List<AbstractPattern>> patternFactory;
+    private final int threads;
+    private final int shardIndex, shardCount;
+    private final PrintStream progressPrinter;
+    private int fromIndex = 0, toIndex = Integer.MAX_VALUE;
+    private WorkerPool workerPool;
+    private int decompileThreads, dataflowThreads, patternThreads;
+
+    /**
+     * @param patternFactory creates fresh pattern instances for each contract
+     * @param threads number of contracts analyzed in parallel, or worker processes if analyzed in a worker pool
+     * @param shardIndex index of the shard to analyze, in [0, shardCount)
+     * @param shardCount number of shards the corpus is split into
+     * @param progressPrinter receives one line per analyzed contract
+     */
+    public BatchAnalysis(Supplier<List<AbstractPattern>> patternFactory, int threads, int shardIndex, int shardCount,
+                         PrintStream progressPrinter) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + "/" + shardCount);
+        }
+        this.patternFactory = patternFactory;
+        this.threads = threads;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.progressPrinter = progressPrinter;
+    }
+
+    /**
+     * Only analyze the contracts with a corpus index in [fromIndex, toIndex).
+     */
+    public void setRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex < fromIndex) {
+            throw new IllegalArgumentException("Invalid range " + fromIndex + ":" + toIndex);
+        }
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    /**
+     * Analyze the contracts in separate worker processes instead of in this JVM. The pool is closed at the end of
+     * {@link #run(File, File)}.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Set the number of threads of each stage of the in-process analysis (see {@link AnalysisPipeline}). By default,
+     * dataflow fixpoints are computed on as many threads as given to the constructor, decompilation and pattern
+     * checks on half as many.
+     */
+    public void setStageThreads(int decompileThreads, int dataflowThreads, int patternThreads) {
+        this.decompileThreads = decompileThreads;
+        this.dataflowThreads = dataflowThreads;
+        this.patternThreads = patternThreads;
+    }
+
+    public void run(File corpus, File output) throws IOException, InterruptedException {
+        Set<String> completed = readCompletedAddresses(output);
+        if (!completed.isEmpty()) {
+            progressPrinter.println("Resuming, skipping " + completed.size() + " analyzed contracts");
+        }
+
+        AtomicReference<IOException> writeError = new AtomicReference<>();
+        AtomicInteger analyzed = new AtomicInteger();
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output, true), StandardCharsets.UTF_8));
+             Stream<Contract> contracts = readCorpus(corpus, fromIndex, toIndex)) {
+            BiConsumer<String, String> resultWriter = (address, line) -> {
+                try {
+                    synchronized (writer) {
+                        writer.write(line);
+                        writer.write('\n');
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    writeError.compareAndSet(null, e);
+                }
+                progressPrinter.println("[" + analyzed.incrementAndGet() + "] " + address);
+            };
+
+            AtomicInteger entryIndex = new AtomicInteger(fromIndex);
+            Iterator<Contract> selected = contracts
+                    .map(contract -> identifyEntry(contract, entryIndex.getAndIncrement()))
+                    .filter(contract -> isInShard(contract.getContractAddress(), shardIndex, shardCount))
+                    .filter(contract -> completed.add(normalizeAddress(contract.getContractAddress())))
+                    .filter(contract -> {
+                        if (isValid(contract)) {
+                            return true;
+                        }
+                        // a malformed corpus entry only fails itself
+                        ContractResult contractResult = new ContractResult();
+                        contractResult.error = "Malformed corpus entry, invalid or without address or code";
+                        contractResult.finished = true;
+                        resultWriter.accept(contract.getContractAddress(),
+                                resultLine(contract.getContractAddress(), STATUS_ERROR, contractResult));
+                        return false;
+                    })
+                    .iterator();
+
+            if (workerPool != null) {
+                runInWorkers(selected, resultWriter, writeError);
+            } else {
+                runInPipeline(selected, resultWriter, writeError);
+            }
+        } finally {
+            if (workerPool != null) {
+                workerPool.close();
+            }
+        }
+
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+        progressPrinter.println("Analyzed " + analyzed.get() + " contracts");
+    }
+
+    private void runInPipeline(Iterator<Contract> contracts, BiConsumer<String, String> resultWriter,
+                               AtomicReference<IOException> writeError) throws InterruptedException {
+        AnalysisPipeline pipeline = new AnalysisPipeline(patternFactory,
+                decompileThreads > 0 ? decompileThreads : Math.max(1, threads / 2),
+                dataflowThreads > 0 ? dataflowThreads : threads,
+                patternThreads > 0 ? patternThreads : Math.max(1, threads / 2),
+                resultWriter);
+        pipeline.start();
+        while (contracts.hasNext() && writeError.get() == null) {
+            pipeline.submit(contracts.next());
+        }
+        pipeline.finish();
+        pipeline.printUtilization(progressPrinter);
+    }
+
+    private void runInWorkers(Iterator<Contract> contracts, BiConsumer<String, String> resultWriter,
+                              AtomicReference<IOException> writeError) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // bound the number of queued contracts, the corpus may not fit into memory
+        Semaphore pending = new Semaphore(2 * threads);
+        try {
+            while (contracts.hasNext() && writeError.get() == null) {
+                Contract contract = contracts.next();
+                pending.acquire();
+                executor.execute(() -> {
+                    try {
+                        resultWriter.accept(contract.getContractAddress(), workerPool.analyze(contract));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Analyze a single contract.
+     *
+     * @return result line in the output format
+     */
+    private static String analyze(Contract contract, Supplier<List<AbstractPattern>> patternFactory) {
+        if (contract.getBinary() != null ? contract.getBinary().length == 0 : contract.getCode().isEmpty()) {
+            return resultLine(contract.getContractAddress(), STATUS_EMPTY, null);
+        }
+
+        ContractResult contractResult = new ContractResult();
+        String status;
+        try {
+            byte[] bin = contract.getBinary() != null ? contract.getBinary()
+                    : Hex.decode(CompilationHelpers.sanitizeLibraries(contract.getCode()));
+            Main.analyzeContract(bin, patternFactory.get(), contractResult, null, null);
+            status = STATUS_SUCCESS;
+        } catch (Exception | StackOverflowError e) {
+            contractResult.error = e.toString();
+            status = STATUS_ERROR;
+        }
+
+        return resultLine(contract.getContractAddress(), status, contractResult);
+    }
+
+    static String resultLine(String address, String status, ContractResult contractResult) {
+        JsonObject line = new JsonObject();
+        line.addProperty("address", address);
+        line.addProperty("status", status);
+        if (contractResult != null) {
+            line.add("result", gson.toJsonTree(contractResult));
+        }
+        return gson.toJson(line);
+    }
+
+    /**
+     * Serve a {@link WorkerPool}: analyze the contracts read from stdin, one request frame per contract, and write
+     * one result line per contract to stdout. Returns when stdin is closed.
+     */
+    public static void runWorker(Supplier<List<AbstractPattern>> patternFactory) throws IOException {
+        // keep stdout for the results, any other output goes to stderr
+        PrintStream results = new PrintStream(new FileOutputStream(FileDescriptor.out), false, "UTF-8");
+        System.setOut(System.err);
+
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        Contract contract;
+        while ((contract = WorkerPool.readRequest(requests)) != null) {
+            results.println(analyze(contract, patternFactory));
+            results.flush();
+        }
+    }
+
+    /**
+     * Deterministically assign a contract to a shard, independently of its position in the corpus.
+     */
+    static boolean isInShard(String address, int shardIndex, int shardCount) {
+        return Math.floorMod(normalizeAddress(address).hashCode(), shardCount) == shardIndex;
+    }
+
+    /**
+     * Normalize an address for sharding and for detecting contracts that have already been analyzed, so that the
+     * same contract is recognized independently of the case of its address.
+     */
+    static String normalizeAddress(String address) {
+        return address == null ? "" : address.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Name a corpus entry without address by its index, so that its error result is recognized when resuming.
+     */
+    private static Contract identifyEntry(Contract contract, int index) {
+        if (Strings.isNullOrEmpty(contract.getContractAddress())) {
+            return new Contract(UNNAMED_ENTRY_PREFIX + index, (String) null);
+        }
+        return contract;
+    }
+
+    private static boolean isValid(Contract contract) {
+        return !Strings.isNullOrEmpty(contract.getContractAddress()) && contract.hasCode();
+    }
+
+    /**
+     * Read the contracts of a corpus lazily. Packed corpora ({@link PackedCorpus}) are recognized by their header,
+     * CSV files by their extension, anything else is read as JSONL. The returned stream has to be closed.
+     */
+    public static Stream<Contract> readCorpus(File corpus) throws IOException {
+        return readCorpus(corpus, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Read the contracts with an index in [fromIndex, toIndex) of a corpus lazily. Packed corpora are accessed
+     * directly at the given indices, other corpora have to be read from the beginning. Entries without address or
+     * code are returned as well, a JSONL line that cannot be parsed is returned as entry without address and code.
+     */
+    public static Stream<Contract> readCorpus(File corpus, int fromIndex, int toIndex) throws IOException {
+        if (PackedCorpus.isPackedCorpus(corpus)) {
+            PackedCorpus packedCorpus = PackedCorpus.open(corpus);
+            return packedCorpus.contracts(fromIndex, toIndex).onClose(() -> {
+                try {
+                    packedCorpus.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        BufferedReader reader = Files.newBufferedReader(corpus.toPath(), StandardCharsets.UTF_8);
+        Stream<Contract> contracts;
+        try {
+            if (corpus.getName().toLowerCase().endsWith(".csv")) {
+                CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader);
+                String addressColumn = findColumn(parser, "address", "contractAddress");
+                String codeColumn = findColumn(parser, "code", "bytecode", "bin");
+                contracts = StreamSupport.stream(parser.spliterator(), false)
+                        .map(record -> new Contract(record.get(addressColumn), record.get(codeColumn)));
+            } else {
+                contracts = reader.lines()
+                        .filter(line -> !line.trim().isEmpty())
+                        .map(BatchAnalysis::parseEntry);
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+
+        return contracts
+                .skip(fromIndex)
+                .limit(toIndex - fromIndex)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private static Contract parseEntry(String line) {
+        try {
+            Contract contract = gson.fromJson(line, Contract.class);
+            if (contract != null) {
+                return contract;
+            }
+        } catch (JsonParseException e) {
+            // a malformed line only fails itself
+        }
+        return new Contract(null, (String) null);
+    }
+
+    private static String findColumn(CSVParser parser, String... names) {
+        Map<String, Integer> header = parser.getHeaderMap();
+        for (String name : names) {
+            for (String column : header.keySet()) {
+                if (column.trim().equalsIgnoreCase(name)) {
+                    return column;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Missing column " + names[0] + " in corpus header " + header.keySet());
+    }
+
+    /**
+     * Collect the addresses of the contracts already in the output file. A trailing incomplete line, left by a
+     * killed run, is removed from the file.
+     */
+    static Set<String> readCompletedAddresses(File output) throws IOException {
+        Set<String> completed = new HashSet<>();
+        if (!output.exists()) {
+            return completed;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            // search the last line break backwards from the end of the file
+            byte[] buffer = new byte[8192];
+            long end = file.length();
+            while (end > 0) {
+                int length = (int) Math.min(buffer.length, end);
+                file.seek(end - length);
+                file.readFully(buffer, 0, length);
+                int lineEnd = length;
+                while (lineEnd > 0 && buffer[lineEnd - 1] != '\n') {
+                    lineEnd--;
+                }
+                end -= length - lineEnd;
+                if (lineEnd > 0) {
+                    break;
+                }
+            }
+            if (end < file.length()) {
+                file.setLength(end);
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(output.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonObject result = gson.fromJson(line, JsonObject.class);
+                    completed.add(normalizeAddress(result.get("address").getAsString()));
+                } catch (JsonParseException | NullPointerException | IllegalStateException e) {
+                    // not a result line, analyze the contract again
+                }
+            }
+        }
+        return completed;
+    }
+
+}
@@ -19,7 +19,10 @@
 package ch.securify;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.Config;
 import ch.securify.analysis.DataflowFactory;
+import ch.securify.analysis.MethodSummary;
+import ch.securify.analysis.RelevanceSlice;
 import ch.securify.decompiler.*;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions._VirtualMethodHead;
@@ -28,6 +31,7 @@ import ch.securify.model.ContractResult;
 import ch.securify.model.PatternResult;
 import ch.securify.patterns.*;
 import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Log;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
@@ -39,6 +43,12 @@ import java.lang.reflect.Modifier;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static ch.securify.CompilationHelpers.parseCompilationOutput;
@@ -74,6 +84,9 @@ public class Main {
         @Parameter(names = {"-v", "--verbose"}, description = "provide verbose output")
         private boolean verbose;
 
+        @Parameter(names = {"--debug"}, description = "also print the internals of the decompiler and the dataflow analysis (implies -v)")
+        private boolean debug;
+
         @Parameter(names = {"-q", "--quiet"}, description = "suppress most output")
         private boolean quiet;
 
@@ -85,14 +98,66 @@ public class Main {
 
         @Parameter(names = {"--solc-path"}, description = "specify the path of the solc binary")
         private String solcPath = "solc";
+
+        @Parameter(names = {"--dataflow"}, description = "Datalog encoding of the dataflow analysis: default, block (same results, per basic block) or sparse (same results, variable facts only at definitions)")
+        private String dataflow;
+
+        @Parameter(names = {"--method-summaries"}, description = "apply a dataflow summary of each internal method at its invocations instead of inlining the method (not sound: internal methods are checked without their call sites)")
+        private boolean methodSummaries = false;
+
+        @Parameter(names = {"--short-circuit"}, description = "skip the compliance check of instructions that violate a pattern (conflicts are reported as violations)")
+        private boolean shortCircuit = false;
+
+        @Parameter(names = {"--violations-only"}, description = "only check for and report violations, not safe instructions and warnings")
+        private boolean violationsOnly = false;
+
+        @Parameter(names = {"--fail-fast"}, description = "stop at the first violation of a critical pattern, the result is then marked as partial")
+        private boolean failFast = false;
+
+        @Parameter(names = {"--parallel-fallback"}, description = "decompile the contract without methods concurrently, in case decompiling it with methods fails")
+        private boolean parallelFallback = false;
+
+        @Parameter(names = {"--batch"}, description = "corpus of contracts to analyze (JSONL or CSV with address and bytecode), requires -o")
+        private String batch;
+
+        @Parameter(names = {"--threads"}, description = "number of contracts analyzed in parallel in batch mode")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = {"--shard"}, description = "only analyze the i-th of N shards of the batch corpus, given as i/N")
+        private String shard;
+
+        @Parameter(names = {"--range"}, description = "only analyze the batch corpus entries with index in [start, end), given as start:end")
+        private String range;
+
+        @Parameter(names = {"--decompile-threads"}, description = "threads decompiling contracts in batch mode (default: half of --threads)")
+        private int decompileThreads = 0;
+
+        @Parameter(names = {"--dataflow-threads"}, description = "threads computing dataflow fixpoints in batch mode (default: --threads)")
+        private int dataflowThreads = 0;
+
+        @Parameter(names = {"--pattern-threads"}, description = "threads checking patterns in batch mode (default: half of --threads)")
+        private int patternThreads = 0;
+
+        @Parameter(names = {"--workers"}, description = "analyze the batch corpus in this many separate worker JVMs instead of in-process threads")
+        private int workers = 0;
+
+        @Parameter(names = {"--worker-heap"}, description = "maximum heap size of a worker JVM, e.g. 2g")
+        private String workerHeap;
+
+        @Parameter(names = {"--worker-timeout"}, description = "seconds after which a worker analyzing a single contract is restarted")
+        private int workerTimeout = Config.WORKER_TIMEOUT;
+
+        @Parameter(names = {"--batch-worker"}, description = "serve as worker process of a batch analysis", hidden = true)
+        private boolean batchWorker;
     }
 
-    private static List<AbstractPattern> patterns;
-    private static ContractResult contractResult;
-    private static PrintStream log = new DevNullPrintStream();
+    private static Log log = Log.OFF;
     private static PrintStream progressPrinter = System.out;
     private static Args args;
 
+    private static ExecutorService fallbackExecutor;
+    private static Gson statusGson;
+
 
     public static TreeMap<String, SolidityResult> processSolidityFile(String solcPath, String filesol, String livestatusfile) throws IOException, InterruptedException {
         JsonObject compilationOutput = CompilationHelpers.compileContracts(solcPath, filesol);
@@ -109,13 +174,13 @@ public class Main {
         Set<Map.Entry<String, JsonElement>> entries = compilationOutput.entrySet();
 
         TreeMap<String, SolidityResult> allContractResults = new TreeMap<>();
+        SolidityResult.setPatternDescriptions(createPatterns(args));
         for (Map.Entry<String, JsonElement> elt : entries) {
-            initPatterns(args);
             progressPrinter.println("Processing contract: " + elt.getKey());
 
             String bin = elt.getValue().getAsJsonObject().get("bin-runtime").getAsString();
             if ("".equals(bin)) {
-                log.println("Skipping empty contract: " + elt.getKey());
+                log.info(() -> "Skipping empty contract: " + elt.getKey());
                 continue;
             }
             String map = elt.getValue().getAsJsonObject().get("srcmap-runtime").getAsString();
@@ -154,20 +219,40 @@ public class Main {
         // read contract binary hex file
         byte[] bin = CompilationHelpers.extractBinaryFromHexFile(hexBinaryFile);
 
-        contractResult = new ContractResult();
-        updateContractAnalysisStatus(livestatusfile);
+        analyzeContract(bin, createPatterns(args), new ContractResult(), decompilationOutputFile, livestatusfile);
+    }
 
-        List<Instruction> instructions;
+    /**
+     * Decompile a contract and check it with the given patterns. All per-contract state is kept in the given
+     * patterns and result, so different contracts can be analyzed concurrently.
+     *
+     * @param bin contract runtime binary
+     * @param patterns fresh pattern instances
+     * @param contractResult result to fill in, also complete when an exception is thrown
+     * @param decompilationOutputFile output file for the decompiled code, may be null
+     * @param livestatusfile status output file, may be null
+     */
+    static void analyzeContract(byte[] bin, List<AbstractPattern> patterns, ContractResult contractResult,
+                                String decompilationOutputFile, String livestatusfile) throws IOException, InterruptedException {
+        updateContractAnalysisStatus(contractResult, livestatusfile);
+
+        // decides which patterns can apply before any dataflow is computed
+        OpcodeHistogram histogram = OpcodeHistogram.of(bin);
+
+        IndexedProgram program;
+        Map<_VirtualMethodHead, MethodSummary> summaries;
 
         try {
-            instructions = decompileContract(bin);
+            program = decompileProgram(bin, contractResult.metrics);
+            summaries = summarizeMethods(program, contractResult.metrics);
         } catch(Exception e) {
-            handleSecurifyError("decompilation_error", e);
-            finishContractResult(livestatusfile);
+            handleSecurifyError(contractResult, "decompilation_error", e);
+            finishContractResult(contractResult, livestatusfile);
             throw e;
         }
 
         contractResult.decompiled = true;
+        List<Instruction> instructions = program.getInstructions();
 
         if (decompilationOutputFile != null) {
             File dir = new File(decompilationOutputFile).getAbsoluteFile().getParentFile();
@@ -181,28 +266,28 @@ public class Main {
                     (Iterable<String>) instructions.stream().map(Instruction::toString)::iterator);
             Variable.setDebug(true);
             contractResult.decompiled = true;
-            updateContractAnalysisStatus(livestatusfile);
+            updateContractAnalysisStatus(contractResult, livestatusfile);
         }
 
         progressPrinter.println("  Verifying patterns...");
         try {
-            checkPatterns(instructions, livestatusfile);
+            checkPatterns(program, summaries, patterns, histogram, contractResult, livestatusfile);
         } catch(Exception e) {
-            handleSecurifyError("pattern_error", e);
+            handleSecurifyError(contractResult, "pattern_error", e);
             throw e;
         } finally {
-            finishContractResult(livestatusfile);
+            finishContractResult(contractResult, livestatusfile);
         }
     }
 
-    private static void handleSecurifyError(String errorMessage, Exception e){
+    static void handleSecurifyError(ContractResult contractResult, String errorMessage, Exception e){
         System.err.println("Error in Securify");
         contractResult.securifyErrors.add(errorMessage, e);
     }
 
-    private static void finishContractResult(String livestatusfile){
+    private static void finishContractResult(ContractResult contractResult, String livestatusfile){
         contractResult.finished = true;
-        updateContractAnalysisStatus(livestatusfile);
+        updateContractAnalysisStatus(contractResult, livestatusfile);
     }
 
     public static void main(String[] rawrgs) throws IOException, InterruptedException {
@@ -211,7 +296,7 @@ public class Main {
         try {
             new JCommander(args, rawrgs);
         } catch (ParameterException e) {
-            log.println(e.getMessage());
+            log.info(e::getMessage);
             new JCommander(args).usage();
             return;
         }
@@ -221,15 +306,95 @@ public class Main {
         }
 
 
-        if (args.verbose) {
-            log = System.out;
+        if (args.debug) {
+            log = Log.to(System.out, Log.Level.DEBUG);
+        } else if (args.verbose) {
+            log = Log.to(System.out, Log.Level.INFO);
+        }
+        AbstractDataflow.setLog(log);
+
+        try {
+            DataflowFactory.setDataflowInstanceClass(args.dataflow);
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(e.getMessage());
         }
 
         if (args.quiet) {
             progressPrinter = new DevNullPrintStream();
         }
 
-        initPatterns(args);
+        if (args.batchWorker) {
+            progressPrinter = new DevNullPrintStream();
+            BatchAnalysis.runWorker(() -> createPatterns(args));
+            return;
+        }
+
+        if (args.batch != null) {
+            if (args.outputfile == null) {
+                throw new ParameterException("--batch requires -o");
+            }
+            if (args.failFast) {
+                throw new ParameterException("--fail-fast is not supported with --batch");
+            }
+            int shardIndex = 0, shardCount = 1;
+            if (args.shard != null) {
+                try {
+                    String[] shard = args.shard.split("/");
+                    shardIndex = Integer.parseInt(shard[0].trim());
+                    shardCount = Integer.parseInt(shard[1].trim());
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new ParameterException("--shard must be given as i/N");
+                }
+                if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+                    throw new ParameterException("--shard must be given as i/N with 0 <= i < N");
+                }
+            }
+
+            // per-contract progress of concurrent analyses is not readable, only report finished contracts
+            PrintStream batchProgress = progressPrinter;
+            progressPrinter = new DevNullPrintStream();
+
+            BatchAnalysis batch;
+            if (args.workers > 0) {
+                List<String> workerArgs = new LinkedList<>();
+                if (args.patterns != null) {
+                    workerArgs.add("--patterns");
+                    workerArgs.add(args.patterns);
+                }
+                if (args.dataflow != null) {
+                    workerArgs.add("--dataflow");
+                    workerArgs.add(args.dataflow);
+                }
+                if (args.methodSummaries) {
+                    workerArgs.add("--method-summaries");
+                }
+                if (args.parallelFallback) {
+                    workerArgs.add("--parallel-fallback");
+                }
+                if (args.shortCircuit) {
+                    workerArgs.add("--short-circuit");
+                }
+                if (args.violationsOnly) {
+                    workerArgs.add("--violations-only");
+                }
+                batch = new BatchAnalysis(() -> createPatterns(args), args.workers, shardIndex, shardCount, batchProgress);
+                batch.setWorkerPool(new WorkerPool(args.workers, args.workerHeap, args.workerTimeout * 1000L, workerArgs));
+            } else {
+                batch = new BatchAnalysis(() -> createPatterns(args), args.threads, shardIndex, shardCount, batchProgress);
+                batch.setStageThreads(args.decompileThreads, args.dataflowThreads, args.patternThreads);
+            }
+            if (args.range != null) {
+                try {
+                    String[] range = args.range.split(":", -1);
+                    batch.setRange(range[0].trim().isEmpty() ? 0 : Integer.parseInt(range[0].trim()),
+                            range[1].trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(range[1].trim()));
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    throw new ParameterException("--range must be given as start:end");
+                }
+            }
+            batch.run(new File(args.batch), new File(args.outputfile));
+            return;
+        }
 
         File lStatusFile;
         if (args.livestatusfile != null) {
@@ -288,6 +453,37 @@ public class Main {
         }
     }
 
+    /**
+     * Threads of the decompilations without methods started by --parallel-fallback, at most one per processor.
+     */
+    private static synchronized ExecutorService getFallbackExecutor() {
+        if (fallbackExecutor == null) {
+            fallbackExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "securify-fallback");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return fallbackExecutor;
+    }
+
+    /**
+     * Wait for the decompilation without methods that was started concurrently.
+     */
+    private static List<Instruction> getFallbackResult(Future<List<Instruction>> fallback) {
+        try {
+            return fallback.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decompiling the contract without methods", e);
+        }
+    }
+
     /**
      * Decompile a contract binary.
      *
@@ -295,168 +491,508 @@ public class Main {
      * @return decompiled instructions
      */
     public static List<Instruction> decompileContract(byte[] binary) {
+        return decompileContract(binary, new HashMap<>());
+    }
+
+    /**
+     * Decompile a contract binary.
+     *
+     * @param binary contract runtime binary
+     * @param metrics receives the decompilation statistics
+     * @return decompiled instructions
+     */
+    public static List<Instruction> decompileContract(byte[] binary, Map<String, Long> metrics) {
+        return decompileProgram(binary, metrics).getInstructions();
+    }
+
+    /**
+     * Decompile a contract binary and index the decompiled instructions.
+     *
+     * @param binary contract runtime binary
+     * @param metrics receives the decompilation statistics
+     * @return decompiled instructions with their ids and operands
+     */
+    static IndexedProgram decompileProgram(byte[] binary, Map<String, Long> metrics) {
         List<Instruction> instructions;
+        // the parsed bytecode and its branches are shared by both decompilers
+        ParsedContract contract;
+        try {
+            contract = ParsedContract.parse(binary, log);
+        } catch (RuntimeException e) {
+            log.info(e::getMessage);
+            progressPrinter.println("  Decompilation failed.");
+            throw e;
+        }
+
+        Future<List<Instruction>> fallback = null;
+        if (args != null && args.parallelFallback) {
+            fallback = getFallbackExecutor().submit(() -> DecompilerFallback.decompile(contract, log));
+        }
+
         try {
             progressPrinter.println("  Attempt to decompile the contract with methods...");
-            instructions = Decompiler.decompile(binary, log);
+            instructions = Decompiler.decompile(contract, log);
 
-            progressPrinter.println("  Success. Inlining methods...");
-            instructions = MethodInliner.inline(instructions, log);
+            if (args != null && args.methodSummaries) {
+                progressPrinter.println("  Success. Keeping methods to summarize them...");
+                metrics.merge("methodSummaries.avoidedInstructions", MethodInliner.countInlinedInstructions(instructions), Long::sum);
+            } else {
+                progressPrinter.println("  Success. Inlining methods...");
+                instructions = MethodInliner.inline(instructions, log);
+            }
         } catch (Exception e1) {
-            log.println(e1.getMessage());
+            log.info(e1::getMessage);
             progressPrinter.println("  Failed to decompile methods. Attempt to decompile the contract without identifying methods...");
 
             try {
-                instructions = DecompilerFallback.decompile(binary, log);
+                instructions = fallback != null ? getFallbackResult(fallback) : DecompilerFallback.decompile(contract, log);
             } catch (Exception e2) {
                 progressPrinter.println("  Decompilation failed.");
                 throw e2;
             }
+        } finally {
+            if (fallback != null) {
+                // the result is not needed, or the decompilation failed with an error
+                fallback.cancel(true);
+            }
         }
 
+        ControlFlowGraph controlFlowGraph = ControlFlowGraph.build(instructions);
+
         progressPrinter.println("  Propagating constants...");
-        ConstantPropagation.propagate(instructions);
-
-        log.println();
-        log.println("Decompiled contract:");
-        DecompilationPrinter.printInstructions(instructions, log);
-
-        return instructions;
-    }
-
-    private static void initPatterns(Args args) {
-        patterns = new LinkedList<>();
-
-        List<AbstractPattern> allPatterns = new LinkedList<>();
-        allPatterns.add(new DAO());
-        allPatterns.add(new DAOConstantGas());
-        // allPatterns.add(new DAOMethodCall());
-        // allPatterns.add(new DelegateCallWithUserInput());
-        // allPatterns.add(new DivisionBeforeCallvalue());
-        // allPatterns.add(new DivisionBeforeMultiply());
-        allPatterns.add(new LockedEther());
-        // allPatterns.add(new DivisionBeforeCallvalue());
-        // allPatterns.add(new DivisionBeforeMultiply());
-        allPatterns.add(new MissingInputValidation());
-        allPatterns.add(new TODAmount());
-        allPatterns.add(new TODReceiver());
-        // allPatterns.add(new TODTransfer());
-        allPatterns.add(new UnhandledException());
-        // allPatterns.add(new UnprivilegedSelfdestruct());
-        allPatterns.add(new UnrestrictedEtherFlow());
-        allPatterns.add(new UnrestrictedWrite());
-        allPatterns.add(new RepeatedCall());
-//        allPatterns.add(new UnsafeCallTarget());
-//        allPatterns.add(new UnsafeDependenceOnBlock());
-//        allPatterns.add(new UnsafeDependenceOnGas());
-//        allPatterns.add(new UseOfOrigin());
-//        allPatterns.add(new WriteOnly());
+        ConstantPropagation.propagate(instructions, controlFlowGraph, metrics);
+
+        IndexedProgram program = IndexedProgram.build(instructions, controlFlowGraph);
+        metrics.merge("program.instructions", (long) program.size(), Long::sum);
+        metrics.merge("program.variables", (long) program.getVariableCount(), Long::sum);
+
+        log.info();
+        log.info("Decompiled contract:");
+        List<Instruction> decompiledInstructions = instructions;
+        log.print(Log.Level.INFO, out -> DecompilationPrinter.printInstructions(decompiledInstructions, out));
+
+        return program;
+    }
+
+    /**
+     * Summarize the methods of a decompiled contract if they have been kept instead of inlined, see
+     * --method-summaries.
+     *
+     * @return summaries of the methods, empty if the methods have been inlined or the summaries failed
+     */
+    static Map<_VirtualMethodHead, MethodSummary> summarizeMethods(IndexedProgram program, Map<String, Long> metrics) {
+        if (args == null || !args.methodSummaries
+                || program.getInstructions().stream().noneMatch(instruction -> instruction instanceof _VirtualMethodHead)) {
+            return Collections.emptyMap();
+        }
+        progressPrinter.println("  Summarizing methods...");
+        Map<_VirtualMethodHead, MethodSummary> summaries = Collections.emptyMap();
+        try {
+            summaries = MethodSummary.summarize(program);
+        } catch (IOException e) {
+            // invocations without summary keep the default facts
+            log.info(() -> "Failed to summarize methods: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.merge("methodSummaries.methods", (long) summaries.size(), Long::sum);
+        return summaries;
+    }
+
+    /**
+     * Available patterns by name. Patterns are only instantiated when they are selected,
+     * so unused patterns are never loaded.
+     */
+    private static final Map<String, Supplier<AbstractPattern>> patternRegistry = new LinkedHashMap<>();
+    static {
+        patternRegistry.put("DAO", () -> new DAO());
+        patternRegistry.put("DAOConstantGas", () -> new DAOConstantGas());
+        // patternRegistry.put("DAOMethodCall", () -> new DAOMethodCall());
+        // patternRegistry.put("DelegateCallWithUserInput", () -> new DelegateCallWithUserInput());
+        // patternRegistry.put("DivisionBeforeCallvalue", () -> new DivisionBeforeCallvalue());
+        // patternRegistry.put("DivisionBeforeMultiply", () -> new DivisionBeforeMultiply());
+        patternRegistry.put("LockedEther", () -> new LockedEther());
+        patternRegistry.put("MissingInputValidation", () -> new MissingInputValidation());
+        patternRegistry.put("TODAmount", () -> new TODAmount());
+        patternRegistry.put("TODReceiver", () -> new TODReceiver());
+        // patternRegistry.put("TODTransfer", () -> new TODTransfer());
+        patternRegistry.put("UnhandledException", () -> new UnhandledException());
+        // patternRegistry.put("UnprivilegedSelfdestruct", () -> new UnprivilegedSelfdestruct());
+        patternRegistry.put("UnrestrictedEtherFlow", () -> new UnrestrictedEtherFlow());
+        patternRegistry.put("UnrestrictedWrite", () -> new UnrestrictedWrite());
+        patternRegistry.put("RepeatedCall", () -> new RepeatedCall());
+//        patternRegistry.put("UnsafeCallTarget", () -> new UnsafeCallTarget());
+//        patternRegistry.put("UnsafeDependenceOnBlock", () -> new UnsafeDependenceOnBlock());
+//        patternRegistry.put("UnsafeDependenceOnGas", () -> new UnsafeDependenceOnGas());
+//        patternRegistry.put("UseOfOrigin", () -> new UseOfOrigin());
+//        patternRegistry.put("WriteOnly", () -> new WriteOnly());
+    }
 
+    /**
+     * Create fresh instances of the patterns selected by the arguments.
+     *
+     * @param args command line arguments, may be null to select all patterns
+     * @return new pattern instances
+     */
+    static List<AbstractPattern> createPatterns(Args args) {
+        List<AbstractPattern> patterns = new LinkedList<>();
+
+        Set<String> wantedPatterns = null;
         if (args != null && !Strings.isNullOrEmpty(args.patterns)) {
-            List<String> wantedPatterns = new LinkedList<>();
+            wantedPatterns = new HashSet<>();
             for (String patternName : args.patterns.split(",")) {
-                String tmp = patternName.trim().toLowerCase();
-                wantedPatterns.add(tmp);
+                wantedPatterns.add(patternName.trim().toLowerCase());
             }
-            for (AbstractPattern pattern : allPatterns) {
-                if (wantedPatterns.contains(pattern.getClass().getSimpleName().toLowerCase())) {
-                    patterns.add(pattern);
-                }
+        }
+
+        AbstractPattern.Evaluation evaluation = AbstractPattern.Evaluation.FULL;
+        if (args != null && args.violationsOnly) {
+            evaluation = AbstractPattern.Evaluation.VIOLATIONS_ONLY;
+        } else if (args != null && args.shortCircuit) {
+            evaluation = AbstractPattern.Evaluation.SHORT_CIRCUIT;
+        }
+
+        for (Map.Entry<String, Supplier<AbstractPattern>> entry : patternRegistry.entrySet()) {
+            if (wantedPatterns == null || wantedPatterns.contains(entry.getKey().toLowerCase())) {
+                AbstractPattern pattern = entry.getValue().get();
+                pattern.setEvaluation(evaluation);
+                patterns.add(pattern);
             }
-        } else {
-            patterns = allPatterns;
         }
 
-        SolidityResult.setPatternDescriptions(patterns);
+        return patterns;
+    }
+
+    /**
+     * Part of a contract that is analyzed with a single dataflow fixpoint: a method body or the entire contract.
+     */
+    static class AnalysisUnit {
+        // decompiled contract, the body is part of it
+        final IndexedProgram program;
+        // summaries of the methods of the contract that have not been inlined
+        final Map<_VirtualMethodHead, MethodSummary> summaries;
+        final List<Instruction> body;
+        final List<AbstractPattern> patterns;
+        final boolean isMethod;
+        // instructions of the body and of the contract by kind, shared by all patterns
+        final InstructionIndex index;
+        final InstructionIndex contractIndex;
+        AbstractDataflow dataflow;
+
+        AnalysisUnit(IndexedProgram program, Map<_VirtualMethodHead, MethodSummary> summaries, List<Instruction> body,
+                     List<AbstractPattern> patterns, boolean isMethod, InstructionIndex contractIndex) {
+            this.program = program;
+            this.summaries = summaries;
+            this.body = body;
+            this.patterns = patterns;
+            this.isMethod = isMethod;
+            this.index = isMethod ? InstructionIndex.of(body) : contractIndex;
+            this.contractIndex = contractIndex;
+        }
+
+        /**
+         * Dispose the dataflow of the unit, if any. Synchronized with {@link #setDataflow} such that a dataflow that
+         * is computed concurrently is disposed exactly once.
+         */
+        synchronized void disposeDataflow() throws IOException, InterruptedException {
+            if (dataflow != null) {
+                AbstractDataflow disposed = dataflow;
+                dataflow = null;
+                disposed.dispose();
+            }
+        }
+
+        /**
+         * Set the dataflow computed on the current thread, or dispose it if the computation has been cancelled
+         * meanwhile.
+         */
+        synchronized void setDataflow(AbstractDataflow computed) throws IOException, InterruptedException {
+            if (Thread.currentThread().isInterrupted()) {
+                computed.dispose();
+            } else {
+                dataflow = computed;
+            }
+        }
+    }
+
+    /**
+     * Computes the dataflow of an analysis unit.
+     */
+    interface DataflowComputation {
+        AbstractDataflow compute(AnalysisUnit unit) throws IOException, InterruptedException;
     }
 
     /**
      * Analyze a contract with patterns.
      *
-     * @param instructions decompiled contract instructions
+     * @param program decompiled contract
+     * @param summaries summaries of the methods that have not been inlined
      * @return Map patterns to the match result.
      */
-    private static void checkPatterns(List<Instruction> instructions, String livestatusfile) throws IOException, InterruptedException {
+    private static void checkPatterns(IndexedProgram program, Map<_VirtualMethodHead, MethodSummary> summaries, List<AbstractPattern> patterns, OpcodeHistogram histogram, ContractResult contractResult, String livestatusfile) throws IOException, InterruptedException {
+        List<AnalysisUnit> units = splitIntoAnalysisUnits(program, summaries, patterns, histogram, contractResult);
+        updateContractAnalysisStatus(contractResult, livestatusfile);
+
+        if (args != null && args.failFast) {
+            checkPatternsFailFast(units, contractResult, livestatusfile);
+            return;
+        }
+        for (AnalysisUnit unit : units) {
+            computeDataflow(unit);
+            checkAnalysisUnit(unit, contractResult, livestatusfile);
+        }
+    }
+
+    /**
+     * Analyze the parts of a contract until a critical pattern is violated. Small parts and critical patterns are
+     * checked first, and the dataflow of the next part is computed while the patterns of the current part are
+     * checked. After a critical violation, the pending dataflow computation (and its Soufflé process) is cancelled,
+     * and the result is marked as partial if any pattern has not been checked.
+     */
+    static void checkPatternsFailFast(List<AnalysisUnit> units, ContractResult contractResult, String livestatusfile) throws IOException, InterruptedException {
+        checkPatternsFailFast(units, contractResult, livestatusfile, Main::createDataflow);
+    }
+
+    static void checkPatternsFailFast(List<AnalysisUnit> units, ContractResult contractResult, String livestatusfile, DataflowComputation computation) throws IOException, InterruptedException {
+        orderForFailFast(units);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "securify-dataflow");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<?> pending = units.isEmpty() ? null : startDataflow(executor, units.get(0), computation);
+        try {
+            for (int i = 0; i < units.size(); i++) {
+                awaitDataflow(pending);
+                pending = i + 1 < units.size() ? startDataflow(executor, units.get(i + 1), computation) : null;
+                if (checkAnalysisUnit(units.get(i), contractResult, livestatusfile, true)) {
+                    if (i + 1 < units.size()) {
+                        contractResult.partial = true;
+                    }
+                    log.info("Critical pattern violated, skipping the remaining patterns");
+                    break;
+                }
+            }
+        } finally {
+            // interrupting the dataflow computation destroys its Soufflé process
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Config.PATTERN_TIMEOUT, TimeUnit.SECONDS);
+            } finally {
+                // a computation that completes after this point disposes its dataflow itself
+                for (AnalysisUnit unit : units) {
+                    unit.disposeDataflow();
+                }
+            }
+        }
+    }
+
+    /**
+     * Order the parts of a contract and their patterns such that critical violations are likely found early:
+     * smaller parts first, and within each part the critical patterns first.
+     */
+    static void orderForFailFast(List<AnalysisUnit> units) {
+        units.sort(Comparator.comparingInt(unit -> unit.body.size()));
+        for (AnalysisUnit unit : units) {
+            unit.patterns.sort(Comparator.comparing((AbstractPattern pattern) -> !pattern.isCritical()));
+        }
+    }
+
+    private static Future<?> startDataflow(ExecutorService executor, AnalysisUnit unit, DataflowComputation computation) {
+        return executor.submit(() -> {
+            unit.setDataflow(computation.compute(unit));
+            return null;
+        });
+    }
+
+    private static void awaitDataflow(Future<?> dataflow) throws IOException, InterruptedException {
+        try {
+            dataflow.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Split a contract into the parts that are analyzed independently, and assign the patterns to check on them.
+     * A part is only analyzed with the patterns whose required opcodes occur in it, and parts without such patterns
+     * are skipped. Patterns that are not checked on any part are completed without findings.
+     *
+     * With method summaries, the body of a method does not contain the bodies of the methods it invokes. Their
+     * instructions are only checked in their own unit, where the arguments are user input and the checks of the
+     * callers do not precede them, so the findings in internal methods do not depend on the call site.
+     *
+     * @param program decompiled contract
+     * @param summaries summaries of the methods that have not been inlined, applied at their invocations
+     * @param histogram opcodes of the contract bytecode
+     * @return method bodies followed by the entire contract, or only the entire contract if there are no methods
+     */
+    static List<AnalysisUnit> splitIntoAnalysisUnits(IndexedProgram program, Map<_VirtualMethodHead, MethodSummary> summaries, List<AbstractPattern> patterns, OpcodeHistogram histogram, ContractResult contractResult) {
+        List<Instruction> instructions = program.getInstructions();
         patterns.forEach(pattern -> contractResult.patternResults.put(pattern.getClass().getSimpleName(), new PatternResult()));
-        updateContractAnalysisStatus(livestatusfile);
 
         boolean methodsDecompiled = (instructions.stream().anyMatch(instruction -> instruction instanceof _VirtualMethodHead));
+        InstructionIndex contractIndex = InstructionIndex.of(instructions);
 
+        List<AbstractPattern> applicablePatterns = patterns.stream()
+                .filter(pattern -> histogram.containsAny(pattern.getRequiredOpcodes()))
+                .collect(Collectors.toList());
+        long skippedUnits = 0;
+
+        List<AnalysisUnit> units = new LinkedList<>();
         if (!methodsDecompiled) {
             // no methods, compute a single global dataflow fixpoint and check all patterns
-            log.println("Computing global dataflow fixpoint over the entire contract...");
-            AbstractDataflow dataflow = DataflowFactory.getDataflow(instructions);
-            for (AbstractPattern pattern : patterns) {
+            List<AbstractPattern> globalPatterns = new LinkedList<>();
+            for (AbstractPattern pattern : applicablePatterns) {
                 if (pattern instanceof MissingInputValidation) {
-                    if (!methodsDecompiled) {
-                        PatternResult status = contractResult.patternResults.get(MissingInputValidation.class.getSimpleName());
-                        status.completed = true;
-                        status.error = "not supported";
-                        continue;
-                    }
-                }
-                try {
-                    checkInstructions(instructions, instructions, pattern, dataflow, livestatusfile);
-                } catch (Exception e) {
-                    handleSecurifyError("check_pattern_" + pattern.getClass().getName(), e);
-                    e.printStackTrace();
+                    PatternResult status = contractResult.patternResults.get(MissingInputValidation.class.getSimpleName());
+                    status.completed = true;
+                    status.error = "not supported";
+                    continue;
                 }
+                globalPatterns.add(pattern);
+            }
+            if (!globalPatterns.isEmpty()) {
+                units.add(new AnalysisUnit(program, summaries, instructions, globalPatterns, false, contractIndex));
+            } else {
+                skippedUnits++;
             }
-            dataflow.dispose();
         } else {
             // split instructions into methods and check them independently
+            List<AbstractPattern> methodPatterns = applicablePatterns.stream()
+                    .filter(pattern -> pattern instanceof AbstractInstructionPattern)
+                    .collect(Collectors.toList());
             for (List<Instruction> body : splitInstructionsIntoMethods(instructions)) {
-                log.println("Analyzing method with " + body.size() + " instructions:");
-                DecompilationPrinter.printInstructions(body, log);
-
-                log.println("Computing dataflow fixpoint over the method body...");
-                AbstractDataflow bodyDataflow = DataflowFactory.getDataflow(body);
-                for (AbstractPattern pattern : patterns) {
-                    if (!(pattern instanceof AbstractInstructionPattern))
-                        continue;
-
-                    try {
-                        checkInstructions(body, instructions, pattern, bodyDataflow, livestatusfile);
-                    } catch (Exception e) {
-                        handleSecurifyError("check_pattern_" + pattern.getClass().getName(), e);
-                        e.printStackTrace();
-                    }
+                OpcodeHistogram bodyHistogram = OpcodeHistogram.of(body);
+                List<AbstractPattern> bodyPatterns = methodPatterns.stream()
+                        .filter(pattern -> bodyHistogram.containsAny(pattern.getRequiredOpcodes()))
+                        .collect(Collectors.toList());
+                if (!bodyPatterns.isEmpty()) {
+                    units.add(new AnalysisUnit(program, summaries, body, bodyPatterns, true, contractIndex));
+                } else {
+                    skippedUnits++;
                 }
-                bodyDataflow.dispose();
             }
 
-            log.println("Computing global dataflow fixpoint over the entire contract...");
-            AbstractDataflow globalDataflow = DataflowFactory.getDataflow(instructions);
-            for (AbstractPattern pattern : patterns) {
-                if (!(pattern instanceof AbstractContractPattern))
-                    continue;
+            List<AbstractPattern> contractPatterns = applicablePatterns.stream()
+                    .filter(pattern -> pattern instanceof AbstractContractPattern)
+                    .collect(Collectors.toList());
+            if (!contractPatterns.isEmpty()) {
+                units.add(new AnalysisUnit(program, summaries, instructions, contractPatterns, false, contractIndex));
+            } else {
+                skippedUnits++;
+            }
+        }
 
-                try {
-                    checkInstructions(instructions, instructions, pattern, globalDataflow, livestatusfile);
-                } catch (Exception e) {
-                    handleSecurifyError("check_pattern_" + pattern.getClass().getName(), e);
-                    e.printStackTrace();
-                }
+        Set<AbstractPattern> checkedPatterns = units.stream()
+                .flatMap(unit -> unit.patterns.stream())
+                .collect(Collectors.toSet());
+        long skippedPatterns = 0;
+        for (AbstractPattern pattern : patterns) {
+            PatternResult status = contractResult.patternResults.get(pattern.getClass().getSimpleName());
+            if (!checkedPatterns.contains(pattern) && !status.completed) {
+                status.completed = true;
+                skippedPatterns++;
             }
-            globalDataflow.dispose();
         }
+        contractResult.metrics.merge("prefilter.skippedUnits", skippedUnits, Long::sum);
+        contractResult.metrics.merge("prefilter.skippedPatterns", skippedPatterns, Long::sum);
+        return units;
     }
 
+    static void computeDataflow(AnalysisUnit unit) throws IOException, InterruptedException {
+        unit.dataflow = createDataflow(unit);
+    }
 
-    private static void checkInstructions(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractPattern pattern, AbstractDataflow dataflow, String livestatusfile) {
-        log.println();
+    static AbstractDataflow createDataflow(AnalysisUnit unit) throws IOException, InterruptedException {
+        if (unit.isMethod) {
+            log.info(() -> "Analyzing method with " + unit.body.size() + " instructions:");
+            log.print(Log.Level.INFO, out -> DecompilationPrinter.printInstructions(unit.body, out));
+
+            log.info("Computing dataflow fixpoint over the method body...");
+        } else {
+            log.info("Computing global dataflow fixpoint over the entire contract...");
+        }
+        return DataflowFactory.getDataflow(unit.program, unit.body, getQueriedInstructions(unit), unit.summaries);
+    }
+
+    /**
+     * @return instructions that the patterns of the unit may query, or null if any instruction may be queried
+     */
+    static Collection<Instruction> getQueriedInstructions(AnalysisUnit unit) {
+        Set<Instruction> queried = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AbstractPattern pattern : unit.patterns) {
+            Collection<Instruction> patternQueried = pattern.getQueriedInstructions(unit.index);
+            if (patternQueried == null) {
+                return null;
+            }
+            queried.addAll(patternQueried);
+        }
+        return queried;
+    }
+
+    static void checkAnalysisUnit(AnalysisUnit unit, ContractResult contractResult, String livestatusfile) throws IOException, InterruptedException {
+        checkAnalysisUnit(unit, contractResult, livestatusfile, false);
+    }
+
+    /**
+     * @param stopAtCriticalViolation skip the remaining patterns of the unit once a critical pattern is violated
+     * @return true if the patterns have been stopped at a critical violation
+     */
+    private static boolean checkAnalysisUnit(AnalysisUnit unit, ContractResult contractResult, String livestatusfile, boolean stopAtCriticalViolation) throws IOException, InterruptedException {
+        RelevanceSlice slice = unit.dataflow.getSlice();
+        if (slice != null) {
+            contractResult.metrics.merge("slice.instructions", (long) slice.size(), Long::sum);
+            contractResult.metrics.merge("slice.droppedInstructions", (long) slice.getDroppedCount(), Long::sum);
+        }
+        boolean criticalViolation = false;
+        for (AbstractPattern pattern : unit.patterns) {
+            if (criticalViolation) {
+                contractResult.partial = true;
+                break;
+            }
+            try {
+                checkInstructions(unit.index, unit.contractIndex, pattern, unit.dataflow, contractResult, livestatusfile);
+            } catch (Exception e) {
+                handleSecurifyError(contractResult, "check_pattern_" + pattern.getClass().getName(), e);
+                e.printStackTrace();
+            }
+            criticalViolation = stopAtCriticalViolation && pattern.isCritical() && !pattern.getViolations().isEmpty();
+        }
+        unit.disposeDataflow();
+        return criticalViolation;
+    }
+
+
+    private static void checkInstructions(InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractPattern pattern, AbstractDataflow dataflow, ContractResult contractResult, String livestatusfile) {
+        log.info();
 
         PatternResult status = contractResult.patternResults.get(pattern.getClass().getSimpleName());
 
-        log.println("Checking pattern " + pattern.getClass().getSimpleName() + ": ");
+        log.info(() -> "Checking pattern " + pattern.getClass().getSimpleName() + ": ");
 
+        long queries = dataflow.getQueryCount();
+        long skippedComplianceChecks = pattern.getSkippedComplianceChecks();
         try {
             pattern.checkPattern(methodInstructions, contractInstructions, dataflow);
         } catch (Exception e) {
             status.error = e instanceof UnsupportedOperationException ? "not supported" : "analysis failed";
-            handleSecurifyError("check_instructions" + pattern.getClass().getName(), e);
+            handleSecurifyError(contractResult, "check_instructions" + pattern.getClass().getName(), e);
             e.printStackTrace();
         }
+        String patternName = pattern.getClass().getSimpleName();
+        contractResult.metrics.merge("patterns." + patternName + ".queries", dataflow.getQueryCount() - queries, Long::sum);
+        if (pattern.getEvaluation() != AbstractPattern.Evaluation.FULL) {
+            contractResult.metrics.merge("patterns." + patternName + ".skippedComplianceChecks",
+                    pattern.getSkippedComplianceChecks() - skippedComplianceChecks, Long::sum);
+        }
 
         status.completed = true;
         pattern.getViolations().stream()
@@ -472,13 +1008,13 @@ public class Main {
                 .filter(instruction -> instruction.getRawInstruction() != null)
                 .forEach(instruction -> status.addConflict(instruction.getRawInstruction().instrNumber));
 
-        log.println("\tViolations:" + pattern.getViolations().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
-        log.println("\tWarnings: " + pattern.getWarnings().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
-        log.println("\tSafe: " + pattern.getSafe().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
-        log.println("\tConflicts: " + pattern.getConflicts().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
-        log.println();
+        log.info(() -> "\tViolations:" + pattern.getViolations().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
+        log.info(() -> "\tWarnings: " + pattern.getWarnings().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
+        log.info(() -> "\tSafe: " + pattern.getSafe().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
+        log.info(() -> "\tConflicts: " + pattern.getConflicts().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
+        log.info();
 
-        updateContractAnalysisStatus(livestatusfile);
+        updateContractAnalysisStatus(contractResult, livestatusfile);
     }
 
     public static List<List<Instruction>> splitInstructionsIntoMethods(List<Instruction> instructions) {
@@ -503,13 +1039,16 @@ public class Main {
         return methodBodies;
     }
 
-    private static void updateContractAnalysisStatus(String livestatusfile) {
+    private static void updateContractAnalysisStatus(ContractResult contractResult, String livestatusfile) {
         if (livestatusfile == null)
             return;
 
+        if (statusGson == null) {
+            statusGson = new GsonBuilder().setPrettyPrinting().create();
+        }
+
         try (Writer writer = new FileWriter(livestatusfile)) {
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(contractResult, writer);
+            statusGson.toJson(contractResult, writer);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
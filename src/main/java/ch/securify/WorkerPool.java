@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify;
+
+import ch.securify.model.Contract;
+import ch.securify.model.ContractResult;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of worker JVMs that analyze contracts for {@link BatchAnalysis}.
+ *
+ * Each worker runs Main with --batch-worker, reads one contract request per frame from stdin (see
+ * {@link #writeRequest(DataOutputStream, Contract)}) and answers with one result line on stdout. A contract that crashes its worker (e.g. out of memory) or exceeds the timeout is reported as
+ * failed, and the worker is replaced by a fresh one. Workers are reused across contracts.
+ */
+public class WorkerPool implements Closeable {
+
+    private static final Gson gson = new Gson();
+
+    private static final int REQUEST_HEX = 0;
+    private static final int REQUEST_BINARY = 1;
+
+    private final List<String> command;
+    private final long timeoutMillis;
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * @param size number of worker processes
+     * @param maxHeap maximum heap of a worker, e.g. "2g", null for the JVM default
+     * @param timeoutMillis maximum analysis time of a contract, 0 for no limit
+     * @param workerArgs additional arguments for Main, e.g. the patterns
+     */
+    public WorkerPool(int size, String maxHeap, long timeoutMillis, List<String> workerArgs) {
+        command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (maxHeap != null) {
+            command.add("-Xmx" + maxHeap);
+        }
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("--batch-worker");
+        command.addAll(workerArgs);
+
+        this.timeoutMillis = timeoutMillis;
+        for (int i = 0; i < size; i++) {
+            Worker worker = new Worker();
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Analyze a contract on the next idle worker.
+     *
+     * @return result line in the output format of {@link BatchAnalysis}
+     */
+    public String analyze(Contract contract) throws InterruptedException {
+        Worker worker = idleWorkers.take();
+        try {
+            return worker.analyze(contract);
+        } finally {
+            idleWorkers.put(worker);
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.forEach(Worker::stop);
+    }
+
+    /**
+     * Write a contract request to a worker. The code is sent as stored, raw bytecode (e.g. read from a
+     * {@link ch.securify.utils.PackedCorpus}) is not encoded as hex: a frame consists of the address, the kind of
+     * code, the length of the code and the code bytes.
+     */
+    static void writeRequest(DataOutputStream out, Contract contract) throws IOException {
+        out.writeUTF(contract.getContractAddress());
+        byte[] code;
+        if (contract.getBinary() != null) {
+            out.writeByte(REQUEST_BINARY);
+            code = contract.getBinary();
+        } else {
+            out.writeByte(REQUEST_HEX);
+            code = contract.getCode().getBytes(StandardCharsets.UTF_8);
+        }
+        out.writeInt(code.length);
+        out.write(code);
+        out.flush();
+    }
+
+    /**
+     * Read a contract request written by {@link #writeRequest(DataOutputStream, Contract)}.
+     *
+     * @return the contract, null at the end of the requests
+     */
+    static Contract readRequest(DataInputStream in) throws IOException {
+        String address;
+        try {
+            address = in.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+        int kind = in.readByte();
+        byte[] code = new byte[in.readInt()];
+        in.readFully(code);
+        switch (kind) {
+            case REQUEST_BINARY:
+                return new Contract(address, code);
+            case REQUEST_HEX:
+                return new Contract(address, new String(code, StandardCharsets.UTF_8));
+            default:
+                throw new IOException("Invalid request kind " + kind);
+        }
+    }
+
+    static String failedResult(String address, String error) {
+        ContractResult contractResult = new ContractResult();
+        contractResult.error = error;
+        return BatchAnalysis.resultLine(address, BatchAnalysis.STATUS_ERROR, contractResult);
+    }
+
+    private class Worker {
+        private Process process;
+        private DataOutputStream stdin;
+        // lines written by the worker, empty at the end of its output
+        private BlockingQueue<Optional<String>> responses;
+
+        private void start() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = pb.start();
+            stdin = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+
+            BlockingQueue<Optional<String>> lines = new LinkedBlockingQueue<>();
+            BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = stdout.readLine()) != null) {
+                        lines.add(Optional.of(line));
+                    }
+                } catch (IOException e) {
+                    // treated as the end of the output
+                }
+                lines.add(Optional.empty());
+            }, "securify-worker-reader");
+            reader.setDaemon(true);
+            reader.start();
+            responses = lines;
+        }
+
+        String analyze(Contract contract) throws InterruptedException {
+            String address = contract.getContractAddress();
+            try {
+                if (process == null) {
+                    start();
+                }
+                writeRequest(stdin, contract);
+            } catch (IOException e) {
+                return restart(address, "worker failed: " + e);
+            }
+
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                Optional<String> response = timeoutMillis > 0
+                        ? responses.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                        : responses.take();
+                if (response == null) {
+                    return restart(address, "timeout after " + timeoutMillis / 1000 + "s");
+                }
+                if (!response.isPresent()) {
+                    process.waitFor(10, TimeUnit.SECONDS);
+                    return restart(address, "worker crashed" + (process.isAlive() ? "" : " with exit code " + process.exitValue()));
+                }
+                if (isResultFor(response.get(), address)) {
+                    return response.get();
+                }
+                // skip any other output of the worker
+            }
+        }
+
+        private boolean isResultFor(String line, String address) {
+            try {
+                JsonObject result = gson.fromJson(line, JsonObject.class);
+                return result != null && result.has("address") && address.equals(result.get("address").getAsString());
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        private String restart(String address, String error) {
+            stop();
+            return failedResult(address, error);
+        }
+
+        void stop() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+
+}
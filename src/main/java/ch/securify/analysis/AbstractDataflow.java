@@ -18,22 +18,30 @@
 
 package ch.securify.analysis;
 
+import ch.securify.decompiler.BasicBlock;
+import ch.securify.decompiler.ControlFlowGraph;
+import ch.securify.decompiler.IndexedProgram;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
-import ch.securify.utils.BigIntUtil;
+import ch.securify.utils.Hex;
+import ch.securify.utils.Log;
+import ch.securify.utils.UInt256;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.*;
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static com.google.common.io.Resources.copy;
 import static com.google.common.io.Resources.getResource;
@@ -42,6 +50,9 @@ public abstract class AbstractDataflow {
 
     public static final int UNK_CONST_VAL = -1;
 
+    // 2^224, Solidity divides the call data by it to extract the function selector
+    private static final UInt256 SELECTOR_DIVISOR = UInt256.ONE.shiftLeft(224);
+
     abstract public int mayFollow(Instruction instr1, Instruction instr2);
     abstract public int instrMayDepOn(Instruction instr, Object type);
     abstract public int varMayDepOn(Instruction instr1, Variable lhs, Object type);
@@ -55,13 +66,22 @@ public abstract class AbstractDataflow {
     abstract protected void deriveIfPredicates();
     abstract protected void createSLoadRule(Instruction instr, Variable index, Variable var);
     abstract protected void createMLoadRule(Instruction instr, Variable offset, Variable var);
+    abstract protected void createMethodSummaryRules(_VirtualMethodInvoke invoke, MethodSummary summary);
 
     protected List<Instruction> instructions;
-
-    protected BiMap<Variable, Integer> varToCode;
-    protected BiMap<Instruction, Integer> instrToCode;
-    protected BiMap<Class, Integer> typeToCode;
-    protected BiMap<Integer, Integer> constToCode;
+    // instructions over which the facts are derived, set by the constructor
+    protected RelevanceSlice slice;
+    // ids and operands of the instructions, the facts of the operands are emitted from its arrays
+    protected IndexedProgram program;
+    // number of answered queries, counted by the combined analysis in Dataflow
+    protected long queryCount;
+
+    // codes of indexed instructions and variables by id, plus one (0: no code yet)
+    private int[] instrCodes;
+    private int[] varCodes;
+    // codes of types, constants and objects without id
+    private Map<Object, Integer> otherCodes;
+    private List<Object> codeToObject;
 
     protected BiMap<Integer, Variable> offsetToStorageVar;
     protected BiMap<Integer, Variable> offsetToMemoryVar;
@@ -72,10 +92,10 @@ public abstract class AbstractDataflow {
 
     public int unk;
 
-    protected final boolean DEBUG = false;
+    private static volatile Log log = Log.OFF;
 
     // input predicates
-    private static String DL_FOLDER;
+    private static volatile String DL_FOLDER;
     private String WORKSPACE, WORKSPACE_OUT;
 
     public static void setDlFolder(String folder) {
@@ -83,23 +103,90 @@ public abstract class AbstractDataflow {
     }
 
     /**
-     * Extract the Soufflé binaries and store them in a temporary folder to allow them to be executed
+     * @param log receives the derivation of the Datalog facts at debug level
+     */
+    public static void setLog(Log log) {
+        AbstractDataflow.log = Objects.requireNonNull(log);
+    }
+
+    /**
+     * Extract the Soufflé binaries to allow them to be executed. The binaries are kept in a persistent cache
+     * directory (see {@link Config#getCacheDir()}) keyed by their checksum, so that repeated runs do not have to
+     * copy them again. A cached binary is only reused if its SHA-256 checksum matches the bundled resource.
      *
      * @throws IOException
      */
-    private static void extractSouffleBinaries() throws IOException {
-        String[] names = {MustExplicitDataflow.binaryName, MayImplicitDataflow.binaryName };
-        String souffleDir = Files.createTempDirectory("binaries_souffle").toFile().getAbsolutePath();
-        setDlFolder(souffleDir);
-        for(String resourceName : names) {
-            File binaryPath = Paths.get(souffleDir, resourceName).toFile();
-            OutputStream os = new FileOutputStream(binaryPath);
-            copy(getResource(resourceName), os);
-            os.close();
-            if (!binaryPath.setExecutable(true)) {
+    private static synchronized void extractSouffleBinaries() throws IOException {
+        if (DL_FOLDER != null) {
+            return;
+        }
+        String[] names = {MustExplicitDataflow.binaryName, MayImplicitDataflow.binaryName,
+                MustExplicitBlockDataflow.binaryName, MayImplicitBlockDataflow.binaryName,
+                MustExplicitSparseDataflow.binaryName};
+
+        Map<String, byte[]> checksums = new HashMap<>();
+        MessageDigest combined = newSha256();
+        for (String resourceName : names) {
+            byte[] checksum = sha256(getResource(resourceName).openStream());
+            checksums.put(resourceName, checksum);
+            combined.update(checksum);
+        }
+
+        File souffleDir = null;
+        File cacheDir = Config.getCacheDir();
+        if (cacheDir != null) {
+            souffleDir = new File(cacheDir, "souffle-" + Hex.encode(combined.digest()).substring(0, 16).toLowerCase());
+            if (!souffleDir.isDirectory() && !souffleDir.mkdirs() && !souffleDir.isDirectory()) {
+                // cache not writable, fall back to a temporary folder
+                souffleDir = null;
+            }
+        }
+        if (souffleDir == null) {
+            souffleDir = Files.createTempDirectory("binaries_souffle").toFile();
+        }
+
+        for (String resourceName : names) {
+            File binaryPath = new File(souffleDir, resourceName);
+            if (binaryPath.isFile() && binaryPath.canExecute()
+                    && Arrays.equals(sha256(new FileInputStream(binaryPath)), checksums.get(resourceName))) {
+                // valid cached binary
+                continue;
+            }
+            // write to a temporary file first and move it in place, so concurrent runs never see a partial binary
+            File tmpPath = File.createTempFile(resourceName, ".tmp", souffleDir);
+            try (OutputStream os = new FileOutputStream(tmpPath)) {
+                copy(getResource(resourceName), os);
+            }
+            if (!tmpPath.setExecutable(true)) {
                 throw new IOException("Could not set the executable bit of a souffle binary in " + souffleDir);
             }
+            try {
+                Files.move(tmpPath.toPath(), binaryPath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath.toPath(), binaryPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        setDlFolder(souffleDir.getAbsolutePath());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("No SHA-256");
+        }
+    }
+
+    private static byte[] sha256(InputStream in) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream is = in) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
         }
+        return digest.digest();
     }
 
     protected void initDataflow(String binaryName) throws IOException, InterruptedException {
@@ -109,10 +196,14 @@ public abstract class AbstractDataflow {
 
         String DL_EXEC = DL_FOLDER + "/" + binaryName;
 
-        varToCode = HashBiMap.create();
-        instrToCode = HashBiMap.create();
-        typeToCode = HashBiMap.create();
-        constToCode = HashBiMap.create();
+        // no facts are derived for the instructions outside of the slice
+        instructions = slice.getInstructions();
+        program = slice.getProgram();
+
+        instrCodes = new int[program.size()];
+        varCodes = new int[program.getVariableCount()];
+        otherCodes = new HashMap<>();
+        codeToObject = new ArrayList<>();
         fixedpoint = new HashMap<>();
 
         offsetToStorageVar = HashBiMap.create();
@@ -134,6 +225,8 @@ public abstract class AbstractDataflow {
         ruleToSB.put("sstore", new StringBuffer());
         ruleToSB.put("isStorageVar", new StringBuffer());
         ruleToSB.put("sha3", new StringBuffer());
+        ruleToSB.put("memoryWord", new StringBuffer());
+        ruleToSB.put("partialStore", new StringBuffer());
         ruleToSB.put("unk", new StringBuffer());
 
         unk = getCode(UNK_CONST_VAL);
@@ -162,26 +255,44 @@ public abstract class AbstractDataflow {
         deriveIfPredicates();
 
         createProgramRulesFile();
-        log("Number of instructions: " + instrToCode.size());
-        log("Threshold: " + Config.THRESHOLD_COMPILE);
+        log(() -> "Number of instructions: " + instructions.size());
+        log(() -> "Threshold: " + Config.THRESHOLD_COMPILE);
 
         long start = System.currentTimeMillis();
-        runCommand(new String[]{DL_EXEC, "-j", Integer.toString(Runtime.getRuntime().availableProcessors()), "-F", WORKSPACE, "-D", WORKSPACE_OUT});
+        try {
+            runCommand(new String[]{DL_EXEC, "-j", Integer.toString(Runtime.getRuntime().availableProcessors()), "-F", WORKSPACE, "-D", WORKSPACE_OUT});
+        } catch (InterruptedException e) {
+            dispose();
+            throw e;
+        }
 
         long elapsedTime = System.currentTimeMillis() - start;
-        String elapsedTimeStr = String.format("%d min, %d sec",
+        log(() -> String.format("%d min, %d sec",
                 TimeUnit.MILLISECONDS.toMinutes(elapsedTime),
                 TimeUnit.MILLISECONDS.toSeconds(elapsedTime) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(elapsedTime))
-        );
+        ));
+    }
+
+    /**
+     * @return number of queries answered so far, e.g. to compare the costs of the pattern checks
+     */
+    public long getQueryCount() {
+        return queryCount;
+    }
 
-        log(elapsedTimeStr);
+    /**
+     * @return the instructions over which the facts have been derived
+     */
+    public RelevanceSlice getSlice() {
+        return slice;
     }
 
-    public static int getInt(byte[] data) {
-        byte[] bytes = new byte[4];
-        System.arraycopy(data, 0, bytes, 4 - Math.min(data.length, 4), Math.min(data.length, 4));
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        return bb.getInt();
+    /**
+     * @return a constant memory or storage offset, offsets above Integer.MAX_VALUE are clamped to it. Amounts are
+     * compared as entire words instead, e.g. with {@link UInt256#isZero()}.
+     */
+    public static int getInt(UInt256 value) {
+        return value.clampedIntValue();
     }
 
     protected static long Encode(CSVRecord record) {
@@ -250,6 +361,36 @@ public abstract class AbstractDataflow {
         fixedpoint.put(ruleName, entries);
     }
 
+    /**
+     * @return all tuples of an output relation, for relations that are not queried with {@link #runQuery}
+     */
+    protected List<int[]> readTuples(String ruleName) throws IOException {
+        List<int[]> tuples = new ArrayList<>();
+        try (Reader in = new FileReader(WORKSPACE_OUT + "/" + ruleName + ".csv")) {
+            for (CSVRecord record : CSVFormat.TDF.parse(in)) {
+                int[] tuple = new int[record.size()];
+                for (int i = 0; i < tuple.length; i++) {
+                    tuple[i] = Integer.parseInt(record.get(i));
+                }
+                tuples.add(tuple);
+            }
+        }
+        return tuples;
+    }
+
+    /**
+     * @return the facts of an input relation that have been derived so far
+     */
+    protected List<int[]> getFacts(String ruleName) {
+        List<int[]> facts = new ArrayList<>();
+        for (String line : ruleToSB.get(ruleName).toString().split("\n")) {
+            if (!line.isEmpty()) {
+                facts.add(Arrays.stream(line.split("\t")).mapToInt(Integer::parseInt).toArray());
+            }
+        }
+        return facts;
+    }
+
     protected int runQuery(String ruleName, Integer... args) {
         try {
             if (!fixedpoint.containsKey(ruleName)) {
@@ -272,9 +413,15 @@ public abstract class AbstractDataflow {
 
         Process proc = Runtime.getRuntime().exec(command, envp);
 
-        if (!proc.waitFor(Config.PATTERN_TIMEOUT, TimeUnit.SECONDS)){ 
+        try {
+            if (!proc.waitFor(Config.PATTERN_TIMEOUT, TimeUnit.SECONDS)){
+                proc.destroyForcibly();
+                throw new IOException("Timeout for " + String.join(" ", command));
+            }
+        } catch (InterruptedException e) {
+            // the analysis has been cancelled, e.g. in fail-fast mode
             proc.destroyForcibly();
-            throw new IOException("Timeout for " + String.join(" ", command));
+            throw e;
         }
         if (proc.exitValue() != 0) {
             proc.destroyForcibly();
@@ -292,30 +439,53 @@ public abstract class AbstractDataflow {
         return offsetToStorageVar.get(index);
     }
 
+    /**
+     * Memory is modelled as 32-byte words, an offset is mapped to the word that contains it.
+     */
     protected Variable getMemoryVarForIndex(int index) {
-        if (!offsetToMemoryVar.containsKey(index)) {
+        int word = getMemoryWord(index);
+        if (!offsetToMemoryVar.containsKey(word)) {
             Variable newVar = new Variable();
-            offsetToMemoryVar.put(index, newVar);
+            offsetToMemoryVar.put(word, newVar);
+            appendRule("memoryWord", getCode(newVar), word);
             return newVar;
         }
-        return offsetToMemoryVar.get(index);
+        return offsetToMemoryVar.get(word);
+    }
+
+    /**
+     * @return the offset of the 32-byte word that contains the given offset
+     */
+    protected static int getMemoryWord(int offset) {
+        return offset & ~31;
     }
 
     protected void log(String msg) {
-        if (DEBUG)
-            System.out.println(this.getClass().getSimpleName() + ": " + msg);
+        log.debug(() -> this.getClass().getSimpleName() + ": " + msg);
+    }
+
+    protected void log(Supplier<String> msg) {
+        log.debug(() -> this.getClass().getSimpleName() + ": " + msg.get());
     }
 
     protected void createMStoreRule(Instruction instr, Variable offset, Variable var) {
         int offsetCode;
         if (offset.hasConstantValue()) {
-            log("Offset " + offset + ", int offset " + getInt(offset.getConstantValue()) + "memory var " + getMemoryVarForIndex(getInt(offset.getConstantValue())) + ", code " + getCode(getMemoryVarForIndex(getInt(offset.getConstantValue()))));
-            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
+            Variable memoryVar = getMemoryVarForIndex(getInt(offset.getConstantValue()));
+            offsetCode = getCode(memoryVar);
+            log(() -> "Offset " + offset + ", int offset " + getInt(offset.getConstantValue()) + "memory var " + memoryVar + ", code " + getCode(memoryVar));
         } else {
             offsetCode = unk;
         }
 
         appendRule("mstore", getCode(instr), offsetCode, getCode(var));
+        if (offset.hasConstantValue()) {
+            int index = getInt(offset.getConstantValue());
+            if (instr instanceof MStore8 || index != getMemoryWord(index)) {
+                // the rest of the word is kept, the store does not reassign it
+                appendRule("partialStore", getCode(instr));
+            }
+        }
     }
 
     protected void createSStoreRule(Instruction instr, Variable index, Variable var) {
@@ -332,6 +502,24 @@ public abstract class AbstractDataflow {
         appendRule("assignVar", getCode(instr), getCode(output), getCode(input));
     }
 
+    /**
+     * Assign every input of an instruction to every output, by the operand ids of the indexed program.
+     *
+     * @param skipped input ids that are not assigned, or null
+     */
+    private void createAssignOperandsRules(Instruction instr, BitSet skipped) {
+        int id = instr.getId();
+        int instrCode = getCode(instr);
+        for (int i = 0; i < program.getOutputCount(id); i++) {
+            int outputCode = getVariableCode(program.getOutput(id, i));
+            for (int j = 0; j < program.getInputCount(id); j++) {
+                if (skipped == null || !skipped.get(j)) {
+                    appendRule("assignVar", instrCode, outputCode, getVariableCode(program.getInput(id, j)));
+                }
+            }
+        }
+    }
+
     protected void createAssignTypeRule(Instruction instr, Variable var, Class type) {
         appendRule("assignType", getCode(instr), getCode(var), getCode(type));
     }
@@ -340,6 +528,45 @@ public abstract class AbstractDataflow {
         appendRule("assignType", getCode(instr), getCode(var), unk);
     }
 
+    /**
+     * Assign the facts of a method summary to a variable at the invocation of the method.
+     */
+    protected void createSummaryFactRules(_VirtualMethodInvoke invoke, Variable var, Set<Object> facts) {
+        for (Object fact : facts) {
+            if (fact instanceof MethodSummary.Argument) {
+                createAssignVarRule(invoke, var, invoke.getInput()[((MethodSummary.Argument) fact).index]);
+            } else if (fact instanceof MethodSummary.StorageSlot) {
+                appendRule("assignType", getCode(invoke), getCode(var), getCode(getStorageVarForIndex(((MethodSummary.StorageSlot) fact).index)));
+            } else if (fact instanceof MethodSummary.MemoryWord) {
+                Variable offset = createConstant(((MethodSummary.MemoryWord) fact).offset);
+                appendRule("assignType", getCode(invoke), getCode(var), getCode(getMemoryVarForIndex(((MethodSummary.MemoryWord) fact).offset)));
+                // the memory of the caller at the invocation
+                createMLoadRule(invoke, offset, var);
+            } else if (fact == MethodSummary.UNKNOWN) {
+                createAssignTopRule(invoke, var);
+            } else {
+                appendRule("assignType", getCode(invoke), getCode(var), getCode(fact));
+            }
+        }
+    }
+
+    /**
+     * @return a variable with the given constant value, e.g. the index of a store of a method summary
+     */
+    protected static Variable createConstant(int value) {
+        Variable constant = new Variable();
+        constant.setConstantValue(UInt256.valueOf(value));
+        return constant;
+    }
+
+    /**
+     * @return true if the arguments of the methods in the instructions are user input, false if they are only
+     * abstract types, e.g. while the method is summarized
+     */
+    protected boolean argumentsFromUserInput() {
+        return true;
+    }
+
     protected void createEndIfRule(Instruction start, Instruction end) {
         appendRule("endIf", getCode(start), getCode(end));
     }
@@ -368,28 +595,117 @@ public abstract class AbstractDataflow {
         return freshCode;
     }
 
+    private int getFreshCode(Object o) {
+        int code = getFreshCode();
+        while (codeToObject.size() < code) {
+            codeToObject.add(null);
+        }
+        codeToObject.add(o);
+        return code;
+    }
+
+    /**
+     * Look up the code of an instruction or variable by its dense id, see {@link ch.securify.decompiler.IndexedProgram}.
+     */
+    private int getIndexedCode(int[] codes, int id, Object o) {
+        int code = codes[id] - 1;
+        if (code < 0) {
+            code = getFreshCode(o);
+            codes[id] = code + 1;
+        } else if (codeToObject.get(code) != o) {
+            // stale id from a different program
+            code = getOtherCode(o);
+        }
+        return code;
+    }
+
+    private int getOtherCode(Object o) {
+        Integer code = otherCodes.get(o);
+        if (code == null) {
+            code = getFreshCode(o);
+            otherCodes.put(o, code);
+        }
+        return code;
+    }
+
+    /**
+     * @param id id of a variable of the indexed program, or {@link IndexedProgram#NONE} for a missing operand
+     */
+    private int getVariableCode(int id) {
+        if (id == IndexedProgram.NONE) {
+            return getOtherCode(null);
+        }
+        return getIndexedCode(varCodes, id, program.getVariable(id));
+    }
+
     protected int getCode(Variable var) {
-        if (!varToCode.containsKey(var))
-            varToCode.put(var, getFreshCode());
-        return varToCode.get(var);
+        int id = var != null ? var.getId() : -1;
+        if (id < 0) {
+            return getOtherCode(var);
+        }
+        if (id >= varCodes.length) {
+            varCodes = Arrays.copyOf(varCodes, Math.max(2 * varCodes.length, id + 1));
+        }
+        return getIndexedCode(varCodes, id, var);
     }
 
     protected int getCode(Instruction instr) {
-        if (!instrToCode.containsKey(instr))
-            instrToCode.put(instr, getFreshCode());
-        return instrToCode.get(instr);
+        int id = instr != null ? instr.getId() : -1;
+        if (id < 0) {
+            return getOtherCode(instr);
+        }
+        if (id >= instrCodes.length) {
+            instrCodes = Arrays.copyOf(instrCodes, Math.max(2 * instrCodes.length, id + 1));
+        }
+        return getIndexedCode(instrCodes, id, instr);
     }
 
     protected int getCode(Class instructionClass) {
-        if (!typeToCode.containsKey(instructionClass))
-            typeToCode.put(instructionClass, getFreshCode());
-        return typeToCode.get(instructionClass);
+        return getOtherCode(instructionClass);
     }
 
     protected int getCode(Integer constVal) {
-        if (!constToCode.containsKey(constVal))
-            constToCode.put(constVal, getFreshCode());
-        return constToCode.get(constVal);
+        return getOtherCode(constVal);
+    }
+
+    /**
+     * @return the code of the instruction, -1 if no fact has been derived for it
+     */
+    private int findCode(Instruction instr) {
+        int id = instr.getId();
+        if (id >= 0 && id < instrCodes.length) {
+            int code = instrCodes[id] - 1;
+            if (code >= 0 && codeToObject.get(code) == instr) {
+                return code;
+            }
+        }
+        return otherCodes.getOrDefault(instr, -1);
+    }
+
+    /**
+     * @return the codes of the instructions of each basic block of the program, in block order, without the
+     * instructions for which no fact has been derived
+     */
+    protected List<int[]> getBlockCodes() {
+        List<int[]> blockCodes = new ArrayList<>();
+        ControlFlowGraph controlFlowGraph = program.getControlFlowGraph();
+        if (controlFlowGraph == null) {
+            return blockCodes;
+        }
+        for (BasicBlock block : controlFlowGraph.getBlocks()) {
+            int[] codes = block.getInstructions().stream().mapToInt(this::findCode).filter(code -> code >= 0).toArray();
+            if (codes.length > 0) {
+                blockCodes.add(codes);
+            }
+        }
+        return blockCodes;
+    }
+
+    /**
+     * @return the instruction, variable, type or constant of a code, null if the code is unknown
+     */
+    protected Object getObject(int code) {
+        return code >= 0 && code < codeToObject.size() ? codeToObject.get(code) : null;
     }
 
     protected int getCode(Object o) {
@@ -431,7 +747,7 @@ public abstract class AbstractDataflow {
                 if (instr.getInput()[1].hasConstantValue() &&
                         (getInt(instr.getInput()[1].getConstantValue()) == 1
                                 // X = Y / 1 , do not taint as value of X does not depend on division in this case
-                                || (instr.getInput()[1].getConstantValue().length == 29 && instr.getInput()[1].getConstantValue()[0] == 1)
+                                || instr.getInput()[1].getConstantValue().equals(SELECTOR_DIVISOR)
                                 || getInt(instr.getInput()[1].getConstantValue()) == 32
                                 || getInt(instr.getInput()[1].getConstantValue()) == 2
                                 // X = Y / 10^29 , do not taint as value of X because div by 10^29 is often used for aligning
@@ -442,22 +758,26 @@ public abstract class AbstractDataflow {
                 createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
             } else if (instr instanceof _VirtualMethodHead) {
                 for (Variable arg : instr.getOutput()) {
-                    log("Type of " + arg + " is unk");
-                    createAssignTopRule(instr, arg);
+                    if (argumentsFromUserInput()) {
+                        log(() -> "Type of " + arg + " is unk");
+                        createAssignTopRule(instr, arg);
+                    }
                     // assign the arguments as an abstract type (to check later
                     // for missing input validation)
                     appendRule("assignType", getCode(instr), getCode(arg), getCode(arg));
-                    // tag the arguments to depend on user input (CallDataLoad)
-                    createAssignTypeRule(instr, arg, CallDataLoad.class);
+                    if (argumentsFromUserInput()) {
+                        // tag the arguments to depend on user input (CallDataLoad)
+                        createAssignTypeRule(instr, arg, CallDataLoad.class);
+                    }
                 }
             } else if (instr instanceof Call || instr instanceof StaticCall) {
-                log("Type of " + instr.getOutput()[0] + " is Call");
+                log(() -> "Type of " + instr.getOutput()[0] + " is Call");
                 createAssignTopRule(instr, instr.getOutput()[0]);
                 // assign the return value as an abstract type (to check later
                 // for unhandled exception)
                 appendRule("assignType", getCode(instr), getCode(instr.getOutput()[0]), getCode(instr.getOutput()[0]));
             } else if (instr instanceof BlockHash) {
-                log("Type of " + instr.getOutput()[0] + " is BlockHash");
+                log(() -> "Type of " + instr.getOutput()[0] + " is BlockHash");
                 createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
                 // TODO: double check whether to propagate the type of the
                 // argument to the output of blockhash
@@ -474,11 +794,11 @@ public abstract class AbstractDataflow {
             if (instr instanceof MStore || instr instanceof MStore8) {
                 Variable var = instr.getInput()[1];
                 Variable offset = instr.getInput()[0];
-                log("mstore instruction: " + instr.getStringRepresentation());
+                log(() -> "mstore instruction: " + instr.getStringRepresentation());
                 createMStoreRule(instr, offset, var);
             }
             if (instr instanceof MLoad) {
-                log("mload instruction: " + instr.getStringRepresentation());
+                log(() -> "mload instruction: " + instr.getStringRepresentation());
                 Variable var = instr.getOutput()[0];
                 Variable offset = instr.getInput()[0];
                 createMLoadRule(instr, offset, var);
@@ -493,13 +813,13 @@ public abstract class AbstractDataflow {
             if (instr instanceof SStore) {
                 Variable index = instr.getInput()[0];
                 Variable var = instr.getInput()[1];
-                log("sstore instruction: " + instr.getStringRepresentation());
+                log(() -> "sstore instruction: " + instr.getStringRepresentation());
                 createSStoreRule(instr, index, var);
             }
             if (instr instanceof SLoad) {
                 Variable var = instr.getOutput()[0];
                 Variable index = instr.getInput()[0];
-                log("sload instruction" + instr.getStringRepresentation());
+                log(() -> "sload instruction" + instr.getStringRepresentation());
                 createSLoadRule(instr, index, var);
             }
         }
@@ -509,7 +829,7 @@ public abstract class AbstractDataflow {
     protected void deriveAssignVarPredicates() {
         log(">> Derive assign predicates <<");
         for (Instruction instr : instructions) {
-            log(instr.getStringRepresentation());
+            log(instr::getStringRepresentation);
 
             if (instr instanceof SLoad) {
                 Variable storageOffset = instr.getInput()[0];
@@ -540,18 +860,20 @@ public abstract class AbstractDataflow {
             }
 
             if (instr instanceof Call || instr instanceof StaticCall) {
-                createAssignVarRule(instr, instr.getOutput()[0], instr.getInput()[2]);
+                int id = instr.getId();
+                appendRule("assignVar", getCode(instr), getVariableCode(program.getOutput(id, 0)),
+                        getVariableCode(program.getInput(id, 2)));
             }
 
             if (instr instanceof Sha3) {
                 if (instr.getInput()[0].hasConstantValue() && instr.getInput()[1].hasConstantValue()) {
                     int startOffset = getInt(instr.getInput()[0].getConstantValue());
                     int length = getInt(instr.getInput()[1].getConstantValue());
-                    //assert(startOffset % 32 == 0);
-                    for (int offset = startOffset; offset < startOffset + length; offset += 4) {
-                        log("sha3: " + instr + " " + instr.getOutput()[0]);
-                        log("Offset " + offset + ", memory var " + getMemoryVarForIndex(offset) + ", code " + getCode(getMemoryVarForIndex(offset)));
-                        appendRule("sha3", getCode(instr), getCode(instr.getOutput()[0]), getCode(getMemoryVarForIndex(offset)));
+                    if (length > 0) {
+                        // one fact for the range, it covers the words from the one that contains the start offset
+                        log(() -> "sha3: " + instr + " " + instr.getOutput()[0] + ", offset " + startOffset + ", length " + length);
+                        int endOffset = (int) Math.min((long) startOffset + length, Integer.MAX_VALUE);
+                        appendRule("sha3", getCode(instr), getCode(instr.getOutput()[0]), getMemoryWord(startOffset), endOffset);
                     }
                 } else {
                     // propagate the entire heap to the output of SHA3
@@ -559,6 +881,15 @@ public abstract class AbstractDataflow {
             }
 
 
+            if (instr instanceof _VirtualMethodInvoke) {
+                MethodSummary summary = slice.getSummary((_VirtualMethodInvoke) instr);
+                if (summary != null) {
+                    // the invoked method has not been inlined, apply its summary
+                    createMethodSummaryRules((_VirtualMethodInvoke) instr, summary);
+                    continue;
+                }
+            }
+
             // Skip MSTORE/MLOAD SSTORE/SLOAD as these are handled in a special
             // way
             if (instr instanceof MStore
@@ -573,26 +904,18 @@ public abstract class AbstractDataflow {
 
             if (instr instanceof Or) {
                 // a = b | c; if b or c is 0, do not propagate their types.
-                for (Variable output : instr.getOutput()) {
-                    for (Variable input : instr.getInput()) {
-                        if (input.hasConstantValue()) {
-                            BigInteger val = BigIntUtil.fromInt256(input.getConstantValue());
-                            if (val.compareTo(BigInteger.ZERO) == 0) {
-                                // Do not propagate this input
-                                continue;
-                            }
-                        }
-                        createAssignVarRule(instr, output, input);
+                BitSet zeroInputs = new BitSet();
+                for (int j = 0; j < instr.getInput().length; j++) {
+                    Variable input = instr.getInput()[j];
+                    if (input.hasConstantValue() && input.getConstantValue().isZero()) {
+                        zeroInputs.set(j);
                     }
                 }
+                createAssignOperandsRules(instr, zeroInputs);
                 continue;
             }
 
-            for (Variable output : instr.getOutput()) {
-                for (Variable input : instr.getInput()) {
-                    createAssignVarRule(instr, output, input);
-                }
-            }
+            createAssignOperandsRules(instr, null);
         }
     }
 
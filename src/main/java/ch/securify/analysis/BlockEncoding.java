@@ -0,0 +1,363 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import java.util.*;
+
+/**
+ * Block-granularity encoding of the facts of a dataflow analysis.
+ *
+ * The facts are collected while they are derived and rewritten once the flow relation is known: the labels are
+ * partitioned along the basic blocks of the control flow graph into chains of the flow relation that are only
+ * entered at the first and only left at the last label, and every label is addressed by its block and its index
+ * within the block. Labels outside of the basic blocks, e.g. the join labels of the analyses, form blocks of their
+ * own. Inside a block,
+ * a fact holds from the index at which it is generated up to the next index that kills it, so the Datalog programs
+ * only derive the generating indices and the answers for a label are reconstructed from them.
+ */
+class BlockEncoding {
+
+    /** key that matches any key of a generated fact */
+    static final int ANY = -1;
+
+    interface Emitter {
+        void append(String ruleName, Object... args);
+    }
+
+    private final Map<String, List<int[]>> facts = new HashMap<>();
+    private final Map<Integer, int[]> positions = new HashMap<>();
+    private final List<Integer> blockLengths = new ArrayList<>();
+    private final Set<List<Integer>> blockSteps = new LinkedHashSet<>();
+    private boolean partitioned;
+
+
+    /**
+     * Collect a fact of the label-based encoding.
+     * @return false if the labels have already been partitioned and the fact has to be appended as is
+     */
+    boolean collect(String ruleName, Object... args) {
+        if (partitioned) {
+            return false;
+        }
+        int[] fact = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            fact[i] = (Integer) args[i];
+        }
+        facts.computeIfAbsent(ruleName, k -> new ArrayList<>()).add(fact);
+        return true;
+    }
+
+    List<int[]> get(String ruleName) {
+        return facts.getOrDefault(ruleName, Collections.emptyList());
+    }
+
+    /**
+     * @return the values of the given columns of the collected facts
+     */
+    Set<Integer> column(String ruleName, int... columns) {
+        Set<Integer> values = new HashSet<>();
+        for (int[] fact : get(ruleName)) {
+            for (int column : columns) {
+                values.add(fact[column]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Partition the labels into blocks.
+     * @param blocks labels of the basic blocks of the control flow graph, in block order
+     * @param steps edges of the flow relation
+     * @param entries labels that have additional incoming flow and therefore start a block
+     * @param labels all other labels of the facts
+     */
+    void partition(List<int[]> blocks, List<int[]> steps, Set<Integer> entries, Set<Integer> labels) {
+        Set<Integer> allLabels = new TreeSet<>(labels);
+        allLabels.addAll(entries);
+        Map<Integer, Set<Integer>> successors = new HashMap<>();
+        Map<Integer, Set<Integer>> predecessors = new HashMap<>();
+        for (int[] step : steps) {
+            successors.computeIfAbsent(step[0], k -> new HashSet<>()).add(step[1]);
+            predecessors.computeIfAbsent(step[1], k -> new HashSet<>()).add(step[0]);
+            allLabels.add(step[0]);
+            allLabels.add(step[1]);
+        }
+
+        // a basic block is split where a label is not the only successor of its only predecessor in the flow relation
+        for (int[] block : blocks) {
+            List<Integer> chain = new ArrayList<>();
+            for (int label : block) {
+                if (!allLabels.contains(label) || positions.containsKey(label)) {
+                    continue;
+                }
+                if (!chain.isEmpty() && !continues(chain.get(chain.size() - 1), label, successors, predecessors, entries)) {
+                    addBlock(chain);
+                    chain = new ArrayList<>();
+                }
+                chain.add(label);
+            }
+            if (!chain.isEmpty()) {
+                addBlock(chain);
+            }
+        }
+        for (int label : allLabels) {
+            if (!positions.containsKey(label)) {
+                addBlock(Collections.singletonList(label));
+            }
+        }
+
+        for (int[] step : steps) {
+            int[] from = positions.get(step[0]);
+            int[] to = positions.get(step[1]);
+            if (from[0] != to[0] || from[1] + 1 != to[1]) {
+                blockSteps.add(Arrays.asList(from[0], to[0]));
+            }
+        }
+        partitioned = true;
+    }
+
+    private static boolean continues(int label, int successor, Map<Integer, Set<Integer>> successors,
+                                     Map<Integer, Set<Integer>> predecessors, Set<Integer> entries) {
+        return successor != label
+                && successors.getOrDefault(label, Collections.emptySet()).equals(Collections.singleton(successor))
+                && predecessors.get(successor).size() == 1 && !entries.contains(successor);
+    }
+
+    private void addBlock(List<Integer> labels) {
+        int block = blockLengths.size();
+        for (int index = 0; index < labels.size(); index++) {
+            positions.put(labels.get(index), new int[] {block, index});
+        }
+        blockLengths.add(labels.size());
+    }
+
+    /**
+     * @return block and index of the label, null if the label does not occur in any fact
+     */
+    int[] position(int label) {
+        return positions.get(label);
+    }
+
+    /**
+     * Append the facts of label relations, whose first column is the label, with block and index instead.
+     */
+    void appendLabelled(Emitter out, String... ruleNames) {
+        for (String ruleName : ruleNames) {
+            for (int[] fact : get(ruleName)) {
+                int[] position = positions.get(fact[0]);
+                Object[] args = new Object[fact.length + 1];
+                args[0] = position[0];
+                args[1] = position[1];
+                for (int i = 1; i < fact.length; i++) {
+                    args[i + 1] = fact[i];
+                }
+                out.append(ruleName, args);
+            }
+        }
+    }
+
+    /**
+     * Append the flow between blocks (blockStep) and the last index of each block (blockLast).
+     */
+    void appendBlocks(Emitter out) {
+        for (List<Integer> step : blockSteps) {
+            out.append("blockStep", step.get(0), step.get(1));
+        }
+        for (int block = 0; block < blockLengths.size(); block++) {
+            out.append("blockLast", block, blockLengths.get(block) - 1);
+        }
+    }
+
+    /**
+     * @param labels labels at which a state is generated
+     * @param edges additional flow between labels, e.g. joins
+     * @return the blocks that the state can reach
+     */
+    BitSet reachableBlocks(Collection<Integer> labels, List<int[]> edges) {
+        Map<Integer, Set<Integer>> successors = new HashMap<>();
+        for (List<Integer> step : blockSteps) {
+            successors.computeIfAbsent(step.get(0), k -> new HashSet<>()).add(step.get(1));
+        }
+        for (int[] edge : edges) {
+            successors.computeIfAbsent(positions.get(edge[0])[0], k -> new HashSet<>()).add(positions.get(edge[1])[0]);
+        }
+        BitSet reachable = new BitSet();
+        Deque<Integer> blocksToProcess = new ArrayDeque<>();
+        for (int label : labels) {
+            blocksToProcess.add(positions.get(label)[0]);
+        }
+        while (!blocksToProcess.isEmpty()) {
+            int block = blocksToProcess.poll();
+            if (!reachable.get(block)) {
+                reachable.set(block);
+                blocksToProcess.addAll(successors.getOrDefault(block, Collections.emptySet()));
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * @return a set of indices per block that contains the first index of the given blocks
+     */
+    Indices firstIndices(BitSet blocks) {
+        Indices indices = new Indices(blocks);
+        for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+            indices.add(block, 0);
+        }
+        return indices;
+    }
+
+    /**
+     * @return a set of indices per block that contains the last index of the given blocks
+     */
+    Indices lastIndices(BitSet blocks) {
+        Indices indices = new Indices(blocks);
+        for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+            indices.add(block, blockLengths.get(block) - 1);
+        }
+        return indices;
+    }
+
+
+    /**
+     * Indices per block, e.g. the indices at which a state is read.
+     */
+    class Indices {
+        private final Map<Integer, TreeSet<Integer>> indices = new HashMap<>();
+        private final BitSet blocks;
+
+        /**
+         * @param blocks the blocks whose indices are kept, the indices of other blocks are ignored
+         */
+        Indices(BitSet blocks) {
+            this.blocks = blocks;
+        }
+
+        Indices add(int block, int index) {
+            if (blocks.get(block)) {
+                indices.computeIfAbsent(block, k -> new TreeSet<>()).add(index);
+            }
+            return this;
+        }
+
+        Indices addLabels(Collection<Integer> labels) {
+            for (int label : labels) {
+                int[] position = positions.get(label);
+                add(position[0], position[1]);
+            }
+            return this;
+        }
+
+        Set<Integer> get(int block) {
+            return indices.getOrDefault(block, new TreeSet<>());
+        }
+    }
+
+
+    /**
+     * Indices at which the facts of a key are killed, e.g. the stores to a memory offset.
+     */
+    class Kills {
+        private final Map<Integer, Map<Integer, TreeSet<Integer>>> kills = new HashMap<>();
+
+        void add(int label, int key) {
+            int[] position = positions.get(label);
+            kills.computeIfAbsent(position[0], k -> new HashMap<>())
+                    .computeIfAbsent(key, k -> new TreeSet<>())
+                    .add(position[1]);
+        }
+
+        /**
+         * @return true if the key is killed after index from and up to index to
+         */
+        boolean isKilled(int block, int key, int from, int to) {
+            TreeSet<Integer> keyKills = kills.getOrDefault(block, Collections.emptyMap()).get(key);
+            if (keyKills == null) {
+                return false;
+            }
+            Integer kill = keyKills.higher(from);
+            return kill != null && kill <= to;
+        }
+
+        /**
+         * Append a fact (block, from, to, key), or (key, block, from, to) if keyFirst is set, for every key that is
+         * killed between a generating index and a read index of a block.
+         */
+        void appendKilled(Emitter out, String ruleName, Indices generating, Indices reads, boolean keyFirst) {
+            kills.forEach((block, blockKills) -> blockKills.forEach((key, keyKills) -> {
+                for (int from : generating.get(block)) {
+                    for (int to : reads.get(block)) {
+                        if (from <= to && isKilled(block, key, from, to)) {
+                            if (keyFirst) {
+                                out.append(ruleName, key, block, from, to);
+                            } else {
+                                out.append(ruleName, block, from, to, key);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+
+    /**
+     * Facts (block, index, key, fact) of the fixpoint that hold from the index on, until the key is killed.
+     */
+    static class Generated {
+        private final Map<List<Integer>, List<int[]>> byFact = new HashMap<>();
+        private final Map<Integer, Set<Integer>> factsByBlock = new HashMap<>();
+
+        Generated(List<int[]> tuples) {
+            for (int[] tuple : tuples) {
+                byFact.computeIfAbsent(Arrays.asList(tuple[0], tuple[3]), k -> new ArrayList<>())
+                        .add(new int[] {tuple[1], tuple[2]});
+                factsByBlock.computeIfAbsent(tuple[0], k -> new HashSet<>()).add(tuple[3]);
+            }
+        }
+
+        /**
+         * @param key key of the fact or {@link #ANY}
+         * @param kills kills of the keys, or null if the facts are never killed
+         */
+        boolean holds(int[] position, int key, int fact, Kills kills) {
+            for (int[] generated : byFact.getOrDefault(Arrays.asList(position[0], fact), Collections.emptyList())) {
+                if (generated[0] <= position[1] && (key == ANY || generated[1] == key)
+                        && (kills == null || !kills.isKilled(position[0], generated[1], generated[0], position[1]))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the facts that hold at the position
+         */
+        Set<Integer> factsAt(int[] position, Kills kills) {
+            Set<Integer> result = new HashSet<>();
+            for (int fact : factsByBlock.getOrDefault(position[0], Collections.emptySet())) {
+                if (holds(position, ANY, fact, kills)) {
+                    result.add(fact);
+                }
+            }
+            return result;
+        }
+    }
+
+}
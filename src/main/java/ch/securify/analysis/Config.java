@@ -18,9 +18,31 @@
 
 package ch.securify.analysis;
 
+import com.google.common.base.Strings;
+
+import java.io.File;
+
 public class Config {
 
 	public static final int PATTERN_TIMEOUT = 20 * 60; // seconds
     public static final int THRESHOLD_COMPILE = 200; // instructions per contract
+    public static final int WORKER_TIMEOUT = 60 * 60; // seconds per contract in a worker process
+
+    /**
+     * Directory for data that is kept across runs (e.g. the extracted Soufflé binaries).
+     * Set by the system property securify.cache.dir or the environment variable SECURIFY_CACHE_DIR,
+     * defaults to ~/.cache/securify. An empty value disables the cache.
+     * @return cache directory, null if disabled.
+     */
+    public static File getCacheDir() {
+        String dir = System.getProperty("securify.cache.dir");
+        if (dir == null) {
+            dir = System.getenv("SECURIFY_CACHE_DIR");
+        }
+        if (dir == null) {
+            return new File(System.getProperty("user.home"), ".cache" + File.separator + "securify");
+        }
+        return Strings.isNullOrEmpty(dir) ? null : new File(dir);
+    }
 
 }
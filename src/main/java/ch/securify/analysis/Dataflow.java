@@ -20,19 +20,49 @@ package ch.securify.analysis;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
 
 public class Dataflow extends AbstractDataflow {
     public AbstractDataflow mustExplicitDataflow;
     public AbstractDataflow mayImplicitDataflow;
 
+    /**
+     * Constructor of one of the combined analyses.
+     */
+    @FunctionalInterface
+    interface Analysis {
+        AbstractDataflow create(RelevanceSlice slice) throws IOException, InterruptedException;
+    }
+
     public Dataflow(List<Instruction> instructions) {
+        this(RelevanceSlice.all(instructions));
+    }
+
+    public Dataflow(RelevanceSlice slice) {
+        this(slice, MustExplicitDataflow::new, MayImplicitDataflow::new);
+    }
+
+    Dataflow(RelevanceSlice slice, Analysis mustExplicit, Analysis mayImplicit) {
+        this.slice = slice;
         try {
-            mustExplicitDataflow = new MustExplicitDataflow(instructions);
-            mayImplicitDataflow = new MayImplicitDataflow(instructions);
-        } catch(IOException | InterruptedException e){
+            mustExplicitDataflow = mustExplicit.create(slice);
+            mayImplicitDataflow = mayImplicit.create(slice);
+        } catch (InterruptedException e) {
+            // cancelled, the Soufflé process of the interrupted analysis has been destroyed
+            if (mustExplicitDataflow != null) {
+                try {
+                    mustExplicitDataflow.dispose();
+                } catch (IOException | InterruptedException ignored) {
+                    // best effort, the workspace is temporary
+                }
+            }
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch(IOException e){
             e.printStackTrace();
             throw new RuntimeException();
         }
@@ -46,6 +76,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int mayFollow(Instruction instr1, Instruction instr2) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(instr2);
         int s = mayImplicitDataflow.mayFollow(instr1, instr2);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -54,6 +87,10 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int varMayDepOn(Instruction instr1, Variable lhs, Object type) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(lhs);
+        slice.checkQueried(type);
         int s = mayImplicitDataflow.varMayDepOn(instr1, lhs, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -62,6 +99,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int memoryMayDepOn(Instruction instr1, int offset, Object type) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(type);
         int s = mayImplicitDataflow.memoryMayDepOn(instr1, offset, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -70,6 +110,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int memoryMayDepOn(Instruction instr, Object type) {
+        queryCount++;
+        slice.checkQueried(instr);
+        slice.checkQueried(type);
         int s = mayImplicitDataflow.memoryMayDepOn(instr, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -78,6 +121,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int instrMayDepOn(Instruction instr, Object type) {
+        queryCount++;
+        slice.checkQueried(instr);
+        slice.checkQueried(type);
         int s = mayImplicitDataflow.instrMayDepOn(instr, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -86,6 +132,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int mustPrecede(Instruction instr1, Instruction instr2) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(instr2);
         int s = mustExplicitDataflow.mustPrecede(instr1, instr2);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -94,6 +143,10 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(lhs);
+        slice.checkQueried(type);
         int s = mustExplicitDataflow.varMustDepOn(instr1, lhs, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -102,6 +155,9 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     public int memoryMustDepOn(Instruction instr1, int offset, Object type) {
+        queryCount++;
+        slice.checkQueried(instr1);
+        slice.checkQueried(type);
         int s = mustExplicitDataflow.memoryMustDepOn(instr1, offset, type);
         if (s == Status.UNKNOWN)
             throw new TimeoutException();
@@ -119,4 +175,7 @@ public class Dataflow extends AbstractDataflow {
 
     @Override
     protected void createMLoadRule(Instruction instr, Variable offset, Variable var) { throw new UnsupportedOperationException(); }
+
+    @Override
+    protected void createMethodSummaryRules(_VirtualMethodInvoke invoke, MethodSummary summary) { throw new UnsupportedOperationException(); }
 }
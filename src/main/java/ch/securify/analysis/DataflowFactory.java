@@ -18,9 +18,12 @@
 
 package ch.securify.analysis;
 
+import ch.securify.decompiler.IndexedProgram;
 import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
 import com.google.common.base.Strings;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,12 +31,18 @@ import java.util.function.Function;
 
 public class DataflowFactory {
 
-	private static Function<List<Instruction>, AbstractDataflow> dataflowGenerator;
+	private static Function<RelevanceSlice, AbstractDataflow> dataflowGenerator;
 
-	private static Map<String, Function<List<Instruction>, AbstractDataflow>> dataflowGenerators = new HashMap<>();
+	private static Map<String, Function<RelevanceSlice, AbstractDataflow>> dataflowGenerators = new HashMap<>();
 	static {
 		// Default dataflow
 		dataflowGenerators.put("default", Dataflow::new);
+		// same answers, facts and state relations per basic block
+		dataflowGenerators.put("block", slice ->
+				new Dataflow(slice, MustExplicitBlockDataflow::new, MayImplicitBlockDataflow::new));
+		// same answers, value flow of the variables only at their definitions
+		dataflowGenerators.put("sparse", slice ->
+				new Dataflow(slice, MustExplicitSparseDataflow::new, MayImplicitDataflow::new));
 
 		setDataflowInstanceClass(null);
 	}
@@ -51,7 +60,30 @@ public class DataflowFactory {
 	}
 
 	public static AbstractDataflow getDataflow(List<Instruction> decompiledInstructions) {
-		return dataflowGenerator.apply(decompiledInstructions);
+		return getDataflow(decompiledInstructions, null);
+	}
+
+	/**
+	 * Index the instructions as a program of their own, see {@link IndexedProgram#build}.
+	 * @param decompiledInstructions instructions of a method body or of the entire contract
+	 * @param queriedInstructions instructions that may be queried, or null if any instruction may be queried
+	 * @return dataflow over the relevance slice of the queried instructions
+	 */
+	public static AbstractDataflow getDataflow(List<Instruction> decompiledInstructions, Collection<Instruction> queriedInstructions) {
+		return dataflowGenerator.apply(RelevanceSlice.of(decompiledInstructions, queriedInstructions));
+	}
+
+	/**
+	 * @param program decompiled contract
+	 * @param decompiledInstructions instructions of a method body or of the entire contract
+	 * @param queriedInstructions instructions that may be queried, or null if any instruction may be queried
+	 * @param summaries summaries of the methods that are not inlined, applied at their invocations
+	 * @return dataflow over the relevance slice of the queried instructions
+	 */
+	public static AbstractDataflow getDataflow(IndexedProgram program, List<Instruction> decompiledInstructions,
+											   Collection<Instruction> queriedInstructions,
+											   Map<_VirtualMethodHead, MethodSummary> summaries) {
+		return dataflowGenerator.apply(RelevanceSlice.of(program, decompiledInstructions, queriedInstructions, summaries));
 	}
 
 }
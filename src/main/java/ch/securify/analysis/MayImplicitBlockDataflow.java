@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link MayImplicitDataflow} with control-flow facts and state relations per basic block, split where the follows
+ * relation leaves or enters a block, see mayImplicitBlock.dl. Answers the queries exactly like the label-based encoding.
+ */
+public class MayImplicitBlockDataflow extends MayImplicitDataflow {
+    static final public String binaryName = "mayImplicitBlock";
+
+    private BlockEncoding encoding;
+    private BlockEncoding.Kills taintEnds;
+    private BlockEncoding.Kills memoryKills;
+    private BlockEncoding.Generated taintFrom;
+    private BlockEncoding.Generated memoryFrom;
+
+    public MayImplicitBlockDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+        super(slice, binaryName);
+    }
+
+    @Override
+    protected void appendRule(String ruleName, Object... args) {
+        if (encoding == null) {
+            // facts are derived by the super constructor
+            encoding = new BlockEncoding();
+        }
+        if (!encoding.collect(ruleName, args)) {
+            super.appendRule(ruleName, args);
+        }
+    }
+
+    private void appendBlockRule(String ruleName, Object... args) {
+        super.appendRule(ruleName, args);
+    }
+
+    @Override
+    protected void createProgramRulesFile() {
+        String[] labelled = {"assignType", "assignVar", "mload", "mstore", "partialStore", "sload", "sstore", "sha3"};
+        Set<Integer> labels = encoding.column("taint", 1);
+        labels.addAll(encoding.column("endIf", 1));
+        for (String ruleName : labelled) {
+            labels.addAll(encoding.column(ruleName, 0));
+        }
+        encoding.partition(getBlockCodes(), encoding.get("follows"), Collections.emptySet(), labels);
+
+        for (String ruleName : new String[] {"blockStep", "blockLast", "taintEnded", "memoryKilled", "storageKilled"}) {
+            ruleToSB.put(ruleName, new StringBuffer());
+        }
+        appendBlockRule("unk", unk);
+        for (int[] memoryWord : encoding.get("memoryWord")) {
+            appendBlockRule("memoryWord", memoryWord[0], memoryWord[1]);
+        }
+        encoding.appendLabelled(this::appendBlockRule, labelled);
+        encoding.appendBlocks(this::appendBlockRule);
+
+        // taint of the conditions, ended by the merge instruction
+        taintEnds = encoding.new Kills();
+        for (int[] endIf : encoding.get("endIf")) {
+            int[] position = encoding.position(endIf[1]);
+            taintEnds.add(endIf[1], endIf[0]);
+            appendBlockRule("endIf", endIf[0], position[0], position[1]);
+        }
+        BitSet taintBlocks = encoding.reachableBlocks(encoding.column("taint", 1), Collections.emptyList());
+        BlockEncoding.Indices taintStarts = encoding.firstIndices(taintBlocks);
+        for (int[] taint : encoding.get("taint")) {
+            int[] position = encoding.position(taint[1]);
+            taintStarts.add(position[0], position[1]);
+            appendBlockRule("taint", taint[0], position[0], position[1], taint[2]);
+        }
+        BlockEncoding.Indices taintReads = encoding.lastIndices(taintBlocks);
+        for (String ruleName : labelled) {
+            if (!ruleName.equals("mstore") && !ruleName.equals("sstore")) {
+                taintReads.addLabels(encoding.column(ruleName, 0));
+            }
+        }
+        taintEnds.appendKilled(this::appendBlockRule, "taintEnded", taintStarts, taintReads, true);
+
+        // the memory and storage state is read by loads and at the end of the blocks that it can reach
+        BitSet memoryBlocks = encoding.reachableBlocks(encoding.column("mstore", 0), Collections.emptyList());
+        BitSet storageBlocks = encoding.reachableBlocks(encoding.column("sstore", 0), Collections.emptyList());
+        BlockEncoding.Indices memoryReads = encoding.lastIndices(memoryBlocks)
+                .addLabels(encoding.column("mload", 0))
+                .addLabels(encoding.column("sha3", 0));
+        BlockEncoding.Indices storageReads = encoding.lastIndices(storageBlocks)
+                .addLabels(encoding.column("sload", 0));
+
+        memoryKills = appendKills("mstore", "memoryKilled", memoryBlocks, memoryReads);
+        appendKills("sstore", "storageKilled", storageBlocks, storageReads);
+
+        super.createProgramRulesFile();
+    }
+
+    /**
+     * Append the kills of the stores to constant offsets, except partial stores, between the generating and the read
+     * indices.
+     */
+    private BlockEncoding.Kills appendKills(String storeRule, String killedRule, BitSet blocks, BlockEncoding.Indices reads) {
+        BlockEncoding.Kills kills = encoding.new Kills();
+        BlockEncoding.Indices generating = encoding.firstIndices(blocks).addLabels(encoding.column(storeRule, 0));
+        Set<Integer> partialStores = encoding.column("partialStore", 0);
+        for (int[] store : encoding.get(storeRule)) {
+            if (store[1] != unk && !partialStores.contains(store[0])) {
+                kills.add(store[0], store[1]);
+            }
+        }
+        kills.appendKilled(this::appendBlockRule, killedRule, generating, reads, false);
+        return kills;
+    }
+
+    @Override
+    public int mayFollow(Instruction instr1, Instruction instr2) {
+        int[] position1 = encoding.position(getCode(instr1));
+        int[] position2 = encoding.position(getCode(instr2));
+        if (position1 == null || position2 == null) {
+            return Status.UNSATISFIABLE;
+        }
+        if (position1[0] == position2[0] && position1[1] < position2[1]) {
+            return Status.SATISFIABLE;
+        }
+        return runQuery("blockAfter", position1[0], position2[0]);
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr, int offset, Object type) {
+        return memoryTagsAt(instr, getCode(getMemoryVarForIndex(offset)), type);
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr, Object type) {
+        return memoryTagsAt(instr, BlockEncoding.ANY, type);
+    }
+
+    private int memoryTagsAt(Instruction instr, int offsetCode, Object type) {
+        int[] position = encoding.position(getCode(instr));
+        if (position == null) {
+            return Status.UNSATISFIABLE;
+        }
+        try {
+            if (memoryFrom == null) {
+                memoryFrom = new BlockEncoding.Generated(readTuples("memoryFrom"));
+            }
+        } catch (IOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return Status.UNKNOWN;
+        }
+        return memoryFrom.holds(position, offsetCode, getCode(type), memoryKills) ? Status.SATISFIABLE : Status.UNSATISFIABLE;
+    }
+
+    @Override
+    public int instrMayDepOn(Instruction instr, Object type) {
+        int[] position = encoding.position(getCode(instr));
+        if (position == null) {
+            return Status.UNSATISFIABLE;
+        }
+        try {
+            if (taintFrom == null) {
+                // (start, block, index, var) to (block, index, start, var)
+                List<int[]> tuples = new ArrayList<>();
+                for (int[] taint : readTuples("taintFrom")) {
+                    tuples.add(new int[] {taint[1], taint[2], taint[0], taint[3]});
+                }
+                taintFrom = new BlockEncoding.Generated(tuples);
+            }
+        } catch (IOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return Status.UNKNOWN;
+        }
+        // see reachInstr in mayImplicit.dl
+        int typeCode = getCode(type);
+        int result = Status.UNSATISFIABLE;
+        for (int var : taintFrom.factsAt(position, taintEnds)) {
+            int reach = var == typeCode ? Status.SATISFIABLE : runQuery("reach", var, typeCode);
+            if (reach == Status.SATISFIABLE) {
+                return Status.SATISFIABLE;
+            }
+            if (reach == Status.UNKNOWN) {
+                result = Status.UNKNOWN;
+            }
+        }
+        return result;
+    }
+
+}
@@ -23,6 +23,7 @@ import ch.securify.decompiler.instructions.BranchInstruction;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.JumpI;
 import ch.securify.decompiler.instructions._VirtualMethodHead;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
 
 import java.io.IOException;
 import java.util.List;
@@ -31,7 +32,15 @@ public class MayImplicitDataflow extends AbstractDataflow {
     static final public String binaryName = "mayImplicit";
 
     public MayImplicitDataflow(List<Instruction> decompiledInstructions) throws IOException, InterruptedException {
-        instructions = decompiledInstructions;
+        this(RelevanceSlice.all(decompiledInstructions));
+    }
+
+    public MayImplicitDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+        this(slice, binaryName);
+    }
+
+    protected MayImplicitDataflow(RelevanceSlice slice, String binaryName) throws IOException, InterruptedException {
+        this.slice = slice;
         initDataflow(binaryName);
     }
 
@@ -100,6 +109,29 @@ public class MayImplicitDataflow extends AbstractDataflow {
         appendRule("mload", getCode(instr), offsetCode, getCode(var));
     }
 
+    @Override
+    protected void createMethodSummaryRules(_VirtualMethodInvoke invoke, MethodSummary summary) {
+        for (int i = 0; i < invoke.getOutput().length && i < summary.mayReturnFacts.size(); i++) {
+            createSummaryFactRules(invoke, invoke.getOutput()[i], summary.mayReturnFacts.get(i));
+        }
+        // the method may not write on every path, so the previous values are kept
+        summary.mayMemoryWrites.forEach((offset, facts) -> {
+            Variable value = new Variable();
+            createSummaryFactRules(invoke, value, facts);
+            Variable offsetVar = offset != null ? createConstant(offset) : new Variable();
+            if (offset != null) {
+                createMLoadRule(invoke, offsetVar, value);
+            }
+            createMStoreRule(invoke, offsetVar, value);
+        });
+        // storage is only read back at unknown indices, which also read the values of unknown writes
+        summary.mayStorageWrites.forEach((index, facts) -> {
+            Variable value = new Variable();
+            createSummaryFactRules(invoke, value, facts);
+            createSStoreRule(invoke, new Variable(), value);
+        });
+    }
+
     @Override
     protected void deriveFollowsPredicates() {
         log(">> Derive follows predicates <<");
@@ -112,7 +144,7 @@ public class MayImplicitDataflow extends AbstractDataflow {
                     }
                 }
             }
-            Instruction nextInstruction = instr.getNext();
+            Instruction nextInstruction = slice.getNext(instr);
 
             if (nextInstruction != null) {
                 createFollowsRule(instr, nextInstruction);
@@ -128,21 +160,21 @@ public class MayImplicitDataflow extends AbstractDataflow {
                 JumpI ifInstr = (JumpI) instr;
                 Variable condition = ifInstr.getCondition();
                 Instruction thenInstr = ifInstr.getTargetInstruction();
-                Instruction elseInstr = ifInstr.getNext();
+                Instruction elseInstr = slice.getNext(ifInstr);
                 Instruction mergeInstr = ifInstr.getMergeInstruction();
 
                 if (thenInstr != null && thenInstr != mergeInstr) {
-                    log("then instruction: " + thenInstr.getStringRepresentation());
+                    log(() -> "then instruction: " + thenInstr.getStringRepresentation());
                     createTaintRule(instr, thenInstr, condition);
                 }
 
                 if (elseInstr != null && elseInstr != mergeInstr ) {
-                    log("else instruction: " + elseInstr.getStringRepresentation());
+                    log(() -> "else instruction: " + elseInstr.getStringRepresentation());
                     createTaintRule(instr, elseInstr, condition);
                 }
 
                 if (mergeInstr != null) {
-                    log("merge instruction: " + mergeInstr.getStringRepresentation());
+                    log(() -> "merge instruction: " + mergeInstr.getStringRepresentation());
                     createEndIfRule(instr, mergeInstr);
                 }
             }
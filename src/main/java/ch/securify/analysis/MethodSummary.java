@@ -0,0 +1,369 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.IndexedProgram;
+import ch.securify.decompiler.MethodInliner;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
+import ch.securify.decompiler.instructions._VirtualMethodReturn;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Dataflow summary of an internal method, applied at its invocations instead of inlining the method body.
+ *
+ * A summary is computed once per method by the must and may analyses of the method body, in which the arguments are
+ * only abstract types. It maps the return values and the values written to memory and storage to the facts that they
+ * may depend on, or must depend on at every return of the method: types, arguments of the invocation and values read
+ * from memory and storage.
+ */
+public class MethodSummary {
+
+    /** fact that is not known, see the unk constant of the dataflow analyses */
+    static final Object UNKNOWN = new Object();
+
+    /** argument of the invocation */
+    static final class Argument {
+        final int index;
+
+        Argument(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Argument && ((Argument) o).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    /** value read from a constant storage index */
+    static final class StorageSlot {
+        final int index;
+
+        StorageSlot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StorageSlot && ((StorageSlot) o).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    /** value read from a memory word */
+    static final class MemoryWord {
+        final int offset;
+
+        MemoryWord(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MemoryWord && ((MemoryWord) o).offset == offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return offset;
+        }
+    }
+
+    /** facts per return value */
+    final List<Set<Object>> mayReturnFacts = new ArrayList<>();
+    final List<Set<Object>> mustReturnFacts = new ArrayList<>();
+    /** facts of the written values per storage index or memory offset, the null key for unknown ones */
+    final Map<Integer, Set<Object>> mayStorageWrites = new HashMap<>();
+    final Map<Integer, Set<Object>> mayMemoryWrites = new HashMap<>();
+    /** facts at every return per storage index or memory offset that may be written */
+    final Map<Integer, Set<Object>> mustStorageWrites = new HashMap<>();
+    final Map<Integer, Set<Object>> mustMemoryWrites = new HashMap<>();
+
+
+    /**
+     * Summarize all invoked methods, callees ahead of their callers, so that the summaries of the callees are applied
+     * while a caller is summarized. Recursive methods are not summarized, their invocations keep the default facts,
+     * where every return value depends on every argument.
+     * @param program decompiled contract, with methods that have not been inlined
+     * @return summaries by method head, to be applied by the dataflows of the program, see {@link RelevanceSlice}
+     */
+    public static Map<_VirtualMethodHead, MethodSummary> summarize(IndexedProgram program) throws IOException, InterruptedException {
+        List<Instruction> instructions = program.getInstructions();
+        Map<_VirtualMethodHead, List<Instruction>> methods = MethodInliner.splitMethods(instructions);
+
+        // methods invoked anywhere, including the code ahead of the first method head
+        Set<_VirtualMethodHead> invoked = new HashSet<>();
+        for (Instruction instruction : instructions) {
+            _VirtualMethodHead invokedMethod = getInvokedMethod(instruction);
+            if (invokedMethod != null && methods.containsKey(invokedMethod)) {
+                invoked.add(invokedMethod);
+            }
+        }
+
+        Set<_VirtualMethodHead> recursive = new HashSet<>();
+        List<_VirtualMethodHead> order = new ArrayList<>();
+        Set<_VirtualMethodHead> visited = new HashSet<>();
+        for (_VirtualMethodHead methodHead : methods.keySet()) {
+            visit(methodHead, methods, new ArrayList<>(), visited, order, recursive);
+        }
+
+        Map<_VirtualMethodHead, MethodSummary> summaries = new LinkedHashMap<>();
+        for (_VirtualMethodHead methodHead : order) {
+            if (invoked.contains(methodHead) && !recursive.contains(methodHead)) {
+                summaries.put(methodHead, summarizeMethod(program, summaries, methodHead, methods.get(methodHead)));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Depth-first traversal of the call graph, adds the methods to the order after their callees.
+     */
+    private static void visit(_VirtualMethodHead methodHead, Map<_VirtualMethodHead, List<Instruction>> methods,
+                              List<_VirtualMethodHead> callstack, Set<_VirtualMethodHead> visited,
+                              List<_VirtualMethodHead> order, Set<_VirtualMethodHead> recursive) {
+        if (!visited.add(methodHead)) {
+            return;
+        }
+        callstack.add(methodHead);
+        for (Instruction instruction : methods.get(methodHead)) {
+            _VirtualMethodHead invokedMethod = getInvokedMethod(instruction);
+            if (invokedMethod == null || !methods.containsKey(invokedMethod)) {
+                continue;
+            }
+            int onStack = callstack.indexOf(invokedMethod);
+            if (onStack >= 0) {
+                recursive.addAll(callstack.subList(onStack, callstack.size()));
+            } else {
+                visit(invokedMethod, methods, callstack, visited, order, recursive);
+            }
+        }
+        callstack.remove(callstack.size() - 1);
+        order.add(methodHead);
+    }
+
+    /**
+     * @return the method invoked by the instruction, null if it is no method invocation
+     */
+    private static _VirtualMethodHead getInvokedMethod(Instruction instruction) {
+        if (!(instruction instanceof _VirtualMethodInvoke) || ((_VirtualMethodInvoke) instruction).getOutgoingBranches().isEmpty()) {
+            return null;
+        }
+        return (_VirtualMethodHead) ((_VirtualMethodInvoke) instruction).getOutgoingBranches().iterator().next();
+    }
+
+    private static MethodSummary summarizeMethod(IndexedProgram program, Map<_VirtualMethodHead, MethodSummary> summaries,
+                                                 _VirtualMethodHead methodHead, List<Instruction> body) throws IOException, InterruptedException {
+        MethodSummary summary = new MethodSummary();
+        List<_VirtualMethodReturn> returns = new ArrayList<>();
+        for (Instruction instruction : body) {
+            if (instruction instanceof _VirtualMethodReturn) {
+                returns.add((_VirtualMethodReturn) instruction);
+            }
+        }
+        int returnValues = returns.isEmpty() ? 0 : returns.get(0).getInput().length;
+
+        AbstractDataflow may = new SummaryMayDataflow(RelevanceSlice.all(program, body, summaries));
+        try {
+            Map<Integer, Set<Integer>> reach = new HashMap<>();
+            for (int[] tuple : may.readTuples("reach")) {
+                reach.computeIfAbsent(tuple[0], k -> new HashSet<>()).add(tuple[1]);
+            }
+            for (int i = 0; i < returnValues; i++) {
+                Set<Object> facts = new HashSet<>();
+                for (_VirtualMethodReturn methodReturn : returns) {
+                    facts.addAll(decode(may, methodHead, reach.get(may.getCode(methodReturn.getInput()[i]))));
+                }
+                summary.mayReturnFacts.add(facts);
+            }
+            for (int[] store : may.getFacts("sstore")) {
+                summary.mayStorageWrites.computeIfAbsent(decodeIndex(may, store[1]), k -> new HashSet<>())
+                        .addAll(decode(may, methodHead, reach.get(store[2])));
+            }
+            for (int[] store : may.getFacts("mstore")) {
+                summary.mayMemoryWrites.computeIfAbsent(decodeIndex(may, store[1]), k -> new HashSet<>())
+                        .addAll(decode(may, methodHead, reach.get(store[2])));
+            }
+        } finally {
+            may.dispose();
+        }
+
+        AbstractDataflow must = new SummaryMustDataflow(RelevanceSlice.all(program, body, summaries));
+        try {
+            Map<Integer, Integer> returnIndex = new HashMap<>();
+            for (_VirtualMethodReturn methodReturn : returns) {
+                returnIndex.put(must.getCode(methodReturn), returnIndex.size());
+            }
+            // facts per return, intersected over the returns below
+            List<Map<Integer, Set<Integer>>> reach = factsPerReturn(must.readTuples("reach"), returnIndex);
+            List<Map<Integer, Set<Integer>>> storage = factsPerReturn(must.readTuples("storage"), returnIndex);
+            List<Map<Integer, Set<Integer>>> memory = factsPerReturn(must.readTuples("memory"), returnIndex);
+            for (int i = 0; i < returnValues; i++) {
+                Set<Integer> facts = null;
+                for (_VirtualMethodReturn methodReturn : returns) {
+                    Set<Integer> returnFacts = reach.get(returnIndex.get(must.getCode(methodReturn)))
+                            .getOrDefault(must.getCode(methodReturn.getInput()[i]), Collections.emptySet());
+                    if (facts == null) {
+                        facts = new HashSet<>(returnFacts);
+                    } else {
+                        facts.retainAll(returnFacts);
+                    }
+                }
+                summary.mustReturnFacts.add(decode(must, methodHead, facts));
+            }
+            for (int[] store : must.getFacts("sstore")) {
+                if (store[1] != must.unk) {
+                    summary.mustStorageWrites.put(decodeIndex(must, store[1]), decode(must, methodHead, intersect(storage, store[1])));
+                }
+            }
+            for (int[] store : must.getFacts("mstore")) {
+                if (store[1] != must.unk) {
+                    summary.mustMemoryWrites.put(decodeIndex(must, store[1]), decode(must, methodHead, intersect(memory, store[1])));
+                }
+            }
+        } finally {
+            must.dispose();
+        }
+        return summary;
+    }
+
+    /**
+     * @param tuples (label, key, fact) tuples
+     * @return facts per key for each return label
+     */
+    private static List<Map<Integer, Set<Integer>>> factsPerReturn(List<int[]> tuples, Map<Integer, Integer> returnIndex) {
+        List<Map<Integer, Set<Integer>>> factsPerReturn = new ArrayList<>();
+        for (int i = 0; i < returnIndex.size(); i++) {
+            factsPerReturn.add(new HashMap<>());
+        }
+        for (int[] tuple : tuples) {
+            Integer index = returnIndex.get(tuple[0]);
+            if (index != null) {
+                factsPerReturn.get(index).computeIfAbsent(tuple[1], k -> new HashSet<>()).add(tuple[2]);
+            }
+        }
+        return factsPerReturn;
+    }
+
+    private static Set<Integer> intersect(List<Map<Integer, Set<Integer>>> factsPerReturn, int key) {
+        Set<Integer> facts = null;
+        for (Map<Integer, Set<Integer>> returnFacts : factsPerReturn) {
+            Set<Integer> keyFacts = returnFacts.getOrDefault(key, Collections.emptySet());
+            if (facts == null) {
+                facts = new HashSet<>(keyFacts);
+            } else {
+                facts.retainAll(keyFacts);
+            }
+        }
+        return facts;
+    }
+
+    /**
+     * @return the constant storage index or memory offset of an index code, null if it is unknown
+     */
+    private static Integer decodeIndex(AbstractDataflow dataflow, int code) {
+        Object object = dataflow.getObject(code);
+        Variable var = object instanceof Variable ? (Variable) object : null;
+        if (var != null && dataflow.offsetToStorageVar.containsValue(var)) {
+            return dataflow.offsetToStorageVar.inverse().get(var);
+        }
+        if (var != null && dataflow.offsetToMemoryVar.containsValue(var)) {
+            return dataflow.offsetToMemoryVar.inverse().get(var);
+        }
+        return null;
+    }
+
+    /**
+     * Translate fact codes of the dataflow of a method body to facts that do not depend on the codes.
+     */
+    private static Set<Object> decode(AbstractDataflow dataflow, _VirtualMethodHead methodHead, Set<Integer> codes) {
+        Set<Object> facts = new HashSet<>();
+        if (codes == null) {
+            return facts;
+        }
+        List<Variable> arguments = Arrays.asList(methodHead.getOutput());
+        for (int code : codes) {
+            if (code == dataflow.unk) {
+                facts.add(UNKNOWN);
+                continue;
+            }
+            Object object = dataflow.getObject(code);
+            if (object instanceof Variable) {
+                Variable var = (Variable) object;
+                if (arguments.contains(var)) {
+                    facts.add(new Argument(arguments.indexOf(var)));
+                } else if (dataflow.offsetToStorageVar.containsValue(var)) {
+                    facts.add(new StorageSlot(dataflow.offsetToStorageVar.inverse().get(var)));
+                } else if (dataflow.offsetToMemoryVar.containsValue(var)) {
+                    facts.add(new MemoryWord(dataflow.offsetToMemoryVar.inverse().get(var)));
+                } else {
+                    // abstract type, e.g. the result of a call
+                    facts.add(var);
+                }
+                continue;
+            }
+            if (object instanceof Class || object instanceof Integer) {
+                // type or constant
+                facts.add(object);
+            }
+        }
+        return facts;
+    }
+
+
+    /**
+     * Analyses of a method body to be summarized, whose arguments are not user input but come from the invocation.
+     */
+    private static class SummaryMustDataflow extends MustExplicitDataflow {
+        SummaryMustDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+            super(slice);
+        }
+
+        @Override
+        protected boolean argumentsFromUserInput() {
+            return false;
+        }
+    }
+
+    private static class SummaryMayDataflow extends MayImplicitDataflow {
+        SummaryMayDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+            super(slice);
+        }
+
+        @Override
+        protected boolean argumentsFromUserInput() {
+            return false;
+        }
+    }
+
+}
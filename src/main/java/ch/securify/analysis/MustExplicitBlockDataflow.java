@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import java.io.IOException;
+import java.util.*;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+
+/**
+ * {@link MustExplicitDataflow} with control-flow facts and state relations per basic block, split where the
+ * mustPrecedeStep relation leaves or enters a block, see mustExplicitBlock.dl. Answers the queries exactly like the label-based encoding.
+ */
+public class MustExplicitBlockDataflow extends MustExplicitDataflow {
+    static final public String binaryName = "mustExplicitBlock";
+
+    private BlockEncoding encoding;
+    private BlockEncoding.Kills memoryKills;
+    private BlockEncoding.Generated reachFrom;
+    private BlockEncoding.Generated memoryFrom;
+
+    public MustExplicitBlockDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+        super(slice, binaryName);
+    }
+
+    @Override
+    protected void appendRule(String ruleName, Object... args) {
+        if (encoding == null) {
+            // facts are derived by the super constructor
+            encoding = new BlockEncoding();
+        }
+        if (!encoding.collect(ruleName, args)) {
+            super.appendRule(ruleName, args);
+        }
+    }
+
+    private void appendBlockRule(String ruleName, Object... args) {
+        super.appendRule(ruleName, args);
+    }
+
+    @Override
+    protected void createProgramRulesFile() {
+        // flow relation, see mustPrecedeStep in mustExplicit.dl
+        Set<Integer> tags = encoding.column("tag", 0);
+        Set<Integer> oneBranchTags = encoding.column("oneBranchTag", 0);
+        List<int[]> steps = new ArrayList<>();
+        for (int[] follows : encoding.get("follows")) {
+            if (!tags.contains(follows[1])) {
+                steps.add(follows);
+            }
+        }
+        for (int[] jump : encoding.get("jump")) {
+            if (oneBranchTags.contains(jump[1])) {
+                steps.add(new int[] {jump[0], jump[1]});
+            }
+            steps.add(new int[] {jump[0], jump[2]});
+        }
+
+        String[] labelled = {"assignType", "assignVar", "mload", "mstore", "partialStore", "sload", "sstore", "sha3"};
+        Set<Integer> labels = encoding.column("join", 0, 1);
+        for (String ruleName : labelled) {
+            labels.addAll(encoding.column(ruleName, 0));
+        }
+        encoding.partition(getBlockCodes(), steps, encoding.column("join", 2), labels);
+
+        for (String ruleName : new String[] {"blockStep", "blockLast", "memoryKilled", "storageKilled"}) {
+            ruleToSB.put(ruleName, new StringBuffer());
+        }
+        appendBlockRule("unk", unk);
+        for (int[] memoryWord : encoding.get("memoryWord")) {
+            appendBlockRule("memoryWord", memoryWord[0], memoryWord[1]);
+        }
+        encoding.appendLabelled(this::appendBlockRule, labelled);
+        encoding.appendBlocks(this::appendBlockRule);
+        List<int[]> joinEdges = new ArrayList<>();
+        for (int[] join : encoding.get("join")) {
+            int[] from1 = encoding.position(join[0]);
+            int[] from2 = encoding.position(join[1]);
+            int[] to = encoding.position(join[2]);
+            appendBlockRule("join", from1[0], from1[1], from2[0], from2[1], to[0], to[1]);
+            joinEdges.add(new int[] {join[0], join[2]});
+            joinEdges.add(new int[] {join[1], join[2]});
+        }
+
+        // the memory and storage state is read by loads, joins and at the end of the blocks that it can reach
+        BitSet memoryBlocks = encoding.reachableBlocks(encoding.column("mstore", 0), joinEdges);
+        BitSet storageBlocks = encoding.reachableBlocks(encoding.column("sstore", 0), joinEdges);
+        BlockEncoding.Indices memoryReads = encoding.lastIndices(memoryBlocks)
+                .addLabels(encoding.column("mload", 0))
+                .addLabels(encoding.column("sha3", 0))
+                .addLabels(encoding.column("join", 0, 1));
+        BlockEncoding.Indices storageReads = encoding.lastIndices(storageBlocks)
+                .addLabels(encoding.column("sload", 0))
+                .addLabels(encoding.column("join", 0, 1));
+
+        memoryKills = appendKills("mstore", "memoryKilled", memoryBlocks, memoryReads);
+        appendKills("sstore", "storageKilled", storageBlocks, storageReads);
+
+        super.createProgramRulesFile();
+    }
+
+    /**
+     * Append the kills of the stores to constant offsets, except partial stores, between the generating and the read
+     * indices.
+     */
+    private BlockEncoding.Kills appendKills(String storeRule, String killedRule, BitSet blocks, BlockEncoding.Indices reads) {
+        BlockEncoding.Kills kills = encoding.new Kills();
+        BlockEncoding.Indices generating = encoding.firstIndices(blocks);
+        Set<Integer> partialStores = encoding.column("partialStore", 0);
+        for (int[] store : encoding.get(storeRule)) {
+            if (store[1] != unk) {
+                if (!partialStores.contains(store[0])) {
+                    kills.add(store[0], store[1]);
+                }
+                generating.addLabels(Collections.singleton(store[0]));
+            }
+        }
+        kills.appendKilled(this::appendBlockRule, killedRule, generating, reads, false);
+        return kills;
+    }
+
+    @Override
+    public int mustPrecede(Instruction instr1, Instruction instr2) {
+        int[] position1 = encoding.position(getCode(instr1));
+        int[] position2 = encoding.position(getCode(instr2));
+        if (position1 == null || position2 == null) {
+            return Status.UNSATISFIABLE;
+        }
+        if (position1[0] == position2[0] && position1[1] < position2[1]) {
+            return Status.SATISFIABLE;
+        }
+        return runQuery("blockPrecede", position1[0], position2[0]);
+    }
+
+    @Override
+    public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
+        int[] position = encoding.position(getCode(instr1));
+        if (position == null) {
+            return Status.UNSATISFIABLE;
+        }
+        try {
+            if (reachFrom == null) {
+                reachFrom = new BlockEncoding.Generated(readTuples("reachFrom"));
+            }
+        } catch (IOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return Status.UNKNOWN;
+        }
+        return reachFrom.holds(position, getCode(lhs), getCode(type), null) ? Status.SATISFIABLE : Status.UNSATISFIABLE;
+    }
+
+    @Override
+    public int memoryMustDepOn(Instruction instr, int offset, Object type) {
+        int[] position = encoding.position(getCode(instr));
+        if (position == null) {
+            return Status.UNSATISFIABLE;
+        }
+        try {
+            if (memoryFrom == null) {
+                memoryFrom = new BlockEncoding.Generated(readTuples("memoryFrom"));
+            }
+        } catch (IOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return Status.UNKNOWN;
+        }
+        return memoryFrom.holds(position, getCode(getMemoryVarForIndex(offset)), getCode(type), memoryKills)
+                ? Status.SATISFIABLE : Status.UNSATISFIABLE;
+    }
+
+}
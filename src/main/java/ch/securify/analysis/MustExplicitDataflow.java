@@ -29,7 +29,15 @@ public class MustExplicitDataflow extends AbstractDataflow {
     static final public String binaryName = "mustExplicit";
 
     public MustExplicitDataflow(List<Instruction> decompiledInstructions) throws IOException, InterruptedException {
-        instructions = decompiledInstructions;
+        this(RelevanceSlice.all(decompiledInstructions));
+    }
+
+    public MustExplicitDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+        this(slice, binaryName);
+    }
+
+    protected MustExplicitDataflow(RelevanceSlice slice, String binaryName) throws IOException, InterruptedException {
+        this.slice = slice;
         initDataflow(binaryName);
     }
 
@@ -78,11 +86,11 @@ public class MustExplicitDataflow extends AbstractDataflow {
         for (Instruction instr : instructions) {
 
             if (instr instanceof JumpDest) {
-                if (((JumpDest) instr).getIncomingBranches().size() == 1 && instr.getPrev() == null) {
-                    log("One-Branch Tag fact: " + instr);
+                if (((JumpDest) instr).getIncomingBranches().size() == 1 && slice.getPrev(instr) == null) {
+                    log(() -> "One-Branch Tag fact: " + instr);
                     appendRule("oneBranchTag", getCode(instr));
                 }
-                log("Tag fact: " + instr);
+                log(() -> "Tag fact: " + instr);
                 appendRule("tag", getCode(instr));
             }
 
@@ -94,7 +102,7 @@ public class MustExplicitDataflow extends AbstractDataflow {
                     }
                 }
             }
-            Instruction nextInstruction = instr.getNext();
+            Instruction nextInstruction = slice.getNext(instr);
 
             if (nextInstruction != null) {
                 createFollowsRule(instr, nextInstruction);
@@ -124,6 +132,24 @@ public class MustExplicitDataflow extends AbstractDataflow {
         appendRule("mload", getCode(instr), offsetCode, getCode(var));
     }
 
+    @Override
+    protected void createMethodSummaryRules(_VirtualMethodInvoke invoke, MethodSummary summary) {
+        for (int i = 0; i < invoke.getOutput().length && i < summary.mustReturnFacts.size(); i++) {
+            createSummaryFactRules(invoke, invoke.getOutput()[i], summary.mustReturnFacts.get(i));
+        }
+        // the written offsets and indices are reassigned, with the facts that hold at every return
+        summary.mustMemoryWrites.forEach((offset, facts) -> {
+            Variable value = new Variable();
+            createSummaryFactRules(invoke, value, facts);
+            createMStoreRule(invoke, createConstant(offset), value);
+        });
+        summary.mustStorageWrites.forEach((index, facts) -> {
+            Variable value = new Variable();
+            createSummaryFactRules(invoke, value, facts);
+            createSStoreRule(invoke, createConstant(index), value);
+        });
+    }
+
     @Override
     protected void deriveIfPredicates() {
         log(">> Derive TaintElse and TaintThen predicates <<");
@@ -133,7 +159,7 @@ public class MustExplicitDataflow extends AbstractDataflow {
                 Instruction mergeInstr = ifInstr.getMergeInstruction();
 
                 if (mergeInstr != null) {
-                    log("merge instruction: " + mergeInstr.getStringRepresentation());
+                    log(() -> "merge instruction: " + mergeInstr.getStringRepresentation());
                     createEndIfRule(instr, mergeInstr);
                 }
             }
@@ -160,10 +186,10 @@ public class MustExplicitDataflow extends AbstractDataflow {
         if (to instanceof JumpDest) {
             //appendRule("join", getCode(from), getCode(to));
             List<Instruction> incomingBranches = new ArrayList<>(((JumpDest) to).getIncomingBranches());
-            if (to.getPrev() != null) {
-                incomingBranches.add(to.getPrev());
+            if (slice.getPrev(to) != null) {
+                incomingBranches.add(slice.getPrev(to));
             }
-            log("JumpDest: " + to + " with incoming branches: " + incomingBranches);
+            log(() -> "JumpDest: " + to + " with incoming branches: " + incomingBranches);
 
 //            if (incomingBranches.size() == 1) {
 //                //
@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import java.io.IOException;
+import java.util.*;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+
+/**
+ * {@link MustExplicitDataflow} that derives the facts of a variable only at the labels that generate them, see
+ * mustExplicitSparse.dl. A fact holds at every label that a generating label must precede, so the queries are
+ * answered exactly like with the label-based reach relation.
+ */
+public class MustExplicitSparseDataflow extends MustExplicitDataflow {
+    static final public String binaryName = "mustExplicitSparse";
+
+    private Map<List<Integer>, List<Integer>> valueFrom;
+
+    public MustExplicitSparseDataflow(RelevanceSlice slice) throws IOException, InterruptedException {
+        super(slice, binaryName);
+    }
+
+    @Override
+    public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
+        try {
+            if (valueFrom == null) {
+                valueFrom = new HashMap<>();
+                for (int[] tuple : readTuples("valueFrom")) {
+                    valueFrom.computeIfAbsent(Arrays.asList(tuple[1], tuple[2]), k -> new ArrayList<>()).add(tuple[0]);
+                }
+            }
+        } catch (IOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return Status.UNKNOWN;
+        }
+        int label = getCode(instr1);
+        int result = Status.UNSATISFIABLE;
+        for (int definition : valueFrom.getOrDefault(Arrays.asList(getCode(lhs), getCode(type)), Collections.emptyList())) {
+            int precede = definition == label ? Status.SATISFIABLE : runQuery("mustPrecede", definition, label);
+            if (precede == Status.SATISFIABLE) {
+                return Status.SATISFIABLE;
+            }
+            if (precede == Status.UNKNOWN) {
+                result = Status.UNKNOWN;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.IndexedProgram;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.*;
+import ch.securify.decompiler.instructions.Byte;
+
+import java.util.*;
+
+/**
+ * Backward slice of the instructions of an analysis unit, over which the dataflow facts are derived.
+ *
+ * The sinks of the slice are the instructions that the selected patterns query, see
+ * {@link ch.securify.patterns.AbstractPattern#getQueriedInstructions}, and all instructions that affect control flow,
+ * memory or storage. Instructions without side effects, e.g. arithmetic, environment reads and loads, are kept if
+ * their results flow into the slice, LOG and memory copies are dropped, as no fact is derived for them. The flow of
+ * the dropped instructions is contracted: the relevant successor of an instruction is its first successor that is in
+ * the slice. Queries on dropped instructions or variables are rejected, see {@link #checkQueried}.
+ */
+public class RelevanceSlice {
+
+    private static final Set<Class<? extends Instruction>> SIDE_EFFECT_FREE = new HashSet<>(Arrays.asList(
+            Add.class, Sub.class, Mul.class, Div.class, SDiv.class, Mod.class, SMod.class, AddMod.class,
+            MulMod.class, Exp.class, SignExtend.class, Lt.class, Gt.class, Slt.class, Sgt.class, Eq.class,
+            IsZero.class, And.class, Or.class, Xor.class, Not.class, Byte.class, Shl.class, Shr.class, Sar.class,
+            Push.class, Address.class, Balance.class, Origin.class, Caller.class, CallValue.class, CallDataLoad.class,
+            CallDataSize.class, CodeSize.class, GasPrice.class, ExtCodeSize.class, Extcodehash.class,
+            ReturnDataSize.class, BlockHash.class, Coinbase.class, BlockTimestamp.class, BlockNumber.class,
+            Difficulty.class, GasLimit.class, Pc.class, MSize.class, Gas.class, SLoad.class, MLoad.class, Sha3.class,
+            _VirtualAssignment.class));
+
+    private static final Set<Class<? extends Instruction>> NO_FACTS = new HashSet<>(Arrays.asList(
+            Log0.class, Log1.class, Log2.class, Log3.class, Log4.class,
+            CallDataCopy.class, CodeCopy.class, ExtCodeCopy.class, ReturnDataCopy.class));
+
+    private final IndexedProgram program;
+    private final List<Instruction> instructions;
+    private final Set<Instruction> dropped;
+    private final Set<Variable> droppedVariables;
+    private final Map<_VirtualMethodHead, MethodSummary> summaries;
+
+
+    private RelevanceSlice(IndexedProgram program, List<Instruction> instructions, Set<Instruction> dropped,
+                           Map<_VirtualMethodHead, MethodSummary> summaries) {
+        this.program = program;
+        this.summaries = summaries;
+        this.instructions = instructions;
+        this.dropped = dropped;
+        this.droppedVariables = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instr : dropped) {
+            droppedVariables.addAll(Arrays.asList(instr.getOutput()));
+        }
+    }
+
+    /**
+     * Index the instructions as a program of their own, see {@link IndexedProgram#build}.
+     *
+     * @param instructions instructions of a method body or of the entire contract
+     * @return slice that keeps all instructions, for analyses that may be queried at any instruction
+     */
+    public static RelevanceSlice all(List<Instruction> instructions) {
+        return all(IndexedProgram.build(instructions), instructions, Collections.emptyMap());
+    }
+
+    /**
+     * @param program decompiled contract that contains the instructions
+     * @param instructions instructions of a method body or of the entire contract
+     * @param summaries summaries of the methods of the program that are applied at their invocations, see
+     *                  {@link MethodSummary#summarize}
+     * @return slice that keeps all instructions, for analyses that may be queried at any instruction
+     */
+    public static RelevanceSlice all(IndexedProgram program, List<Instruction> instructions,
+                                     Map<_VirtualMethodHead, MethodSummary> summaries) {
+        return new RelevanceSlice(program, instructions, Collections.emptySet(), summaries);
+    }
+
+    /**
+     * Index the instructions as a program of their own, see {@link IndexedProgram#build}.
+     *
+     * @param instructions instructions of a method body or of the entire contract
+     * @param queriedInstructions instructions that may be queried, or null if any instruction may be queried
+     * @return slice of the instructions, in their original order
+     */
+    public static RelevanceSlice of(List<Instruction> instructions, Collection<Instruction> queriedInstructions) {
+        return of(IndexedProgram.build(instructions), instructions, queriedInstructions, Collections.emptyMap());
+    }
+
+    /**
+     * @param program decompiled contract that contains the instructions
+     * @param instructions instructions of a method body or of the entire contract
+     * @param queriedInstructions instructions that may be queried, or null if any instruction may be queried
+     * @param summaries summaries of the methods of the program that are applied at their invocations, see
+     *                  {@link MethodSummary#summarize}
+     * @return slice of the instructions, in their original order
+     */
+    public static RelevanceSlice of(IndexedProgram program, List<Instruction> instructions,
+                                    Collection<Instruction> queriedInstructions,
+                                    Map<_VirtualMethodHead, MethodSummary> summaries) {
+        if (queriedInstructions == null) {
+            return all(program, instructions, summaries);
+        }
+        Set<Instruction> queried = Collections.newSetFromMap(new IdentityHashMap<>());
+        queried.addAll(queriedInstructions);
+
+        Set<Instruction> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Variable, List<Instruction>> candidateDefinitions = new IdentityHashMap<>();
+        Deque<Variable> relevantVars = new ArrayDeque<>();
+        Set<Variable> visitedVars = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (Instruction instr : instructions) {
+            // the first and last instruction of a chain are kept, so that the entries and exits of the flow remain
+            if (isDroppable(instr) && !queried.contains(instr) && instr.getPrev() != null && instr.getNext() != null) {
+                candidates.add(instr);
+                for (Variable output : instr.getOutput()) {
+                    candidateDefinitions.computeIfAbsent(output, k -> new ArrayList<>(1)).add(instr);
+                }
+            } else {
+                addInputs(instr, relevantVars);
+            }
+        }
+
+        // keep the instructions whose results flow into the slice
+        while (!relevantVars.isEmpty()) {
+            Variable var = relevantVars.pop();
+            if (!visitedVars.add(var)) {
+                continue;
+            }
+            for (Instruction definition : candidateDefinitions.getOrDefault(var, Collections.emptyList())) {
+                if (candidates.remove(definition)) {
+                    addInputs(definition, relevantVars);
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return all(program, instructions, summaries);
+        }
+        List<Instruction> sliced = new ArrayList<>(instructions.size() - candidates.size());
+        for (Instruction instr : instructions) {
+            if (!candidates.contains(instr)) {
+                sliced.add(instr);
+            }
+        }
+        return new RelevanceSlice(program, sliced, candidates, summaries);
+    }
+
+    private static void addInputs(Instruction instr, Deque<Variable> vars) {
+        for (Variable input : instr.getInput()) {
+            if (input != null) {
+                vars.push(input);
+            }
+        }
+    }
+
+    private static boolean isDroppable(Instruction instr) {
+        return SIDE_EFFECT_FREE.contains(instr.getClass()) || NO_FACTS.contains(instr.getClass());
+    }
+
+    /**
+     * @return the decompiled contract, whose ids and operands index the instructions of the slice
+     */
+    public IndexedProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * @return the summary of the invoked method, null if the method is inlined or has not been summarized
+     */
+    public MethodSummary getSummary(_VirtualMethodInvoke invoke) {
+        if (invoke.getOutgoingBranches().isEmpty()) {
+            return null;
+        }
+        return summaries.get(invoke.getOutgoingBranches().iterator().next());
+    }
+
+    /**
+     * @return the instructions in the slice
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public int getDroppedCount() {
+        return dropped.size();
+    }
+
+    /**
+     * @return true if the instruction is in the slice
+     */
+    public boolean contains(Instruction instr) {
+        return !dropped.contains(instr);
+    }
+
+    /**
+     * Reject a query about a dropped instruction or variable, as no facts have been derived for it and the answer
+     * would be wrong. Such a query means that a pattern does not declare all instructions it queries.
+     *
+     * @param queried instruction, variable, type or constant of a query
+     * @throws IllegalArgumentException if the instruction or variable has been dropped
+     */
+    public void checkQueried(Object queried) {
+        if (queried instanceof Instruction && dropped.contains(queried)
+                || queried instanceof Variable && droppedVariables.contains(queried)) {
+            throw new IllegalArgumentException("Query about " + queried + ", which is not in the relevance slice");
+        }
+    }
+
+    /**
+     * @return the first successor of the instruction that is in the slice, or null
+     */
+    public Instruction getNext(Instruction instr) {
+        Instruction next = instr.getNext();
+        while (next != null && dropped.contains(next)) {
+            next = next.getNext();
+        }
+        return next;
+    }
+
+    /**
+     * @return the last predecessor of the instruction that is in the slice, or null
+     */
+    public Instruction getPrev(Instruction instr) {
+        Instruction prev = instr.getPrev();
+        while (prev != null && dropped.contains(prev)) {
+            prev = prev.getPrev();
+        }
+        return prev;
+    }
+
+}
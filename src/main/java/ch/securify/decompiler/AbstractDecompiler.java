@@ -18,26 +18,27 @@
 
 package ch.securify.decompiler;
 
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
-import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.Push;
 import ch.securify.decompiler.instructions._VirtualAssignment;
 import ch.securify.decompiler.printer.HexPrinter;
+import ch.securify.utils.Log;
 
 public class AbstractDecompiler {
 
@@ -50,37 +51,61 @@ public class AbstractDecompiler {
 	}
 
 	static void removeUnusedInstructions(List<Instruction> decompiledInstructions) {
+		removeUnusedMethodInstructions(Collections.singletonList(decompiledInstructions));
+	}
+
+	/**
+	 * Remove the unused instructions of each method. The methods are scanned in parallel, the instructions are
+	 * then unlinked in order.
+	 * @param methodBodies instructions of each method.
+	 */
+	static void removeUnusedMethodInstructions(List<List<Instruction>> methodBodies) {
 		// search for instructions on which no other instruction has a dependency on, i.e. insrtrs whose results are not used
 		boolean removedSomething;
 		do {
-			Set<Instruction> dependencies = new HashSet<>();
-			decompiledInstructions.forEach(instruction -> dependencies.addAll(instruction.getDependencies()));
-
-			removedSomething = decompiledInstructions.removeIf(instruction -> {
-				if (dependencies.contains(instruction)) {
-					return false; // keep used instructions
-				}
-				if (instruction instanceof Push) {
-					return removeInstruction(instruction); // remove unused pushed variables
-				}
-				if (instruction instanceof _VirtualAssignment) {
-					return removeInstruction(instruction); // remove unused reassignments
-				}
-				if (instruction.getOutput().length >= 1 && instruction.getRawInstruction() != null) {
-					int opcode = instruction.getRawInstruction().opcode;
-					if ((OpCodes.ADD <= opcode && opcode <= OpCodes.BYTE)) {
-						return removeInstruction(instruction); // remove unused arithmetic instructions
-					}
-				}
-				return false; // keep the rest
-			});
+			Set<Instruction> dependencies = methodBodies.parallelStream()
+					.flatMap(List::stream)
+					.flatMap(instruction -> instruction.getDependencies().stream())
+					.collect(Collectors.toSet());
+
+			List<Set<Instruction>> unusedInstructions = methodBodies.parallelStream()
+					.map(methodBody -> methodBody.stream()
+							.filter(instruction -> !dependencies.contains(instruction) && isRemovable(instruction))
+							.collect(Collectors.toCollection(LinkedHashSet::new)))
+					.collect(Collectors.toList());
+
+			removedSomething = false;
+			for (int i = 0; i < methodBodies.size(); i++) {
+				Set<Instruction> unused = unusedInstructions.get(i);
+				unused.forEach(AbstractDecompiler::removeInstruction);
+				removedSomething |= methodBodies.get(i).removeIf(unused::contains);
+			}
 		} while (removedSomething);
 	}
 
-	protected static BiMap<Integer, String> findTags(final PrintStream log, List<Integer> jumpDestinations) {
+	private static boolean isRemovable(Instruction instruction) {
+		if (instruction.getPrev() == null || instruction.getNext() == null) {
+			return false;
+		}
+		if (instruction instanceof Push) {
+			return true; // remove unused pushed variables
+		}
+		if (instruction instanceof _VirtualAssignment) {
+			return true; // remove unused reassignments
+		}
+		if (instruction.getOutput().length >= 1 && instruction.getRawInstruction() != null) {
+			int opcode = instruction.getRawInstruction().opcode;
+			if ((OpCodes.ADD <= opcode && opcode <= OpCodes.BYTE)) {
+				return true; // remove unused arithmetic instructions
+			}
+		}
+		return false; // keep the rest
+	}
+
+	protected static BiMap<Integer, String> findTags(final Log log, List<Integer> jumpDestinations) {
 		// print tags (jumpdests)
-		log.println();
-		log.println("Tags:");
+		log.debug();
+		log.debug("Tags:");
 		/* Map bytecode offsets to tags/labels and vice versa. */
 		BiMap<Integer, String> tags = HashBiMap.create();
 		{
@@ -88,7 +113,7 @@ public class AbstractDecompiler {
 				Integer bytecodeOffset = jumpDestinations.get(i);
 				String tagLabel = "tag_" + (i + 1);
 				tags.put(bytecodeOffset, tagLabel);
-				log.println(tagLabel + " @" + HexPrinter.toHex(bytecodeOffset));
+				log.debug(() -> tagLabel + " @" + HexPrinter.toHex(bytecodeOffset));
 			}
 			// add virtual tags (error and exit)
 			tags.put(ControlFlowDetector.DEST_ERROR, "ERROR");
@@ -97,24 +122,22 @@ public class AbstractDecompiler {
 		return tags;
 	}
 
-	protected static void parseRawInstructions(final byte[] bytecode, RawInstruction[] rawInstructions, List<Integer> jumpDestinations) {
-		rawInstructions[rawInstructions.length - 1] =
-				new RawInstruction(OpCodes.getInvalid(), null, rawInstructions.length - 1, -1);
-
+	protected static InstructionTable parseRawInstructions(final byte[] bytecode, List<Integer> jumpDestinations) {
 		// parse raw instructions
-		EvmParser.parse(bytecode, (offset, instrNumber, opcode, payload) -> {
-			rawInstructions[offset] = new RawInstruction(opcode, payload, offset, instrNumber);
-			if (opcode == OpCodes.JUMPDEST) {
+		InstructionTable rawInstructions = new InstructionTable(bytecode);
+		for (int offset = 0; offset < rawInstructions.length(); offset = rawInstructions.next(offset)) {
+			if (rawInstructions.getOpcode(offset) == OpCodes.JUMPDEST) {
 				jumpDestinations.add(offset);
 			}
-		});
+		}
+		return rawInstructions;
 	}
 
-	protected static Multimap<Integer, Integer> dectectControlFlow(final PrintStream log, RawInstruction[] rawInstructions, List<Integer> jumpDestinations, BiMap<Integer, String> tags, ControlFlowDetector controlFlowDetector,
+	protected static Multimap<Integer, Integer> dectectControlFlow(final Log log, InstructionTable rawInstructions, List<Integer> jumpDestinations, BiMap<Integer, String> tags, ControlFlowDetector controlFlowDetector,
 			Multimap<Integer, Integer> mapJumpsToDests) {
 				// scan for branches, generate a control flow graph
-				log.println();
-				log.println("Control Flow (Branches):");
+				log.debug();
+				log.debug("Control Flow (Branches):");
 
 				controlFlowDetector.computeBranches(rawInstructions, log);
 				/* Control flow graph: maps from jumps to possible jump destinations and
@@ -125,26 +148,28 @@ public class AbstractDecompiler {
 					List<Integer> branchSrcs = new ArrayList<>(controlFlowGraph.asMap().keySet());
 					Collections.sort(branchSrcs);
 
-					for (Integer branchSrc : branchSrcs) {
-						for (int target : controlFlowGraph.get(branchSrc)) {
-							String targetName;
-							if (target == ControlFlowDetector.DEST_ERROR)
-								targetName = "ERROR";
-							else if (target == ControlFlowDetector.DEST_EXIT)
-								targetName = "OUT";
-							else if (jumpDestinations.indexOf(target) == -1)
-								targetName = "local" + " @" + HexPrinter.toHex(target);
-							else
-								targetName = tags.get(target) + " @" + HexPrinter.toHex(target);
-							log.println(HexPrinter.toHex(branchSrc) + " -> " + targetName);
+					log.print(Log.Level.DEBUG, out -> {
+						for (Integer branchSrc : branchSrcs) {
+							for (int target : controlFlowGraph.get(branchSrc)) {
+								String targetName;
+								if (target == ControlFlowDetector.DEST_ERROR)
+									targetName = "ERROR";
+								else if (target == ControlFlowDetector.DEST_EXIT)
+									targetName = "OUT";
+								else if (jumpDestinations.indexOf(target) == -1)
+									targetName = "local" + " @" + HexPrinter.toHex(target);
+								else
+									targetName = tags.get(target) + " @" + HexPrinter.toHex(target);
+								out.println(HexPrinter.toHex(branchSrc) + " -> " + targetName);
+							}
 						}
-					}
+					});
 
 					// map jumps to jump destinations
 					// jumps with ambiguous destinations are not supported
 					for (Integer branchSrc : branchSrcs) {
 						Collection<Integer> jumpTargets = controlFlowGraph.get(branchSrc);
-						if (rawInstructions[branchSrc].opcode == OpCodes.JUMP) {
+						if (rawInstructions.getOpcode(branchSrc) == OpCodes.JUMP) {
 							if (jumpTargets.size() != 1 && !ControlFlowDetector.isJumpMethodReturn(branchSrc, rawInstructions)) {
 								// disallow jumps with multiple targets (except method returns)
 								throw new IllegalArgumentException("Jumps with ambiguous jump targets are not supported: " +
@@ -152,13 +177,13 @@ public class AbstractDecompiler {
 							}
 							mapJumpsToDests.putAll(branchSrc, jumpTargets);
 						}
-						else if (rawInstructions[branchSrc].opcode == OpCodes.JUMPI) {
+						else if (rawInstructions.getOpcode(branchSrc) == OpCodes.JUMPI) {
 							if (jumpTargets.size() > 2) {
 								throw new IllegalArgumentException("Jumps with ambiguous jump targets are not supported: " +
 										"Jumping from " + HexPrinter.toHex(branchSrc) + " to " + HexPrinter.toHex(jumpTargets, ","));
 							}
 							else if (jumpTargets.size() == 1) {
-								log.println("Warning: Conditional jump @" + HexPrinter.toHex(branchSrc) + " with both paths " +
+								log.debug(() -> "Warning: Conditional jump @" + HexPrinter.toHex(branchSrc) + " with both paths " +
 										"leading to same destination @" + HexPrinter.toHex(Iterables.get(jumpTargets, 0)) + ". " +
 										"Please check if this is true.");
 							}
@@ -176,12 +201,12 @@ public class AbstractDecompiler {
 						}
 					}
 
-					log.println("Jumps:");
-					mapJumpsToDests.asMap().forEach(
+					log.debug("Jumps:");
+					log.print(Log.Level.DEBUG, out -> mapJumpsToDests.asMap().forEach(
 							(src, dsts) -> dsts.forEach(
-									dst -> log.println(HexPrinter.toHex(src) + " -> " + tags.get(dst))
+									dst -> out.println(HexPrinter.toHex(src) + " -> " + tags.get(dst))
 							)
-					);
+					));
 				}
 				return controlFlowGraph;
 			}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualInstruction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maximal sequence of instructions that is only entered at the first and only left at the last instruction.
+ * Blocks are created by {@link ControlFlowGraph}.
+ */
+public class BasicBlock {
+
+	private final int id;
+	private final List<Instruction> instructions;
+
+	BasicBlock[] predecessors;
+	BasicBlock[] successors;
+	/** successors within the local flow, i.e. without method invocations and returns */
+	BasicBlock[] localSuccessors;
+
+
+	BasicBlock(int id, List<Instruction> instructions) {
+		this.id = id;
+		this.instructions = Collections.unmodifiableList(instructions);
+	}
+
+
+	/**
+	 * @return index of this block in {@link ControlFlowGraph#getBlocks()}.
+	 */
+	public int getId() {
+		return id;
+	}
+
+
+	public List<Instruction> getInstructions() {
+		return instructions;
+	}
+
+
+	public Instruction getFirst() {
+		return instructions.get(0);
+	}
+
+
+	public Instruction getLast() {
+		return instructions.get(instructions.size() - 1);
+	}
+
+
+	/**
+	 * @return blocks that branch or fall through to this block, including method invocations and returns.
+	 */
+	public BasicBlock[] getPredecessors() {
+		return predecessors;
+	}
+
+
+	/**
+	 * @return blocks this block branches or falls through to, including method invocations and returns.
+	 */
+	public BasicBlock[] getSuccessors() {
+		return successors;
+	}
+
+
+	/**
+	 * @return successors within the local flow: method invocations continue at the following instruction,
+	 * method returns have no successors.
+	 */
+	public BasicBlock[] getLocalSuccessors() {
+		return localSuccessors;
+	}
+
+
+	/**
+	 * @return true if the block ends with a method invocation or return.
+	 */
+	public boolean endsWithMethodBranch() {
+		return getLast() instanceof BranchInstruction && getLast() instanceof _VirtualInstruction;
+	}
+
+
+	@Override
+	public String toString() {
+		return "BasicBlock#" + id;
+	}
+
+}
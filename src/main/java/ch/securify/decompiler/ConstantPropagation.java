@@ -33,9 +33,9 @@ import ch.securify.decompiler.instructions.StaticCall;
 import ch.securify.decompiler.instructions._VirtualInstruction;
 import ch.securify.decompiler.instructions._VirtualMethodHead;
 import ch.securify.decompiler.instructions._VirtualMethodReturn;
-import ch.securify.utils.BigIntUtil;
+import ch.securify.utils.PersistentTreeMap;
+import ch.securify.utils.UInt256;
 
-import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -46,425 +46,460 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
 
 public class ConstantPropagation {
 
+	private static final UInt256 WORD_SIZE = UInt256.valueOf(32);
+
 
 	public static List<Instruction> propagate(List<Instruction> instructions) {
-		Queue<Instruction> branchesToProcess = new LinkedList<>();
-		branchesToProcess.add(instructions.get(0));
+		return propagate(instructions, ControlFlowGraph.build(instructions), new HashMap<>());
+	}
+
+
+	/**
+	 * Propagate constants through the basic blocks in reverse post-order, so that every block is visited once and
+	 * after all its predecessors, except for those along loop back edges.
+	 * At loop headers, memory and storage are assumed to be overwritten by the loop body.
+	 * @param instructions decompiled instructions, starting with the entry point
+	 * @param controlFlowGraph basic blocks of the instructions
+	 * @param metrics receives the number of block visits and loop headers
+	 * @return the given instructions
+	 */
+	public static List<Instruction> propagate(List<Instruction> instructions, ControlFlowGraph controlFlowGraph,
+											  Map<String, Long> metrics) {
 		Set<Instruction> processedInstructions = new HashSet<>();
 
 		Map<Instruction, ProgramState> canonicalProgramStates = new HashMap<>();
-		canonicalProgramStates.put(instructions.get(0), new ProgramState());
+		canonicalProgramStates.put(controlFlowGraph.getEntry().getFirst(), new ProgramState());
 
-		int consecutiveDelayedBranches = 0;
+		long blockVisits = 0;
+		long loopHeaders = 0;
 
-		while (!branchesToProcess.isEmpty()) {
-			Instruction instruction = branchesToProcess.poll();
-			if (processedInstructions.contains(instruction)) {
-				// branch already processed
+		for (BasicBlock block : controlFlowGraph.getReversePostOrder()) {
+			Instruction leader = block.getFirst();
+			ProgramState programState = canonicalProgramStates.remove(leader);
+			if (programState == null) {
+				// only reached through method returns, which do not carry a program state
 				continue;
 			}
-			ProgramState programState = canonicalProgramStates.get(instruction);
-			if (programState == null) {
-				throw new IllegalStateException("no ProgramState available at instruction " +
-						instruction.getDebugRepresentation().replaceAll("\\s+", " "));
-			}
-			do {
-				if (instruction instanceof JumpDest) {
-					if (processedInstructions.contains(instruction)) {
-						// reached merger through linear flow
-						// should only happen for loop branches, otherwise the local flow should be always processed first
-						break; // continue with next branch
-					}
-
-					boolean unprocessedPrecedingBranches = ((JumpDest)instruction).getIncomingBranches()
-							.stream().anyMatch(src -> !processedInstructions.contains(src))
-							|| (instruction.getPrev() != null && !processedInstructions.contains(instruction.getPrev()));
-					if (unprocessedPrecedingBranches && consecutiveDelayedBranches <= branchesToProcess.size()) {
-						// postpone this branch because of unprocessed preceding instructions
-						consecutiveDelayedBranches++;
-						branchesToProcess.add(instruction);
-
-						if (instruction.getPrev() != null && !canonicalProgramStates.containsKey(instruction)) {
-							// jumpdest in local flow without canonical program state
-							canonicalProgramStates.put(instruction,  new ProgramState(programState));
-						}
-
-						break; // continue with next branch
-					}
-					else {
-						consecutiveDelayedBranches = 0;
-					}
+			blockVisits++;
+
+			if (leader instanceof JumpDest && (((JumpDest) leader).getIncomingBranches().stream()
+					.anyMatch(src -> isUnprocessed(src, processedInstructions, controlFlowGraph))
+					|| isUnprocessed(leader.getPrev(), processedInstructions, controlFlowGraph))) {
+				// loop header, the program state along the back edges is not known yet
+				// TODO: so check if we really have to wipe the memory/store contents
+				// (if any mstore/sstore is used in the loop body)
+				loopHeaders++;
+				Variable pollution = new Variable();
+				pollution.addValueType(Variable.TYPE_ANY);
+				programState.polluteStorage(pollution); // TODO: pollute with what?
+				programState.polluteMemory(pollution);
+			}
 
-					if (unprocessedPrecedingBranches) {
-						// we have unprocessed preceding instructions but need to continue with this branch
-						// TODO: so check if we really have to wipe the memory/store contents
-						// (if any mstore/sstore is used in the unprocessed part)
-						Variable pollution = new Variable();
-						pollution.addValueType(Variable.TYPE_ANY);
-						programState.polluteStorage(pollution); // TODO: pollute with what?
-						programState.polluteMemory(pollution);
-					}
+			for (Instruction instruction : block.getInstructions()) {
+				processInstruction(instruction, programState, processedInstructions, controlFlowGraph);
+				processedInstructions.add(instruction);
+			}
 
-					if (instruction.getPrev() != null) {
-						if (canonicalProgramStates.containsKey(instruction)) {
-							// if this is a jumpdest in a local flow that has already
-							// a canonical program state assigned from elsewhere we need to merge states
-							programState.merge(canonicalProgramStates.get(instruction));
+			// fork & merge program state into the successors
+			Instruction instruction = block.getLast();
+			if (instruction instanceof BranchInstruction && !(instruction instanceof _VirtualMethodReturn)) {
+				BranchInstruction src = (BranchInstruction) instruction;
+				for (Instruction dest : src.getOutgoingBranches()) {
+					forkProgramState(programState, dest, canonicalProgramStates, processedInstructions);
+					if (dest instanceof _VirtualMethodHead) {
+						for (int i = 0; i < src.getInput().length; ++i) {
+							if (dest.getOutput()[i].isConstantValueUndefined()) {
+								dest.getOutput()[i].copyConstantValue(src.getInput()[i]);
+							}
+							else if (dest.getOutput()[i].hasConstantValue()) {
+								dest.getOutput()[i].setConstantValueAny();
+							}
+							dest.getOutput()[i].addValueTypes(src.getInput()[i].getValueTypes());
 						}
 					}
 				}
+			}
+			if (instruction.getNext() != null) {
+				forkProgramState(programState, instruction.getNext(), canonicalProgramStates, processedInstructions);
+			}
+		}
 
-				// handle storage writes
-				if (instruction instanceof SStore) {
-					Variable storeOffsetVar = instruction.getInput()[0];
-					Variable valueVar = instruction.getInput()[1];
-					if (storeOffsetVar.hasConstantValue()) {
-						BigInteger storeOffset = BigIntUtil.fromInt256(storeOffsetVar.getConstantValue());
-						programState.storage.put(storeOffset, valueVar);
-					}
-					else {
-						// write to unknown location: clear whole storage
-						programState.polluteStorage(valueVar);
-					}
-				}
-				// handle memory writes
-				else if (instruction instanceof MStore) {
-					Variable memOffsetVar = instruction.getInput()[0];
-					Variable valueVar = instruction.getInput()[1];
-					if (memOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(memOffsetVar.getConstantValue());
-						programState.heap.put(memOffset, valueVar);
-						programState.updateMsize(memOffset);
-						// clear memory that may overlap with the new variable
-						//for (int i = 1; i < 32; ++i) {
-						//	BigInteger invalidatedMemOffset = memOffset.subtract(BigInteger.valueOf(i));
-						//	programState.heap.remove(invalidatedMemOffset);
-						//}
-					}
-					else {
-						// write to unknown location: clear whole memory
-						// TODO: keep entry at 0x40? since that is the memory index root? (applies to all global wipes)
-						programState.polluteMemory(valueVar);
-					}
-				}
-				else if (instruction instanceof MStore8) {
-					Variable memOffsetVar = instruction.getInput()[0];
-					Variable valueVar = instruction.getInput()[1];
-					if (memOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(memOffsetVar.getConstantValue());
-						programState.heap.put(memOffset, valueVar);
-						programState.updateMsize(memOffset.subtract(BigInteger.valueOf(31)));
-						// don't write variable to memory, but wipe out any other affected variable // nope
-						//for (int i = 0; i < 32; ++i) {
-						//	BigInteger invalidatedMemOffset = memOffset.subtract(BigInteger.valueOf(i));
-						//	programState.heap.remove(invalidatedMemOffset);
-						//}
-					}
-					else {
-						// write to unknown location: clear whole memory
-						programState.polluteMemory(valueVar);
-					}
-				}
-				else if (instruction instanceof Call || instruction instanceof StaticCall) {
-					Variable memOffsetVar;
-					Variable memLenVar;
-					if (instruction instanceof Call) {
-						memOffsetVar = instruction.getInput()[5];
-						memLenVar = instruction.getInput()[6];
-					} else {
-					    assert instruction instanceof StaticCall;
-						memOffsetVar = instruction.getInput()[4];
-						memLenVar = instruction.getInput()[5];
-					}
-					if (memLenVar.hasConstantValue() && BigIntUtil.fromInt256(memLenVar.getConstantValue()).equals(BigInteger.ZERO)) {
-						// zero-length target memory
-					}
-					else if (memOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(memOffsetVar.getConstantValue());
-						BigInteger memRangeStart = memOffset;
-						BigInteger memRangeEnd = memLenVar.hasConstantValue() ?
-												 BigIntUtil.fromInt256(memLenVar.getConstantValue()).subtract(memOffset) : null;
-
-						// clear memory that may overlap with the call result
-						programState.heap.entrySet().removeIf(entry -> {
-							// TODO: may store new variables with "call" type instead of just wiping the area
-							BigInteger offset = entry.getKey();
-							return (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0));
-						});
-					}
-					else {
-						// write to unknown location: clear whole memory
-						Variable pollution = new Variable();
-						pollution.addValueType(Variable.TYPE_ANY);
-						programState.polluteMemory(pollution); // TODO: pollute with what?
-					}
-				}
+		metrics.merge("constantPropagation.blockVisits", blockVisits, Long::sum);
+		metrics.merge("constantPropagation.loopHeaders", loopHeaders, Long::sum);
 
-				// check if any input variable depends on an unprocessed instructions
-				// in that case we can't know the output values
-				boolean foundUnprocessedDependency = false;
-				out: for (Variable input : instruction.getInput()) {
-					// search all instructions that have this variable as an output.
-					// if an instruction has not been processed (i.e. !processedInstructions.contains(instruction)),
-					// then we set the output of the instruction being currently processed to ANY
-					Queue<Instruction> backtrackBranchesToProcess = new LinkedList<>();
-					Set<Instruction> backtrackProcessedInstructions = new HashSet<>();
-
-					Instruction prevInstr = instruction.getPrev();
-					while (prevInstr != null || (prevInstr = backtrackBranchesToProcess.poll()) != null) {
-						if (backtrackProcessedInstructions.contains(prevInstr)) {
-							prevInstr = null;
-							continue;
-						}
-						backtrackProcessedInstructions.add(prevInstr);
-
-						boolean ioMatch = Arrays.stream(prevInstr.getOutput()).anyMatch(outputVar -> outputVar == input);
-						if (ioMatch) {
-							if (!processedInstructions.contains(prevInstr)) {
-								// unprocessed dependency -> set output to ANY
-								foundUnprocessedDependency = true;
-								break out;
-							}
-							prevInstr = null;
-							continue;
-						}
+		return instructions;
+	}
 
-						if (prevInstr instanceof JumpDest && !(prevInstr instanceof _VirtualInstruction)) {
-							backtrackBranchesToProcess.addAll(((JumpDest) prevInstr).getIncomingBranches());
-						}
 
-						prevInstr = prevInstr.getPrev();
-					}
+	private static void forkProgramState(ProgramState programState, Instruction dest,
+										 Map<Instruction, ProgramState> canonicalProgramStates,
+										 Set<Instruction> processedInstructions) {
+		if (processedInstructions.contains(dest)) {
+			// loop back edge, the loop header has already been visited
+			return;
+		}
+		ProgramState destProgramState = canonicalProgramStates.get(dest);
+		if (destProgramState == null) {
+			canonicalProgramStates.put(dest, new ProgramState(programState));
+		}
+		else {
+			destProgramState.merge(programState);
+		}
+	}
+
+
+	/**
+	 * @return true if the instruction can be executed but has not been processed yet.
+	 */
+	private static boolean isUnprocessed(Instruction instruction, Set<Instruction> processedInstructions,
+										 ControlFlowGraph controlFlowGraph) {
+		return instruction != null && instruction.getBasicBlock() != null
+				&& controlFlowGraph.isReachable(instruction.getBasicBlock())
+				&& !processedInstructions.contains(instruction);
+	}
+
+
+	private static void processInstruction(Instruction instruction, ProgramState programState,
+										   Set<Instruction> processedInstructions,
+										   ControlFlowGraph controlFlowGraph) {
+		// handle storage writes
+		if (instruction instanceof SStore) {
+			Variable storeOffsetVar = instruction.getInput()[0];
+			Variable valueVar = instruction.getInput()[1];
+			if (storeOffsetVar.hasConstantValue()) {
+				UInt256 storeOffset = storeOffsetVar.getConstantValue();
+				programState.storage = programState.storage.put(storeOffset, valueVar);
+			}
+			else {
+				// write to unknown location: clear whole storage
+				programState.polluteStorage(valueVar);
+			}
+		}
+		// handle memory writes
+		else if (instruction instanceof MStore) {
+			Variable memOffsetVar = instruction.getInput()[0];
+			Variable valueVar = instruction.getInput()[1];
+			if (memOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = memOffsetVar.getConstantValue();
+				programState.heap = programState.heap.put(memOffset, valueVar);
+				programState.updateMsize(memOffset.add(WORD_SIZE));
+				// clear memory that may overlap with the new variable
+				//for (int i = 1; i < 32; ++i) {
+				//	UInt256 invalidatedMemOffset = memOffset.subtract(UInt256.valueOf(i));
+				//	programState.heap.remove(invalidatedMemOffset);
+				//}
+			}
+			else {
+				// write to unknown location: clear whole memory
+				// TODO: keep entry at 0x40? since that is the memory index root? (applies to all global wipes)
+				programState.polluteMemory(valueVar);
+			}
+		}
+		else if (instruction instanceof MStore8) {
+			Variable memOffsetVar = instruction.getInput()[0];
+			Variable valueVar = instruction.getInput()[1];
+			if (memOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = memOffsetVar.getConstantValue();
+				programState.heap = programState.heap.put(memOffset, valueVar);
+				programState.updateMsize(memOffset.add(UInt256.ONE));
+				// don't write variable to memory, but wipe out any other affected variable // nope
+				//for (int i = 0; i < 32; ++i) {
+				//	UInt256 invalidatedMemOffset = memOffset.subtract(UInt256.valueOf(i));
+				//	programState.heap.remove(invalidatedMemOffset);
+				//}
+			}
+			else {
+				// write to unknown location: clear whole memory
+				programState.polluteMemory(valueVar);
+			}
+		}
+		else if (instruction instanceof Call || instruction instanceof StaticCall) {
+			Variable memOffsetVar;
+			Variable memLenVar;
+			if (instruction instanceof Call) {
+				memOffsetVar = instruction.getInput()[5];
+				memLenVar = instruction.getInput()[6];
+			} else {
+			    assert instruction instanceof StaticCall;
+				memOffsetVar = instruction.getInput()[4];
+				memLenVar = instruction.getInput()[5];
+			}
+			if (memLenVar.hasConstantValue() && memLenVar.getConstantValue().isZero()) {
+				// zero-length target memory
+			}
+			else if (memOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = memOffsetVar.getConstantValue();
+				UInt256 memRangeStart = memOffset;
+				UInt256 memRangeEnd = memLenVar.hasConstantValue() ?
+									  subtractOrZero(memLenVar.getConstantValue(), memOffset) : null;
+
+				// clear memory that may overlap with the call result
+				programState.heap = programState.heap.removeIf((offset, variable) -> {
+					// TODO: may store new variables with "call" type instead of just wiping the area
+					return (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0));
+				});
+			}
+			else {
+				// write to unknown location: clear whole memory
+				Variable pollution = new Variable();
+				pollution.addValueType(Variable.TYPE_ANY);
+				programState.polluteMemory(pollution); // TODO: pollute with what?
+			}
+		}
+
+		// check if any input variable depends on an unprocessed instructions
+		// in that case we can't know the output values
+		boolean foundUnprocessedDependency = false;
+		out: for (Variable input : instruction.getInput()) {
+			// search all instructions that have this variable as an output.
+			// if a reachable instruction has not been processed yet (i.e. it is in a loop body),
+			// then we set the output of the instruction being currently processed to ANY
+			Queue<Instruction> backtrackBranchesToProcess = new LinkedList<>();
+			Set<Instruction> backtrackProcessedInstructions = new HashSet<>();
+
+			Instruction prevInstr = instruction.getPrev();
+			while (prevInstr != null || (prevInstr = backtrackBranchesToProcess.poll()) != null) {
+				if (backtrackProcessedInstructions.contains(prevInstr)) {
+					prevInstr = null;
+					continue;
 				}
-				if (foundUnprocessedDependency) {
-					for (Variable outputVar : instruction.getOutput()) {
-						outputVar.setConstantValue(Variable.VALUE_ANY);
+				backtrackProcessedInstructions.add(prevInstr);
+
+				boolean ioMatch = Arrays.stream(prevInstr.getOutput()).anyMatch(outputVar -> outputVar == input);
+				if (ioMatch) {
+					if (isUnprocessed(prevInstr, processedInstructions, controlFlowGraph)) {
+						// unprocessed dependency -> set output to ANY
+						foundUnprocessedDependency = true;
+						break out;
 					}
-					// TODO: pollute result types (with what?)
+					prevInstr = null;
+					continue;
 				}
-				else {
-					// if all ok, compute a constant value
-					instruction.computeResultValues();
-					instruction.computeResultTypes();
+
+				if (prevInstr instanceof JumpDest && !(prevInstr instanceof _VirtualInstruction)) {
+					backtrackBranchesToProcess.addAll(((JumpDest) prevInstr).getIncomingBranches());
 				}
 
-				// handle memory reads
-				if (instruction instanceof MLoad) {
-					Variable memOffsetVar = instruction.getInput()[0];
-					if (memOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(memOffsetVar.getConstantValue());
-						Variable valueVar = programState.heap.get(memOffset);
-						if (valueVar != null) {
-							if (valueVar.hasConstantValue()) {
-								// copy constant value over to output variable
-								instruction.getOutput()[0].setConstantValue(valueVar.getConstantValue());
-							}
-							else {
-								instruction.addMemoryInput(valueVar);
-								instruction.getOutput()[0].addValueTypes(valueVar.getValueTypes());
-							}
-						}
+				prevInstr = prevInstr.getPrev();
+			}
+		}
+		if (foundUnprocessedDependency) {
+			for (Variable outputVar : instruction.getOutput()) {
+				outputVar.setConstantValueAny();
+			}
+			// TODO: pollute result types (with what?)
+		}
+		else {
+			// if all ok, compute a constant value
+			instruction.computeResultValues();
+			instruction.computeResultTypes();
+		}
+
+		// handle memory reads
+		if (instruction instanceof MLoad) {
+			Variable memOffsetVar = instruction.getInput()[0];
+			if (memOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = memOffsetVar.getConstantValue();
+				Variable valueVar = programState.heap.get(memOffset);
+				if (valueVar != null) {
+					if (valueVar.hasConstantValue()) {
+						// copy constant value over to output variable
+						instruction.getOutput()[0].setConstantValue(valueVar.getConstantValue());
 					}
 					else {
-						// unknown location: add all variables in memory as possible dependencies
-						Instruction finalInstruction = instruction;
-						programState.heap.forEach((offset, variable) -> {
-							finalInstruction.addMemoryInput(variable);
-							finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
-						});
-					}
-					// include pollution
-					for (Variable pollutingVar : programState.heapPollution) {
-						instruction.addMemoryInput(pollutingVar);
-						instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
+						instruction.addMemoryInput(valueVar);
+						instruction.getOutput()[0].addValueTypes(valueVar.getValueTypes());
 					}
 				}
-				// handle memory access by sha3
-				else if (instruction instanceof Sha3) {
-					Variable memOffsetVar = instruction.getInput()[0];
-					if (memOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(memOffsetVar.getConstantValue());
-
-						Variable memLengthVar = instruction.getInput()[1];
-						BigInteger memRangeEnd;
-						if (memLengthVar.hasConstantValue()) {
-							BigInteger memLength = BigIntUtil.fromInt256(memLengthVar.getConstantValue());
-							memRangeEnd = memOffset.add(memLength);
-						}
-						else {
-							memRangeEnd = null;
-						}
-						BigInteger memRangeStart = memOffset.subtract(BigInteger.valueOf(31));
+			}
+			else {
+				// unknown location: add all variables in memory as possible dependencies
+				Instruction finalInstruction = instruction;
+				programState.heap.forEach((offset, variable) -> {
+					finalInstruction.addMemoryInput(variable);
+					finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
+				});
+			}
+			// include pollution
+			for (Variable pollutingVar : programState.heapPollution) {
+				instruction.addMemoryInput(pollutingVar);
+				instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
+			}
+		}
+		// handle memory access by sha3
+		else if (instruction instanceof Sha3) {
+			Variable memOffsetVar = instruction.getInput()[0];
+			if (memOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = memOffsetVar.getConstantValue();
+
+				Variable memLengthVar = instruction.getInput()[1];
+				UInt256 memRangeEnd;
+				if (memLengthVar.hasConstantValue()) {
+					UInt256 memLength = memLengthVar.getConstantValue();
+					memRangeEnd = rangeEnd(memOffset, memLength);
+				}
+				else {
+					memRangeEnd = null;
+				}
+				UInt256 memRangeStart = subtractOrZero(memOffset, WORD_SIZE.subtract(UInt256.ONE));
 
-						Instruction finalInstruction = instruction;
-						programState.heap.forEach((offset, variable) -> {
-							if (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0)) {
-								finalInstruction.addMemoryInput(variable);
-								finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
-							}
-						});
-
-						boolean outputIsConstant = true;
-						MessageDigest digest;
-						try {
-							digest = MessageDigest.getInstance("SHA-256");
-							for (Variable inputVariable : finalInstruction.getMemoryInputs()) {
-								if (inputVariable.hasConstantValue()) {
-									digest.update(inputVariable.getConstantValue());
-									finalInstruction.getOutput()[0].addHashConstant(inputVariable.getConstantValue());
-								} else {
-									outputIsConstant = false;
-								}
-							}
-							if (outputIsConstant) {
-								finalInstruction.getOutput()[0].setConstantValue(digest.digest());
-							}
-						} catch (NoSuchAlgorithmException e) {
-							throw new RuntimeException("No SHA-256");
-						}
+				Instruction finalInstruction = instruction;
+				programState.heap.forEach((offset, variable) -> {
+					if (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0)) {
+						finalInstruction.addMemoryInput(variable);
+						finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
 					}
-					else {
-						// unknown location: add all variables in memory as possible dependencies
-						Instruction finalInstruction = instruction;
-						programState.heap.forEach((offset, variable) -> {
-							finalInstruction.addMemoryInput(variable);
-							finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
-						});
+				});
+
+				boolean outputIsConstant = true;
+				MessageDigest digest;
+				try {
+					digest = MessageDigest.getInstance("SHA-256");
+					for (Variable inputVariable : finalInstruction.getMemoryInputs()) {
+						if (inputVariable.hasConstantValue()) {
+							digest.update(inputVariable.getConstantValue().toBytes());
+							finalInstruction.getOutput()[0].addHashConstant(inputVariable.getConstantValue());
+						} else {
+							outputIsConstant = false;
+						}
 					}
-					// include pollution
-					for (Variable pollutingVar : programState.heapPollution) {
-						instruction.addMemoryInput(pollutingVar);
-						instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
+					if (outputIsConstant) {
+						finalInstruction.getOutput()[0].setConstantValue(UInt256.fromBytes(digest.digest()));
 					}
+				} catch (NoSuchAlgorithmException e) {
+					throw new RuntimeException("No SHA-256");
 				}
-				// handle memory read access by call
-				else if ((instruction instanceof Call) || (instruction instanceof StaticCall)) {
-					Variable inputMemLengthVar = null;
-					Variable inputMemOffsetVar = null;
-					if (instruction instanceof Call) {
-						inputMemOffsetVar = instruction.getInput()[3];
-						inputMemLengthVar = instruction.getInput()[4];
-					} else if(instruction instanceof StaticCall) {
-						inputMemOffsetVar = instruction.getInput()[2];
-						inputMemLengthVar = instruction.getInput()[3];
-					}
+			}
+			else {
+				// unknown location: add all variables in memory as possible dependencies
+				Instruction finalInstruction = instruction;
+				programState.heap.forEach((offset, variable) -> {
+					finalInstruction.addMemoryInput(variable);
+					finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
+				});
+			}
+			// include pollution
+			for (Variable pollutingVar : programState.heapPollution) {
+				instruction.addMemoryInput(pollutingVar);
+				instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
+			}
+		}
+		// handle memory read access by call
+		else if ((instruction instanceof Call) || (instruction instanceof StaticCall)) {
+			Variable inputMemLengthVar = null;
+			Variable inputMemOffsetVar = null;
+			if (instruction instanceof Call) {
+				inputMemOffsetVar = instruction.getInput()[3];
+				inputMemLengthVar = instruction.getInput()[4];
+			} else if(instruction instanceof StaticCall) {
+				inputMemOffsetVar = instruction.getInput()[2];
+				inputMemLengthVar = instruction.getInput()[3];
+			}
 
-					if (inputMemLengthVar.hasConstantValue() && BigIntUtil.fromInt256(inputMemLengthVar.getConstantValue()).equals(BigInteger.ZERO)) {
-						// zero-length target memory
-					}
-					else if (inputMemOffsetVar.hasConstantValue()) {
-						BigInteger memOffset = BigIntUtil.fromInt256(inputMemOffsetVar.getConstantValue());
+			if (inputMemLengthVar.hasConstantValue() && inputMemLengthVar.getConstantValue().isZero()) {
+				// zero-length target memory
+			}
+			else if (inputMemOffsetVar.hasConstantValue()) {
+				UInt256 memOffset = inputMemOffsetVar.getConstantValue();
 
-						BigInteger memRangeEnd;
-						if (inputMemLengthVar.hasConstantValue()) {
-							BigInteger memLength = BigIntUtil.fromInt256(inputMemLengthVar.getConstantValue());
-							memRangeEnd = memOffset.add(memLength);
-						}
-						else {
-							memRangeEnd = null;
-						}
-						BigInteger memRangeStart = memOffset.subtract(BigInteger.valueOf(31));
+				UInt256 memRangeEnd;
+				if (inputMemLengthVar.hasConstantValue()) {
+					UInt256 memLength = inputMemLengthVar.getConstantValue();
+					memRangeEnd = rangeEnd(memOffset, memLength);
+				}
+				else {
+					memRangeEnd = null;
+				}
+				UInt256 memRangeStart = subtractOrZero(memOffset, WORD_SIZE.subtract(UInt256.ONE));
 
-						Instruction instructionF = instruction;
-						programState.heap.forEach((offset, variable) -> {
-							if (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0)) {
-								instructionF.addMemoryInput(variable);
-							}
-						});
-					}
-					else {
-						// could be anything, independent of our local memory state
+				Instruction instructionF = instruction;
+				programState.heap.forEach((offset, variable) -> {
+					if (memRangeStart.compareTo(offset) <= 0 && (memRangeEnd == null || offset.compareTo(memRangeEnd) < 0)) {
+						instructionF.addMemoryInput(variable);
 					}
-				}
-				// handle storage reads
-				else if (instruction instanceof SLoad) {
-					Variable storeOffsetVar = instruction.getInput()[0];
-					if (storeOffsetVar.hasConstantValue()) {
-						BigInteger storeOffset = BigIntUtil.fromInt256(storeOffsetVar.getConstantValue());
-						Variable valueVar = programState.storage.get(storeOffset);
-						if (valueVar != null) {
-							if (valueVar.hasConstantValue()) {
-								// copy constant value over to output variable
-								instruction.getOutput()[0].setConstantValue(valueVar.getConstantValue());
-							}
-							else {
-								instruction.addMemoryInput(valueVar);
-								instruction.getOutput()[0].addValueTypes(valueVar.getValueTypes());
-							}
-						}
+				});
+			}
+			else {
+				// could be anything, independent of our local memory state
+			}
+		}
+		// handle storage reads
+		else if (instruction instanceof SLoad) {
+			Variable storeOffsetVar = instruction.getInput()[0];
+			if (storeOffsetVar.hasConstantValue()) {
+				UInt256 storeOffset = storeOffsetVar.getConstantValue();
+				Variable valueVar = programState.storage.get(storeOffset);
+				if (valueVar != null) {
+					if (valueVar.hasConstantValue()) {
+						// copy constant value over to output variable
+						instruction.getOutput()[0].setConstantValue(valueVar.getConstantValue());
 					}
 					else {
-						// unknown read location: load everything possible
-						Instruction finalInstruction = instruction;
-						programState.storage.forEach((offset, variable) -> {
-							finalInstruction.addMemoryInput(variable);
-							finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
-						});
-					}
-					// include pollution
-					for (Variable pollutingVar : programState.storagePollution) {
-						instruction.addMemoryInput(pollutingVar);
-						instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
-					}
-				}
-				// handle msize
-				else if (instruction instanceof MSize) {
-					if (programState.msize.signum() != -1) {
-						// copy heap size value
-						instruction.getOutput()[0].setConstantValue(BigIntUtil.toInt256(programState.msize));
+						instruction.addMemoryInput(valueVar);
+						instruction.getOutput()[0].addValueTypes(valueVar.getValueTypes());
 					}
 				}
+			}
+			else {
+				// unknown read location: load everything possible
+				Instruction finalInstruction = instruction;
+				programState.storage.forEach((offset, variable) -> {
+					finalInstruction.addMemoryInput(variable);
+					finalInstruction.getOutput()[0].addValueTypes(variable.getValueTypes());
+				});
+			}
+			// include pollution
+			for (Variable pollutingVar : programState.storagePollution) {
+				instruction.addMemoryInput(pollutingVar);
+				instruction.getOutput()[0].addValueTypes(pollutingVar.getValueTypes());
+			}
+		}
+		// handle msize
+		else if (instruction instanceof MSize) {
+			if (programState.msize != null) {
+				// copy heap size value
+				instruction.getOutput()[0].setConstantValue(programState.msize);
+			}
+		}
+	}
 
-				processedInstructions.add(instruction);
 
-				if (instruction instanceof BranchInstruction
-						&& !(instruction instanceof _VirtualMethodReturn)) {
-					BranchInstruction src = (BranchInstruction) instruction;
-					src.getOutgoingBranches().forEach(dest -> {
-						branchesToProcess.add(dest);
-						// fork & merge program state
-						ProgramState destProgramState = canonicalProgramStates.get(dest);
-						if (destProgramState == null) {
-							destProgramState = new ProgramState(programState);
-							canonicalProgramStates.put(dest, destProgramState);
-						}
-						else {
-							destProgramState.merge(programState);
-						}
-						if (dest instanceof _VirtualMethodHead) {
-							for (int i = 0; i < src.getInput().length; ++i) {
-								if (dest.getOutput()[i].getConstantValue() == Variable.VALUE_UNDEFINED) {
-									dest.getOutput()[i].setConstantValue(src.getInput()[i].getConstantValue());
-								}
-								else if (dest.getOutput()[i].hasConstantValue()) {
-									dest.getOutput()[i].setConstantValue(Variable.VALUE_ANY);
-								}
-								dest.getOutput()[i].addValueTypes(src.getInput()[i].getValueTypes());
-							}
-						}
-					});
-				}
-			} while ((instruction = instruction.getNext()) != null);
-		}
 
-		return instructions;
+	/**
+	 * @return a - b, or 0 if b is larger than a.
+	 */
+	private static UInt256 subtractOrZero(UInt256 a, UInt256 b) {
+		return a.compareTo(b) < 0 ? UInt256.ZERO : a.subtract(b);
+	}
+
+	/**
+	 * @return end of the memory range (exclusive), null if it exceeds the address space.
+	 */
+	private static UInt256 rangeEnd(UInt256 offset, UInt256 length) {
+		UInt256 end = offset.add(length);
+		return end.compareTo(offset) < 0 ? null : end;
 	}
 
 
+	/**
+	 * Memory and storage contents at a program point. Heap and storage are persistent maps, so that copying a
+	 * state is cheap and merging only visits the entries in which the states differ.
+	 */
 	private static class ProgramState {
-		/** heap size, according to msize(), -1 if unknown */
-		private BigInteger msize = BigInteger.ZERO;
+		/** heap size, according to msize(), null if unknown */
+		private UInt256 msize = UInt256.ZERO;
 		/** heap containing variables, byte indexed */
-		private Map<BigInteger, Variable> heap = new TreeMap<>();
+		private PersistentTreeMap<UInt256, Variable> heap = PersistentTreeMap.empty();
 		/** store containing variables, item indexed */
-		private Map<BigInteger, Variable> storage = new TreeMap<>();
+		private PersistentTreeMap<UInt256, Variable> storage = PersistentTreeMap.empty();
 
 		private Set<Variable> heapPollution = new HashSet<>();
 		private Set<Variable> storagePollution = new HashSet<>();
+		/** whether the pollution sets are shared with another state and must be copied before modification */
+		private boolean pollutionShared;
 
 		/**
 		 * Create new empty program state.
@@ -478,10 +513,19 @@ public class ConstantPropagation {
 		 */
 		protected ProgramState(ProgramState source) {
 			msize = source.msize;
-			heap.putAll(source.heap);
-			storage.putAll(source.storage);
-			heapPollution.addAll(source.heapPollution);
-			storagePollution.addAll(source.storagePollution);
+			heap = source.heap;
+			storage = source.storage;
+			heapPollution = source.heapPollution;
+			storagePollution = source.storagePollution;
+			pollutionShared = source.pollutionShared = true;
+		}
+
+		private void unsharePollution() {
+			if (pollutionShared) {
+				heapPollution = new HashSet<>(heapPollution);
+				storagePollution = new HashSet<>(storagePollution);
+				pollutionShared = false;
+			}
 		}
 
 		/**
@@ -490,49 +534,48 @@ public class ConstantPropagation {
 		 */
 		protected void merge(ProgramState other) {
 			// merge heap size, can keep only if both are the same
-			msize = msize.equals(other.msize) ? msize : BigInteger.valueOf(-1);
+			msize = msize != null && msize.equals(other.msize) ? msize : null;
 			// check for storage mismatch, remove entry on mismatch
-			other.storage.forEach((index, variable) -> {
-				if (storage.get(index) != variable) {
-					storage.remove(index);
-				}
-			});
-			// check for memory mismatch, remove entry on mismatch
-			Map<BigInteger, Variable> newHeap = new TreeMap<>();
-			other.heap.forEach((offset, variable) -> {
-				if (heap.get(offset) == variable) {
-					newHeap.put(offset, variable);
-				}
-			});
-			heap = newHeap;
-
-			heapPollution.addAll(other.heapPollution);
-			storagePollution.addAll(other.storagePollution);
+			storage = storage.removeConflicts(other.storage);
+			// check for memory mismatch, keep only entries present in both
+			heap = heap.intersection(other.heap);
+
+			if (!heapPollution.containsAll(other.heapPollution) || !storagePollution.containsAll(other.storagePollution)) {
+				unsharePollution();
+				heapPollution.addAll(other.heapPollution);
+				storagePollution.addAll(other.storagePollution);
+			}
 		}
 
-		protected void updateMsize(BigInteger writeOffset) {
-			if (msize.signum() == -1) {
+		/**
+		 * @param writeEnd end of the written memory range (exclusive)
+		 */
+		protected void updateMsize(UInt256 writeEnd) {
+			if (msize == null) {
 				return;
 			}
-			if (writeOffset.signum() == -1) {
-				msize = writeOffset.add(BigInteger.valueOf(32));
-			}
-			else {
-				msize = msize.max(writeOffset.add(BigInteger.valueOf(32)));
+			if (writeEnd.compareTo(msize) > 0) {
+				msize = writeEnd;
 			}
 		}
 
 		protected void clearMsize() {
-			msize = BigInteger.valueOf(-1);
+			msize = null;
 		}
 
 		protected void polluteMemory(Variable variable) {
 			clearMsize();
-			heapPollution.add(variable);
+			if (!heapPollution.contains(variable)) {
+				unsharePollution();
+				heapPollution.add(variable);
+			}
 		}
 
 		protected void polluteStorage(Variable variable) {
-			storagePollution.add(variable);
+			if (!storagePollution.contains(variable)) {
+				unsharePollution();
+				storagePollution.add(variable);
+			}
 		}
 	}
 
@@ -18,19 +18,21 @@
 
 package ch.securify.decompiler;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.printer.HexPrinter;
-import ch.securify.utils.ArrayUtil;
+import ch.securify.utils.Log;
 import ch.securify.utils.Resolver;
-import ch.securify.utils.StackUtil;
+import ch.securify.utils.UInt256;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 
-import java.io.PrintStream;
-import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,24 +40,23 @@ import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 public class ControlFlowDetector {
 
 
-	private static final byte[] DUMMY_DATA = new byte[0];
-
 	/** Exit branch */
 	public static final int DEST_ERROR = -1;
 	public static final int DEST_EXIT = -2;
 
-	private static final RichBranch BRANCH_ERROR = RichBranch.c(DEST_ERROR, new Stack<>());
-	private static final RichBranch BRANCH_EXIT = RichBranch.c(DEST_EXIT, new Stack<>());
+	private static final RichBranch BRANCH_ERROR = new RichBranch(DEST_ERROR, 0);
+	private static final RichBranch BRANCH_EXIT = new RichBranch(DEST_EXIT, 0);
+
 
+	private Log log;
 
-	private PrintStream log;
+	/** Abstract value stacks while computing the branches */
+	private InternedStacks stacks;
 
 
 	/** Control flow graph: branch point (opcode offset) -> possible jump targets & stack state */
@@ -75,13 +76,13 @@ public class ControlFlowDetector {
 	 * Create a control flow graph.
 	 * @param rawInstructions EVM instructions.
 	 */
-	public void computeBranches(RawInstruction[] rawInstructions, final PrintStream log) {
+	public void computeBranches(InstructionTable rawInstructions, final Log log) {
 		this.log = log;
 
 		richBranches = HashMultimap.create();
 		dummyBranches = HashMultimap.create();
 
-		computeBranches(rawInstructions, 0, false, new Stack<>());
+		computeBranches(rawInstructions);
 
 		// remove rich branch data
 		branches = HashMultimap.create();
@@ -122,40 +123,81 @@ public class ControlFlowDetector {
 	}
 
 
+	/**
+	 * Branch that still has to be executed.
+	 */
+	private static class PendingBranch {
+		private final int branchStartOffset;
+		private final boolean isLinearContinuedBranch;
+		private final InternedStacks.Node evmStack;
+
+		private PendingBranch(int branchStartOffset, boolean isLinearContinuedBranch, InternedStacks.Node evmStack) {
+			this.branchStartOffset = branchStartOffset;
+			this.isLinearContinuedBranch = isLinearContinuedBranch;
+			this.evmStack = evmStack;
+		}
+	}
+
+
 	/**
 	 * Partially executes the EVM code to map the jump instructions to potential targets,
 	 * such that a control flow graph can be created.
+	 * Branches are explored depth-first, jump targets before the local continuation of conditional jumps.
+	 * @param rawInstructions EVM instructions.
+	 */
+	private void computeBranches(InstructionTable rawInstructions) {
+		stacks = new InternedStacks();
+		int[] pushValueIds = new int[rawInstructions.length()];
+		Arrays.fill(pushValueIds, -1);
+
+		Deque<PendingBranch> worklist = new ArrayDeque<>();
+		worklist.push(new PendingBranch(0, false, stacks.empty()));
+		while (!worklist.isEmpty()) {
+			PendingBranch branch = worklist.pop();
+			computeBranch(rawInstructions, pushValueIds, branch.branchStartOffset, branch.isLinearContinuedBranch,
+					branch.evmStack, worklist);
+		}
+		stacks = null;
+	}
+
+
+	/**
+	 * Executes a single branch, up to the next jump or end of execution.
 	 * @param rawInstructions EVM instructions.
+	 * @param pushValueIds cache of the interned values pushed by PUSH instructions.
 	 * @param branchStartOffset bytecode offset to start execution from.
 	 * @param isLinearContinuedBranch whether this is a branch stared by a not-executed conditional jump.
 	 * @param evmStack current value stack.
+	 * @param worklist receives the branches to execute next.
 	 */
-	private void computeBranches(RawInstruction[] rawInstructions, int branchStartOffset, boolean isLinearContinuedBranch, Stack<byte[]> evmStack) {
-		for (int pc = branchStartOffset; ; pc = ArrayUtil.nextNonNullIndex(pc, rawInstructions)) {
-			final int opcode = rawInstructions[pc].opcode;
+	private void computeBranch(InstructionTable rawInstructions, int[] pushValueIds, int branchStartOffset,
+							   boolean isLinearContinuedBranch, InternedStacks.Node evmStack, Deque<PendingBranch> worklist) {
+		for (int pc = branchStartOffset; ; pc = rawInstructions.next(pc)) {
+			final int opcode = rawInstructions.getOpcode(pc);
 
 			if (opcode == OpCodes.JUMP) {
-				byte[] item = evmStack.pop();
+				byte[] item = stacks.getValue(stacks.peek(evmStack, 0));
+				evmStack = stacks.pop(evmStack, 1);
 				//if (item == DUMMY_DATA) throw new AssumptionViolatedException("dynamic jump");
-				int jumpdestOffset = new BigInteger(1, item).intValue();
+				int jumpdestOffset = UInt256.fromBytes(item).intValue();
 
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 
-				RichBranch targetBranch = RichBranch.c(jumpdestOffset, evmStack);
+				RichBranch targetBranch = richBranch(jumpdestOffset, evmStack);
 
 				boolean alreadyVisitedDestBranch = richBranches.containsEntry(pc, targetBranch);
 				if (!alreadyVisitedDestBranch) {
-					if (rawInstructions[jumpdestOffset].opcode == OpCodes.JUMPDEST) {
+					if (rawInstructions.getOpcode(jumpdestOffset) == OpCodes.JUMPDEST) {
 						richBranches.put(pc, targetBranch);
-						Stack<byte[]> branchedStack = StackUtil.copyStack(evmStack);
-						computeBranches(rawInstructions, jumpdestOffset, false, branchedStack);
+						worklist.push(new PendingBranch(jumpdestOffset, false, evmStack));
 					}
 					else {
 						// this is basically a jump to the exception handler of the EVM
 						richBranches.put(pc, BRANCH_ERROR);
 						if (jumpdestOffset != 0) {
-							log.println("computeBranches(): invalid jump destination " + HexPrinter.toHex(jumpdestOffset) +
-									", jumping from " + HexPrinter.toHex(pc));
+							final int jumpOffset = pc;
+							log.debug(() -> "computeBranches(): invalid jump destination " + HexPrinter.toHex(jumpdestOffset) +
+									", jumping from " + HexPrinter.toHex(jumpOffset));
 						}
 					}
 				}
@@ -163,93 +205,93 @@ public class ControlFlowDetector {
 				return;
 			}
 			else if (opcode == OpCodes.JUMPI) {
-				byte[] item = evmStack.pop();
+				byte[] item = stacks.getValue(stacks.peek(evmStack, 0));
 				//if (item == DUMMY_DATA) throw new AssumptionViolatedException("dynamic jump");
-				int jumpdestOffset = new BigInteger(1, item).intValue();
-				evmStack.pop(); // pop branch condition value
+				int jumpdestOffset = UInt256.fromBytes(item).intValue();
+				evmStack = stacks.pop(evmStack, 2); // pop branch condition value
 
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 
-				RichBranch targetBranch = RichBranch.c(jumpdestOffset, evmStack);
-				RichBranch localBranch = RichBranch.c(pc + 1, evmStack);
+				RichBranch targetBranch = richBranch(jumpdestOffset, evmStack);
+				RichBranch localBranch = richBranch(pc + 1, evmStack);
 
 				boolean alreadyVisitedDestBranch = richBranches.containsEntry(pc, targetBranch);
 				boolean alreadyVisitedLocalBranch = richBranches.containsEntry(pc, localBranch);
 
 				richBranches.put(pc, localBranch);
 
-				if (rawInstructions[pc + 1].opcode != OpCodes.JUMPDEST) {
+				if (rawInstructions.getOpcode(pc + 1) != OpCodes.JUMPDEST) {
 					// only add a dummy branch if the local target is not a jumpdest
 					dummyBranches.put(pc, pc + 1);
 				}
 
+				// continue on current branch, after the other branch has been explored
+				if (!alreadyVisitedLocalBranch) {
+					worklist.push(new PendingBranch(pc + 1, true, evmStack));
+				}
+
 				// go to other branch
 				if (!alreadyVisitedDestBranch) {
-					if (rawInstructions[jumpdestOffset].opcode == OpCodes.JUMPDEST) {
+					if (rawInstructions.getOpcode(jumpdestOffset) == OpCodes.JUMPDEST) {
 						// track branching branch
 						richBranches.put(pc, targetBranch);
-						Stack<byte[]> branchedStack = StackUtil.copyStack(evmStack);
-						computeBranches(rawInstructions, jumpdestOffset, false, branchedStack);
+						worklist.push(new PendingBranch(jumpdestOffset, false, evmStack));
 					}
 					else {
 						// this is basically a jump to the exception handler of the EVM
 						richBranches.put(pc, BRANCH_ERROR);
 						if (jumpdestOffset != 0) {
-							log.println("computeBranches(): invalid jump destination " + HexPrinter.toHex(jumpdestOffset) +
-									", jumping from " + HexPrinter.toHex(pc));
+							final int jumpOffset = pc;
+							log.debug(() -> "computeBranches(): invalid jump destination " + HexPrinter.toHex(jumpdestOffset) +
+									", jumping from " + HexPrinter.toHex(jumpOffset));
 						}
 					}
 				}
 
-				// continue on current branch
-				if (!alreadyVisitedLocalBranch) {
-					Stack<byte[]> branchedStack = StackUtil.copyStack(evmStack);
-					computeBranches(rawInstructions, pc + 1, true, branchedStack);
-				}
-
 				return;
 			}
 			else if (opcode == OpCodes.STOP) {
 				// end of execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				richBranches.put(pc, BRANCH_EXIT);
 				return;
 			}
 			else if (opcode == OpCodes.RETURN) {
 				// end of execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				richBranches.put(pc, BRANCH_EXIT);
 				return;
 			}
 			else if (opcode == OpCodes.REVERT) {
 				// end of execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				richBranches.put(pc, BRANCH_ERROR);
 				return;
 			}
 			else if (opcode == OpCodes.SELFDESTRUCT) {
 				// end of execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				richBranches.put(pc, BRANCH_EXIT);
 				return;
 			}
 			else if (OpCodes.isInvalid(opcode)) {
 				// end of execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				richBranches.put(pc, BRANCH_ERROR);
 				return;
 			}
 			else if (opcode == OpCodes.JUMPDEST && (pc != branchStartOffset || isLinearContinuedBranch)) {
 				// jumpdest in the middle of linear execution, possible incoming branch
 				// add intermediate branch node, but continue with local execution
-				addExecutionBranch(branchStartOffset, RichBranch.c(pc, evmStack));
+				addExecutionBranch(branchStartOffset, richBranch(pc, evmStack));
 				branchStartOffset = pc; // "new" current branch starting at current PC
 				continue;
 			}
 			else if ((opcode == OpCodes.AND)) {
 				// Compute the AND operation on the top two elements of the stack
-				byte[] first = evmStack.pop();
-				byte[] second = evmStack.pop();
+				byte[] first = stacks.getValue(stacks.peek(evmStack, 0));
+				byte[] second = stacks.getValue(stacks.peek(evmStack, 1));
+				evmStack = stacks.pop(evmStack, 2);
 				int resultLength = Math.max(first.length, second.length);
 				byte[] result = new byte[resultLength];
 				for (int idx = 0; idx < result.length; idx++) {
@@ -259,43 +301,45 @@ public class ControlFlowDetector {
 					byte secondByte = secondIdx >= 0 ? second[secondIdx] : (byte)0;
 					result[idx] = (byte) (firstByte & secondByte);
 				}
-				evmStack.push(result);
+				evmStack = stacks.push(evmStack, stacks.intern(result));
 				continue;
 			}
 
 			// pop items according to current instruction
-			for (int i = OpCodes.getPopCount(opcode); i > 0; --i) {
-				evmStack.pop();
-			}
+			evmStack = stacks.pop(evmStack, OpCodes.getPopCount(opcode));
 
 			// push new items according to current instruction
 			int stackIndex;
 			if (OpCodes.isPush(opcode) > -1) {
 				// push exact value
-				evmStack.push(rawInstructions[pc].data);
+				if (pushValueIds[pc] < 0) {
+					pushValueIds[pc] = stacks.intern(rawInstructions.get(pc).data);
+				}
+				evmStack = stacks.push(evmStack, pushValueIds[pc]);
 			}
 			else if ((stackIndex = OpCodes.isDup(opcode)) > -1) {
 				// push exact value
-				evmStack.push(evmStack.get(evmStack.size() - stackIndex - 1));
+				evmStack = stacks.push(evmStack, stacks.peek(evmStack, stackIndex));
 			}
 			else if ((stackIndex = OpCodes.isSwap(opcode)) > -1) {
 				// swap values
-				int stackIndexBtm = evmStack.size() - stackIndex - 1;
-				byte[] otherVal = evmStack.get(stackIndexBtm);
-				byte[] topVal = evmStack.pop();
-				evmStack.push(otherVal);
-				evmStack.set(stackIndexBtm, topVal);
+				evmStack = stacks.swap(evmStack, stackIndex);
 			}
 			else {
 				for (int i = OpCodes.getPushCount(opcode); i > 0; --i) {
 					// push dummy value
-					evmStack.push(DUMMY_DATA);
+					evmStack = stacks.push(evmStack, InternedStacks.UNKNOWN);
 				}
 			}
 		}
 	}
 
 
+	private RichBranch richBranch(int jumpDest, InternedStacks.Node evmStack) {
+		return new RichBranch(jumpDest, stacks.window(evmStack).id);
+	}
+
+
 	private void addExecutionBranch(int branchStartOffset, RichBranch outgoingJumpOffset) {
 		if (branchStartOffset != outgoingJumpOffset.jumpDest) {
 			// put in local linear execution (i.e. edge from incoming jump to outgoing jump) into the flow
@@ -395,12 +439,12 @@ public class ControlFlowDetector {
 	 * @param offset bytecode offset of the jump instruction.
 	 * @return true if the jump is a method return.
 	 */
-	public static boolean isJumpMethodReturn(int offset, RawInstruction[] rawInstructions) {
-		if (rawInstructions[offset].opcode != OpCodes.JUMP)
+	public static boolean isJumpMethodReturn(int offset, InstructionTable rawInstructions) {
+		if (rawInstructions.getOpcode(offset) != OpCodes.JUMP)
 			throw new IllegalArgumentException("Instruction at offset is no JUMP");
 
 		// assumption: a JUMP is a method return iff he instruction just before is not a PUSH
-		RawInstruction prevInstruction = ArrayUtil.prevNonNullItem(offset, rawInstructions);
+		RawInstruction prevInstruction = rawInstructions.prevItem(offset);
 		return OpCodes.isPush(prevInstruction.opcode) == -1;
 	}
 
@@ -437,16 +481,17 @@ public class ControlFlowDetector {
 
 	private static class RichBranch {
 		private final int jumpDest;
-		private final String stackState;
+		/** id of the hash-consed top of the stack, see {@link InternedStacks#window} */
+		private final int stackState;
 
-		private RichBranch(int jumpDest, String stackState) {
+		private RichBranch(int jumpDest, int stackState) {
 			this.jumpDest = jumpDest;
 			this.stackState = stackState;
 		}
 
 		@Override
 		public int hashCode() {
-			return jumpDest ^ stackState.hashCode();
+			return jumpDest * 31 + stackState;
 		}
 
 		@Override
@@ -454,15 +499,7 @@ public class ControlFlowDetector {
 			if (!(obj instanceof RichBranch))
 				return false;
 			RichBranch other = (RichBranch) obj;
-			return jumpDest == other.jumpDest && stackState.equals(other.stackState);
-		}
-
-		private static RichBranch c(int jumpDest, Stack<byte[]> stack) {
-			return new RichBranch(jumpDest,
-					stack.stream()
-							.skip(Math.max(0, stack.size() - 20))
-							.map((item) -> item.length == 0 ? "?" : HexPrinter.toHex(item))
-							.collect(Collectors.joining(",")));
+			return jumpDest == other.jumpDest && stackState == other.stackState;
 		}
 	}
 
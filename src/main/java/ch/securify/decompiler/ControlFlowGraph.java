@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Basic-block graph of the decompiled instructions, built once after decompilation.
+ * Every instruction knows its block, see {@link Instruction#getBasicBlock()}.
+ */
+public class ControlFlowGraph {
+
+	private final List<BasicBlock> blocks;
+	private final BasicBlock entry;
+	private final int[] postOrder;
+	private final List<BasicBlock> reversePostOrder;
+	private final boolean[] reachable;
+
+
+	private ControlFlowGraph(List<BasicBlock> blocks) {
+		this.blocks = Collections.unmodifiableList(blocks);
+		this.entry = blocks.get(0);
+
+		int n = blocks.size();
+		int[][] successors = new int[n][];
+		for (BasicBlock block : blocks) {
+			successors[block.getId()] = ids(block.successors);
+		}
+		int[][] predecessors = invert(successors);
+		for (BasicBlock block : blocks) {
+			block.predecessors = blocks(predecessors[block.getId()]);
+		}
+
+		this.postOrder = postOrder(entry.getId(), successors);
+		this.reachable = new boolean[n];
+		List<BasicBlock> reversePostOrder = new ArrayList<>();
+		for (int i = postOrder.length - 1; i >= 0; i--) {
+			reachable[postOrder[i]] = true;
+			reversePostOrder.add(blocks.get(postOrder[i]));
+		}
+		this.reversePostOrder = Collections.unmodifiableList(reversePostOrder);
+	}
+
+
+	/**
+	 * Build the graph of all instructions in the given list and all instructions that are linked from them.
+	 * @param instructions decompiled instructions, starting with the entry point
+	 * @return the graph, whose blocks are also assigned to the instructions
+	 */
+	public static ControlFlowGraph build(List<Instruction> instructions) {
+		// collect the linked instructions, in the order of the list so that block ids follow the code layout
+		Set<Instruction> linkedInstructions = new LinkedHashSet<>(instructions);
+		Deque<Instruction> instructionsToProcess = new ArrayDeque<>(instructions);
+		while (!instructionsToProcess.isEmpty()) {
+			Instruction instruction = instructionsToProcess.poll();
+			for (Instruction target : getTargets(instruction)) {
+				if (linkedInstructions.add(target)) {
+					instructionsToProcess.add(target);
+				}
+			}
+		}
+
+		// a block starts at the entry, at jump destinations and wherever the linear flow is entered otherwise
+		Set<Instruction> leaders = new LinkedHashSet<>();
+		leaders.add(instructions.get(0));
+		for (Instruction instruction : linkedInstructions) {
+			if (instruction instanceof JumpDest || instruction.getPrev() == null || isBranch(instruction.getPrev())) {
+				leaders.add(instruction);
+			}
+			if (isBranch(instruction)) {
+				leaders.addAll(getTargets(instruction));
+			}
+		}
+
+		List<BasicBlock> blocks = new ArrayList<>();
+		for (Instruction leader : leaders) {
+			List<Instruction> blockInstructions = new ArrayList<>();
+			Instruction instruction = leader;
+			blockInstructions.add(instruction);
+			while (!isBranch(instruction) && instruction.getNext() != null && !leaders.contains(instruction.getNext())) {
+				instruction = instruction.getNext();
+				blockInstructions.add(instruction);
+			}
+			BasicBlock block = new BasicBlock(blocks.size(), blockInstructions);
+			blockInstructions.forEach(i -> i.setBasicBlock(block));
+			blocks.add(block);
+		}
+
+		for (BasicBlock block : blocks) {
+			List<Instruction> targets = getTargets(block.getLast());
+			block.successors = distinctBlocks(targets, 0, targets.size());
+			block.localSuccessors = block.endsWithMethodBranch()
+					? distinctBlocks(targets, block.getLast().getNext() != null ? targets.size() - 1 : targets.size(), targets.size())
+					: block.successors;
+		}
+
+		return new ControlFlowGraph(blocks);
+	}
+
+
+	/**
+	 * @return the jump destinations of the instruction followed by the next instruction, so that the linear flow
+	 * comes first in reverse post-order.
+	 */
+	private static List<Instruction> getTargets(Instruction instruction) {
+		List<Instruction> targets = new ArrayList<>();
+		if (instruction instanceof BranchInstruction) {
+			targets.addAll(((BranchInstruction) instruction).getOutgoingBranches());
+		}
+		if (instruction.getNext() != null) {
+			targets.add(instruction.getNext());
+		}
+		return targets;
+	}
+
+
+	private static boolean isBranch(Instruction instruction) {
+		return instruction instanceof BranchInstruction && !((BranchInstruction) instruction).getOutgoingBranches().isEmpty();
+	}
+
+
+	private static BasicBlock[] distinctBlocks(List<Instruction> targets, int from, int to) {
+		Set<BasicBlock> result = new LinkedHashSet<>();
+		for (int i = from; i < to; i++) {
+			result.add(targets.get(i).getBasicBlock());
+		}
+		return result.toArray(new BasicBlock[0]);
+	}
+
+
+	private static int[] ids(BasicBlock[] blocks) {
+		return Arrays.stream(blocks).mapToInt(BasicBlock::getId).toArray();
+	}
+
+
+	private BasicBlock[] blocks(int[] ids) {
+		return Arrays.stream(ids).mapToObj(blocks::get).toArray(BasicBlock[]::new);
+	}
+
+
+	private static int[][] invert(int[][] edges) {
+		int[] counts = new int[edges.length];
+		for (int[] targets : edges) {
+			for (int target : targets) {
+				counts[target]++;
+			}
+		}
+		int[][] inverted = new int[edges.length][];
+		for (int i = 0; i < edges.length; i++) {
+			inverted[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int source = 0; source < edges.length; source++) {
+			for (int target : edges[source]) {
+				inverted[target][counts[target]++] = source;
+			}
+		}
+		return inverted;
+	}
+
+
+	/**
+	 * @return nodes reachable from the root in depth-first post-order.
+	 */
+	private static int[] postOrder(int root, int[][] successors) {
+		int[] order = new int[successors.length];
+		int size = 0;
+		boolean[] visited = new boolean[successors.length];
+		int[] nodeStack = new int[successors.length];
+		int[] edgeStack = new int[successors.length];
+		int depth = 0;
+		visited[root] = true;
+		nodeStack[0] = root;
+		while (depth >= 0) {
+			int node = nodeStack[depth];
+			if (edgeStack[depth] < successors[node].length) {
+				int successor = successors[node][edgeStack[depth]++];
+				if (!visited[successor]) {
+					visited[successor] = true;
+					depth++;
+					nodeStack[depth] = successor;
+					edgeStack[depth] = 0;
+				}
+			}
+			else {
+				order[size++] = node;
+				depth--;
+			}
+		}
+		return Arrays.copyOf(order, size);
+	}
+
+
+	public List<BasicBlock> getBlocks() {
+		return blocks;
+	}
+
+
+	public BasicBlock getEntry() {
+		return entry;
+	}
+
+
+	/**
+	 * @return blocks reachable from the entry, in reverse post-order.
+	 */
+	public List<BasicBlock> getReversePostOrder() {
+		return reversePostOrder;
+	}
+
+
+	public boolean isReachable(BasicBlock block) {
+		return reachable[block.getId()];
+	}
+
+}
@@ -18,12 +18,9 @@
 
 package ch.securify.decompiler;
 
-import static ch.securify.utils.ArrayUtil.nextNonNullItem;
-import static ch.securify.utils.ArrayUtil.prevNonNullItem;
-
 import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -33,18 +30,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.EvmStack;
+import ch.securify.utils.Log;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.instructions.BranchInstruction;
@@ -62,70 +59,67 @@ import ch.securify.utils.ArrayUtil;
 
 public class Decompiler extends AbstractDecompiler {
 
-    private static PrintStream log;
-    private static final boolean DEBUG = false;
-
-	public static List<Instruction> decompile(final byte[] bytecode, final PrintStream _log) {
-        if (DEBUG)
-            log = _log;
-        else
-            log = new DevNullPrintStream();
-
-		// raw EVM instructions
-		RawInstruction[] rawInstructions = new RawInstruction[bytecode.length + 1];
-		/* Ordered list of bytecode offsets of JUMPDEST instructions. */
-		List<Integer> jumpDestinations = new ArrayList<>();
-
-		parseRawInstructions(bytecode, rawInstructions, jumpDestinations);
+	public static List<Instruction> decompile(final byte[] bytecode, final PrintStream log) {
+		return decompile(bytecode, Log.to(log, Log.Level.INFO));
+	}
 
-		BiMap<Integer, String> tags = findTags(log, jumpDestinations);
+	public static List<Instruction> decompile(final byte[] bytecode, final Log log) {
+		return decompile(ParsedContract.parse(bytecode, log), log);
+	}
 
-		ControlFlowDetector controlFlowDetector = new ControlFlowDetector();
-		/* Map bytecode offsets of JUMP/JUMPI instructions to known bytecode offsets of JUMPDEST instructions.
-		 * These are the edges of the control flow graph the correspond to explicit jumps.
-		 * assumption: there are no dynamic jumps that may have multiple jump targets. */
-		Multimap<Integer, Integer> mapJumpsToDests = HashMultimap.create();
 
-		Multimap<Integer, Integer> controlFlowGraph = dectectControlFlow(log, rawInstructions, jumpDestinations, tags,
-				controlFlowDetector, mapJumpsToDests);
+	/**
+	 * Decompile a contract whose bytecode has already been parsed.
+	 * @param contract parsed contract, not modified and may be shared with {@link DecompilerFallback}.
+	 * @param log receives the internals of the decompilation at debug level.
+	 */
+	public static List<Instruction> decompile(final ParsedContract contract, final Log log) {
+		final byte[] bytecode = contract.bytecode;
+		// raw EVM instructions
+		final InstructionTable rawInstructions = contract.rawInstructions;
+		// tags of methods are renamed below
+		final BiMap<Integer, String> tags = contract.copyTags();
+		final ControlFlowDetector controlFlowDetector = contract.controlFlowDetector;
+		final Multimap<Integer, Integer> mapJumpsToDests = contract.mapJumpsToDests;
+		final Multimap<Integer, Integer> controlFlowGraph = contract.controlFlowGraph;
 
 
 		// search jumpdests corresponding to methods' start
-		log.println();
-		log.println("Begin-of-methods:");
+		log.debug();
+		log.debug("Begin-of-methods:");
 		/* List of bytecode offsets that correspond to begin-of-methods. */
 		Map<Integer, MethodDetector.MethodInfo> methods = new HashMap<>();
 		{
 			Multimap<Integer, Integer> reversedBranches = controlFlowDetector.getBranchesReversed();
 			//noinspection ConstantConditions // suppress NPE warnings
-			Collection<MethodDetector.MethodInfo> methodInfos = IntStream.range(0, rawInstructions.length)
-					.filter(bco -> rawInstructions[bco] != null)
+			Collection<MethodDetector.MethodInfo> methodInfos = IntStream.range(0, rawInstructions.length())
+					.filter(bco -> rawInstructions.get(bco) != null)
 					// find all JUMPDEST instructions (i.e. method heads) ..
-					.filter(methodHead -> rawInstructions[methodHead].opcode == OpCodes.JUMPDEST)
+					.filter(methodHead -> rawInstructions.getOpcode(methodHead) == OpCodes.JUMPDEST)
 					// .. that are not dead code (i.e. are reachable) ..
 					.filter(reversedBranches::containsKey)
 					// .. and are only reached from JUMP instructions (i.e. method calls) ..
 					.filter(methodHead -> reversedBranches.get(methodHead).stream()
-							.allMatch(methodCall -> (rawInstructions[methodCall].opcode == OpCodes.JUMP)
+							.allMatch(methodCall -> (rawInstructions.getOpcode(methodCall) == OpCodes.JUMP)
 									// .. which are preceded by a PUSH instruction (i.e. are not return jumps) ..
-									&& OpCodes.isPush(prevNonNullItem(methodCall, rawInstructions).opcode) != -1
+									&& OpCodes.isPush(rawInstructions.prevItem(methodCall).opcode) != -1
 									// .. and are followed by a JUMPDEST (i.e. return destination) ..
 									// TODO: this doesn't hold apparently (see MetaGold example)
-									&& nextNonNullItem(methodCall, rawInstructions).opcode == OpCodes.JUMPDEST
+									&& rawInstructions.nextItem(methodCall).opcode == OpCodes.JUMPDEST
 									// .. that is not dead code ..
-									&& reversedBranches.containsKey(ArrayUtil.nextNonNullIndex(methodCall, rawInstructions))
-									&& reversedBranches.get(ArrayUtil.nextNonNullIndex(methodCall, rawInstructions)).stream()
+									&& reversedBranches.containsKey(rawInstructions.next(methodCall))
+									&& reversedBranches.get(rawInstructions.next(methodCall)).stream()
 											// .. and is only reachable by JUMP instructions (i.e. by method return) ..
-											.allMatch(methodReturn -> rawInstructions[methodReturn].opcode == OpCodes.JUMP
+											.allMatch(methodReturn -> rawInstructions.getOpcode(methodReturn) == OpCodes.JUMP
 													// .. which come after the method head [sanity check] ..
 													// TODO: check this with the CFG instead of bytecode positions ..
 													// TODO: .. might fix the callstack underflow problem,
 													// TODO: where we have a false-positive method return jump outside of a method
 													&& methodHead < methodReturn
 													// .. and do not jump directly to the next (return dest) instruction [sanity check] ..
-													&& methodHead != ArrayUtil.nextNonNullIndex(methodCall, rawInstructions)
+													&& methodHead != rawInstructions.next(methodCall)
 													// .. and are not preceded by a PUSH instruction (i.e. are return jumps).
-													&& OpCodes.isPush(prevNonNullItem(methodReturn, rawInstructions).opcode) == -1)))
+													&& OpCodes.isPush(rawInstructions.prevItem(methodReturn).opcode) == -1)))
 					// then collect them in a result set.
 					.mapToObj(MethodDetector.MethodInfo::new)
 					.sorted(Comparator.comparingInt(MethodDetector.MethodInfo::getHead))
@@ -139,7 +133,7 @@ public class Decompiler extends AbstractDecompiler {
 							.forEach(methodCall -> {
 								method.calls.add(methodCall);
 								// .. to find the method return destinations ..
-								int returnDest = ArrayUtil.nextNonNullIndex(methodCall, rawInstructions);
+								int returnDest = rawInstructions.next(methodCall);
 								method.returnDests.add(returnDest);
 								// find the method return instructions to save them
 								method.returns.addAll(reversedBranches.get(returnDest));
@@ -147,20 +141,20 @@ public class Decompiler extends AbstractDecompiler {
 
 			methodInfos.forEach(methodInfo -> methods.put(methodInfo.getHead(), methodInfo));
 
-			log.println("(" + methodInfos.size() + " methods total)");
+			log.debug(() -> "(" + methodInfos.size() + " methods total)");
 
 			methodInfos.forEach(methodInfo -> {
-				log.println("detected method @" + HexPrinter.toHex(methodInfo.head) + " (" + tags.get(methodInfo.head) + ")");
-				log.println("    returning from: " + HexPrinter.toHex(methodInfo.returns, ", "));
-				log.println("    called from:  " + HexPrinter.toHex(methodInfo.calls, ", "));
-				log.println("    returning to: " + HexPrinter.toHex(methodInfo.returnDests, ", "));
+				log.debug(() -> "detected method @" + HexPrinter.toHex(methodInfo.head) + " (" + tags.get(methodInfo.head) + ")");
+				log.debug(() -> "    returning from: " + HexPrinter.toHex(methodInfo.returns, ", "));
+				log.debug(() -> "    called from:  " + HexPrinter.toHex(methodInfo.calls, ", "));
+				log.debug(() -> "    returning to: " + HexPrinter.toHex(methodInfo.returnDests, ", "));
 			});
 		}
 
 
 		// get ABI method IDs
-		log.println();
-		log.println("ABI Method IDs:");
+		log.debug();
+		log.debug("ABI Method IDs:");
 		/* Map bytecode offsets of tags of branch starts to the corresponding method IDs and vice versa. */
 		BiMap<Integer, byte[]> branchBcoToAbiMethodId = HashBiMap.create();
 		{
@@ -173,9 +167,9 @@ public class Decompiler extends AbstractDecompiler {
 
 			// partial execution of first code block to get the stack variables
 			int endOfFirstBlock = 0;
-			Stack<Variable> stack = new Stack<>();
-			for (int offset = 0; offset < rawInstructions.length; offset = ArrayUtil.nextNonNullIndex(offset, rawInstructions)) {
-				RawInstruction rawInstruction = rawInstructions[offset];
+			EvmStack<Variable> stack = new EvmStack<>();
+			for (int offset = 0; offset < rawInstructions.length(); offset = rawInstructions.next(offset)) {
+				RawInstruction rawInstruction = rawInstructions.get(offset);
 
 				if (OpCodes.isInvalid(rawInstruction.opcode) || rawInstruction.opcode == OpCodes.JUMP
 						|| rawInstruction.opcode == OpCodes.JUMPI
@@ -215,11 +209,11 @@ public class Decompiler extends AbstractDecompiler {
 				}
 
 				// we have a conditional jump here, so search for a 4-byte push dependency to the ABI method ID
-				if (rawInstructions[offset].opcode == OpCodes.JUMPI) {
+				if (rawInstructions.getOpcode(offset) == OpCodes.JUMPI) {
 					// first call to method setup
 					byte[] methodId = findMethodId(instruction, 0);
 					if (methodId != null) {
-						Collection<Integer> branch = mapJumpsToDests.get(rawInstructions[offset].offset);
+						Collection<Integer> branch = mapJumpsToDests.get(rawInstructions.get(offset).offset);
 						assert branch.size() == 1;
 						branchBcoToAbiMethodId.put(branch.iterator().next(), methodId);
 					}
@@ -227,7 +221,7 @@ public class Decompiler extends AbstractDecompiler {
 			}
 
 			branchBcoToAbiMethodId.forEach((bco, methodId) ->
-					log.println(tags.get(bco) + " belongs to branch of ABI method ID " + HexPrinter.toHex(methodId)));
+					log.debug(() -> tags.get(bco) + " belongs to branch of ABI method ID " + HexPrinter.toHex(methodId)));
 		}
 
 
@@ -249,7 +243,7 @@ public class Decompiler extends AbstractDecompiler {
 				}
 
 				String methodLabel = _VirtualMethodHead.METHOD_NAME_PREFIX_ABI + HexPrinter.toHex(methodId);
-				log.println(tags.get(beginOfMethodBco) + " renamed to " + methodLabel);
+				log.debug(() -> tags.get(beginOfMethodBco) + " renamed to " + methodLabel);
 				// override tag name
 				tags.put(beginOfMethodBco, methodLabel);
 
@@ -260,7 +254,7 @@ public class Decompiler extends AbstractDecompiler {
 			methodHeads.forEach(methodHead -> {
 				if (!renamedMethodLabels.contains(methodHead)) {
 					String methodLabel = _VirtualMethodHead.METHOD_NAME_PREFIX_UNKNOWN + HexPrinter.toHex(methodHead);
-					log.println(tags.get(methodHead) + " renamed to " + methodLabel);
+					log.debug(() -> tags.get(methodHead) + " renamed to " + methodLabel);
 					// override tag name
 					tags.put(methodHead, methodLabel);
 					renamedMethodLabels.add(methodHead);
@@ -270,15 +264,15 @@ public class Decompiler extends AbstractDecompiler {
 
 
 		// print method signatures
-		log.println("Method signatures:");
-		methodHeads.forEach(methodHead -> log.println(tags.get(methodHead)
+		log.debug("Method signatures:");
+		methodHeads.forEach(methodHead -> log.debug(() -> tags.get(methodHead)
 				+ " (" + String.join(",", Collections.nCopies(methodDetector.getArgumentCountForMethod(methodHead), "a")) + ")"
 				+ " -> (" + String.join(",", Collections.nCopies(methodDetector.getReturnVarCountForMethod(methodHead), "r")) + ")"));
 
 
 		// Decompile the whole thing
-		log.println();
-		log.println("Decompiling...");
+		log.debug();
+		log.debug("Decompiling...");
 		{
 			Destacker destacker = new Destacker();
 
@@ -288,70 +282,51 @@ public class Decompiler extends AbstractDecompiler {
 
 			destacker.decompile(rawInstructions, instructionFactory, mapJumpsToDests, controlFlowGraph, methodDetector, log);
 
-			List<Instruction> decompiledInstructions = new LinkedList<>();
+			/* Instructions of each method, in the order of the method heads. */
+			List<List<Instruction>> methodBodies;
 
 			{
 				Instruction[] decompiledInstrs = destacker.getInstructions();
-				// group instructions by method
+				// group instructions by method, the methods are independent of each other
 				Collection<Integer> methodHeadsE = new TreeSet<>(methodHeads);
 				methodHeadsE.add(0);
-				methodHeadsE.forEach(methodHead -> {
-					Instruction methodEntry = decompiledInstrs[methodHead];
-
-					Queue<Instruction> branchesToProcess = new LinkedList<>();
-					branchesToProcess.add(methodEntry);
-					Set<Instruction> processedBranches = new HashSet<>();
-
-					while (!branchesToProcess.isEmpty()) {
-						Instruction instruction = branchesToProcess.poll();
-						if (processedBranches.contains(instruction)) {
-							// branch already processed
-							continue;
-						}
-						do {
-							if (instruction instanceof JumpDest) {
-								if (processedBranches.contains(instruction)) {
-									// reached merger through linear flow
-									break;
-								}
-								processedBranches.add(instruction);
-							}
-							decompiledInstructions.add(instruction);
-							if (instruction instanceof BranchInstruction &&
-									!(instruction instanceof _VirtualMethodReturn) &&
-									!(instruction instanceof _VirtualMethodInvoke)) {
-								branchesToProcess.addAll(((BranchInstruction) instruction).getOutgoingBranches());
-							}
-						} while ((instruction = instruction.getNext()) != null);
-					}
-				});
+				methodBodies = methodHeadsE.parallelStream()
+						.map(methodHead -> getMethodInstructions(decompiledInstrs[methodHead]))
+						.collect(Collectors.toList());
 			}
 
 			//System.out.println("RAW DEC");
 			//DecompilationPrinter.printInstructions(decompiledInstructions, System.out);
 
-			log.println("Remove unused instructions...");
+			log.debug("Remove unused instructions...");
 
-			// removing bytecode ops that have been noop'd (dup, swap, pop)
-			decompiledInstructions.removeIf(instruction -> {
-				if (instruction instanceof _NoOp) {
-					instruction.getPrev().setNext(instruction.getNext());
-					instruction.getNext().setPrev(instruction.getPrev());
-					return true;
-				}
-				return false;
-			});
+			for (List<Instruction> decompiledInstructions : methodBodies) {
+				// removing bytecode ops that have been noop'd (dup, swap, pop)
+				decompiledInstructions.removeIf(instruction -> {
+					if (instruction instanceof _NoOp) {
+						instruction.getPrev().setNext(instruction.getNext());
+						instruction.getNext().setPrev(instruction.getPrev());
+						return true;
+					}
+					return false;
+				});
+			}
 
-			// remove unused jumpdests (labels)
-			decompiledInstructions.removeIf(instruction -> {
-				if (instruction instanceof JumpDest && ((JumpDest) instruction).getIncomingBranches()
-						.stream().noneMatch(src -> !(src instanceof _VirtualMethodReturn))) {
-					instruction.getPrev().setNext(instruction.getNext());
-					instruction.getNext().setPrev(instruction.getPrev());
-					return true;
-				}
-				return false;
-			});
+			for (List<Instruction> decompiledInstructions : methodBodies) {
+				// remove unused jumpdests (labels)
+				decompiledInstructions.removeIf(instruction -> {
+					if (instruction instanceof JumpDest && ((JumpDest) instruction).getIncomingBranches()
+							.stream().noneMatch(src -> !(src instanceof _VirtualMethodReturn))) {
+						instruction.getPrev().setNext(instruction.getNext());
+						instruction.getNext().setPrev(instruction.getPrev());
+						return true;
+					}
+					return false;
+				});
+			}
+
+			List<Instruction> decompiledInstructions = new ArrayList<>();
+			methodBodies.forEach(decompiledInstructions::addAll);
 
 			// remove dependencies of jump instructions on the variables that hold the jump destination address,
 			// as they are no longer used, so we can optimize them away below
@@ -364,9 +339,12 @@ public class Decompiler extends AbstractDecompiler {
 			// create dependency graph on instructions to detect unused/dead instructions
 			DependencyResolver.resolveDependencies(decompiledInstructions);
 
-			removeUnusedInstructions(decompiledInstructions);
+			removeUnusedMethodInstructions(methodBodies);
 
-			if (destacker.sawMergeWithDiffStackSize) log.println("size-mismatch merger");
+			decompiledInstructions.clear();
+			methodBodies.forEach(decompiledInstructions::addAll);
+
+			if (destacker.sawMergeWithDiffStackSize) log.debug("size-mismatch merger");
 
 			return decompiledInstructions;
 		}
@@ -374,6 +352,44 @@ public class Decompiler extends AbstractDecompiler {
 	}
 
 
+	/**
+	 * Collect the instructions of a method by following its branches, without entering invoked methods.
+	 * @param methodEntry method head, or the first instruction of the contract.
+	 * @return instructions of the method, each branch in linear order.
+	 */
+	private static List<Instruction> getMethodInstructions(Instruction methodEntry) {
+		List<Instruction> methodInstructions = new LinkedList<>();
+
+		Queue<Instruction> branchesToProcess = new LinkedList<>();
+		branchesToProcess.add(methodEntry);
+		Set<Instruction> processedBranches = new HashSet<>();
+
+		while (!branchesToProcess.isEmpty()) {
+			Instruction instruction = branchesToProcess.poll();
+			if (processedBranches.contains(instruction)) {
+				// branch already processed
+				continue;
+			}
+			do {
+				if (instruction instanceof JumpDest) {
+					if (processedBranches.contains(instruction)) {
+						// reached merger through linear flow
+						break;
+					}
+					processedBranches.add(instruction);
+				}
+				methodInstructions.add(instruction);
+				if (instruction instanceof BranchInstruction &&
+						!(instruction instanceof _VirtualMethodReturn) &&
+						!(instruction instanceof _VirtualMethodInvoke)) {
+					branchesToProcess.addAll(((BranchInstruction) instruction).getOutgoingBranches());
+				}
+			} while ((instruction = instruction.getNext()) != null);
+		}
+		return methodInstructions;
+	}
+
+
 	/**
 	 * Find the first best begin-of-method starting on the given branch `abiMethodBranch`.
 	 * @param abiMethodBranch branch (jumpdest bytecode offset) that leads to the wanted begin-of-method.
@@ -18,51 +18,42 @@
 
 package ch.securify.decompiler;
 
-import ch.securify.decompiler.evm.RawInstruction;
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.instructions.*;
-import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Log;
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 public class DecompilerFallback extends AbstractDecompiler {
 
-    private static PrintStream log;
-    private static final boolean DEBUG = false;
-
-    public static List<Instruction> decompile(final byte[] bytecode, final PrintStream _log) {
+    public static List<Instruction> decompile(final byte[] bytecode, final PrintStream log) {
+        return decompile(bytecode, Log.to(log, Log.Level.INFO));
+    }
 
-        if (DEBUG) {
-            log = _log;
-        } else {
-            log = new DevNullPrintStream();
-        }
+    public static List<Instruction> decompile(final byte[] bytecode, final Log log) {
+        return decompile(ParsedContract.parse(bytecode, log), log);
+    }
 
+    /**
+     * Decompile a contract whose bytecode has already been parsed.
+     * @param contract parsed contract, not modified and may be shared with {@link Decompiler}.
+     * @param log receives the internals of the decompilation at debug level.
+     */
+    public static List<Instruction> decompile(final ParsedContract contract, final Log log) {
         // raw EVM instructions
-        RawInstruction[] rawInstructions = new RawInstruction[bytecode.length + 1];
-        /* Ordered list of bytecode offsets of JUMPDEST instructions. */
-        List<Integer> jumpDestinations = new ArrayList<>();
-
-        parseRawInstructions(bytecode, rawInstructions, jumpDestinations);
-
-        BiMap<Integer, String> tags = findTags(log, jumpDestinations);
-
-        ControlFlowDetector controlFlowDetector = new ControlFlowDetector();
-        /* Map bytecode offsets of JUMP/JUMPI instructions to known bytecode offsets of JUMPDEST instructions.
-         * These are the edges of the control flow graph the correspond to explicit jumps.
-         * assumption: there are no dynamic jumps that may have multiple jump targets. */
-        Multimap<Integer, Integer> mapJumpsToDests = HashMultimap.create();
-
-        Multimap<Integer, Integer> controlFlowGraph = dectectControlFlow(log, rawInstructions, jumpDestinations, tags,
-                controlFlowDetector, mapJumpsToDests);
+        final InstructionTable rawInstructions = contract.rawInstructions;
+        final BiMap<Integer, String> tags = contract.copyTags();
+        final Multimap<Integer, Integer> mapJumpsToDests = contract.mapJumpsToDests;
+        final Multimap<Integer, Integer> controlFlowGraph = contract.controlFlowGraph;
 
         // Decompile the whole thing
-        log.println();
-        log.println("Decompiling...");
+        log.debug();
+        log.debug("Decompiling...");
         {
             DestackerFallback destacker = new DestackerFallback();
 
@@ -82,6 +73,7 @@ public class DecompilerFallback extends AbstractDecompiler {
                 Set<Instruction> processedBranches = new HashSet<>();
 
                 while (!branchesToProcess.isEmpty()) {
+                    checkInterrupted();
                     Instruction instruction = branchesToProcess.poll();
                     if (processedBranches.contains(instruction)) {
                         // branch already processed
@@ -103,7 +95,7 @@ public class DecompilerFallback extends AbstractDecompiler {
                 }
             }
 
-            log.println("Remove unused instructions...");
+            log.debug("Remove unused instructions...");
 
             // removing bytecode ops that have been noop'd (dup, swap, pop)
             decompiledInstructions.removeIf(instruction -> {
@@ -136,6 +128,7 @@ public class DecompilerFallback extends AbstractDecompiler {
                 boolean removedSomething;
                 do {
                     removedSomething = decompiledInstructions.removeIf(instruction -> {
+                                checkInterrupted();
                                 // determine dependencies for this instruction
                                 return Arrays.stream(instruction.getInput()).filter(Objects::nonNull)
                                         // determine dependencies for this variable
@@ -193,6 +186,7 @@ public class DecompilerFallback extends AbstractDecompiler {
 
             // create dependency graph on instructions to detect unused/dead instructions
             decompiledInstructions.forEach(instruction -> {
+                        checkInterrupted();
                         // determine dependencies for this instruction
                         Arrays.stream(instruction.getInput()).filter(Objects::nonNull)
                                 // determine dependencies for this variable
@@ -239,11 +233,22 @@ public class DecompilerFallback extends AbstractDecompiler {
 
             removeUnusedInstructions(decompiledInstructions);
 
-            if (destacker.sawMergeWithDiffStackSize) log.println("size-mismatch merger");
-            if (destacker.sawPlaceholderVarsAtStackBottom) log.println("placeholder vars at stack bottom");
+            if (destacker.sawMergeWithDiffStackSize) log.debug("size-mismatch merger");
+            if (destacker.sawPlaceholderVarsAtStackBottom) log.debug("placeholder vars at stack bottom");
 
             return decompiledInstructions;
         }
         // EOM
     }
+
+    /**
+     * Abort the decompilation if the thread running it was interrupted, e.g. because a concurrently started fallback
+     * is no longer needed.
+     * @throws CancellationException if the current thread was interrupted.
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Decompilation interrupted");
+        }
+    }
 }
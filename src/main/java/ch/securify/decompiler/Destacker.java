@@ -18,8 +18,9 @@
 
 package ch.securify.decompiler;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
-import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Log;
 import ch.securify.utils.Resolver;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.Invalid;
@@ -35,12 +36,12 @@ import ch.securify.decompiler.instructions._VirtualMethodInvoke;
 import ch.securify.decompiler.instructions._VirtualMethodReturn;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.printer.HexPrinter;
+import ch.securify.utils.EvmStack;
 import ch.securify.utils.StackUtil;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -49,22 +50,19 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import static ch.securify.decompiler.instructions.Instruction.NO_VARIABLES;
 import static ch.securify.decompiler.printer.HexPrinter.toHex;
-import static ch.securify.utils.ArrayUtil.nextNonNullIndex;
 import static ch.securify.utils.ArrayUtil.nextNonNullItem;
-import static ch.securify.utils.ArrayUtil.prevNonNullIndex;
 import static ch.securify.utils.ArrayUtil.prevNonNullItem;
 
 public class Destacker {
 
-	private PrintStream log;
+	private Log log;
 
-	private RawInstruction[] rawInstructions;
+	private InstructionTable rawInstructions;
 	private Multimap<Integer, Integer> jumps;
 	private Multimap<Integer, Integer> jumpsInv;
 	private Multimap<Integer, Integer> controlFlowGraph;
@@ -76,14 +74,12 @@ public class Destacker {
 	private Map<Integer, Variable[]> argumentsForMethod, returnVarsForMethod;
 	private Map<Integer, Variable[]> argumentsForMethodCall, returnVarsForMethodCall;
 
-	private Map<Integer, Stack<Variable>> canonicalStackForBranchJoinJumpdest;
+	private Map<Integer, EvmStack<Variable>> canonicalStackForBranchJoinJumpdest;
 	private Map<Integer, Map<Variable, Variable>> variableReassignments;
 	private Map<Integer, Map<Variable, Variable>> variableReassignmentsInline;
 
 	public boolean sawMergeWithDiffStackSize = false;
 
-	private static boolean DEBUG = false;
-
 	/**
 	 * Decompile the bytecode.
 	 * @param rawInstructions EVM instructions.
@@ -91,12 +87,9 @@ public class Destacker {
 	 * @param jumps maps jump instructions to their jump destinations.
 	 * @param methodDetector method offsets to recognize methods.
 	 */
-	public void decompile(RawInstruction[] rawInstructions, InstructionFactory instructionFactory, Multimap<Integer, Integer> jumps,
-			Multimap<Integer, Integer> controlFlowGraph, MethodDetector methodDetector, final PrintStream log) {
-	    if (DEBUG)
-		    this.log = log;
-	    else
-	        this.log = new DevNullPrintStream();
+	public void decompile(InstructionTable rawInstructions, InstructionFactory instructionFactory, Multimap<Integer, Integer> jumps,
+			Multimap<Integer, Integer> controlFlowGraph, MethodDetector methodDetector, final Log log) {
+		this.log = log;
 
 		this.rawInstructions = rawInstructions;
 		this.jumps = jumps;
@@ -105,7 +98,7 @@ public class Destacker {
 		this.methodHeads = methodDetector.getMethods().keySet();
 		this.methodDetector = methodDetector;
 
-		this.instructions = new Instruction[rawInstructions.length];
+		this.instructions = new Instruction[rawInstructions.length()];
 		this.argumentsForMethod = new HashMap<>();
 		this.returnVarsForMethod = new HashMap<>();
 		this.argumentsForMethodCall = new HashMap<>();
@@ -120,7 +113,7 @@ public class Destacker {
 
 		Variable.resetVarNameGenerator();
 
-		decompile(0, new Stack<>(), 0);
+		decompile(0, new EvmStack<>(), 0);
 	}
 
 
@@ -130,24 +123,25 @@ public class Destacker {
 	 * @param evmStack Variable stack at the beginning of the current branch.
 	 * @param currentMethod bytecode offset of the currently decompiling method.
 	 */
-	private void decompile(int branchStartOffset, Stack<Variable> evmStack, int currentMethod) {
-		for (int pc = branchStartOffset; ; pc = nextNonNullIndex(pc, rawInstructions)) {
-			RawInstruction rawInstruction = rawInstructions[pc];
+	private void decompile(int branchStartOffset, EvmStack<Variable> evmStack, int currentMethod) {
+		for (int pc = branchStartOffset; ; pc = rawInstructions.next(pc)) {
+			RawInstruction rawInstruction = rawInstructions.get(pc);
 			final int opcode = rawInstruction.opcode;
 
 			if (instructions[pc] != null) {
-				int prevInstrOpcode = prevNonNullItem(pc, rawInstructions).opcode;
+				int prevInstrOpcode = rawInstructions.prevItem(pc).opcode;
 				if (pc != branchStartOffset && opcode == OpCodes.JUMPDEST && prevInstrOpcode != OpCodes.JUMP) {
-					log.println("linearly reached code that was already processed @" + HexPrinter.toHex(pc));
+					final int mergeOffset = pc;
+					log.debug(() -> "linearly reached code that was already processed @" + HexPrinter.toHex(mergeOffset));
 					// need to do stack merging
-					handleStackMerging(evmStack, prevNonNullIndex(pc, rawInstructions), pc);
+					handleStackMerging(evmStack, rawInstructions.prev(pc), pc);
 					return;
 				}
 
 				throw new IllegalStateException("Instruction @" + toHex(pc) + " was already processed");
 			}
 
-			//log.print("[DS@" + toHex(currentMethod) + "]" + (currentMethod == 0 ? "" : "  ") + " decompiling @" + toHex(pc) + " " + OpCodes.getOpName(rawInstructions[pc].opcode));
+			//log.print("[DS@" + toHex(currentMethod) + "]" + (currentMethod == 0 ? "" : "  ") + " decompiling @" + toHex(pc) + " " + OpCodes.getOpName(rawInstructions.getOpcode(pc)));
 
 			instructions[pc] = instructionFactory.createAndApply(rawInstruction, evmStack);
 
@@ -173,7 +167,7 @@ public class Destacker {
 						// ... and target method has not been decompiled already
 						// create new stack for the method call, that contains only the return jump address and the arguments
 						// (this should detect operand stack underflows more easily)
-						Stack<Variable> subStack = new Stack<>();
+						EvmStack<Variable> subStack = new EvmStack<>();
 
 						Variable returnDestVar = evmStack.get(evmStack.size() - destMethodArgumentCount - 1);
 						subStack.push(returnDestVar);
@@ -187,7 +181,7 @@ public class Destacker {
 					}
 
 					// verify that next instruction is a jumpdest that can only be reached by method returns
-					if (rawInstructions[pc + 1].opcode != OpCodes.JUMPDEST) {
+					if (rawInstructions.getOpcode(pc + 1) != OpCodes.JUMPDEST) {
 						throw new AssumptionViolatedException(toHex(pc) + " is a method call jump, but " +
 								toHex(pc + 1) + " is no jumpdest");
 					}
@@ -238,7 +232,7 @@ public class Destacker {
 					int jumpdest = jumps.get(pc).iterator().next();
 					if (!ControlFlowDetector.isVirtualJumpDest(jumpdest)) {
 						if (instructions[jumpdest] == null) {
-							Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+							EvmStack<Variable> branchedStack = evmStack.copy();
 							ensureUniqueCanonicalStack(pc, jumpdest, branchedStack);
 							decompile(jumpdest, branchedStack, currentMethod);
 						}
@@ -258,7 +252,7 @@ public class Destacker {
 				int jumpdest = jumps.get(pc).iterator().next();
 				if (!ControlFlowDetector.isVirtualJumpDest(jumpdest)) {
 					if (instructions[jumpdest] == null) {
-						Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+						EvmStack<Variable> branchedStack = evmStack.copy();
 						ensureUniqueCanonicalStack(pc, jumpdest, branchedStack);
 						decompile(jumpdest, branchedStack, currentMethod);
 					}
@@ -275,7 +269,7 @@ public class Destacker {
 			}
 			else if (opcode == OpCodes.JUMPDEST && pc != currentMethod && !canonicalStackForBranchJoinJumpdest.containsKey(pc)) {
 				// set canonical stack for jumpdest
-				Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+				EvmStack<Variable> branchedStack = evmStack.copy();
 				ensureUniqueCanonicalStack(-1, pc, branchedStack);
 				canonicalStackForBranchJoinJumpdest.put(pc, branchedStack);
 			}
@@ -283,12 +277,12 @@ public class Destacker {
 	}
 
 
-	private void ensureUniqueCanonicalStack(int jumpsrc, int jumpdest, Stack<Variable> stack) {
+	private void ensureUniqueCanonicalStack(int jumpsrc, int jumpdest, EvmStack<Variable> stack) {
 		// check if the current stack is going to be used as a canonical stack
 		if (!canonicalStackForBranchJoinJumpdest.containsKey(jumpdest)) {
 			// if so, check for duplicate variables in the stack, which may cause merge conflicts
 			if (stack.size() != stack.stream().distinct().count()) {
-				log.println("undup canonical stack @" + toHex(jumpdest));
+				log.debug(() -> "undup canonical stack @" + toHex(jumpdest));
 				// map duplicate variables to new ones
 				if (jumpsrc != -1 && variableReassignments.containsKey(jumpsrc) || jumpsrc == -1 && variableReassignmentsInline.containsKey(jumpsrc)) {
 					throw new IllegalStateException("reassignment does already exist");
@@ -302,7 +296,7 @@ public class Destacker {
 						Variable undupVar = new Variable();
 						stack.set(i, undupVar);
 						reassignments.put(undupVar, var);
-						log.println(" " + undupVar + " <- " + var);
+						log.debug(() -> " " + undupVar + " <- " + var);
 					}
 					else {
 						processedVars.add(var);
@@ -319,12 +313,12 @@ public class Destacker {
 	}
 
 
-	private void handleStackMerging(Stack<Variable> localStack, int jumpsrc, int jumpdest) {
+	private void handleStackMerging(EvmStack<Variable> localStack, int jumpsrc, int jumpdest) {
 		// destination already destacked, may need to map current stack
 		if (!canonicalStackForBranchJoinJumpdest.containsKey(jumpdest)) {
 			throw new IllegalStateException("target jumpdest processed, but no canonical stack defined");
 		}
-		Stack<Variable> canonicalStack = canonicalStackForBranchJoinJumpdest.get(jumpdest);
+		EvmStack<Variable> canonicalStack = canonicalStackForBranchJoinJumpdest.get(jumpdest);
 		if (localStack.size() != canonicalStack.size()) {
 			sawMergeWithDiffStackSize = true;
 			// can apparently happen for shared error handling code
@@ -341,7 +335,7 @@ public class Destacker {
 				}
 			}*/
 			// so check if all paths lead to error, and if so just don't merge the stacks, since it doesn't matter anyway (?)
-			log.println("Branch merge: stack size mismatch: canonical @" + toHex(jumpdest) +
+			log.debug(() -> "Branch merge: stack size mismatch: canonical @" + toHex(jumpdest) +
 					" with size " + canonicalStack.size() + " vs local @" + toHex(jumpsrc) + " with size " + localStack.size());
 		}
 		Multimap<Variable, Variable> mapToCanonical = HashMultimap.create();
@@ -349,9 +343,9 @@ public class Destacker {
 		for (int i = 1, n = Math.min(localStack.size(), canonicalStack.size()); i <= n; ++i) {
 			mapToCanonical.put(localStack.get(localStack.size() - i), canonicalStack.get(canonicalStack.size() - i));
 		}
-		log.println("stack merging from @" + toHex(jumpsrc) + " into @" + toHex(jumpdest));
+		log.debug(() -> "stack merging from @" + toHex(jumpsrc) + " into @" + toHex(jumpdest));
 		mapToCanonical.asMap().forEach((variable, canonicals) ->
-				canonicals.forEach(canonical -> log.println(" " + canonical + " <- " + variable)));
+				canonicals.forEach(canonical -> log.debug(() -> " " + canonical + " <- " + variable)));
 
 		if (mapToCanonical.size() != mapToCanonical.values().stream().distinct().count()) {
 			throw new IllegalStateException("a canonical variable is assigned multiple times");
@@ -374,7 +368,7 @@ public class Destacker {
 			if (wasAssignedTo.contains(local)) {
 				Variable tmpVar = new Variable();
 				temporaries.put(local, tmpVar);
-				log.println("swap conflict for: " + canonical + " <- " + local + "; created temp variable: " + tmpVar);
+				log.debug(() -> "swap conflict for: " + canonical + " <- " + local + "; created temp variable: " + tmpVar);
 			}
 			wasAssignedTo.add(canonical);
 		});
@@ -401,37 +395,37 @@ public class Destacker {
 	public Instruction[] getInstructions() {
 		Resolver<RawInstruction, String> labelResolver = instructionFactory.getLabelResolver();
 
-		log.println("Generating virtual method instructions...");
+		log.debug("Generating virtual method instructions...");
 		// convert jumps and jumpdests to method statements
 		IntStream.range(0, instructions.length)
 				.filter(offset -> instructions[offset] != null)
 				.forEach(offset -> {
-					if (rawInstructions[offset].opcode == OpCodes.JUMP &&
+					if (rawInstructions.getOpcode(offset) == OpCodes.JUMP &&
 							ControlFlowDetector.isJumpMethodReturn(offset, rawInstructions)) {
 						// this JUMP is a method return
 						Instruction methodReturn = new _VirtualMethodReturn()
-								.setRawInstruction(rawInstructions[offset])
+								.setRawInstruction(rawInstructions.get(offset))
 								.setInput(getReturnVarsForMethod(methodDetector.getMethodBcoForReturnJump(offset)))
 								.setOutput(NO_VARIABLES);
 						instructions[offset] = methodReturn;
 					}
-					else if (rawInstructions[offset].opcode == OpCodes.JUMPDEST && methodHeads.contains(offset)) {
+					else if (rawInstructions.getOpcode(offset) == OpCodes.JUMPDEST && methodHeads.contains(offset)) {
 						// this JUMPDEST is the begin of a method
-						Instruction methodHead = new _VirtualMethodHead(labelResolver.resolve(rawInstructions[offset]))
-								.setRawInstruction(rawInstructions[offset])
+						Instruction methodHead = new _VirtualMethodHead(labelResolver.resolve(rawInstructions.get(offset)))
+								.setRawInstruction(rawInstructions.get(offset))
 								.setInput(NO_VARIABLES)
 								.setOutput(getArgumentsForMethod(offset));
 						instructions[offset] = methodHead;
 					}
-					else if (rawInstructions[offset].opcode == OpCodes.JUMP &&
+					else if (rawInstructions.getOpcode(offset) == OpCodes.JUMP &&
 							methodHeads.contains(Iterables.getFirst(jumps.get(offset), -42))) {
 						// this JUMP is a method call/invocation
 						Collection<Integer> dests = jumps.get(offset);
 						if (dests == null || dests.size() != 1)
 							throw new IllegalStateException();
 						int methodBco = dests.iterator().next();
-						Instruction methodCall = new _VirtualMethodInvoke(labelResolver.resolve(rawInstructions[methodBco]))
-								.setRawInstruction(rawInstructions[offset])
+						Instruction methodCall = new _VirtualMethodInvoke(labelResolver.resolve(rawInstructions.get(methodBco)))
+								.setRawInstruction(rawInstructions.get(offset))
 								.setInput(getArgumentsForMethodCall(offset))
 								.setOutput(getReturnVarsForMethodCall(offset));
 						instructions[offset] = methodCall;
@@ -454,7 +448,7 @@ public class Destacker {
 									.forEach(target -> jumpInstruction.addOutgoingBranch(instructions[target]));
 						}
 						else {
-							log.println("replacing error jump with throw @" + toHex(offset));
+							log.debug(() -> "replacing error jump with throw @" + toHex(offset));
 							// error jump, replace with throw()
 							instr = new Invalid().setInput(NO_VARIABLES).setOutput(NO_VARIABLES)
 									.setRawInstruction(instr.getRawInstruction());
@@ -508,7 +502,7 @@ public class Destacker {
 				// nothing to reassign
 				return;
 			}
-			if (rawInstructions[bco].opcode == OpCodes.JUMP) {
+			if (rawInstructions.getOpcode(bco) == OpCodes.JUMP) {
 				// reassign just before the jump
 				// from: PREV -> JUMP -> JUMPDEST
 				//   to: PREV -> reassignments -> JUMP -> JUMPDEST
@@ -526,7 +520,7 @@ public class Destacker {
 					injectedInstrs.get(i - 1).setNext(injectedInstrs.get(i));
 				}
 			}
-			else if (rawInstructions[bco].opcode == OpCodes.JUMPI) {
+			else if (rawInstructions.getOpcode(bco) == OpCodes.JUMPI) {
 				// reassign after the jump but before reaching the target, so need to create a new intermediate branch
 				// from: JUMPI -> JUMPDEST
 				//   to: JUMPI -> JUMPDEST(virtual) -> reassignments -> JUMP(virtual) -> JUMPDEST
@@ -567,7 +561,7 @@ public class Destacker {
 				origJumpdest.addIncomingBranch(intermJump);
 			}
 			else {
-				if (nextNonNullItem(bco, rawInstructions).opcode != OpCodes.JUMPDEST) {
+				if (rawInstructions.nextItem(bco).opcode != OpCodes.JUMPDEST) {
 					throw new IllegalStateException("expected JUMPDEST instruction after marked linear code");
 				}
 				// need to reassign in linear code, i.e. just before the jumpdest
@@ -590,7 +584,7 @@ public class Destacker {
 		});
 
 		variableReassignmentsInline.forEach((bco, variableMap) -> {
-			if (rawInstructions[bco].opcode != OpCodes.JUMPDEST) {
+			if (rawInstructions.getOpcode(bco) != OpCodes.JUMPDEST) {
 				throw new IllegalStateException("inline reassignment expected to be used only at JUMPDEST");
 			}
 			// need to reassign in linear code, i.e. just before the jumpdest
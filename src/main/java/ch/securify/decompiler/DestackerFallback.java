@@ -18,10 +18,11 @@
 
 package ch.securify.decompiler;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.printer.HexPrinter;
-import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Log;
 import ch.securify.utils.Pair;
 import ch.securify.utils.Resolver;
 import ch.securify.decompiler.instructions.BranchInstruction;
@@ -36,13 +37,12 @@ import ch.securify.decompiler.instructions.Return;
 import ch.securify.decompiler.instructions.Stop;
 import ch.securify.decompiler.instructions.SelfDestruct;
 import ch.securify.decompiler.instructions._VirtualAssignment;
-import ch.securify.utils.StackUtil;
+import ch.securify.utils.EvmStack;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.primitives.Ints;
 
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -51,21 +51,18 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import static ch.securify.decompiler.instructions.Instruction.NO_VARIABLES;
-import static ch.securify.utils.ArrayUtil.nextNonNullIndex;
 import static ch.securify.utils.ArrayUtil.nextNonNullItem;
-import static ch.securify.utils.ArrayUtil.prevNonNullIndex;
 import static ch.securify.utils.ArrayUtil.prevNonNullItem;
 
 public class DestackerFallback {
 
-	private PrintStream log;
+	private Log log;
 
-	private RawInstruction[] rawInstructions;
+	private InstructionTable rawInstructions;
 	private Multimap<Integer, Integer> jumps;
 	private Multimap<Integer, Integer> jumpsInv;
 	private Multimap<Integer, Integer> controlFlowGraph;
@@ -77,7 +74,7 @@ public class DestackerFallback {
 	private Map<Integer, Variable[]> argumentsForMethod, returnVarsForMethod;
 	private Map<Integer, Variable[]> argumentsForMethodCall, returnVarsForMethodCall;
 
-	private Map<Integer, Stack<Variable>> canonicalStackForBranchJoinJumpdest;
+	private Map<Integer, EvmStack<Variable>> canonicalStackForBranchJoinJumpdest;
 	private Map<Pair<Instruction, Boolean>, Map<Variable, Variable>> variableReassignments;
 	private Map<Instruction, Map<Variable, Variable>> variableReassignmentsInline;
 	private Map<Integer, List<Instruction>> dynamicJumpReplacement;
@@ -88,8 +85,6 @@ public class DestackerFallback {
 	public boolean sawMergeWithDiffStackSize = false;
 	public boolean sawPlaceholderVarsAtStackBottom = false;
 
-	private final boolean DEBUG = false;
-
 	private BiMap<Integer, String> tags;
 
 
@@ -99,14 +94,10 @@ public class DestackerFallback {
 	 * @param instructionFactory InstructionFactory to create instances for decompiled instructions.
 	 * @param jumps maps jump instructions to their jump destinations.
 	 */
-	public void decompile(RawInstruction[] rawInstructions, InstructionFactory instructionFactory, Multimap<Integer, Integer> jumps,
-			Multimap<Integer, Integer> controlFlowGraph, final PrintStream log, BiMap<Integer, String> tags) {
-
+	public void decompile(InstructionTable rawInstructions, InstructionFactory instructionFactory, Multimap<Integer, Integer> jumps,
+			Multimap<Integer, Integer> controlFlowGraph, final Log log, BiMap<Integer, String> tags) {
 
-	    if (DEBUG)
-		    this.log = log;
-	    else
-	        this.log = new DevNullPrintStream();
+		this.log = log;
 
 		this.rawInstructions = rawInstructions;
 		this.jumps = jumps;
@@ -114,7 +105,7 @@ public class DestackerFallback {
 		this.instructionFactory = instructionFactory;
 		this.tags = tags;
 
-		this.instructions = new Instruction[rawInstructions.length];
+		this.instructions = new Instruction[rawInstructions.length()];
 		this.argumentsForMethod = new HashMap<>();
 		this.returnVarsForMethod = new HashMap<>();
 		this.argumentsForMethodCall = new HashMap<>();
@@ -133,7 +124,7 @@ public class DestackerFallback {
 
 		Variable.resetVarNameGenerator();
 
-		decompile(0, new Stack<>());
+		decompile(0, new EvmStack<>());
 	}
 
 
@@ -142,14 +133,15 @@ public class DestackerFallback {
 	 * @param branchStartOffset bytecode offset where the branch starts.
 	 * @param evmStack Variable stack at the beginning of the current branch.
 	 */
-	private void decompile(int branchStartOffset, Stack<Variable> evmStack) {
-		for (int pc = branchStartOffset; ; pc = nextNonNullIndex(pc, rawInstructions)) {
-			RawInstruction rawInstruction = rawInstructions[pc];
+	private void decompile(int branchStartOffset, EvmStack<Variable> evmStack) {
+		for (int pc = branchStartOffset; ; pc = rawInstructions.next(pc)) {
+			DecompilerFallback.checkInterrupted();
+			RawInstruction rawInstruction = rawInstructions.get(pc);
 			final int opcode = rawInstruction.opcode;
 
 			if (instructions[pc] != null) {
-				int prevInstrOffset = prevNonNullIndex(pc, rawInstructions);
-				int prevInstrOpcode = rawInstructions[prevInstrOffset].opcode;
+				int prevInstrOffset = rawInstructions.prev(pc);
+				int prevInstrOpcode = rawInstructions.getOpcode(prevInstrOffset);
 				if (pc != branchStartOffset && opcode == OpCodes.JUMPDEST && prevInstrOpcode != OpCodes.JUMP) {
 					//log.println("linearly reached code that was already processed @" + HexPrinter.toHex(pc));
 					// need to do stack merging
@@ -160,7 +152,7 @@ public class DestackerFallback {
 				throw new IllegalStateException("Instruction @" + HexPrinter.toHex(pc) + " was already processed");
 			}
 
-			//log.print("[DS] decompiling @" + toHex(pc) + " " + OpCodes.getOpName(rawInstructions[pc].opcode));
+			//log.print("[DS] decompiling @" + toHex(pc) + " " + OpCodes.getOpName(rawInstructions.getOpcode(pc)));
 
 			instructions[pc] = instructionFactory.createAndApply(rawInstruction, evmStack);
 
@@ -199,9 +191,9 @@ public class DestackerFallback {
 						replacementInstrs.add(eq);
 						replacementInstrs.add(jumpI);
 						// check each jump for unique canonical stack / stack merging
-						ensureUniqueCanonicalStack(jumpI, jumpdest, StackUtil.copyStack(evmStack));
+						ensureUniqueCanonicalStack(jumpI, jumpdest, evmStack.copy());
 						if (instructions[jumpdest] == null) {
-							Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+							EvmStack<Variable> branchedStack = evmStack.copy();
 							ensureUniqueCanonicalStack(jumpI, jumpdest, branchedStack);
 							decompile(jumpdest, branchedStack);
 						}
@@ -216,7 +208,7 @@ public class DestackerFallback {
 					int jumpdest = jumps.get(pc).iterator().next();
 					if (!ControlFlowDetector.isVirtualJumpDest(jumpdest)) {
 						if (instructions[jumpdest] == null) {
-							Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+							EvmStack<Variable> branchedStack = evmStack.copy();
 							ensureUniqueCanonicalStack(instructions[pc], jumpdest, branchedStack);
 							decompile(jumpdest, branchedStack);
 						}
@@ -238,7 +230,7 @@ public class DestackerFallback {
 				int jumpdest = jumps.get(pc).iterator().next();
 				if (!ControlFlowDetector.isVirtualJumpDest(jumpdest)) {
 					if (instructions[jumpdest] == null) {
-						Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+						EvmStack<Variable> branchedStack = evmStack.copy();
 						ensureUniqueCanonicalStack(instructions[pc], jumpdest, branchedStack);
 						decompile(jumpdest, branchedStack);
 					}
@@ -255,7 +247,7 @@ public class DestackerFallback {
 			}
 			else if (opcode == OpCodes.JUMPDEST && !canonicalStackForBranchJoinJumpdest.containsKey(pc)) {
 				// set canonical stack for jumpdest
-				Stack<Variable> branchedStack = StackUtil.copyStack(evmStack);
+				EvmStack<Variable> branchedStack = evmStack.copy();
 				ensureUniqueCanonicalStack(instructions[pc], branchedStack);
 				canonicalStackForBranchJoinJumpdest.put(pc, branchedStack);
 			}
@@ -263,12 +255,12 @@ public class DestackerFallback {
 	}
 
 
-	private void ensureUniqueCanonicalStack(Instruction jumpsrc, int jumpdest, Stack<Variable> stack) {
+	private void ensureUniqueCanonicalStack(Instruction jumpsrc, int jumpdest, EvmStack<Variable> stack) {
 		ensureUniqueCanonicalStack(jumpsrc, jumpdest, null, stack);
 	}
 
 
-	private void ensureUniqueCanonicalStack(Instruction inlineDest, Stack<Variable> stack) {
+	private void ensureUniqueCanonicalStack(Instruction inlineDest, EvmStack<Variable> stack) {
 		ensureUniqueCanonicalStack(null, inlineDest.getRawInstruction().offset, inlineDest, stack);
 	}
 
@@ -279,7 +271,7 @@ public class DestackerFallback {
 	 * @param jumpdest jump destination where the canonical stack should be defined
 	 * @param stack canonical stack candidate
 	 */
-	private void ensureUniqueCanonicalStack(Instruction jumpsrc, int jumpdest, Instruction inlineDest, Stack<Variable> stack) {
+	private void ensureUniqueCanonicalStack(Instruction jumpsrc, int jumpdest, Instruction inlineDest, EvmStack<Variable> stack) {
 		if (jumpsrc == null && inlineDest == null || jumpsrc != null && inlineDest != null)
 			throw new IllegalArgumentException();
 
@@ -287,7 +279,7 @@ public class DestackerFallback {
 		if (!canonicalStackForBranchJoinJumpdest.containsKey(jumpdest)) {
 			// if so, check for duplicate variables in the stack, which may cause merge conflicts
 			if (stack.size() != stack.stream().distinct().count()) {
-				log.println("undup canonical stack @" + HexPrinter.toHex(jumpdest));
+				log.debug(() -> "undup canonical stack @" + HexPrinter.toHex(jumpdest));
 				// map duplicate variables to new ones
 				if (jumpsrc != null && variableReassignments.containsKey(jumpsrc) ||
 						jumpsrc == null && variableReassignmentsInline.containsKey(inlineDest)) {
@@ -302,7 +294,7 @@ public class DestackerFallback {
 						Variable undupVar = new Variable();
 						stack.set(i, undupVar);
 						reassignments.put(undupVar, var);
-						log.println(" " + undupVar + " <- " + var);
+						log.debug(() -> " " + undupVar + " <- " + var);
 					}
 					else {
 						processedVars.add(var);
@@ -321,7 +313,7 @@ public class DestackerFallback {
 				for (int i = 0; i < 20; ++i) {
 					Variable virtualVar = new Variable();
 					virtualCanonicalVars.add(virtualVar);
-					stack.insertElementAt(virtualVar, 0);
+					stack.insertAtBottom(virtualVar);
 				}
 				sawPlaceholderVarsAtStackBottom = true;
 			}
@@ -329,14 +321,14 @@ public class DestackerFallback {
 	}
 
 
-	private void handleStackMerging(Stack<Variable> localStack, int jumpsrc, Instruction jumpI, int jumpdest) {
+	private void handleStackMerging(EvmStack<Variable> localStack, int jumpsrc, Instruction jumpI, int jumpdest) {
 		// destination already destacked, may need to map current stack
 		if (!canonicalStackForBranchJoinJumpdest.containsKey(jumpdest)) {
 			throw new IllegalStateException("target jumpdest processed, but no canonical stack defined");
 		}
-		Stack<Variable> canonicalStack = canonicalStackForBranchJoinJumpdest.get(jumpdest);
+		EvmStack<Variable> canonicalStack = canonicalStackForBranchJoinJumpdest.get(jumpdest);
 		if (localStack.size() != canonicalStack.size()) {
-			log.println("Branch merge: stack size mismatch: canonical @" + HexPrinter.toHex(jumpdest) +
+			log.debug(() -> "Branch merge: stack size mismatch: canonical @" + HexPrinter.toHex(jumpdest) +
 					" with size " + canonicalStack.size() + " vs local @" + HexPrinter.toHex(jumpsrc) + " with size " + localStack.size());
 			sawMergeWithDiffStackSize = true;
 		}
@@ -344,15 +336,15 @@ public class DestackerFallback {
 
 		int mergeSize = Math.min(localStack.size(), canonicalStack.size());
 		if (mergeSize == 0) {
-			log.println("Branch merge: skipped merger for empty stack");
+			log.debug("Branch merge: skipped merger for empty stack");
 			return;
 		}
 		for (int i = 1; i <= mergeSize; ++i) {
 			mapToCanonical.put(localStack.get(localStack.size() - i), canonicalStack.get(canonicalStack.size() - i));
 		}
-		log.println("stack merging from @" + HexPrinter.toHex(jumpsrc) + " into @" + HexPrinter.toHex(jumpdest));
+		log.debug(() -> "stack merging from @" + HexPrinter.toHex(jumpsrc) + " into @" + HexPrinter.toHex(jumpdest));
 		mapToCanonical.asMap().forEach((variable, canonicals) ->
-				canonicals.forEach(canonical -> log.println(" " + canonical + " <- " + variable)));
+				canonicals.forEach(canonical -> log.debug(() -> " " + canonical + " <- " + variable)));
 
 		if (mapToCanonical.size() != mapToCanonical.values().stream().distinct().count()) {
 			throw new IllegalStateException("a canonical variable is assigned multiple times");
@@ -381,7 +373,7 @@ public class DestackerFallback {
 				if (isVirtualCanonicalVar(local)) {
 					virtualCanonicalVars.add(tmpVar);
 				}
-				log.println("swap conflict for: " + canonical + " <- " + local + "; created temp variable: " + tmpVar);
+				log.debug(() -> "swap conflict for: " + canonical + " <- " + local + "; created temp variable: " + tmpVar);
 			}
 			wasAssignedTo.add(canonical);
 		});
@@ -460,7 +452,7 @@ public class DestackerFallback {
 										});
 							}
 							else {
-								log.println("replacing error jump with throw @" + HexPrinter.toHex(offset));
+								log.debug(() -> "replacing error jump with throw @" + HexPrinter.toHex(offset));
 								// error jump, replace with throw()
 								instr = new Invalid().setInput(NO_VARIABLES).setOutput(NO_VARIABLES)
 										.setRawInstruction(instr.getRawInstruction());
@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decompiled instructions with dense integer ids for instructions, variables and jump labels,
+ * built once after decompilation. The operands are stored as flat int arrays indexed by instruction id.
+ *
+ * Every instruction and variable knows its id, see {@link Instruction#getId()} and {@link Variable#getId()},
+ * so that per-instruction and per-variable data can be kept in arrays instead of hash maps.
+ * The analysis units of a contract share its program, the dataflow analyses derive the assignments of the
+ * operands from its arrays and keep the codes of instructions and variables in arrays indexed by id.
+ */
+public class IndexedProgram {
+
+	/** operand id of a missing input, e.g. the condition of an unresolved conditional jump */
+	public static final int NONE = -1;
+
+	private final List<Instruction> instructions;
+	private final List<Variable> variables;
+	private final List<JumpDest> labels;
+	private final ControlFlowGraph controlFlowGraph;
+
+	// operands of instruction i are at [start[i], start[i + 1])
+	private final int[] inputStart, inputs;
+	private final int[] outputStart, outputs;
+	private final int[] targetStart, targets;
+	private final int[] labelOf;
+
+
+	private IndexedProgram(List<Instruction> instructions, ControlFlowGraph controlFlowGraph) {
+		this.instructions = Collections.unmodifiableList(new ArrayList<>(instructions));
+		this.controlFlowGraph = controlFlowGraph;
+		int n = instructions.size();
+
+		for (int i = 0; i < n; i++) {
+			instructions.get(i).setId(i);
+		}
+
+		List<Variable> variables = new ArrayList<>();
+		List<JumpDest> labels = new ArrayList<>();
+		labelOf = new int[n];
+		Arrays.fill(labelOf, NONE);
+		for (Instruction instruction : instructions) {
+			for (Variable variable : instruction.getOutput()) {
+				index(variable, variables);
+			}
+			for (Variable variable : instruction.getInput()) {
+				index(variable, variables);
+			}
+			for (Variable variable : instruction.getMemoryInputs()) {
+				index(variable, variables);
+			}
+			if (instruction instanceof JumpDest) {
+				labelOf[instruction.getId()] = labels.size();
+				labels.add((JumpDest) instruction);
+			}
+		}
+		this.variables = Collections.unmodifiableList(variables);
+		this.labels = Collections.unmodifiableList(labels);
+
+		inputStart = new int[n + 1];
+		outputStart = new int[n + 1];
+		targetStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			Instruction instruction = instructions.get(i);
+			inputStart[i + 1] = inputStart[i] + instruction.getInput().length;
+			outputStart[i + 1] = outputStart[i] + instruction.getOutput().length;
+			targetStart[i + 1] = targetStart[i] + (instruction instanceof BranchInstruction
+					? ((BranchInstruction) instruction).getOutgoingBranches().size() : 0);
+		}
+
+		inputs = new int[inputStart[n]];
+		outputs = new int[outputStart[n]];
+		targets = new int[targetStart[n]];
+		for (int i = 0; i < n; i++) {
+			Instruction instruction = instructions.get(i);
+			int k = inputStart[i];
+			for (Variable variable : instruction.getInput()) {
+				inputs[k++] = variable == null ? NONE : variable.getId();
+			}
+			k = outputStart[i];
+			for (Variable variable : instruction.getOutput()) {
+				outputs[k++] = variable.getId();
+			}
+			if (instruction instanceof BranchInstruction) {
+				k = targetStart[i];
+				for (Instruction target : ((BranchInstruction) instruction).getOutgoingBranches()) {
+					targets[k++] = contains(target) ? target.getId() : NONE;
+				}
+			}
+		}
+	}
+
+
+	private boolean contains(Instruction instruction) {
+		int id = instruction.getId();
+		return id >= 0 && id < instructions.size() && instructions.get(id) == instruction;
+	}
+
+
+	private static void index(Variable variable, List<Variable> variables) {
+		if (variable == null) {
+			return;
+		}
+		if (variable.getId() < 0 || variable.getId() >= variables.size() || variables.get(variable.getId()) != variable) {
+			variable.setId(variables.size());
+			variables.add(variable);
+		}
+	}
+
+
+	/**
+	 * Assign ids to the instructions, variables and labels of a decompiled contract.
+	 * Ids of a previous build are overwritten.
+	 * @param instructions decompiled instructions, the id of an instruction is its index in this list.
+	 * @param controlFlowGraph basic blocks of the instructions
+	 * @return indexed program
+	 */
+	public static IndexedProgram build(List<Instruction> instructions, ControlFlowGraph controlFlowGraph) {
+		return new IndexedProgram(instructions, controlFlowGraph);
+	}
+
+
+	/**
+	 * Assign ids to the instructions, variables and labels of a decompiled contract, and build its basic blocks.
+	 * Ids and blocks of a previous build are overwritten.
+	 * @param instructions decompiled instructions, the id of an instruction is its index in this list.
+	 * @return indexed program
+	 */
+	public static IndexedProgram build(List<Instruction> instructions) {
+		return new IndexedProgram(instructions, instructions.isEmpty() ? null : ControlFlowGraph.build(instructions));
+	}
+
+
+	public int size() {
+		return instructions.size();
+	}
+
+
+	public Instruction getInstruction(int id) {
+		return instructions.get(id);
+	}
+
+
+	public List<Instruction> getInstructions() {
+		return instructions;
+	}
+
+
+	/**
+	 * @return basic blocks of the instructions, null if there are no instructions
+	 */
+	public ControlFlowGraph getControlFlowGraph() {
+		return controlFlowGraph;
+	}
+
+
+	public int getVariableCount() {
+		return variables.size();
+	}
+
+
+	public Variable getVariable(int id) {
+		return variables.get(id);
+	}
+
+
+	/**
+	 * @return ids of the input variables of an instruction, NONE for a missing input
+	 */
+	public int[] getInputs(int id) {
+		return Arrays.copyOfRange(inputs, inputStart[id], inputStart[id + 1]);
+	}
+
+
+	public int getInput(int id, int index) {
+		return inputs[inputStart[id] + index];
+	}
+
+
+	public int getInputCount(int id) {
+		return inputStart[id + 1] - inputStart[id];
+	}
+
+
+	/**
+	 * @return ids of the output variables of an instruction
+	 */
+	public int[] getOutputs(int id) {
+		return Arrays.copyOfRange(outputs, outputStart[id], outputStart[id + 1]);
+	}
+
+
+	public int getOutput(int id, int index) {
+		return outputs[outputStart[id] + index];
+	}
+
+
+	public int getOutputCount(int id) {
+		return outputStart[id + 1] - outputStart[id];
+	}
+
+
+	/**
+	 * @return ids of the instructions a branch instruction jumps to, NONE for a target that is not part of the program
+	 */
+	public int[] getTargets(int id) {
+		return Arrays.copyOfRange(targets, targetStart[id], targetStart[id + 1]);
+	}
+
+
+	public int getLabelCount() {
+		return labels.size();
+	}
+
+
+	/**
+	 * @return label id of a jump destination, NONE for other instructions
+	 */
+	public int getLabel(int id) {
+		return labelOf[id];
+	}
+
+
+	public String getLabelName(int label) {
+		return labels.get(label).getLabel();
+	}
+
+
+	public JumpDest getLabelInstruction(int label) {
+		return labels.get(label);
+	}
+
+}
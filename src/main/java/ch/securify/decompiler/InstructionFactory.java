@@ -23,7 +23,7 @@ import ch.securify.utils.Resolver;
 import ch.securify.decompiler.instructions.Byte;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.instructions.*;
-import java.util.Stack;
+import ch.securify.utils.EvmStack;
 
 public class InstructionFactory {
 
@@ -71,7 +71,7 @@ public class InstructionFactory {
 	 * @param stack
 	 * @return instruction instance.
 	 */
-	public Instruction createAndApply(RawInstruction rawInstruction, Stack<Variable> stack) {
+	public Instruction createAndApply(RawInstruction rawInstruction, EvmStack<Variable> stack) {
 		Instruction instruction = createInstance(rawInstruction, stack);
 
 		if (instruction == null) {
@@ -115,7 +115,7 @@ public class InstructionFactory {
 	 * @param stack current stack, may be modified.
 	 * @return
 	 */
-	private Instruction createInstance(RawInstruction rawInstruction, Stack<Variable> stack) {
+	private Instruction createInstance(RawInstruction rawInstruction, EvmStack<Variable> stack) {
 		switch (rawInstruction.opcode) {
 			case OpCodes.STOP: return new Stop();
 			case OpCodes.ADD: return new Add();
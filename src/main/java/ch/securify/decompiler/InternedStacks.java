@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.decompiler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent stacks of EVM values, as used when partially executing the bytecode.
+ * Stacks are immutable linked nodes that share their tails. Nodes are hash-consed, i.e. there is exactly one node
+ * for each sequence of values, so stacks can be compared by their id. Values are interned to ids as well.
+ */
+class InternedStacks {
+
+	/** Value id of unknown values (empty byte array) */
+	static final int UNKNOWN = 0;
+
+	/** Number of top stack items that are considered when comparing stacks, see {@link #window(Node)} */
+	static final int WINDOW_SIZE = 20;
+
+
+	static final class Node {
+		final int value;
+		final Node next;
+		final int depth;
+		final int id;
+		private Node window;
+
+		private Node(int value, Node next, int id) {
+			this.value = value;
+			this.next = next;
+			this.depth = next == null ? 0 : next.depth + 1;
+			this.id = id;
+		}
+	}
+
+
+	private final Node empty = new Node(UNKNOWN, null, 0);
+
+	/** (value id, next node id) -> node */
+	private final Map<Long, Node> nodes = new HashMap<>();
+
+	private final Map<ByteBuffer, Integer> valueIds = new HashMap<>();
+	private final List<byte[]> values = new ArrayList<>();
+
+
+	InternedStacks() {
+		values.add(new byte[0]);
+		valueIds.put(ByteBuffer.wrap(values.get(UNKNOWN)), UNKNOWN);
+	}
+
+
+	/**
+	 * Get the id of a value, values with the same content have the same id.
+	 * The value must not be modified afterwards.
+	 */
+	int intern(byte[] value) {
+		ByteBuffer key = ByteBuffer.wrap(value);
+		Integer id = valueIds.get(key);
+		if (id == null) {
+			id = values.size();
+			values.add(value);
+			valueIds.put(key, id);
+		}
+		return id;
+	}
+
+
+	byte[] getValue(int valueId) {
+		return values.get(valueId);
+	}
+
+
+	Node empty() {
+		return empty;
+	}
+
+
+	Node push(Node stack, int valueId) {
+		long key = ((long) valueId << 32) | (stack.id & 0xFFFFFFFFL);
+		Node node = nodes.get(key);
+		if (node == null) {
+			node = new Node(valueId, stack, nodes.size() + 1);
+			nodes.put(key, node);
+		}
+		return node;
+	}
+
+
+	Node pop(Node stack, int count) {
+		for (int i = 0; i < count; i++) {
+			if (stack.next == null) {
+				throw new EmptyStackException();
+			}
+			stack = stack.next;
+		}
+		return stack;
+	}
+
+
+	/**
+	 * @param index position from the top of the stack, 0 being the top item.
+	 * @return value id
+	 */
+	int peek(Node stack, int index) {
+		Node node = pop(stack, index);
+		if (node.next == null) {
+			throw new EmptyStackException();
+		}
+		return node.value;
+	}
+
+
+	/**
+	 * Swap the top item with the item at the given position from the top.
+	 */
+	Node swap(Node stack, int index) {
+		int[] top = new int[index + 1];
+		Node rest = stack;
+		for (int i = 0; i <= index; i++) {
+			top[i] = peek(rest, 0);
+			rest = rest.next;
+		}
+		int topValue = top[0];
+		top[0] = top[index];
+		top[index] = topValue;
+		for (int i = index; i >= 0; i--) {
+			rest = push(rest, top[i]);
+		}
+		return rest;
+	}
+
+
+	/**
+	 * Get the stack consisting of the top {@link #WINDOW_SIZE} items of the given stack.
+	 * Two stacks are considered equivalent for the control flow if their windows are the same node.
+	 */
+	Node window(Node stack) {
+		if (stack.window == null) {
+			stack.window = stack.depth <= WINDOW_SIZE ? stack : top(stack, WINDOW_SIZE);
+		}
+		return stack.window;
+	}
+
+
+	private Node top(Node stack, int count) {
+		if (stack.depth <= count) {
+			return stack;
+		}
+		if (count == 0) {
+			return empty;
+		}
+		return push(top(stack.next, count - 1), stack.value);
+	}
+
+}
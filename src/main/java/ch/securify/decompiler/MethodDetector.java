@@ -18,28 +18,27 @@
 
 package ch.securify.decompiler;
 
+import ch.securify.decompiler.evm.InstructionTable;
 import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.printer.HexPrinter;
-import ch.securify.utils.ArrayUtil;
-import ch.securify.utils.StackUtil;
+import ch.securify.utils.EvmStack;
+import ch.securify.utils.Log;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 
-import java.io.PrintStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 public class MethodDetector {
 
-	private PrintStream log;
+	private Log log;
 
-	private RawInstruction[] rawInstructions;
+	private InstructionTable rawInstructions;
 	private Multimap<Integer, Integer> jumps;
 	private Multimap<Integer, Integer> jumpsInv;
 	private ControlFlowDetector cfg;
@@ -71,8 +70,8 @@ public class MethodDetector {
 	 * @param cfg control flow graph.
 	 * @param methods method information to recognize corresponding instructions.
 	 */
-	public void detect(RawInstruction[] rawInstructions, Multimap<Integer, Integer> jumps,
-			ControlFlowDetector cfg, Map<Integer, MethodInfo> methods, PrintStream log) {
+	public void detect(InstructionTable rawInstructions, Multimap<Integer, Integer> jumps,
+			ControlFlowDetector cfg, Map<Integer, MethodInfo> methods, Log log) {
 		this.log = log;
 
 		this.rawInstructions = rawInstructions;
@@ -82,7 +81,7 @@ public class MethodDetector {
 
 		this.argumentCountForMethod = new HashMap<>();
 		this.returnVarCountForMethod = new HashMap<>();
-		this.belongsToMethod = new int[rawInstructions.length];
+		this.belongsToMethod = new int[rawInstructions.length()];
 		for (int i = 0; i < belongsToMethod.length; ++i) belongsToMethod[i] = -1;
 
 		this.variableStackSizeAtBeginOfMethod = new HashMap<>();
@@ -98,7 +97,7 @@ public class MethodDetector {
 		returnVarCountForMethod.put(0, 0);
 		variableStackSizeAtBeginOfMethod.put(0, 0);
 		stackAccessDepthForCallstackSize.put(0, 0);
-		detect(0, 0, new Stack<>());
+		detect(0, 0, new EvmStack<>());
 	}
 
 
@@ -108,7 +107,7 @@ public class MethodDetector {
 	 * @param operandStackSize Variable stack size at the beginning of the current branch.
 	 * @param callStack call stack (method calls).
 	 */
-	private void detect(int branchStartOffset, int operandStackSize, Stack<MethodCall> callStack) {
+	private void detect(int branchStartOffset, int operandStackSize, EvmStack<MethodCall> callStack) {
 		detect(branchStartOffset, branchStartOffset, operandStackSize, callStack);
 	}
 
@@ -120,7 +119,7 @@ public class MethodDetector {
 	 * @param operandStackSize Variable stack size at the beginning of the current branch.
 	 * @param callStack call stack (method calls).
 	 */
-	private void detect(int branchStartOffset, int pc, int operandStackSize, Stack<MethodCall> callStack) {
+	private void detect(int branchStartOffset, int pc, int operandStackSize, EvmStack<MethodCall> callStack) {
 		if (pc < branchStartOffset) {
 			throw new IllegalArgumentException("pc < branchStartOffset");
 		}
@@ -136,8 +135,8 @@ public class MethodDetector {
 			}
 		}
 
-		for (; ; pc = ArrayUtil.nextNonNullIndex(pc, rawInstructions)) {
-			RawInstruction rawInstruction = rawInstructions[pc];
+		for (; ; pc = rawInstructions.next(pc)) {
+			RawInstruction rawInstruction = rawInstructions.get(pc);
 			final int opcode = rawInstruction.opcode;
 
 			//log.println("[MD@" + toHex(callStack.size() == 0 ? 0x00 : callStack.peek().methodHead) + "]" +
@@ -152,7 +151,7 @@ public class MethodDetector {
                             HexPrinter.toHex(currentMethodBco) + " as well as " + HexPrinter.toHex(belongsToMethod[pc]));
                 }
 
-                int prevInstrOpcode = ArrayUtil.prevNonNullItem(pc, rawInstructions).opcode;
+                int prevInstrOpcode = rawInstructions.prevItem(pc).opcode;
                 if (opcode == OpCodes.JUMPDEST && prevInstrOpcode != OpCodes.JUMP) {
                     //log.println("[MD] linearly reached code that was already processed @" + toHex(pc));
                     return;
@@ -227,11 +226,11 @@ public class MethodDetector {
 					callStack.pop();
 
 					// end of method
-					int returnAddress = ArrayUtil.nextNonNullIndex(callSrc, rawInstructions);
+					int returnAddress = rawInstructions.next(callSrc);
 					//log.println("[MD]   returning to @" + toHex(returnAddress));
 					if (belongsToMethod[returnAddress] == -1) {
 						// continue on callee branch only
-						detect(returnAddress, operandStackSize, StackUtil.copyStack(callStack));
+						detect(returnAddress, operandStackSize, callStack.copy());
 					}
 					else {
 						//log.println("[MD]   already visited @" + toHex(returnAddress));
@@ -261,7 +260,7 @@ public class MethodDetector {
 							// this is a method call
 							callStack.push(new MethodCall(pc, jumpdest));
 						}
-						detect(jumpdest, operandStackSize, StackUtil.copyStack(callStack));
+						detect(jumpdest, operandStackSize, callStack.copy());
 					}
 					else if (isMethodCall) {
 						// target method already processed, continue on local branch
@@ -304,16 +303,16 @@ public class MethodDetector {
 
 						if (branchToTakeFirst == jumpdest) {
 							// remote branch first
-							detect(jumpdest, operandStackSize, StackUtil.copyStack(callStack));
+							detect(jumpdest, operandStackSize, callStack.copy());
 							if (belongsToMethod[linear] == -1) {
-								detect(branchStartOffset, linear, operandStackSize, StackUtil.copyStack(callStack));
+								detect(branchStartOffset, linear, operandStackSize, callStack.copy());
 							}
 						}
 						else {
 							// local branch first
-							detect(branchStartOffset, linear, operandStackSize, StackUtil.copyStack(callStack));
+							detect(branchStartOffset, linear, operandStackSize, callStack.copy());
 							if (belongsToMethod[jumpdest] == -1) {
-								detect(jumpdest, operandStackSize, StackUtil.copyStack(callStack));
+								detect(jumpdest, operandStackSize, callStack.copy());
 							}
 						}
 						return;
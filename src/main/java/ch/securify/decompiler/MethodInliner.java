@@ -27,52 +27,147 @@ import ch.securify.decompiler.instructions._VirtualInstruction;
 import ch.securify.decompiler.instructions._VirtualMethodHead;
 import ch.securify.decompiler.instructions._VirtualMethodInvoke;
 import ch.securify.decompiler.instructions._VirtualMethodReturn;
+import ch.securify.utils.EvmStack;
+import ch.securify.utils.Log;
 import ch.securify.utils.StackUtil;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class MethodInliner {
 
 
 	private Map<_VirtualMethodHead, List<Instruction>> methods;
 
-	private final AtomicInteger exitpointId = new AtomicInteger(1);
+	private final Log log;
 
-	private final PrintStream log;
 
-
-	private MethodInliner(PrintStream log) {
+	private MethodInliner(Log log) {
 		this.log = log;
 	}
 
 
 	public static List<Instruction> inline(List<Instruction> instructions, PrintStream log) {
+		return inline(instructions, Log.to(log, Log.Level.INFO));
+	}
+
+
+	public static List<Instruction> inline(List<Instruction> instructions, Log log) {
 		return new MethodInliner(log).process(instructions);
 	}
 
 
+	/**
+	 * Count the instructions that inlining would add to the program, without inlining.
+	 * Return reassignments are not counted, recursive invocations are not inlined.
+	 * @param instructions decompiled instructions with methods.
+	 * @return number of added instructions.
+	 */
+	public static long countInlinedInstructions(List<Instruction> instructions) {
+		if (instructions.stream().noneMatch(instruction -> instruction instanceof _VirtualMethodHead)) {
+			return 0;
+		}
+		Map<_VirtualMethodHead, List<Instruction>> methods = splitMethods(instructions);
+		Map<_VirtualMethodHead, Long> addedInstructions = new HashMap<>();
+		long added = 0;
+		for (_VirtualMethodHead methodHead : methods.keySet()) {
+			added += countInlinedInstructions(methodHead, methods, addedInstructions, StackUtil.create(methodHead));
+		}
+		return added;
+	}
+
+
+	private static long countInlinedInstructions(_VirtualMethodHead methodHead, Map<_VirtualMethodHead, List<Instruction>> methods,
+			Map<_VirtualMethodHead, Long> addedInstructions, EvmStack<_VirtualMethodHead> callstack) {
+		Long known = addedInstructions.get(methodHead);
+		if (known != null) {
+			return known;
+		}
+		long added = 0;
+		for (Instruction instruction : methods.get(methodHead)) {
+			if (!(instruction instanceof _VirtualMethodInvoke)) {
+				continue;
+			}
+			_VirtualMethodHead invokedMethod = (_VirtualMethodHead) ((_VirtualMethodInvoke) instruction).getOutgoingBranches().iterator().next();
+			if (callstack.contains(invokedMethod) || !methods.containsKey(invokedMethod)) {
+				continue;
+			}
+			callstack.push(invokedMethod);
+			long nestedAdded = countInlinedInstructions(invokedMethod, methods, addedInstructions, callstack);
+			callstack.pop();
+			// the body without the method head replaces the invocation, returns become jumps to a new exit point
+			List<Instruction> invokedBody = methods.get(invokedMethod);
+			boolean simpleReturn = invokedMethod.getReturnInstructions().size() == 1
+					&& invokedBody.get(invokedBody.size() - 1) instanceof _VirtualMethodReturn;
+			added += invokedBody.size() - 2 + (simpleReturn ? -1 : 1) + nestedAdded;
+		}
+		addedInstructions.put(methodHead, added);
+		return added;
+	}
+
+
 	private List<Instruction> process(List<Instruction> instructions) {
 		if (instructions.stream().noneMatch(instruction -> instruction instanceof _VirtualMethodHead)) {
 			// no methods found, so nothing to be inlined
-			log.println("[MINL] no methods found");
+			log.info("[MINL] no methods found");
 			return instructions;
 		}
 
-		methods = new HashMap<>();
-
 		int i = 0;
 		// skip to first method
 		while (!(instructions.get(i) instanceof _VirtualMethodHead)) {
 			i++;
 		}
 		List<Instruction> initInstructions = instructions.subList(0, i);
+		methods = splitMethods(instructions);
+
+		log.info(() -> "[MINL] found " + methods.size() + " methods");
+
+		// the invoked method bodies are copied from the decompiled methods, which are only modified once all
+		// copies have been made, so the methods can be processed in parallel and in any order
+		List<_VirtualMethodHead> methodHeads = new ArrayList<>(methods.keySet());
+		List<MethodCopies> copies = IntStream.range(0, methodHeads.size())
+				.mapToObj(MethodCopies::new)
+				.collect(Collectors.toList());
+		List<Map<_VirtualMethodInvoke, List<Instruction>>> inlinedMethodBodies = IntStream.range(0, methodHeads.size())
+				.parallel()
+				.mapToObj(m -> getInlinedMethodBodies(methods.get(methodHeads.get(m)),
+						StackUtil.create(methodHeads.get(m)), copies.get(m)))
+				.collect(Collectors.toList());
+		for (int m = 0; m < methodHeads.size(); m++) {
+			// the copied variables are named on this thread, in method order, as by a sequential inlining
+			copies.get(m).nameVariables();
+			replaceInvocations(methods.get(methodHeads.get(m)), inlinedMethodBodies.get(m));
+		}
+
+		// stitch new code together
+		List<Instruction> inlinedProgram = new ArrayList<>(initInstructions);
+		methods.forEach((methodHead, methodBody) -> inlinedProgram.addAll(methodBody));
+
+		return inlinedProgram;
+	}
+
+
+	/**
+	 * Split the instructions into the method bodies, each starting with its method head.
+	 * @param instructions decompiled instructions, the instructions ahead of the first method head are skipped.
+	 * @return method bodies in the order of the instructions.
+	 */
+	public static Map<_VirtualMethodHead, List<Instruction>> splitMethods(List<Instruction> instructions) {
+		Map<_VirtualMethodHead, List<Instruction>> methods = new LinkedHashMap<>();
+
+		int i = 0;
+		// skip to first method
+		while (i < instructions.size() && !(instructions.get(i) instanceof _VirtualMethodHead)) {
+			i++;
+		}
 		while (i < instructions.size()) {
 			List<Instruction> methodBody = new ArrayList<>();
 
@@ -87,68 +182,90 @@ public class MethodInliner {
 
 			methods.put(methodHead, methodBody);
 		}
+		return methods;
+	}
 
-		log.println("[MINL] found " + methods.size() + " methods");
-
-		// TODO: may need to copy all methods because later processed methods may use methods that have already inlined stuff
-		// (should not be a problem, worst case just generates more code, e.g. inlines recursive method once)
-
-		methods.forEach((methodHead, methodBody) -> processMethod(methodBody, StackUtil.create(methodHead)));
 
-		// stitch new code together
-		List<Instruction> inlinedProgram = new ArrayList<>(initInstructions);
-		methods.forEach((methodHead, methodBody) -> inlinedProgram.addAll(methodBody));
-
-		return inlinedProgram;
+	/**
+	 * Scan method for method calls to inline.
+	 * @param methodBody
+	 * @param callstack
+	 * @param copies
+	 */
+	private void processMethod(List<Instruction> methodBody, EvmStack<_VirtualMethodHead> callstack, MethodCopies copies) {
+		replaceInvocations(methodBody, getInlinedMethodBodies(methodBody, callstack, copies));
 	}
 
 
 	/**
-	 * Scan method for method calls to inline.
+	 * Copy the bodies of the methods invoked by a method, without modifying the method.
 	 * @param methodBody
 	 * @param callstack
+	 * @param copies
+	 * @return inlined method bodies by method invocation, in the order of the invocations.
 	 */
-	private void processMethod(List<Instruction> methodBody, Stack<_VirtualMethodHead> callstack) {
-		log.println("[MINL] processing method: " + callstack.peek().getLabel());
+	private Map<_VirtualMethodInvoke, List<Instruction>> getInlinedMethodBodies(List<Instruction> methodBody,
+			EvmStack<_VirtualMethodHead> callstack, MethodCopies copies) {
+		log.info(() -> "[MINL] processing method: " + callstack.peek().getLabel());
 
 		// search for method invocations to inline them
-		for (int i = 0; i < methodBody.size(); ++i) {
-			Instruction instruction = methodBody.get(i);
+		Map<_VirtualMethodInvoke, List<Instruction>> inlinedMethodBodies = new LinkedHashMap<>();
+		for (Instruction instruction : methodBody) {
 			if (!(instruction instanceof _VirtualMethodInvoke)) {
 				continue;
 			}
 
 			_VirtualMethodInvoke methodCall = (_VirtualMethodInvoke) instruction;
-
-			_VirtualMethodHead invokedMethod = (_VirtualMethodHead) methodCall.getOutgoingBranches().iterator().next();
-			List<Instruction> inlinedMethodBody = getInlinedMethodBody(methodCall, StackUtil.copyStack(callstack));
+			List<Instruction> inlinedMethodBody = getInlinedMethodBody(methodCall, callstack.copy(), copies);
 			if (inlinedMethodBody == null) {
 				// recursive call, could not inline method
 			}
 			else {
-				// replace method invocation instruction with inlined method body instructions
-				Instruction prev = instruction.getPrev();
-				Instruction next = instruction.getNext();
-
-				methodBody.remove(i);
-				methodBody.addAll(i, inlinedMethodBody);
-				if (inlinedMethodBody.size() > 1) {
-					inlinedMethodBody.get(0).setComment("start of inlined method " + invokedMethod.getLabel());
-					inlinedMethodBody.get(inlinedMethodBody.size() - 1)
-							.setComment("end of inlined method " + invokedMethod.getLabel());
-				}
-				else {
-					inlinedMethodBody.get(0).setComment("inlined method " + invokedMethod.getLabel());
-				}
+				inlinedMethodBodies.put(methodCall, inlinedMethodBody);
+			}
+		}
+		return inlinedMethodBodies;
+	}
 
-				prev.setNext(inlinedMethodBody.get(0));
-				inlinedMethodBody.get(0).setPrev(prev);
 
-				next.setPrev(inlinedMethodBody.get(inlinedMethodBody.size() - 1));
-				inlinedMethodBody.get(inlinedMethodBody.size() - 1).setNext(next);
+	/**
+	 * Replace method invocations with the inlined method bodies.
+	 * @param methodBody
+	 * @param inlinedMethodBodies
+	 */
+	private static void replaceInvocations(List<Instruction> methodBody,
+			Map<_VirtualMethodInvoke, List<Instruction>> inlinedMethodBodies) {
+		for (int i = 0; i < methodBody.size(); ++i) {
+			Instruction instruction = methodBody.get(i);
+			List<Instruction> inlinedMethodBody = inlinedMethodBodies.get(instruction);
+			if (inlinedMethodBody == null) {
+				continue;
+			}
+
+			_VirtualMethodHead invokedMethod = (_VirtualMethodHead) ((_VirtualMethodInvoke) instruction).getOutgoingBranches().iterator().next();
+
+			// replace method invocation instruction with inlined method body instructions
+			Instruction prev = instruction.getPrev();
+			Instruction next = instruction.getNext();
 
-				i += inlinedMethodBody.size() - 1; // skip inlined method
+			methodBody.remove(i);
+			methodBody.addAll(i, inlinedMethodBody);
+			if (inlinedMethodBody.size() > 1) {
+				inlinedMethodBody.get(0).setComment("start of inlined method " + invokedMethod.getLabel());
+				inlinedMethodBody.get(inlinedMethodBody.size() - 1)
+						.setComment("end of inlined method " + invokedMethod.getLabel());
 			}
+			else {
+				inlinedMethodBody.get(0).setComment("inlined method " + invokedMethod.getLabel());
+			}
+
+			prev.setNext(inlinedMethodBody.get(0));
+			inlinedMethodBody.get(0).setPrev(prev);
+
+			next.setPrev(inlinedMethodBody.get(inlinedMethodBody.size() - 1));
+			inlinedMethodBody.get(inlinedMethodBody.size() - 1).setNext(next);
+
+			i += inlinedMethodBody.size() - 1; // skip inlined method
 		}
 	}
 
@@ -157,13 +274,15 @@ public class MethodInliner {
 	 * Copy a method body and prepare it to be inlined.
 	 * @param methodCall
 	 * @param callstack
+	 * @param copies
 	 * @return
 	 */
-	private List<Instruction> getInlinedMethodBody(_VirtualMethodInvoke methodCall, Stack<_VirtualMethodHead> callstack) {
+	private List<Instruction> getInlinedMethodBody(_VirtualMethodInvoke methodCall, EvmStack<_VirtualMethodHead> callstack,
+			MethodCopies copies) {
 		_VirtualMethodHead invokedMethod = (_VirtualMethodHead) methodCall.getOutgoingBranches().iterator().next();
-		log.println("[MINL] inlining method " + invokedMethod.getLabel());
+		log.info(() -> "[MINL] inlining method " + invokedMethod.getLabel());
 		if (callstack.contains(invokedMethod)) {
-			log.println("[MINL] cannot inline recursive method " + invokedMethod.getLabel());
+			log.info(() -> "[MINL] cannot inline recursive method " + invokedMethod.getLabel());
 			return null;
 		}
 		callstack.push(invokedMethod);
@@ -192,15 +311,15 @@ public class MethodInliner {
 		// copy instructions
 		methodBody.forEach(instruction -> {
 			Instruction copiedInstruction = instruction.clone();
-			copiedInstruction.setInput(translateVars(variableTranslation, instruction.getInput()));
-			copiedInstruction.setOutput(translateVars(variableTranslation, instruction.getOutput()));
+			copiedInstruction.setInput(copies.translateVars(variableTranslation, instruction.getInput()));
+			copiedInstruction.setOutput(copies.translateVars(variableTranslation, instruction.getOutput()));
 			copiedMethodBody.add(copiedInstruction);
 
 			copyMap.put(instruction, copiedInstruction);
 		});
 
 		// reassigments for return statements
-		Map<_VirtualMethodReturn, List<Instruction>> returnReassignments = new HashMap<>();
+		Map<_VirtualMethodReturn, List<Instruction>> returnReassignments = new LinkedHashMap<>();
 
 		// link copied instructions
 		copiedMethodBody.forEach(instruction -> {
@@ -250,7 +369,7 @@ public class MethodInliner {
 		}
 		else {
 			// create method exit point
-			JumpDest exitPoint = new JumpDest("end_of_" + invokedMethod.getLabel() + "__" + exitpointId.getAndIncrement());
+			JumpDest exitPoint = new JumpDest(copies.createLabel(invokedMethod));
 			exitPoint.setInput(Instruction.NO_VARIABLES);
 			exitPoint.setOutput(Instruction.NO_VARIABLES);
 
@@ -290,28 +409,57 @@ public class MethodInliner {
 		copiedMethodBody.remove(0);
 
 		// check inlined method for further nested inlining
-		processMethod(copiedMethodBody, callstack);
+		processMethod(copiedMethodBody, callstack, copies);
 
 		return copiedMethodBody;
 	}
 
 
 	/**
-	 * Map original variables to new variables, using the given variable translation if known, creates a new one if not.
-	 * @param variableMap known variable translations.
-	 * @param variables original variables to be mapped.
-	 * @return mapped variables.
+	 * Labels and variables created while inlining the methods invoked by a method. The labels are numbered
+	 * independently of the other methods, the variables are named once all methods have been copied.
 	 */
-	private static Variable[] translateVars(Map<Variable, Variable> variableMap, Variable[] variables) {
-		Variable[] translated = new Variable[variables.length];
-		for (int i = 0; i < variables.length; i++) {
-			Variable variable = variables[i];
-			if (!variableMap.containsKey(variable)) {
-				variableMap.put(variable, new Variable());
+	private static class MethodCopies {
+
+		private final int method;
+		private int count = 0;
+		private final List<Variable> variables = new ArrayList<>();
+
+		MethodCopies(int method) {
+			this.method = method;
+		}
+
+		String createLabel(_VirtualMethodHead invokedMethod) {
+			return "end_of_" + invokedMethod.getLabel() + "__" + method + "_" + (++count);
+		}
+
+		/**
+		 * Map original variables to new variables, using the given variable translation if known, creates a new one if not.
+		 * @param variableMap known variable translations.
+		 * @param variables original variables to be mapped.
+		 * @return mapped variables.
+		 */
+		Variable[] translateVars(Map<Variable, Variable> variableMap, Variable[] variables) {
+			Variable[] translated = new Variable[variables.length];
+			for (int i = 0; i < variables.length; i++) {
+				Variable variable = variables[i];
+				if (!variableMap.containsKey(variable)) {
+					Variable copy = Variable.createUnnamed();
+					this.variables.add(copy);
+					variableMap.put(variable, copy);
+				}
+				translated[i] = variableMap.get(variable);
 			}
-			translated[i] = variableMap.get(variable);
+			return translated;
 		}
-		return translated;
+
+		/**
+		 * Name the created variables in the order of their creation.
+		 */
+		void nameVariables() {
+			variables.forEach(Variable::generateName);
+		}
+
 	}
 
 
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.util.Collection;
+
+/**
+ * Number of occurrences of each opcode in a contract or method, to decide which patterns can apply before computing
+ * any dataflow.
+ */
+public class OpcodeHistogram {
+
+	private final int[] counts = new int[256];
+
+
+	private OpcodeHistogram() {
+	}
+
+
+	/**
+	 * Count the opcodes of a contract in a single pass over its bytecode.
+	 * @param bytecode contract runtime binary.
+	 * @return histogram of all operations, including unreachable code.
+	 */
+	public static OpcodeHistogram of(byte[] bytecode) {
+		OpcodeHistogram histogram = new OpcodeHistogram();
+		EvmParser.parse(bytecode, (offset, instrNumber, opcode, payload) -> histogram.counts[opcode]++);
+		return histogram;
+	}
+
+
+	/**
+	 * Count the opcodes of decompiled instructions, e.g. of a method body.
+	 * @param instructions decompiled instructions, virtual instructions without bytecode operation are skipped.
+	 * @return histogram of the operations of the instructions.
+	 */
+	public static OpcodeHistogram of(Collection<Instruction> instructions) {
+		OpcodeHistogram histogram = new OpcodeHistogram();
+		for (Instruction instruction : instructions) {
+			if (instruction.getRawInstruction() != null) {
+				histogram.counts[instruction.getRawInstruction().opcode]++;
+			}
+		}
+		return histogram;
+	}
+
+
+	public int getCount(int opcode) {
+		return counts[opcode];
+	}
+
+
+	/**
+	 * @param opcodes opcodes of which at least one is required, none if anything goes.
+	 * @return true if one of the opcodes occurs, or if no opcode is required.
+	 */
+	public boolean containsAny(int[] opcodes) {
+		if (opcodes.length == 0) {
+			return true;
+		}
+		for (int opcode : opcodes) {
+			if (counts[opcode] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.evm.InstructionTable;
+import ch.securify.utils.Log;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed bytecode and control flow of a contract, shared by {@link Decompiler} and {@link DecompilerFallback}
+ * so that the fallback does not parse the bytecode and compute the branches again.
+ *
+ * The artifacts are not modified by the decompilers, so both may run concurrently on the same instance.
+ */
+public class ParsedContract {
+
+	final byte[] bytecode;
+	/** raw EVM instructions */
+	final InstructionTable rawInstructions;
+	/** ordered list of bytecode offsets of JUMPDEST instructions */
+	final List<Integer> jumpDestinations;
+	private final BiMap<Integer, String> tags;
+	final ControlFlowDetector controlFlowDetector;
+	/** bytecode offsets of JUMP/JUMPI instructions to the bytecode offsets of their JUMPDEST instructions */
+	final Multimap<Integer, Integer> mapJumpsToDests;
+	/** jumps to possible jump destinations and jump destinations to the next jump instruction */
+	final Multimap<Integer, Integer> controlFlowGraph;
+
+
+	private ParsedContract(byte[] bytecode, Log log) {
+		this.bytecode = bytecode;
+
+		List<Integer> jumpDestinations = new ArrayList<>();
+		this.rawInstructions = AbstractDecompiler.parseRawInstructions(bytecode, jumpDestinations);
+		this.jumpDestinations = Collections.unmodifiableList(jumpDestinations);
+
+		this.tags = AbstractDecompiler.findTags(log, jumpDestinations);
+
+		this.controlFlowDetector = new ControlFlowDetector();
+		this.mapJumpsToDests = HashMultimap.create();
+		this.controlFlowGraph = AbstractDecompiler.dectectControlFlow(log, rawInstructions, jumpDestinations, tags,
+				controlFlowDetector, mapJumpsToDests);
+	}
+
+
+	/**
+	 * Parse the bytecode and compute its control flow.
+	 * @param bytecode contract runtime binary
+	 * @param log receives the tags and branches
+	 * @return parsed contract
+	 * @throws IllegalArgumentException if the contract has jumps with ambiguous targets.
+	 */
+	public static ParsedContract parse(byte[] bytecode, PrintStream log) {
+		return parse(bytecode, Log.to(log, Log.Level.DEBUG));
+	}
+
+
+	/**
+	 * Parse the bytecode and compute its control flow.
+	 * @param bytecode contract runtime binary
+	 * @param log receives the tags and branches at debug level
+	 * @return parsed contract
+	 * @throws IllegalArgumentException if the contract has jumps with ambiguous targets.
+	 */
+	public static ParsedContract parse(byte[] bytecode, Log log) {
+		return new ParsedContract(bytecode, log);
+	}
+
+
+	/**
+	 * Get the labels of the jump destinations.
+	 * @return a new map from bytecode offsets to labels, which the caller may modify (e.g. to rename methods).
+	 */
+	BiMap<Integer, String> copyTags() {
+		return HashBiMap.create(tags);
+	}
+
+}
@@ -20,12 +20,13 @@ package ch.securify.decompiler;
 
 import ch.securify.decompiler.instructions._TypeInstruction;
 import ch.securify.decompiler.instructions.Instruction;
-import ch.securify.decompiler.printer.HexPrinter;
+import ch.securify.utils.EvmStack;
+import ch.securify.utils.UInt256;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
 public class Variable {
@@ -36,26 +37,26 @@ public class Variable {
 		Variable.debug = debug;
 	}
 
-	private static int nextVarId;
-	static { resetVarNameGenerator(); }
+	// names are generated per thread, so that concurrent decompilations do not interfere
+	private static final ThreadLocal<int[]> nextVarId = ThreadLocal.withInitial(() -> new int[1]);
 
-	private static synchronized String generateVarName() {
+	private static String generateVarName() {
 		StringBuilder sb = new StringBuilder();
-		int varId = nextVarId;
+		int[] next = nextVarId.get();
+		int varId = next[0]++;
 		do {
 			char letter = (char) ('a' + (varId % 26));
 			sb.append(letter);
 			varId /= 26;
 		} while (varId > 0);
-		nextVarId++;
 		return sb.reverse().toString();
 	}
 
 	/**
-	 * Reset the naming of Variables to start again from 'a'.
+	 * Reset the naming of Variables created by the current thread to start again from 'a'.
 	 */
 	public static void resetVarNameGenerator() {
-		nextVarId = 0;
+		nextVarId.get()[0] = 0;
 	}
 
 	/**
@@ -77,7 +78,7 @@ public class Variable {
 	 * @param count number of variables to pop from stack.
 	 * @return array of popped variables (first Variable corresponds to the topmost stack item).
 	 */
-	public static Variable[] takeFromStack(Stack<Variable> stack, int count) {
+	public static Variable[] takeFromStack(EvmStack<Variable> stack, int count) {
 		Variable[] variables = new Variable[count];
 		for (int i = 0; i < variables.length; i++) {
 			variables[i] = stack.pop();
@@ -91,7 +92,7 @@ public class Variable {
 	 * @param count number of variables to peek from stack.
 	 * @return array of variables (first Variable corresponds to the topmost stack item).
 	 */
-	public static Variable[] peekFromStack(Stack<Variable> stack, int count) {
+	public static Variable[] peekFromStack(EvmStack<Variable> stack, int count) {
 		int topIndex = stack.size() - 1;
 		Variable[] variables = new Variable[count];
 		for (int i = 0; i < variables.length; i++) {
@@ -103,29 +104,60 @@ public class Variable {
 
 	private String name;
 
+	private int id = -1;
+
 	public static final Class<Any> TYPE_ANY = Any.class;
 	private Set<Class<? extends Instruction>> valueTypes = new HashSet<>();
 
-	public static final byte[] VALUE_ANY = new byte[0];
-	public static final byte[] VALUE_UNDEFINED = new byte[0];
-
-	private byte[] constantValue = VALUE_UNDEFINED;
-	private Set<byte[]> hashConstants = new HashSet<>();
+	// constant value, null if it has not been set yet or if any value is possible
+	private UInt256 constantValue = null;
+	private boolean anyValue = false;
+	private Set<UInt256> hashConstants = new HashSet<>();
 
 	public Variable() {
 		name = generateVarName();
 	}
 
+	private Variable(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Create a variable without a name, e.g. on another thread, which has to be named with {@link #generateName()}.
+	 */
+	static Variable createUnnamed() {
+		return new Variable((String) null);
+	}
+
+	/**
+	 * Name the variable with the next generated name of the current thread.
+	 */
+	void generateName() {
+		name = generateVarName();
+	}
+
 	public String getName() {
 		return name;
 	}
 
+	/**
+	 * Get the dense id of this variable.
+	 * @return id, or -1 if no IndexedProgram has been built yet.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
 	@Override
 	public String toString() {
 		if (debug) {
 			return getName() +
 					"{" + valueTypes.stream().map(Class::getSimpleName).collect(Collectors.joining("|")) + "}" +
-					(hasConstantValue() ? ("{0x" + HexPrinter.toHex(getConstantValue()) + "}") : "{?}");
+					(hasConstantValue() ? ("{" + getConstantValue() + "}") : "{?}");
 		}
 		else {
 			return getName();
@@ -134,9 +166,13 @@ public class Variable {
 
 	/**
 	 * Get the constant value of this variable.
-	 * @return value, VALUE_UNDEFINED if never set or VALUE_ANY if everything is possible.
+	 * @return value
+	 * @throws IllegalStateException if the variable has no constant value, see {@link #hasConstantValue()}.
 	 */
-	public byte[] getConstantValue() {
+	public UInt256 getConstantValue() {
+		if (constantValue == null) {
+			throw new IllegalStateException("Variable " + getName() + " has no constant value");
+		}
 		return constantValue;
 	}
 
@@ -145,11 +181,35 @@ public class Variable {
 	 * @return true if there is a value, false if the value has not been set or is unknown.
 	 */
 	public boolean hasConstantValue() {
-		return constantValue.length > 0;
+		return constantValue != null;
+	}
+
+	/**
+	 * Whether the constant value of this variable has neither been set nor been found to be unknown.
+	 */
+	public boolean isConstantValueUndefined() {
+		return constantValue == null && !anyValue;
 	}
 
-	public void setConstantValue(byte[] value) {
-		constantValue = value;
+	public void setConstantValue(UInt256 value) {
+		constantValue = Objects.requireNonNull(value);
+		anyValue = false;
+	}
+
+	/**
+	 * Mark the value of this variable as unknown, everything is possible.
+	 */
+	public void setConstantValueAny() {
+		constantValue = null;
+		anyValue = true;
+	}
+
+	/**
+	 * Take over the constant value of another variable, including an undefined or unknown one.
+	 */
+	public void copyConstantValue(Variable other) {
+		constantValue = other.constantValue;
+		anyValue = other.anyValue;
 	}
 
 	public void addValueType(Class<? extends Instruction> type) {
@@ -160,10 +220,10 @@ public class Variable {
 		types.forEach(this::addValueType);
 	}
 
-	public void addHashConstant(byte[] hashConstant) {
+	public void addHashConstant(UInt256 hashConstant) {
 		hashConstants.add(hashConstant);
 	}
-	public Set<byte[]> getHashConstants() {
+	public Set<UInt256> getHashConstants() {
 		return hashConstants;
 	}
 
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler.evm;
+
+import java.util.Arrays;
+
+/**
+ * Parsed EVM bytecode, stored densely by instruction index.
+ * Instructions are addressed by their bytecode offset, push payload positions do not hold an instruction.
+ * The table ends with a virtual invalid instruction at offset bytecode.length.
+ * {@link RawInstruction}s are created on demand and not retained by the table, they have to be compared by offset.
+ */
+public class InstructionTable {
+
+	private final byte[] bytecode;
+
+	/** number of instructions, including the final virtual one */
+	private final int size;
+	private final int[] opcodes;
+	private final int[] offsets;
+	/** bytecode offset -> index of the last instruction starting at or before that offset */
+	private final int[] indexAt;
+
+
+	/**
+	 * @param bytecode plain bytecode.
+	 */
+	public InstructionTable(byte[] bytecode) {
+		this.bytecode = bytecode;
+		this.indexAt = new int[bytecode.length + 1];
+
+		int n = 0;
+		for (int pc = 0; pc < bytecode.length; ) {
+			int end = Math.min(pc + 1 + Math.max(OpCodes.isPush(bytecode[pc] & 0xFF), 0), bytecode.length);
+			Arrays.fill(indexAt, pc, end, n);
+			pc = end;
+			n++;
+		}
+		indexAt[bytecode.length] = n;
+
+		this.size = n + 1;
+		this.opcodes = new int[size];
+		this.offsets = new int[size];
+		for (int pc = 0, i = 0; pc < bytecode.length; pc++) {
+			if (indexAt[pc] == i) {
+				opcodes[i] = bytecode[pc] & 0xFF;
+				offsets[i] = pc;
+				i++;
+			}
+		}
+		opcodes[n] = OpCodes.getInvalid();
+		offsets[n] = bytecode.length;
+	}
+
+
+	private RawInstruction createInstruction(int index) {
+		byte[] data = null;
+		int dataLength = index < size - 1 ? OpCodes.isPush(opcodes[index]) : -1;
+		if (dataLength > -1) {
+			// payloads cut off by the end of the bytecode are padded with zeros
+			data = Arrays.copyOfRange(bytecode, offsets[index] + 1, offsets[index] + 1 + dataLength);
+		}
+		return new RawInstruction(opcodes[index], data, offsets[index], index < size - 1 ? index + 1 : -1);
+	}
+
+
+	/**
+	 * @return the bytecode offset after the last instruction, i.e. bytecode.length + 1.
+	 */
+	public int length() {
+		return indexAt.length;
+	}
+
+
+	/**
+	 * @return number of instructions, including the final virtual one.
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * @return the instruction starting at the given offset, null if the offset is inside a push payload.
+	 */
+	public RawInstruction get(int offset) {
+		int index = indexAt[offset];
+		return offsets[index] == offset ? createInstruction(index) : null;
+	}
+
+
+	/**
+	 * @return opcode of the instruction starting at the given offset.
+	 * @throws IllegalArgumentException if no instruction starts at the given offset.
+	 */
+	public int getOpcode(int offset) {
+		int index = indexAt[offset];
+		if (offsets[index] != offset) {
+			throw new IllegalArgumentException("No instruction at offset " + offset);
+		}
+		return opcodes[index];
+	}
+
+
+	/**
+	 * @return offset of the first instruction after the given offset, {@link #length()} if there is none.
+	 */
+	public int next(int offset) {
+		int index = offset < 0 ? 0 : offset < indexAt.length ? indexAt[offset] + 1 : size;
+		return index < size ? offsets[index] : indexAt.length;
+	}
+
+
+	/**
+	 * @return offset of the last instruction before the given offset, -1 if there is none.
+	 */
+	public int prev(int offset) {
+		if (offset <= 0) {
+			return -1;
+		}
+		return offsets[indexAt[Math.min(offset, indexAt.length) - 1]];
+	}
+
+
+	/**
+	 * @return the first instruction after the given offset, null if there is none.
+	 */
+	public RawInstruction nextItem(int offset) {
+		int next = next(offset);
+		return next < indexAt.length ? get(next) : null;
+	}
+
+
+	/**
+	 * @return the last instruction before the given offset, null if there is none.
+	 */
+	public RawInstruction prevItem(int offset) {
+		int prev = prev(offset);
+		return prev >= 0 ? get(prev) : null;
+	}
+
+}
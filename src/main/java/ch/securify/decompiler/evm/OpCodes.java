@@ -179,13 +179,23 @@ public class OpCodes {
 	public static final int SELFDESTRUCT = 0xff;
 
 
+	/** names of the constants above by opcode, looked up once instead of on every call of getOpName */
+	private static final String[] OP_NAMES = new String[256];
+
+	static {
+		for (int opcode = 0; opcode < OP_NAMES.length; opcode++) {
+			OP_NAMES[opcode] = ReflectionUtil.getConstantNameByValue(OpCodes.class, opcode);
+		}
+	}
+
+
 	/**
 	 * Get the name of the operation.
 	 * @param opcode
 	 * @return operation name, null if unknown opcode
 	 */
 	public static String getOpName(int opcode) {
-		String opname = ReflectionUtil.getConstantNameByValue(OpCodes.class, opcode);
+		String opname = opcode >= 0 && opcode < OP_NAMES.length ? OP_NAMES[opcode] : null;
 		if (opname != null) {
 			return opname;
 		}
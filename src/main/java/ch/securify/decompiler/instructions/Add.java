@@ -19,9 +19,7 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
-
-import java.math.BigInteger;
+import ch.securify.utils.UInt256;
 
 public class Add extends Instruction {
 
@@ -33,15 +31,14 @@ public class Add extends Instruction {
 	@Override
 	public void computeResultValues() {
 		if (getInput()[0].hasConstantValue() && getInput()[1].hasConstantValue() &&
-				getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
+				getOutput()[0].isConstantValueUndefined()) {
 			// TODO if output variable has already a constant value assigned, we could keep it if it's the same
-			BigInteger a = BigIntUtil.fromInt256(getInput()[0].getConstantValue());
-			BigInteger b = BigIntUtil.fromInt256(getInput()[1].getConstantValue());
-			BigInteger r = a.add(b);
-			getOutput()[0].setConstantValue(BigIntUtil.toInt256(r));
+			UInt256 a = getInput()[0].getConstantValue();
+			UInt256 b = getInput()[1].getConstantValue();
+			getOutput()[0].setConstantValue(a.add(b));
 		}
 		else {
-			getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+			getOutput()[0].setConstantValueAny();
 		}
 	}
 
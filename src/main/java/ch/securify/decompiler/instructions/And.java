@@ -18,10 +18,8 @@
 
 package ch.securify.decompiler.instructions;
 
-import java.math.BigInteger;
-
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
+import ch.securify.utils.UInt256;
 
 public class And extends Instruction {
 
@@ -33,13 +31,9 @@ public class And extends Instruction {
     @Override
     public void computeResultValues() {
         if (getInput()[0].hasConstantValue() && getInput()[1].hasConstantValue()) {
-            byte[] a = getInput()[0].getConstantValue();
-            byte[] b = getInput()[1].getConstantValue();
-            byte[] result = new byte[Math.min(a.length, b.length)];
-            for (int i = 0; i < result.length; ++i) {
-                result[i] = (byte) (a[i + (a.length - result.length)] & b[i + (b.length - result.length)]);
-            }
-            getOutput()[0].setConstantValue(result);
+            UInt256 a = getInput()[0].getConstantValue();
+            UInt256 b = getInput()[1].getConstantValue();
+            getOutput()[0].setConstantValue(a.and(b));
             return;
         }
 
@@ -48,33 +42,21 @@ public class And extends Instruction {
         boolean flag1, flag2;
         if ((flag1 = getInput()[0].hasConstantValue() && getInput()[1].getValueTypes().contains(_AddressType.class)) ||
             (flag2 = getInput()[1].hasConstantValue() && getInput()[0].getValueTypes().contains(_AddressType.class))){
-            byte[] b;
+            UInt256 b;
             if (flag1) {
                 b = getInput()[0].getConstantValue();
             } else {
                 // assume(flag2);
                 b = getInput()[1].getConstantValue();
             }
-            BigInteger bInt = BigIntUtil.fromInt256(b);
-            if (bInt.equals(BigInteger.ZERO)) {
-                getOutput()[0].setConstantValue(BigIntUtil.toInt256(BigInteger.ZERO));
+            UInt256 addressMask = UInt256.ONE.shiftLeft(8 * _AddressType.addressLength).subtract(UInt256.ONE);
+            if (b.and(addressMask).isZero()) {
+                getOutput()[0].setConstantValue(UInt256.ZERO);
                 return;
             }
-            if (b.length > _AddressType.addressLength - 1) {
-                boolean isZero = true;
-                for (int i = 0; i < _AddressType.addressLength; i++) {
-                    if (b[b.length - 1 - i] != 0) {
-                        isZero = false;
-                    }
-                }
-                if (isZero) {
-                    getOutput()[0].setConstantValue(BigIntUtil.toInt256(BigInteger.ZERO));
-                    return;
-                }
-            }
         }
 
-        getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+        getOutput()[0].setConstantValueAny();
 
     }
 
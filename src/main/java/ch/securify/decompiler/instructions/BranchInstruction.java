@@ -68,4 +68,14 @@ public class BranchInstruction extends Instruction {
 		return outgoingBranches;
 	}
 
+
+	@Override
+	public BranchInstruction clone() {
+		// the copy is relinked independently of this instruction
+		BranchInstruction copy = (BranchInstruction) super.clone();
+		copy.incomingBranches = new LinkedHashSet<>(incomingBranches);
+		copy.outgoingBranches = new LinkedHashSet<>(outgoingBranches);
+		return copy;
+	}
+
 }
@@ -1,9 +1,7 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
-
-import java.math.BigInteger;
+import ch.securify.utils.UInt256;
 
 public abstract class CallingInstruction extends Instruction {
     public abstract int getInputMemoryOffset();
@@ -15,10 +13,10 @@ public abstract class CallingInstruction extends Instruction {
     public boolean isBuiltInContractCall() {
         Variable toAddrVar = this.getInput()[1];
         if (toAddrVar.hasConstantValue()) {
-            BigInteger toAddr = BigIntUtil.fromInt256(toAddrVar.getConstantValue());
+            UInt256 toAddr = toAddrVar.getConstantValue();
             // is call to built-in contract
-            final BigInteger firstPrecompiledContractAddress = BigInteger.valueOf(1);
-            final BigInteger lastPrecompiledContractAddress = BigInteger.valueOf(8);
+            final UInt256 firstPrecompiledContractAddress = UInt256.valueOf(1);
+            final UInt256 lastPrecompiledContractAddress = UInt256.valueOf(8);
             return toAddr.compareTo(firstPrecompiledContractAddress) >= 0 &&
                     toAddr.compareTo(lastPrecompiledContractAddress) <= 0;
         }
@@ -18,10 +18,8 @@
 
 package ch.securify.decompiler.instructions;
 
-import java.math.BigInteger;
-
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
+import ch.securify.utils.UInt256;
 
 public class Exp extends Instruction {
 
@@ -33,14 +31,14 @@ public class Exp extends Instruction {
 	@Override
     public void computeResultValues() {
         if (getInput()[1].hasConstantValue() &&
-                getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
-            BigInteger a = BigIntUtil.fromInt256(getInput()[1].getConstantValue());
-            if (a.compareTo(BigInteger.ZERO) == 0) {
-                getOutput()[0].setConstantValue(BigIntUtil.toInt256(BigInteger.ONE));
+                getOutput()[0].isConstantValueUndefined()) {
+            UInt256 a = getInput()[1].getConstantValue();
+            if (a.isZero()) {
+                getOutput()[0].setConstantValue(UInt256.ONE);
             }
         }
         else {
-            getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+            getOutput()[0].setConstantValueAny();
         }
     }
 
@@ -18,11 +18,13 @@
 
 package ch.securify.decompiler.instructions;
 
+import ch.securify.decompiler.BasicBlock;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.evm.RawInstruction;
 import ch.securify.decompiler.printer.HexPrinter;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -35,13 +37,17 @@ public abstract class Instruction implements Cloneable {
 
 	private Variable[] input, output;
 
-	private Set<Variable> memInput = new HashSet<>();
+	private Set<Variable> memInput;
 
-	private Set<Instruction> dependsOn = new HashSet<>();
+	private Set<Instruction> dependsOn;
 
 	private Instruction prev;
 	private Instruction next;
 
+	private BasicBlock basicBlock;
+
+	private int id = -1;
+
 	private String comment;
 
 
@@ -154,6 +160,9 @@ public abstract class Instruction implements Cloneable {
 	 * @param instruction
 	 */
 	public void addDependency(Instruction instruction) {
+		if (dependsOn == null) {
+			dependsOn = new HashSet<>();
+		}
 		dependsOn.add(instruction);
 	}
 
@@ -163,7 +172,7 @@ public abstract class Instruction implements Cloneable {
 	 * @return
 	 */
 	public Set<Instruction> getDependencies() {
-		return dependsOn;
+		return dependsOn != null ? dependsOn : Collections.emptySet();
 	}
 
 
@@ -203,13 +212,44 @@ public abstract class Instruction implements Cloneable {
 	}
 
 
+	/**
+	 * Get the basic block containing this Instruction.
+	 * @return BasicBlock, or null if the control flow graph has not been built yet.
+	 */
+	public BasicBlock getBasicBlock() {
+		return basicBlock;
+	}
+
+
+	public void setBasicBlock(BasicBlock basicBlock) {
+		this.basicBlock = basicBlock;
+	}
+
+
+	/**
+	 * Get the dense id of this Instruction.
+	 * @return index in the decompiled instructions, or -1 if no IndexedProgram has been built yet.
+	 */
+	public int getId() {
+		return id;
+	}
+
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+
 	public void addMemoryInput(Variable inputVar) {
+		if (memInput == null) {
+			memInput = new HashSet<>();
+		}
 		memInput.add(inputVar);
 	}
 
 
 	public Collection<Variable> getMemoryInputs() {
-		return memInput;
+		return memInput != null ? memInput : Collections.emptySet();
 	}
 
 
@@ -218,7 +258,7 @@ public abstract class Instruction implements Cloneable {
 	 */
 	public void computeResultValues() {
 		for (Variable variable : getOutput()) {
-			variable.setConstantValue(Variable.VALUE_ANY);
+			variable.setConstantValueAny();
 		}
 	}
 
@@ -248,9 +288,18 @@ public abstract class Instruction implements Cloneable {
 
 
 	@Override
-	public Instruction clone() {
+	public synchronized Instruction clone() {
+		// the copy shares the memory inputs and dependencies with this instruction
+		if (memInput == null) {
+			memInput = new HashSet<>();
+		}
+		if (dependsOn == null) {
+			dependsOn = new HashSet<>();
+		}
 		try {
-			return (Instruction) super.clone();
+			Instruction copy = (Instruction) super.clone();
+			copy.id = -1;
+			return copy;
 		}
 		catch (CloneNotSupportedException e) {
 			throw new RuntimeException(e);
@@ -19,9 +19,7 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
-
-import java.math.BigInteger;
+import ch.securify.utils.UInt256;
 
 public class IsZero extends Instruction {
 
@@ -33,11 +31,11 @@ public class IsZero extends Instruction {
 	@Override
 	public void computeResultValues() {
 		if (getInput()[0].hasConstantValue()) {
-			BigInteger value = BigIntUtil.fromInt256(getInput()[0].getConstantValue());
-			getOutput()[0].setConstantValue(value.equals(BigInteger.ZERO) ? new byte[]{ 0x01 } : new byte[]{ 0x00 });
+			UInt256 value = getInput()[0].getConstantValue();
+			getOutput()[0].setConstantValue(value.isZero() ? UInt256.ONE : UInt256.ZERO);
 		}
 		else {
-			getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+			getOutput()[0].setConstantValueAny();
 		}
 	}
 
@@ -18,18 +18,24 @@
 
 package ch.securify.decompiler.instructions;
 
+import ch.securify.decompiler.BasicBlock;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.printer.HexPrinter;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public class JumpI extends BranchInstruction {
 
 	public String targetLabel;
 
+	private Instruction mergeInstruction;
+	private boolean mergeInstructionComputed;
+
 	public JumpI(String targetLabel) {
 		setTargetLabel(targetLabel);
 	}
@@ -63,22 +69,60 @@ public class JumpI extends BranchInstruction {
 
 	/**
 	 * Get the Instruction where the branches created by this conditional jump merge.
+	 * Once the control flow graph has been built, the result is computed only once.
 	 * @return Instruction at the merge point, null if the branches do not merge,
 	 */
 	public Instruction getMergeInstruction() {
+		if (getBasicBlock() == null) {
+			// the control flow may still change
+			return computeMergeInstruction();
+		}
+		if (!mergeInstructionComputed) {
+			mergeInstruction = computeMergeInstruction();
+			mergeInstructionComputed = true;
+		}
+		return mergeInstruction;
+	}
+
+	private Instruction computeMergeInstruction() {
 		Instruction branchA = getNext();
 		Instruction branchB = getTargetInstruction();
 		if (branchA == null || branchB == null)
 			return null;
 
 		// scan first branch (linear)
-		Set<Instruction> firstBranchInstrs = getAllReachableInstructions(branchA);
-		firstBranchInstrs.add(this);
+		Predicate<Instruction> firstBranchInstrs;
+		if (branchA.getBasicBlock() != null) {
+			BitSet firstBranchBlocks = getAllReachableBlocks(branchA.getBasicBlock());
+			firstBranchInstrs = i -> i == this
+					|| (i.getBasicBlock() != null && firstBranchBlocks.get(i.getBasicBlock().getId()));
+		}
+		else {
+			Set<Instruction> reachable = getAllReachableInstructions(branchA);
+			reachable.add(this);
+			firstBranchInstrs = reachable::contains;
+		}
 
 		// scan second branch (jump target)
 		return getFirstMutualInstruction(firstBranchInstrs, branchB);
 	}
 
+	private BitSet getAllReachableBlocks(BasicBlock start) {
+		BitSet reachable = new BitSet();
+		reachable.set(start.getId());
+		Queue<BasicBlock> bfs = new LinkedList<>();
+		bfs.add(start);
+		while (!bfs.isEmpty()) {
+			for (BasicBlock successor : bfs.poll().getLocalSuccessors()) {
+				if (!reachable.get(successor.getId())) {
+					reachable.set(successor.getId());
+					bfs.add(successor);
+				}
+			}
+		}
+		return reachable;
+	}
+
 	private Set<Instruction> getAllReachableInstructions(Instruction start) {
 		Set<Instruction> reachable = new HashSet<>();
 		reachable.add(start);
@@ -105,13 +149,13 @@ public class JumpI extends BranchInstruction {
 		return reachable;
 	}
 
-	private Instruction getFirstMutualInstruction(Set<Instruction> scanned, Instruction start) {
+	private Instruction getFirstMutualInstruction(Predicate<Instruction> scanned, Instruction start) {
 		Set<Instruction> reachable = new HashSet<>();
 		Queue<Instruction> bfs = new LinkedList<>();
 		bfs.add(start);
 		while (!bfs.isEmpty()) {
 			Instruction i = bfs.poll();
-			if (scanned.contains(i)) {
+			if (scanned.test(i)) {
 				// found merger
 				if (i instanceof JumpDest) {
 					// real merge
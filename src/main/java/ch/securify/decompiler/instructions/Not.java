@@ -30,18 +30,10 @@ public class Not extends Instruction {
 	@Override
 	public void computeResultValues() {
 		if (getInput()[0].hasConstantValue()) {
-			byte[] result = new byte[32];
-			byte[] input = getInput()[0].getConstantValue();
-			for (int i = 0; i < input.length; ++i) {
-				result[32 - i - 1] = (byte)(0xFF & ~input[input.length - i - 1]);
-			}
-			for (int i = input.length; i < 32; ++i) {
-				result[32 - i - 1] = (byte) 0xFF;
-			}
-			getOutput()[0].setConstantValue(result);
+			getOutput()[0].setConstantValue(getInput()[0].getConstantValue().not());
 		}
 		else {
-			getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+			getOutput()[0].setConstantValueAny();
 		}
 	}
 
@@ -19,15 +19,17 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
 import ch.securify.utils.Hex;
+import ch.securify.utils.UInt256;
 
 public class Push extends Instruction implements _TypeInstruction {
 
 	private final byte[] data;
+	private final UInt256 value;
 
 	public Push(byte[] data) {
 		this.data = data;
+		this.value = UInt256.fromBytes(data);
 	}
 
 	@Override
@@ -41,14 +43,14 @@ public class Push extends Instruction implements _TypeInstruction {
 
 	@Override
 	public void computeResultValues() {
-		if (getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
-			getOutput()[0].setConstantValue(data);
+		if (getOutput()[0].isConstantValueUndefined()) {
+			getOutput()[0].setConstantValue(value);
 		}
-		else if (getOutput()[0].hasConstantValue() && BigIntUtil.fromInt256(getOutput()[0].getConstantValue()).equals(BigIntUtil.fromInt256(data))) {
+		else if (getOutput()[0].hasConstantValue() && getOutput()[0].getConstantValue().equals(value)) {
 			// same output value as already assigned
 		}
 		else {
-			getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+			getOutput()[0].setConstantValueAny();
 		}
 	}
 
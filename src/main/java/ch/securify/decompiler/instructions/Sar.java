@@ -1,9 +1,7 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
-
-import java.math.BigInteger;
+import ch.securify.utils.UInt256;
 
 public class Sar extends Instruction {
 
@@ -15,28 +13,12 @@ public class Sar extends Instruction {
     @Override
     public void computeResultValues() {
         if (getInput()[0].hasConstantValue() && getInput()[1].hasConstantValue() &&
-                getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
-        	BigInteger r;
-            BigInteger a = BigIntUtil.fromUint256(getInput()[0].getConstantValue());
-            BigInteger b = BigIntUtil.fromInt256(getInput()[1].getConstantValue());
-            if(a.compareTo(BigInteger.valueOf(256)) >= 0) {
-            	if(b.signum() == -1) {
-            		r = BigInteger.valueOf(-1);
-            	}else {
-            		r = BigInteger.ZERO;
-            	}
-            } else if(b.signum() != -1) {
-                r = b.shiftRight(a.intValueExact());
-            } else  {
-            	r = b;
-            	for (int i = 0; i < a.intValueExact(); i++) {
-            		r.shiftRight(1);
-            		r.setBit(256);
-				}
-            }
-            getOutput()[0].setConstantValue(BigIntUtil.toInt256(r));
+                getOutput()[0].isConstantValueUndefined()) {
+            UInt256 a = getInput()[0].getConstantValue();
+            UInt256 b = getInput()[1].getConstantValue();
+            getOutput()[0].setConstantValue(b.sar(a));
         } else {
-            getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+            getOutput()[0].setConstantValueAny();
         }
     }
 }
@@ -1,9 +1,7 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
-
-import java.math.BigInteger;
+import ch.securify.utils.UInt256;
 
 public class Shl extends Instruction {
 
@@ -15,13 +13,12 @@ public class Shl extends Instruction {
     @Override
     public void computeResultValues() {
         if (getInput()[0].hasConstantValue() && getInput()[1].hasConstantValue() &&
-                getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
-            BigInteger a = BigIntUtil.fromInt256(getInput()[0].getConstantValue());
-            BigInteger b = BigIntUtil.fromInt256(getInput()[1].getConstantValue());
-            BigInteger r = b.shiftLeft(a.intValueExact());
-            getOutput()[0].setConstantValue(BigIntUtil.toInt256(r));
+                getOutput()[0].isConstantValueUndefined()) {
+            UInt256 a = getInput()[0].getConstantValue();
+            UInt256 b = getInput()[1].getConstantValue();
+            getOutput()[0].setConstantValue(b.shl(a));
         } else {
-            getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+            getOutput()[0].setConstantValueAny();
         }
     }
 }
@@ -19,13 +19,14 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
+import ch.securify.utils.UInt256;
 
 public class StaticCall extends CallingInstruction implements _TypeInstruction {
     private Variable value;
 
     public StaticCall() {
         value = new Variable();
-        value.setConstantValue(new byte[]{0});
+        value.setConstantValue(UInt256.ZERO);
     }
 
     @Override
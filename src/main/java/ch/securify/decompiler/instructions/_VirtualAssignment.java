@@ -19,7 +19,6 @@
 package ch.securify.decompiler.instructions;
 
 import ch.securify.decompiler.Variable;
-import ch.securify.utils.BigIntUtil;
 
 public class _VirtualAssignment extends Instruction implements _VirtualInstruction {
 
@@ -35,15 +34,15 @@ public class _VirtualAssignment extends Instruction implements _VirtualInstructi
 
 	@Override
 	public void computeResultValues() {
-		if (getInput()[0].hasConstantValue() && getOutput()[0].getConstantValue() == Variable.VALUE_UNDEFINED) {
+		if (getInput()[0].hasConstantValue() && getOutput()[0].isConstantValueUndefined()) {
 			getOutput()[0].setConstantValue(getInput()[0].getConstantValue());
 		}
 		else if (getInput()[0].hasConstantValue() && getOutput()[0].hasConstantValue()
-				&& BigIntUtil.fromInt256(getOutput()[0].getConstantValue()).equals(BigIntUtil.fromInt256(getInput()[0].getConstantValue()))) {
+				&& getOutput()[0].getConstantValue().equals(getInput()[0].getConstantValue())) {
 			// same output value as already assigned
 		}
 		else {
-			getOutput()[0].setConstantValue(Variable.VALUE_ANY);
+			getOutput()[0].setConstantValueAny();
 		}
 	}
 
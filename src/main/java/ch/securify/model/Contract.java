@@ -18,20 +18,57 @@
 
 package ch.securify.model;
 
+import ch.securify.utils.Hex;
+import com.google.gson.annotations.SerializedName;
+
 public class Contract {
 
+	@SerializedName(value = "address", alternate = {"contractAddress"})
 	private String contractAddress;
 	//private String init;
 
+	@SerializedName(value = "code", alternate = {"bytecode", "bin"})
 	private String code;
 
+	// raw bytecode, if the contract was not read from a hex string
+	private transient byte[] binary;
+
+	public Contract() {
+	}
+
+	public Contract(String contractAddress, String code) {
+		this.contractAddress = contractAddress;
+		this.code = code;
+	}
+
+	public Contract(String contractAddress, byte[] binary) {
+		this.contractAddress = contractAddress;
+		this.binary = binary;
+	}
+
 	public String getContractAddress() {
 		return contractAddress;
 	}
 
 
 	public String getCode() {
-		return code.substring(2);
+		if (code == null && binary != null) {
+			return Hex.encode(binary);
+		}
+		return code.startsWith("0x") ? code.substring(2) : code;
+	}
+
+
+	/**
+	 * @return raw bytecode, null if the contract only has a hex encoded code
+	 */
+	public byte[] getBinary() {
+		return binary;
+	}
+
+
+	public boolean hasCode() {
+		return code != null || binary != null;
 	}
 
 
@@ -29,6 +29,10 @@ public class ContractResult {
 
 	public SecurifyErrors securifyErrors = new SecurifyErrors();
 	public boolean finished = false;
+	/** true if the analysis stopped at a critical violation (--fail-fast) before all patterns have been checked */
+	public boolean partial = false;
 	public final Map<String, PatternResult> patternResults = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	/** analysis statistics, e.g. iteration counts */
+	public final Map<String, Long> metrics = new TreeMap<>();
 
 }
@@ -21,8 +21,6 @@ package ch.securify.patterns;
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.decompiler.instructions.Instruction;
 
-import java.util.List;
-
 public abstract class AbstractContractPattern extends AbstractPattern {
 
     public AbstractContractPattern(PatternDescription description) {
@@ -30,15 +28,21 @@ public abstract class AbstractContractPattern extends AbstractPattern {
     }
 
     @Override
-    public void checkPattern(List<Instruction> instructions, List<Instruction> allInstructions, AbstractDataflow dataflow) {
-        if (instructions.size() < 1)
+    public void checkPattern(InstructionIndex instructions, InstructionIndex allInstructions, AbstractDataflow dataflow) {
+        if (instructions.getInstructions().size() < 1)
             return;
 
+        Instruction firstInstr = instructions.getInstructions().get(0);
+
         boolean isViolation = isViolation(allInstructions, dataflow);
+        if (skipComplianceCheck(isViolation)) {
+            if (isViolation) {
+                addViolation(firstInstr);
+            }
+            return;
+        }
         boolean isSafe = isSafe(allInstructions, dataflow);
 
-        Instruction firstInstr = instructions.get(0);
-
         if (isViolation && !isSafe) {
             addViolation(firstInstr);
         } else if (!isViolation && isSafe) {
@@ -50,6 +54,6 @@ public abstract class AbstractContractPattern extends AbstractPattern {
         }
     }
 
-    protected abstract boolean isSafe(List<Instruction> instructions, AbstractDataflow dataflow);
-    protected abstract boolean isViolation(List<Instruction> instructions, AbstractDataflow dataflow);
+    protected abstract boolean isSafe(InstructionIndex instructions, AbstractDataflow dataflow);
+    protected abstract boolean isViolation(InstructionIndex instructions, AbstractDataflow dataflow);
 }
@@ -21,8 +21,6 @@ package ch.securify.patterns;
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.decompiler.instructions.Instruction;
 
-import java.util.List;
-
 public abstract class AbstractInstructionPattern extends AbstractPattern {
 
     public AbstractInstructionPattern(PatternDescription patternDescription) {
@@ -30,12 +28,18 @@ public abstract class AbstractInstructionPattern extends AbstractPattern {
     }
 
     @Override
-    public void checkPattern(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
-        for (Instruction instr: methodInstructions) {
+    public void checkPattern(InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
+        for (Instruction instr: methodInstructions.get(getApplicableKind())) {
             if (!applicable(instr, dataflow))
                 continue;
 
             boolean match = isViolation(instr, methodInstructions, contractInstructions, dataflow);
+            if (skipComplianceCheck(match)) {
+                if (match) {
+                    addViolation(instr);
+                }
+                continue;
+            }
             boolean nonMatch = isCompliant(instr, methodInstructions, contractInstructions, dataflow);
 
             if (match && !nonMatch) {
@@ -51,7 +55,14 @@ public abstract class AbstractInstructionPattern extends AbstractPattern {
     }
 
 
+    /**
+     * @return class of the instructions to which the pattern may be applicable, only these are passed to applicable
+     */
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Instruction.class;
+    }
+
     protected abstract boolean applicable(Instruction instr, AbstractDataflow dataflow);
-    protected abstract boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow);
-    protected abstract boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow);
+    protected abstract boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow);
+    protected abstract boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow);
 }
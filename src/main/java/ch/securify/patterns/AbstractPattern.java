@@ -26,8 +26,27 @@ import java.util.LinkedList;
 import java.util.List;
 
 public abstract class AbstractPattern {
+
+    /**
+     * How the violation and compliance checks of the pattern are evaluated.
+     */
+    public enum Evaluation {
+        /** evaluate both checks, to classify every instruction as violation, safe, warning or conflict */
+        FULL,
+        /** evaluate the violation check first and skip the compliance check of violations, which are then not
+         * distinguished from conflicts */
+        SHORT_CIRCUIT,
+        /** only evaluate the violation check and only report violations */
+        VIOLATIONS_ONLY
+    }
+
     PatternDescription description;
 
+    Evaluation evaluation = Evaluation.FULL;
+
+    // compliance checks that have not been evaluated due to the evaluation mode
+    long skippedComplianceChecks;
+
     public AbstractPattern(PatternDescription description){
         assert description != null;
         this.description = description;
@@ -49,12 +68,76 @@ public abstract class AbstractPattern {
         return description;
     }
 
+    /**
+     * @return true if a violation of the pattern is critical, see {@link PatternDescription.Severity}
+     */
+    public boolean isCritical() {
+        return description.severity == PatternDescription.Severity.Critical;
+    }
+
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    public void setEvaluation(Evaluation evaluation) {
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * @return number of compliance checks skipped so far, see {@link Evaluation}
+     */
+    public long getSkippedComplianceChecks() {
+        return skippedComplianceChecks;
+    }
+
+    /**
+     * @param isViolation result of the violation check
+     * @return true if the compliance check is not needed in the evaluation mode, and counts it as skipped
+     */
+    protected boolean skipComplianceCheck(boolean isViolation) {
+        if (evaluation == Evaluation.VIOLATIONS_ONLY || evaluation == Evaluation.SHORT_CIRCUIT && isViolation) {
+            skippedComplianceChecks++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Opcodes of which at least one must occur in the checked code for the pattern to report anything,
+     * so that the dataflow of code without them need not be computed for this pattern.
+     *
+     * @return required opcodes, empty if the pattern applies to any code
+     */
+    public int[] getRequiredOpcodes() {
+        return new int[0];
+    }
+
+    /**
+     * Instructions of the checked code at which the pattern may query the dataflow. Facts are only derived for these
+     * instructions and for the instructions that affect their facts, see {@link ch.securify.analysis.RelevanceSlice}.
+     *
+     * @param instructions instructions to be checked, indexed by kind
+     * @return queried instructions, or null if the pattern may query any instruction
+     */
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return null;
+    }
+
     /**
      * @param instructions : instructions to be checked
      * @param allInstructions
      * @param dataflow : dataflow facts
      */
-	public abstract void checkPattern(List<Instruction> instructions, List<Instruction> allInstructions, AbstractDataflow dataflow);
+    public void checkPattern(List<Instruction> instructions, List<Instruction> allInstructions, AbstractDataflow dataflow) {
+        checkPattern(InstructionIndex.of(instructions), InstructionIndex.of(allInstructions), dataflow);
+    }
+
+    /**
+     * @param instructions : instructions to be checked, indexed by kind
+     * @param allInstructions : instructions of the contract, indexed by kind
+     * @param dataflow : dataflow facts
+     */
+    public abstract void checkPattern(InstructionIndex instructions, InstructionIndex allInstructions, AbstractDataflow dataflow);
 
     /**
      * @return instructions that match the pattern (violations)
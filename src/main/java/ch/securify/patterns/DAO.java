@@ -21,12 +21,13 @@ package ch.securify.patterns;
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Call;
 import ch.securify.decompiler.instructions.Gas;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.SStore;
 
-import java.util.List;
+import java.util.Collection;
 
 public class DAO extends AbstractInstructionPattern {
 
@@ -39,13 +40,28 @@ public class DAO extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class, SStore.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         if (!(instr instanceof Call) || ((Call) instr).isBuiltInContractCall())
             return false;
 
         Variable value = instr.getInput()[2];
-        if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
+        if (value.hasConstantValue() && value.getConstantValue().isZero())
             return false;
 
         Variable gasVar = instr.getInput()[0];
@@ -56,26 +72,22 @@ public class DAO extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
-        for (Instruction otherInstr : methodInstructions) {
-            if (otherInstr instanceof SStore) {
-                int s = dataflow.mustPrecede(instr, otherInstr);
-                if (s == Status.SATISFIABLE) {
-                    return true;
-                }
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
+        for (SStore otherInstr : methodInstructions.get(SStore.class)) {
+            int s = dataflow.mustPrecede(instr, otherInstr);
+            if (s == Status.SATISFIABLE) {
+                return true;
             }
         }
         return false;
     }
 
     @Override
-    protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
-        for (Instruction otherInstr : methodInstructions) {
-            if (otherInstr instanceof SStore) {
-                int s = dataflow.mayFollow(instr, otherInstr);
-                if (s == Status.SATISFIABLE) {
-                    return false;
-                }
+    protected boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
+        for (SStore otherInstr : methodInstructions.get(SStore.class)) {
+            int s = dataflow.mayFollow(instr, otherInstr);
+            if (s == Status.SATISFIABLE) {
+                return false;
             }
         }
         return true;
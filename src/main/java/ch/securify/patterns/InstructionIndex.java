@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.patterns;
+
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.util.*;
+
+/**
+ * Instructions of a method body or of the entire contract, grouped by their class in a single scan, so that the
+ * patterns only iterate over the instructions of the kinds they check. The index is immutable and shared by all
+ * patterns checked on the same instructions.
+ */
+public class InstructionIndex {
+
+    private final List<Instruction> instructions;
+    private final Map<Class<?>, List<Instruction>> byKind = new HashMap<>();
+    private final Map<Instruction, Integer> positions = new IdentityHashMap<>();
+
+
+    private InstructionIndex(List<Instruction> instructions) {
+        this.instructions = instructions;
+        for (Instruction instruction : instructions) {
+            positions.put(instruction, positions.size());
+            // an instruction is indexed under its class and all its superclasses, e.g. Call under CallingInstruction
+            for (Class<?> kind = instruction.getClass(); kind != Object.class; kind = kind.getSuperclass()) {
+                byKind.computeIfAbsent(kind, k -> new ArrayList<>()).add(instruction);
+            }
+        }
+    }
+
+    /**
+     * @param instructions instructions of a method body or of the entire contract
+     * @return index of the instructions
+     */
+    public static InstructionIndex of(List<Instruction> instructions) {
+        return new InstructionIndex(instructions);
+    }
+
+    /**
+     * @return all instructions, in their original order
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @param kind instruction class, including its subclasses
+     * @return instructions of the kind, in their original order
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Instruction> List<T> get(Class<T> kind) {
+        return (List<T>) Collections.unmodifiableList(byKind.getOrDefault(kind, Collections.emptyList()));
+    }
+
+    /**
+     * @param kinds instruction classes, including their subclasses
+     * @return instructions of any of the kinds, in their original order
+     */
+    @SafeVarargs
+    public final List<Instruction> getAny(Class<? extends Instruction>... kinds) {
+        Set<Instruction> selected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Class<? extends Instruction> kind : kinds) {
+            selected.addAll(get(kind));
+        }
+        List<Instruction> result = new ArrayList<>(selected);
+        result.sort(Comparator.comparing(positions::get));
+        return result;
+    }
+
+}
@@ -18,15 +18,13 @@
 
 package ch.securify.patterns;
 
-import java.math.BigInteger;
-import java.util.List;
-
 import ch.securify.analysis.Status;
 
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
-import ch.securify.utils.BigIntUtil;
+
+import java.util.Collection;
 
 public class LockedEther extends AbstractContractPattern {
 
@@ -40,37 +38,38 @@ public class LockedEther extends AbstractContractPattern {
 
     }
 
-    private boolean allStopsCannotReceiveEther(List<Instruction> instructions, AbstractDataflow dataflow) {
-        for (Instruction haltInstr : instructions) {
-            if (haltInstr instanceof Stop || haltInstr instanceof Return) {
-                boolean stopCannotReceiveEther = false;
-                for (Instruction jumpInstr : instructions) {
-                    if (jumpInstr instanceof JumpI) {
-                        Variable cond = ((JumpI) jumpInstr).getCondition();
-                        if (dataflow.mustPrecede(jumpInstr, haltInstr) == Status.SATISFIABLE
-                                && dataflow.varMustDepOn(jumpInstr, cond, CallValue.class) == Status.SATISFIABLE
-                                && dataflow.varMustDepOn(jumpInstr, cond, IsZero.class) == Status.SATISFIABLE) {
-                            stopCannotReceiveEther = true;
-                            break;
-                        }
-                    }
-                }
-                if (!stopCannotReceiveEther) {
-                    return false;
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Stop.class, Return.class, JumpI.class, SelfDestruct.class, CallingInstruction.class);
+    }
+
+    private boolean allStopsCannotReceiveEther(InstructionIndex instructions, AbstractDataflow dataflow) {
+        for (Instruction haltInstr : instructions.getAny(Stop.class, Return.class)) {
+            boolean stopCannotReceiveEther = false;
+            for (JumpI jumpInstr : instructions.get(JumpI.class)) {
+                Variable cond = jumpInstr.getCondition();
+                if (dataflow.mustPrecede(jumpInstr, haltInstr) == Status.SATISFIABLE
+                        && dataflow.varMustDepOn(jumpInstr, cond, CallValue.class) == Status.SATISFIABLE
+                        && dataflow.varMustDepOn(jumpInstr, cond, IsZero.class) == Status.SATISFIABLE) {
+                    stopCannotReceiveEther = true;
+                    break;
                 }
             }
+            if (!stopCannotReceiveEther) {
+                return false;
+            }
         }
         return true;
     }
 
     @Override
-    protected boolean isSafe(List<Instruction> instructions, AbstractDataflow dataflow) {
+    protected boolean isSafe(InstructionIndex instructions, AbstractDataflow dataflow) {
         if (allStopsCannotReceiveEther(instructions, dataflow)) {
             return true;
         }
 
         // Check if the contract can send ether (has a call instruction with positive amount or a selfdestruct)
-        for (Instruction instr : instructions) {
+        for (Instruction instr : instructions.getAny(SelfDestruct.class, CallingInstruction.class)) {
             if (instr instanceof SelfDestruct) {
                 return true;
             }
@@ -85,7 +84,7 @@ public class LockedEther extends AbstractContractPattern {
             CallingInstruction callInstr = (CallingInstruction) instr;
 
             Variable amount = callInstr.getValue();
-            if (amount.hasConstantValue() && AbstractDataflow.getInt(amount.getConstantValue()) != 0
+            if (amount.hasConstantValue() && !amount.getConstantValue().isZero()
                     || dataflow.varMustDepOn(callInstr, amount, Balance.class) == Status.SATISFIABLE
                     || dataflow.varMustDepOn(callInstr, amount, CallDataLoad.class) == Status.SATISFIABLE
                     || dataflow.varMustDepOn(callInstr, amount, CallValue.class) == Status.SATISFIABLE
@@ -98,19 +97,19 @@ public class LockedEther extends AbstractContractPattern {
     }
 
     @Override
-    protected boolean isViolation(List<Instruction> instructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(InstructionIndex instructions, AbstractDataflow dataflow) {
         if (allStopsCannotReceiveEther(instructions, dataflow)) {
             return false;
         }
 
         // check if the contract can transfer ether
-        for (Instruction callInstr : instructions) {
+        for (Instruction callInstr : instructions.getAny(CallingInstruction.class, SelfDestruct.class)) {
             if (callInstr instanceof CallingInstruction) {
                 if (callInstr instanceof DelegateCall) {
                     return false;
                 } else {
                     Variable amount = ((CallingInstruction) callInstr).getValue();
-                    if (!amount.hasConstantValue() || BigIntUtil.fromInt256(amount.getConstantValue()).compareTo(BigInteger.ZERO) != 0) {
+                    if (!amount.hasConstantValue() || !amount.getConstantValue().isZero()) {
                         return false;
                     }
                 }
@@ -36,40 +36,48 @@ public class MissingInputValidation extends AbstractInstructionPattern {
                 PatternDescription.Type.Trust));
     }
 
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return _VirtualMethodHead.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        List<Instruction> queried = getUseInstructions(instructions);
+        queried.addAll(instructions.get(JumpI.class));
+        return queried;
+    }
+
+    // instructions whose use of an argument must be validated
+    private static List<Instruction> getUseInstructions(InstructionIndex instructions) {
+        return instructions.getAny(SStore.class, SLoad.class, MStore.class, MLoad.class, Sha3.class, Call.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         return instr instanceof _VirtualMethodHead;
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         Variable[] args = instr.getOutput();
+        List<Instruction> useInstrs = getUseInstructions(methodInstructions);
 
         for (Variable arg : args) {
             if (!arg.getValueTypes().contains(CallDataLoad.class)) {
                 continue;
             }
 
-            for (Instruction useInstr : methodInstructions) {
-                if (!(useInstr instanceof SStore
-                        || useInstr instanceof SLoad
-                        || useInstr instanceof MStore
-                        || useInstr instanceof MLoad
-                        || useInstr instanceof Sha3
-                        || useInstr instanceof Call))
-                    continue;
-
+            for (Instruction useInstr : useInstrs) {
                 for (Variable var : useInstr.getInput()) {
                     if (dataflow.varMustDepOn(useInstr, var, arg) == Status.SATISFIABLE) {
                         boolean varMayBeChecked = false;
-                        for (Instruction checkInstr : methodInstructions) {
-                            if (checkInstr instanceof JumpI) {
-                                if (dataflow.mayFollow(checkInstr, useInstr) == Status.SATISFIABLE) {
-                                    Variable cond = ((JumpI) checkInstr).getCondition();
-                                    if (dataflow.varMayDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
-                                        varMayBeChecked = true;
-                                        break;
-                                    }
+                        for (JumpI checkInstr : methodInstructions.get(JumpI.class)) {
+                            if (dataflow.mayFollow(checkInstr, useInstr) == Status.SATISFIABLE) {
+                                Variable cond = checkInstr.getCondition();
+                                if (dataflow.varMayDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
+                                    varMayBeChecked = true;
+                                    break;
                                 }
                             }
                         }
@@ -84,34 +92,25 @@ public class MissingInputValidation extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         Variable[] args = instr.getOutput();
+        List<Instruction> useInstrs = getUseInstructions(methodInstructions);
 
         for (Variable arg : args) {
             if (!arg.getValueTypes().contains(CallDataLoad.class)) {
                 continue;
             }
 
-            for (Instruction useInstr : methodInstructions) {
-                if (!(useInstr instanceof SStore
-                        || useInstr instanceof SLoad
-                        || useInstr instanceof MStore
-                        || useInstr instanceof MLoad
-                        || useInstr instanceof Sha3
-                        || useInstr instanceof Call))
-                    continue;
-
+            for (Instruction useInstr : useInstrs) {
                 for (Variable var : useInstr.getInput()) {
                     if (dataflow.varMayDepOn(useInstr, var, arg) == Status.SATISFIABLE) {
                         boolean varChecked = false;
-                        for (Instruction checkInstr : methodInstructions) {
-                            if (checkInstr instanceof JumpI) {
-                                if (dataflow.mustPrecede(checkInstr, useInstr) == Status.SATISFIABLE) {
-                                    Variable cond = ((JumpI) checkInstr).getCondition();
-                                    if (dataflow.varMustDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
-                                        varChecked = true;
-                                        break;
-                                    }
+                        for (JumpI checkInstr : methodInstructions.get(JumpI.class)) {
+                            if (dataflow.mustPrecede(checkInstr, useInstr) == Status.SATISFIABLE) {
+                                Variable cond = checkInstr.getCondition();
+                                if (dataflow.varMustDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
+                                    varChecked = true;
+                                    break;
                                 }
                             }
                         }
@@ -3,9 +3,11 @@ package ch.securify.patterns;
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -20,6 +22,29 @@ public class RepeatedCall extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL, OpCodes.CALLCODE, OpCodes.DELEGATECALL, OpCodes.STATICCALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return CallingInstruction.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        List<Instruction> queried = new ArrayList<>();
+        for (Instruction call : instructions.get(CallingInstruction.class)) {
+            queried.add(call);
+            // a call is checked for a loop through the flow to its predecessor
+            if (call.getPrev() != null) {
+                queried.add(call.getPrev());
+            }
+        }
+        return queried;
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         if (!(instr instanceof CallingInstruction))
@@ -33,15 +58,15 @@ public class RepeatedCall extends AbstractInstructionPattern {
 
         Variable gasAmount = call.getInput()[0];
 
-        return !gasAmount.hasConstantValue() || AbstractDataflow.getInt(gasAmount.getConstantValue()) != 0;
+        return !gasAmount.hasConstantValue() || !gasAmount.getConstantValue().isZero();
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         return isViolation((CallingInstruction) instr, methodInstructions, dataflow);
     }
 
-    protected boolean isViolation(CallingInstruction instr, List<Instruction> methodInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(CallingInstruction instr, InstructionIndex methodInstructions, AbstractDataflow dataflow) {
         Variable callee = instr.getInput()[1];
         // If the code is from a safe source it should be fine
         if (dataflow.varMayDepOn(instr, callee, CallDataLoad.class) != Status.SATISFIABLE && dataflow.varMayDepOn(instr, callee, CallDataCopy.class) != Status.SATISFIABLE) {
@@ -49,11 +74,8 @@ public class RepeatedCall extends AbstractInstructionPattern {
         }
 
         Instruction prev = instr.getPrev();
-        for (Instruction mInstr : methodInstructions) {
-
-            if (!mInstr.getClass().equals(instr.getClass()))
-                continue;
-
+        // only calls of the same kind are compared
+        for (Instruction mInstr : methodInstructions.get(instr.getClass())) {
             CallingInstruction call = (CallingInstruction) mInstr;
 
             Variable targetCall = call.getInput()[1];
@@ -95,7 +117,7 @@ public class RepeatedCall extends AbstractInstructionPattern {
                 if (callMemorySize.hasConstantValue() != instrMemorySize.hasConstantValue()) {
                     continue;
                 }
-                if ((callMemorySize.hasConstantValue()) && (Arrays.equals(callMemorySize.getConstantValue(), instrMemorySize.getConstantValue()))) {
+                if ((callMemorySize.hasConstantValue()) && (callMemorySize.getConstantValue().equals(instrMemorySize.getConstantValue()))) {
                     continue;
                 }
             }
@@ -110,7 +132,7 @@ public class RepeatedCall extends AbstractInstructionPattern {
                     break;
                 }
                 if (callMemoryVar.hasConstantValue() && instrMemoryVar.hasConstantValue()) {
-                    if (!Arrays.equals(callMemoryVar.getConstantValue(), instrMemoryVar.getConstantValue())) {
+                    if (!callMemoryVar.getConstantValue().equals(instrMemoryVar.getConstantValue())) {
                         matched = false;
                         break;
                     }
@@ -128,11 +150,11 @@ public class RepeatedCall extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         return isCompliant((CallingInstruction) instr, methodInstructions, dataflow);
     }
 
-    protected boolean isCompliant(CallingInstruction instr, List<Instruction> methodInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(CallingInstruction instr, InstructionIndex methodInstructions, AbstractDataflow dataflow) {
         Variable callee = instr.getInput()[1];
         // If the code is from a safe source it should be fine
         if (dataflow.varMayDepOn(instr, callee, CallDataLoad.class) == Status.UNSATISFIABLE && dataflow.varMayDepOn(instr, callee, CallDataCopy.class) == Status.UNSATISFIABLE) {
@@ -140,7 +162,8 @@ public class RepeatedCall extends AbstractInstructionPattern {
         }
 
         Instruction prev = instr.getPrev();
-        for (Instruction mInstr : methodInstructions) {
+        // only calls of the same kind are compared
+        for (Instruction mInstr : methodInstructions.get(instr.getClass())) {
             if (mInstr == instr) {
                 // Check if it can be reached through a loop
                 if (dataflow.mayFollow(mInstr, prev) == Status.UNSATISFIABLE)
@@ -151,10 +174,6 @@ public class RepeatedCall extends AbstractInstructionPattern {
                     continue;
             }
 
-
-            if (!mInstr.getClass().equals(instr.getClass()))
-                continue;
-
             CallingInstruction call = (CallingInstruction) mInstr;
 
             Variable targetCall = call.getInput()[1];
@@ -182,7 +201,7 @@ public class RepeatedCall extends AbstractInstructionPattern {
                 if (callMemorySize.hasConstantValue() != instrMemorySize.hasConstantValue()) {
                     continue;
                 }
-                if ((callMemorySize.hasConstantValue()) && (Arrays.equals(callMemorySize.getConstantValue(), instrMemorySize.getConstantValue()))) {
+                if ((callMemorySize.hasConstantValue()) && (callMemorySize.getConstantValue().equals(instrMemorySize.getConstantValue()))) {
                     continue;
                 }
             }
@@ -197,7 +216,7 @@ public class RepeatedCall extends AbstractInstructionPattern {
                     break;
                 }
                 if (callMemoryVar.hasConstantValue() && instrMemoryVar.hasConstantValue()) {
-                    if (!Arrays.equals(callMemoryVar.getConstantValue(), instrMemoryVar.getConstantValue())) {
+                    if (!callMemoryVar.getConstantValue().equals(instrMemoryVar.getConstantValue())) {
                         matched = false;
                         break;
                     }
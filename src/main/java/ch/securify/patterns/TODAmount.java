@@ -18,14 +18,15 @@
 
 package ch.securify.patterns;
 
-import java.util.List;
-
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Dataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
+import java.util.Collection;
+
 public class TODAmount extends AbstractInstructionPattern {
 
     public TODAmount(){
@@ -37,28 +38,40 @@ public class TODAmount extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         if (!(instr instanceof Call) || ((Call) instr).isBuiltInContractCall())
             return false;
 
         Variable value = instr.getInput()[2];
-        if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
+        if (value.hasConstantValue() && value.getConstantValue().isZero())
             return false;
 
         return true;
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         if (instr instanceof Call) {
             Variable amount = instr.getInput()[2];
             if (dataflow.varMustDepOn(instr, amount, SLoad.class) == Status.SATISFIABLE) {
 
-                for (Instruction sstore : contractInstructions) {
-                    if (!(sstore instanceof SStore))
-                        continue;
-
+                for (SStore sstore : contractInstructions.get(SStore.class)) {
                     Variable index = sstore.getInput()[0];
                     if (!index.hasConstantValue())
                         continue;
@@ -80,7 +93,7 @@ public class TODAmount extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(instr instanceof Call);
 
         Variable amount = instr.getInput()[2];
@@ -103,10 +116,7 @@ public class TODAmount extends AbstractInstructionPattern {
                 return false;
             }
 
-            for (Instruction sstore : contractInstructions) {
-                if (!(sstore instanceof SStore))
-                    continue;
-
+            for (SStore sstore : contractInstructions.get(SStore.class)) {
                 Variable index = sstore.getInput()[0];
                 if (!index.hasConstantValue())
                     continue;
@@ -22,9 +22,10 @@ import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Dataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
-import java.util.List;
+import java.util.Collection;
 
 public class TODReceiver extends AbstractInstructionPattern {
 
@@ -37,29 +38,41 @@ public class TODReceiver extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         if (!(instr instanceof Call) || ((Call) instr).isBuiltInContractCall())
             return false;
 
         Variable value = instr.getInput()[2];
-        if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
+        if (value.hasConstantValue() && value.getConstantValue().isZero())
             return false;
 
         return true;
     }
 
     @Override
-    protected boolean isViolation(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert (call instanceof Call);
 
         Variable receiver = call.getInput()[1];
         if (dataflow.varMustDepOn(call, receiver, SLoad.class) == Status.SATISFIABLE) {
 
-            for (Instruction sstore : contractInstructions) {
-                if (!(sstore instanceof SStore))
-                    continue;
-
+            for (SStore sstore : contractInstructions.get(SStore.class)) {
                 Variable index = sstore.getInput()[0];
                 if (!index.hasConstantValue())
                     continue;
@@ -76,7 +89,7 @@ public class TODReceiver extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert (call instanceof Call);
 
         Variable receiver = call.getInput()[1];
@@ -98,10 +111,7 @@ public class TODReceiver extends AbstractInstructionPattern {
                 return false;
             }
 
-            for (Instruction sstore : contractInstructions) {
-                if (!(sstore instanceof SStore))
-                    continue;
-
+            for (SStore sstore : contractInstructions.get(SStore.class)) {
                 Variable index = sstore.getInput()[0];
                 if (!index.hasConstantValue())
                     continue;
@@ -18,14 +18,14 @@
 
 package ch.securify.patterns;
 
-import java.util.List;
-
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Dataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
 
+import java.util.Collection;
+
 public class TODTransfer extends AbstractInstructionPattern {
 
     public TODTransfer() {
@@ -37,36 +37,40 @@ public class TODTransfer extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class, JumpI.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         if (!(instr instanceof Call) || ((Call) instr).isBuiltInContractCall())
             return false;
 
         Variable value = instr.getInput()[2];
-        if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
+        if (value.hasConstantValue() && value.getConstantValue().isZero())
             return false;
 
         return true;
     }
 
     @Override
-    protected boolean isViolation(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(call instanceof Call);
 
-        for (Instruction jump : methodInstructions) {
-            if (!(jump instanceof JumpI))
-                continue;
-
+        for (JumpI jump : methodInstructions.get(JumpI.class)) {
             if (dataflow.mustPrecede(jump, call) == Status.UNSATISFIABLE)
                 continue;
 
-            Variable cond = ((JumpI)jump).getCondition();
+            Variable cond = jump.getCondition();
             if (dataflow.varMustDepOn(jump, cond, SLoad.class) == Status.SATISFIABLE) {
 
-                for (Instruction sstore : contractInstructions) {
-                    if (!(sstore instanceof SStore))
-                        continue;
-
+                for (SStore sstore : contractInstructions.get(SStore.class)) {
                     Variable index = sstore.getInput()[0];
                     if (!index.hasConstantValue())
                         continue;
@@ -84,7 +88,7 @@ public class TODTransfer extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(call instanceof Call);
 
         if (dataflow.instrMayDepOn(call, SLoad.class) == Status.UNSATISFIABLE) {
@@ -92,23 +96,17 @@ public class TODTransfer extends AbstractInstructionPattern {
                 return true;
             }
         } else {
-            for (Instruction jump : methodInstructions) {
-                if (!(jump instanceof JumpI))
-                    continue;
-
+            for (JumpI jump : methodInstructions.get(JumpI.class)) {
                 if (dataflow.mayFollow(jump, call) == Status.UNSATISFIABLE)
                     continue;
 
-                Variable cond = ((JumpI) jump).getCondition();
+                Variable cond = jump.getCondition();
 
                 if (dataflow.varMayDepOn(jump, cond, AbstractDataflow.UNK_CONST_VAL) == Status.SATISFIABLE) {
                     return false;
                 }
 
-                for (Instruction sstore : contractInstructions) {
-                    if (!(sstore instanceof SStore))
-                        continue;
-
+                for (SStore sstore : contractInstructions.get(SStore.class)) {
                     Variable index = sstore.getInput()[0];
                     if (!index.hasConstantValue())
                         continue;
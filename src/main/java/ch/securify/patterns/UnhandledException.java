@@ -18,14 +18,15 @@
 
 package ch.securify.patterns;
 
-import java.util.List;
-
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Status;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Call;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.JumpI;
 
+import java.util.Collection;
+
 public class UnhandledException extends AbstractInstructionPattern {
 
     public UnhandledException() {
@@ -37,20 +38,33 @@ public class UnhandledException extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class, JumpI.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         return instr instanceof Call && !((Call) instr).isBuiltInContractCall();
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         if (instr instanceof Call) {
-            for (Instruction otherInstr : methodInstructions) {
-                if (otherInstr instanceof JumpI) {
-                    if (dataflow.mayFollow(instr, otherInstr) == Status.SATISFIABLE) {
-                        if (dataflow.varMayDepOn(otherInstr, ((JumpI) otherInstr).getCondition(), instr.getOutput()[0]) == Status.SATISFIABLE) {
-                            return false;
-                        }
+            for (JumpI otherInstr : methodInstructions.get(JumpI.class)) {
+                if (dataflow.mayFollow(instr, otherInstr) == Status.SATISFIABLE) {
+                    if (dataflow.varMayDepOn(otherInstr, otherInstr.getCondition(), instr.getOutput()[0]) == Status.SATISFIABLE) {
+                        return false;
                     }
                 }
             }
@@ -60,15 +74,13 @@ public class UnhandledException extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         if (instr instanceof Call) {
-            for (Instruction otherInstr : methodInstructions) {
-                if (otherInstr instanceof JumpI) {
-                    if (dataflow.mustPrecede(instr, otherInstr) == Status.SATISFIABLE) {
-                        // Assumes we tag output variables of Calls with themselves
-                        if (dataflow.varMustDepOn(otherInstr, ((JumpI) otherInstr).getCondition(), instr.getOutput()[0]) == Status.SATISFIABLE) {
-                            return true;
-                        }
+            for (JumpI otherInstr : methodInstructions.get(JumpI.class)) {
+                if (dataflow.mustPrecede(instr, otherInstr) == Status.SATISFIABLE) {
+                    // Assumes we tag output variables of Calls with themselves
+                    if (dataflow.varMustDepOn(otherInstr, otherInstr.getCondition(), instr.getOutput()[0]) == Status.SATISFIABLE) {
+                        return true;
                     }
                 }
             }
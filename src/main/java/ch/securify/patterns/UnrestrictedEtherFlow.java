@@ -18,13 +18,14 @@
 
 package ch.securify.patterns;
 
-import java.util.List;
-
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
+import java.util.Collection;
+
 public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
 
     public UnrestrictedEtherFlow() {
@@ -36,13 +37,28 @@ public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.CALL};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return Call.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(Call.class, JumpI.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         return instr instanceof Call;
     }
 
     @Override
-    protected boolean isViolation(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert (call instanceof Call);
 
         if (dataflow.instrMayDepOn(call, Caller.class) == Status.SATISFIABLE) {
@@ -52,12 +68,12 @@ public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
 
         Variable amount = call.getInput()[2];
 
-        if (amount.hasConstantValue() && AbstractDataflow.getInt(amount.getConstantValue()) == 0) {
+        if (amount.hasConstantValue() && amount.getConstantValue().isZero()) {
             // the amount is zero
             return false;
         }
 
-        if (amount.hasConstantValue() && AbstractDataflow.getInt(amount.getConstantValue()) > 0) {
+        if (amount.hasConstantValue() && !amount.getConstantValue().isZero()) {
             // the amount is a positive constant
             return true;
         }
@@ -72,22 +88,19 @@ public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction call, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction call, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(call instanceof Call);
 
         Variable value = call.getInput()[2];
 
-        if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0) {
+        if (value.hasConstantValue() && value.getConstantValue().isZero()) {
             // the amount is zero
             return true;
         }
 
-        for (Instruction jump : methodInstructions) {
-            if (!(jump instanceof JumpI))
-                continue;
-
+        for (JumpI jump : methodInstructions.get(JumpI.class)) {
             if (dataflow.mustPrecede(jump, call) == Status.SATISFIABLE) {
-                Variable cond = ((JumpI) jump).getCondition();
+                Variable cond = jump.getCondition();
                 if (dataflow.varMustDepOn(jump, cond, Caller.class) == Status.SATISFIABLE) {
                     // there must be a jump instruction that preceeds the call and whose condition depends on the caller
                     return true;
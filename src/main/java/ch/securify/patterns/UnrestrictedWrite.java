@@ -18,17 +18,18 @@
 
 package ch.securify.patterns;
 
-import java.util.List;
-
 import ch.securify.analysis.Status;
 
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Caller;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.JumpI;
 import ch.securify.decompiler.instructions.SStore;
 
+import java.util.Collection;
+
 public class UnrestrictedWrite extends AbstractInstructionPattern {
 
     public UnrestrictedWrite() {
@@ -40,13 +41,28 @@ public class UnrestrictedWrite extends AbstractInstructionPattern {
                 PatternDescription.Type.Security));
     }
 
+    @Override
+    public int[] getRequiredOpcodes() {
+        return new int[]{OpCodes.SSTORE};
+    }
+
+    @Override
+    protected Class<? extends Instruction> getApplicableKind() {
+        return SStore.class;
+    }
+
+    @Override
+    public Collection<Instruction> getQueriedInstructions(InstructionIndex instructions) {
+        return instructions.getAny(SStore.class, JumpI.class);
+    }
+
     @Override
     protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         return instr instanceof SStore;
     }
 
     @Override
-    protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isViolation(Instruction instr, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(instr instanceof SStore);
 
         if (dataflow.varMayDepOn(instr, instr.getInput()[0], Caller.class) == Status.SATISFIABLE)
@@ -59,18 +75,15 @@ public class UnrestrictedWrite extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean isCompliant(Instruction sstore, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+    protected boolean isCompliant(Instruction sstore, InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
         assert(sstore instanceof SStore);
         if (dataflow.varMustDepOn(sstore, sstore.getInput()[0], Caller.class) == Status.SATISFIABLE) {
             return true;
         }
 
-        for (Instruction jump : methodInstructions) {
-            if (!(jump instanceof JumpI))
-                continue;
-
+        for (JumpI jump : methodInstructions.get(JumpI.class)) {
             if (dataflow.mustPrecede(jump, sstore) == Status.SATISFIABLE) {
-                Variable cond = ((JumpI) jump).getCondition();
+                Variable cond = jump.getCondition();
                 if (dataflow.varMustDepOn(jump, cond, Caller.class) == Status.SATISFIABLE) {
                     return true;
                 }
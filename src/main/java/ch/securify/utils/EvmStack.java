@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.stream.Stream;
+
+/**
+ * Unsynchronized array-backed stack, used for the EVM operand stack and the call stacks of the decompiler.
+ *
+ * Items are addressed by their index from the bottom of the stack, like with {@link java.util.Stack}.
+ * {@link #copy()} is O(1): the copy shares the array with the original until either of them is modified.
+ * @param <T> item type
+ */
+public class EvmStack<T> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Object[] items;
+	private int size;
+	/** the array may be shared with a copy and must be copied before it is modified */
+	private boolean shared;
+
+
+	public EvmStack() {
+		items = new Object[INITIAL_CAPACITY];
+	}
+
+
+	private EvmStack(Object[] items, int size) {
+		this.items = items;
+		this.size = size;
+		this.shared = true;
+	}
+
+
+	/**
+	 * Makes a shallow copy of the stack, in constant time.
+	 * @return stack with the same items
+	 */
+	public EvmStack<T> copy() {
+		shared = true;
+		return new EvmStack<>(items, size);
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	public void push(T item) {
+		ensureWritable(size + 1);
+		items[size++] = item;
+	}
+
+
+	@SuppressWarnings("unchecked")
+	public T pop() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		ensureWritable(size);
+		T item = (T) items[--size];
+		items[size] = null;
+		return item;
+	}
+
+
+	@SuppressWarnings("unchecked")
+	public T peek() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		return (T) items[size - 1];
+	}
+
+
+	/**
+	 * @param index position from the bottom of the stack, 0 being the bottom item.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		checkIndex(index);
+		return (T) items[index];
+	}
+
+
+	/**
+	 * @param index position from the bottom of the stack, 0 being the bottom item.
+	 */
+	public void set(int index, T item) {
+		checkIndex(index);
+		ensureWritable(size);
+		items[index] = item;
+	}
+
+
+	/**
+	 * Insert an item below the bottom item.
+	 */
+	public void insertAtBottom(T item) {
+		ensureWritable(size + 1);
+		System.arraycopy(items, 0, items, 1, size);
+		items[0] = item;
+		size++;
+	}
+
+
+	public boolean contains(Object item) {
+		for (int i = 0; i < size; i++) {
+			if (item == null ? items[i] == null : item.equals(items[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * @return the items from the bottom to the top of the stack
+	 */
+	@SuppressWarnings("unchecked")
+	public Stream<T> stream() {
+		return (Stream<T>) Arrays.stream(items, 0, size);
+	}
+
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+	}
+
+
+	/**
+	 * Make sure that the array is not shared and can hold the given number of items.
+	 */
+	private void ensureWritable(int capacity) {
+		if (shared || capacity > items.length) {
+			items = Arrays.copyOf(items, Math.max(capacity > items.length ? items.length * 2 : items.length, INITIAL_CAPACITY));
+			shared = false;
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		return Arrays.toString(Arrays.copyOf(items, size));
+	}
+
+}
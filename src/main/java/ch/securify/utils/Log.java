@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.io.PrintStream;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Leveled log. Messages of a disabled level are not built: computed messages are passed as suppliers, which are
+ * only called if their level is enabled.
+ */
+public final class Log {
+
+	public enum Level {
+		OFF,
+		/** progress of the analysis, printed with --verbose */
+		INFO,
+		/** internals of the decompiler and the dataflow analysis, printed with --debug */
+		DEBUG
+	}
+
+	/** log that drops every message */
+	public static final Log OFF = new Log(new DevNullPrintStream(), Level.OFF);
+
+
+	private final PrintStream out;
+	private final Level level;
+
+
+	private Log(PrintStream out, Level level) {
+		this.out = out;
+		this.level = level;
+	}
+
+
+	/**
+	 * @param out stream receiving the messages
+	 * @param level most detailed level to print
+	 * @return log printing the messages up to the given level
+	 */
+	public static Log to(PrintStream out, Level level) {
+		if (level == Level.OFF || out instanceof DevNullPrintStream) {
+			return OFF;
+		}
+		return new Log(out, level);
+	}
+
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public boolean isEnabled(Level level) {
+		return level != Level.OFF && level.compareTo(this.level) <= 0;
+	}
+
+
+	/**
+	 * Print an empty line.
+	 */
+	public void info() {
+		if (isEnabled(Level.INFO)) {
+			out.println();
+		}
+	}
+
+	/**
+	 * @param message constant message; computed messages should be passed as supplier
+	 */
+	public void info(String message) {
+		if (isEnabled(Level.INFO)) {
+			out.println(message);
+		}
+	}
+
+	public void info(Supplier<String> message) {
+		if (isEnabled(Level.INFO)) {
+			out.println(message.get());
+		}
+	}
+
+	/**
+	 * Print an empty line.
+	 */
+	public void debug() {
+		if (isEnabled(Level.DEBUG)) {
+			out.println();
+		}
+	}
+
+	/**
+	 * @param message constant message; computed messages should be passed as supplier
+	 */
+	public void debug(String message) {
+		if (isEnabled(Level.DEBUG)) {
+			out.println(message);
+		}
+	}
+
+	public void debug(Supplier<String> message) {
+		if (isEnabled(Level.DEBUG)) {
+			out.println(message.get());
+		}
+	}
+
+	/**
+	 * Let a printer write to the log, e.g. a listing of instructions.
+	 * @param level level of the output
+	 * @param printer only called if the level is enabled
+	 */
+	public void print(Level level, Consumer<PrintStream> printer) {
+		if (isEnabled(level)) {
+			printer.accept(out);
+		}
+	}
+
+}
@@ -0,0 +1,288 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import ch.securify.BatchAnalysis;
+import ch.securify.CompilationHelpers;
+import ch.securify.model.Contract;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Binary corpus of contract bytecodes, read through memory mapping.
+ *
+ * Layout (all numbers big endian):
+ * <pre>
+ *   magic "SECCORP1" | int count | int reserved
+ *   long codeOffsets[count + 1] | long addressOffsets[count + 1]
+ *   code blobs | UTF-8 address blobs
+ * </pre>
+ * The code of contract i is the raw bytecode in [codeOffsets[i], codeOffsets[i+1]), offsets are absolute file
+ * positions. Contracts can therefore be accessed by index without decoding any other entry.
+ */
+public class PackedCorpus implements Closeable {
+
+    public static final String EXTENSION = ".pcorpus";
+
+    private static final byte[] MAGIC = "SECCORP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 16;
+    // files larger than 2GB are mapped in several segments
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int count;
+
+    private PackedCorpus(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            throw new IOException("Not a packed corpus");
+        }
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+
+        byte[] header = read(0, HEADER_SIZE);
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a packed corpus");
+        }
+        count = ByteBuffer.wrap(header).getInt(MAGIC.length);
+        if (count < 0 || HEADER_SIZE + 16L * (count + 1) > size || getOffset(2 * count + 1) != size) {
+            throw new IOException("Corrupted packed corpus");
+        }
+    }
+
+    /**
+     * Open a packed corpus for reading. The returned corpus can be shared between threads.
+     */
+    public static PackedCorpus open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new PackedCorpus(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the file starts with the packed corpus magic number
+     */
+    public static boolean isPackedCorpus(File file) {
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] magic = new byte[MAGIC.length];
+            return is.read(magic) == MAGIC.length && Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return runtime bytecode of the contract at the given index
+     */
+    public byte[] getCode(int index) {
+        checkIndex(index);
+        long start = getOffset(index);
+        return read(start, (int) (getOffset(index + 1) - start));
+    }
+
+    /**
+     * @return address of the contract at the given index
+     */
+    public String getAddress(int index) {
+        checkIndex(index);
+        long start = getOffset(count + 1 + index);
+        return new String(read(start, (int) (getOffset(count + 2 + index) - start)), StandardCharsets.UTF_8);
+    }
+
+    public Contract getContract(int index) {
+        return new Contract(getAddress(index), getCode(index));
+    }
+
+    /**
+     * @return the contracts in index order, read lazily
+     */
+    public Stream<Contract> contracts() {
+        return IntStream.range(0, count).mapToObj(this::getContract);
+    }
+
+    /**
+     * @return the contracts with an index in [fromIndex, min(toIndex, size())), read lazily
+     */
+    public Stream<Contract> contracts(int fromIndex, int toIndex) {
+        return IntStream.range(Math.min(fromIndex, count), Math.min(toIndex, count)).mapToObj(this::getContract);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Contract " + index + " of " + count);
+        }
+    }
+
+    private long getOffset(int i) {
+        return ByteBuffer.wrap(read(HEADER_SIZE + 8L * i, 8)).getLong();
+    }
+
+    private byte[] read(long position, int length) {
+        byte[] data = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long pos = position + done;
+            // duplicate, so that concurrent readers do not share the buffer position
+            ByteBuffer segment = segments[(int) (pos / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (pos % SEGMENT_SIZE));
+            int n = Math.min(length - done, segment.remaining());
+            segment.get(data, done, n);
+            done += n;
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Write contracts into a packed corpus.
+     *
+     * @return number of contracts written
+     */
+    public static int write(Stream<Contract> contracts, File output) throws IOException {
+        Path codeFile = Files.createTempFile("securify_corpus_code", ".tmp");
+        Path addressFile = Files.createTempFile("securify_corpus_address", ".tmp");
+        try {
+            List<Long> codeOffsets = new ArrayList<>();
+            List<Long> addressOffsets = new ArrayList<>();
+            long codeSize = 0, addressSize = 0;
+
+            try (OutputStream codes = new BufferedOutputStream(Files.newOutputStream(codeFile));
+                 OutputStream addresses = new BufferedOutputStream(Files.newOutputStream(addressFile))) {
+                for (Contract contract : (Iterable<Contract>) contracts::iterator) {
+                    if (contract.getContractAddress() == null || !contract.hasCode()) {
+                        throw new IllegalArgumentException("Corpus entry without address or code");
+                    }
+                    byte[] code = contract.getBinary() != null ? contract.getBinary()
+                            : Hex.decode(CompilationHelpers.sanitizeLibraries(contract.getCode()));
+                    byte[] address = contract.getContractAddress().getBytes(StandardCharsets.UTF_8);
+                    codeOffsets.add(codeSize);
+                    addressOffsets.add(addressSize);
+                    codes.write(code);
+                    addresses.write(address);
+                    codeSize += code.length;
+                    addressSize += address.length;
+                }
+            }
+            codeOffsets.add(codeSize);
+            addressOffsets.add(addressSize);
+
+            int count = codeOffsets.size() - 1;
+            long codeStart = HEADER_SIZE + 16L * (count + 1);
+            long addressStart = codeStart + codeSize;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+                out.write(MAGIC);
+                out.writeInt(count);
+                out.writeInt(0);
+                for (long offset : codeOffsets) {
+                    out.writeLong(codeStart + offset);
+                }
+                for (long offset : addressOffsets) {
+                    out.writeLong(addressStart + offset);
+                }
+                Files.copy(codeFile, out);
+                Files.copy(addressFile, out);
+            }
+            return count;
+        } finally {
+            Files.deleteIfExists(codeFile);
+            Files.deleteIfExists(addressFile);
+        }
+    }
+
+    private static Stream<Contract> readInput(File input) throws IOException {
+        if (input.isDirectory()) {
+            // hex dumps, one contract per file, named by its address
+            List<File> files;
+            try (Stream<Path> paths = Files.walk(input.toPath())) {
+                files = paths.map(Path::toFile)
+                        .filter(file -> file.isFile() && file.getName().endsWith(".hex"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            return files.stream().map(PackedCorpus::readHexFile);
+        }
+        if (input.getName().endsWith(".hex")) {
+            return Stream.of(readHexFile(input));
+        }
+        return BatchAnalysis.readCorpus(input);
+    }
+
+    private static Contract readHexFile(File file) {
+        String name = file.getName();
+        String address = name.substring(0, name.indexOf('.') > 0 ? name.indexOf('.') : name.length());
+        try {
+            return new Contract(address, CompilationHelpers.extractBinaryFromHexFile(file.getPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param args
+     *            Output file followed by the inputs: JSONL or CSV corpora (see --batch), hex files or directories
+     *            of hex files named by the contract address.
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PackedCorpus <output" + EXTENSION + "> <input>...");
+            System.exit(1);
+        }
+
+        List<Stream<Contract>> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            inputs.add(readInput(new File(args[i])));
+        }
+        try (Stream<Contract> contracts = inputs.stream().flatMap(s -> s)) {
+            int count = write(contracts, new File(args[0]));
+            System.out.println("Wrote " + count + " contracts to " + args[0]);
+        }
+    }
+}
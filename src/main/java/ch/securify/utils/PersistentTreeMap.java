@@ -0,0 +1,259 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * Immutable sorted map with structural sharing, i.e. updates copy only the path to the changed entry.
+ *
+ * Implemented as a treap whose priorities are derived from the key hashes, so the shape of the tree only depends
+ * on the set of keys. Maps derived from a common ancestor therefore share all subtrees they did not modify,
+ * which lets {@link #intersection(PersistentTreeMap)} and {@link #removeConflicts(PersistentTreeMap)} skip them.
+ * Values are compared by identity.
+ */
+public final class PersistentTreeMap<K extends Comparable<K>, V> {
+
+	private static final PersistentTreeMap<?, ?> EMPTY = new PersistentTreeMap<>(null);
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final int priority;
+		final Node<K, V> left, right;
+
+		Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+			this.key = key;
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+		}
+
+		Node<K, V> with(Node<K, V> left, Node<K, V> right) {
+			return left == this.left && right == this.right ? this : new Node<>(key, value, priority, left, right);
+		}
+	}
+
+	private final Node<K, V> root;
+
+
+	private PersistentTreeMap(Node<K, V> root) {
+		this.root = root;
+	}
+
+
+	@SuppressWarnings("unchecked")
+	public static <K extends Comparable<K>, V> PersistentTreeMap<K, V> empty() {
+		return (PersistentTreeMap<K, V>) EMPTY;
+	}
+
+
+	private PersistentTreeMap<K, V> withRoot(Node<K, V> newRoot) {
+		if (newRoot == root) {
+			return this;
+		}
+		return newRoot == null ? empty() : new PersistentTreeMap<>(newRoot);
+	}
+
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+
+	public V get(K key) {
+		Node<K, V> node = root;
+		while (node != null) {
+			int c = key.compareTo(node.key);
+			if (c == 0) {
+				return node.value;
+			}
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+
+	/**
+	 * @return map with the given entry added or replaced.
+	 */
+	public PersistentTreeMap<K, V> put(K key, V value) {
+		return withRoot(put(root, key, value, priority(key)));
+	}
+
+
+	private Node<K, V> put(Node<K, V> node, K key, V value, int priority) {
+		if (node == null) {
+			return new Node<>(key, value, priority, null, null);
+		}
+		int c = key.compareTo(node.key);
+		if (c == 0) {
+			return node.value == value ? node : new Node<>(key, value, priority, node.left, node.right);
+		}
+		if (isAbove(priority, key, node)) {
+			// the new entry becomes the root of this subtree, the key is not contained in it
+			Node<K, V>[] parts = split(node, key);
+			return new Node<>(key, value, priority, parts[0], parts[2]);
+		}
+		return c < 0 ? node.with(put(node.left, key, value, priority), node.right)
+				: node.with(node.left, put(node.right, key, value, priority));
+	}
+
+
+	/**
+	 * @return map without the given key.
+	 */
+	public PersistentTreeMap<K, V> remove(K key) {
+		return withRoot(remove(root, key));
+	}
+
+
+	private Node<K, V> remove(Node<K, V> node, K key) {
+		if (node == null) {
+			return null;
+		}
+		int c = key.compareTo(node.key);
+		if (c == 0) {
+			return join(node.left, node.right);
+		}
+		return c < 0 ? node.with(remove(node.left, key), node.right) : node.with(node.left, remove(node.right, key));
+	}
+
+
+	/**
+	 * @return map without the entries matching the predicate.
+	 */
+	public PersistentTreeMap<K, V> removeIf(BiPredicate<? super K, ? super V> predicate) {
+		return withRoot(removeIf(root, predicate));
+	}
+
+
+	private Node<K, V> removeIf(Node<K, V> node, BiPredicate<? super K, ? super V> predicate) {
+		if (node == null) {
+			return null;
+		}
+		Node<K, V> left = removeIf(node.left, predicate);
+		Node<K, V> right = removeIf(node.right, predicate);
+		return predicate.test(node.key, node.value) ? join(left, right) : node.with(left, right);
+	}
+
+
+	/**
+	 * Iterate the entries in key order.
+	 */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		forEach(root, action);
+	}
+
+
+	private static <K, V> void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+		while (node != null) {
+			forEach(node.left, action);
+			action.accept(node.key, node.value);
+			node = node.right;
+		}
+	}
+
+
+	/**
+	 * @return map of the entries that are contained in both maps with the same value.
+	 */
+	public PersistentTreeMap<K, V> intersection(PersistentTreeMap<K, V> other) {
+		return withRoot(merge(root, other.root, true));
+	}
+
+
+	/**
+	 * @return map without the entries for which the other map has a different value.
+	 */
+	public PersistentTreeMap<K, V> removeConflicts(PersistentTreeMap<K, V> other) {
+		return withRoot(merge(root, other.root, false));
+	}
+
+
+	private Node<K, V> merge(Node<K, V> node, Node<K, V> other, boolean intersect) {
+		if (node == other) {
+			// shared subtree
+			return node;
+		}
+		if (node == null || other == null) {
+			return intersect ? null : node;
+		}
+		Node<K, V>[] parts = split(other, node.key);
+		Node<K, V> left = merge(node.left, parts[0], intersect);
+		Node<K, V> right = merge(node.right, parts[2], intersect);
+		boolean keep = parts[1] == null ? !intersect : parts[1].value == node.value;
+		return keep ? node.with(left, right) : join(left, right);
+	}
+
+
+	/**
+	 * @return the entries with keys less than, equal to and greater than the given key.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <K extends Comparable<K>, V> Node<K, V>[] split(Node<K, V> node, K key) {
+		if (node == null) {
+			return (Node<K, V>[]) new Node<?, ?>[3];
+		}
+		int c = key.compareTo(node.key);
+		if (c == 0) {
+			return (Node<K, V>[]) new Node<?, ?>[] {node.left, node, node.right};
+		}
+		if (c < 0) {
+			Node<K, V>[] parts = split(node.left, key);
+			parts[2] = node.with(parts[2], node.right);
+			return parts;
+		}
+		Node<K, V>[] parts = split(node.right, key);
+		parts[0] = node.with(node.left, parts[0]);
+		return parts;
+	}
+
+
+	/**
+	 * Join two trees, all keys of the left one being less than the keys of the right one.
+	 */
+	private static <K extends Comparable<K>, V> Node<K, V> join(Node<K, V> left, Node<K, V> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (isAbove(left.priority, left.key, right)) {
+			return left.with(left.left, join(left.right, right));
+		}
+		return right.with(join(left, right.left), right.right);
+	}
+
+
+	private static <K extends Comparable<K>> boolean isAbove(int priority, K key, Node<K, ?> node) {
+		return priority > node.priority || (priority == node.priority && key.compareTo(node.key) < 0);
+	}
+
+
+	private static int priority(Object key) {
+		// spread the hash bits, so that ordered keys do not degenerate the tree
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -19,24 +19,10 @@
 package ch.securify.utils;
 
 import java.util.Arrays;
-import java.util.Stack;
 
 public class StackUtil {
 
 
-	/**
-	 * Makes a shallow copy of the stack.
-	 * @param stack
-	 * @param <T>
-	 * @return
-	 */
-	public static <T> Stack<T> copyStack(Stack<T> stack) {
-		Stack<T> copy = new Stack<>();
-		copy.addAll(stack);
-		return copy;
-	}
-
-
 	/**
 	 * Push an array of items onto the stack.
 	 * The last array item will be pushed last, thus ending up at the top of the stack.
@@ -44,7 +30,7 @@ public class StackUtil {
 	 * @param items
 	 * @param <T>
 	 */
-	public static <T> void pushAll(Stack<T> stack, T[] items) {
+	public static <T> void pushAll(EvmStack<T> stack, T[] items) {
 		Arrays.stream(items).forEachOrdered(stack::push);
 	}
 
@@ -56,7 +42,7 @@ public class StackUtil {
 	 * @param items
 	 * @param <T>
 	 */
-	public static <T> void pushAllRev(Stack<T> stack, T[] items) {
+	public static <T> void pushAllRev(EvmStack<T> stack, T[] items) {
 		for (int i = items.length - 1; i >= 0; --i) {
 			stack.push(items[i]);
 		}
@@ -69,7 +55,7 @@ public class StackUtil {
 	 * @param n number of items to pop.
 	 * @param <T>
 	 */
-	public static <T> void pop(Stack<T> stack, int n) {
+	public static <T> void pop(EvmStack<T> stack, int n) {
 		while (n --> 0) stack.pop();
 	}
 
@@ -81,8 +67,8 @@ public class StackUtil {
 	 * @return Stack containing the specified items.
 	 */
 	@SafeVarargs
-	public static <T> Stack<T> create(T... items) {
-		Stack<T> stack = new Stack<>();
+	public static <T> EvmStack<T> create(T... items) {
+		EvmStack<T> stack = new EvmStack<>();
 		for (T item : items) {
 			stack.push(item);
 		}
@@ -18,10 +18,11 @@
 
 package ch.securify.utils;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -82,10 +83,27 @@ public class SummarizeResults {
         }
     }
 
-    private static void parseJSON(String pathToJSON) throws FileNotFoundException {
+    private static void parseJSON(String pathToJSON) throws IOException {
 
-        /* Read JSON file */
+        /* Read JSON file, either an array of results or one result per line (batch output) */
         File fileJSON = new File(pathToJSON);
+        if (isJSONLines(fileJSON)) {
+            try (BufferedReader br = new BufferedReader(new FileReader(fileJSON))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        countResult(gson.fromJson(line, JsonObject.class));
+                    } catch (com.google.gson.JsonSyntaxException e) {
+                        System.out.println("JSON exception");
+                    }
+                }
+            }
+            return;
+        }
+
         FileReader fr = new FileReader(fileJSON);
         JsonReader jr = new JsonReader(fr);
         JsonArray results = null;
@@ -104,43 +122,56 @@ public class SummarizeResults {
         for (int i = 0; i < results.size(); i++) {
 
             JsonElement je = results.get(i);
-            JsonObject res = gson.fromJson(je, JsonObject.class);
-
-            String address = gson.fromJson(res.get("address"), String.class);
-            String status = gson.fromJson(res.get("status"), String.class);
-
-            if (!status.equals("success")) {
-                /* ? */
-                System.out.println(status);
-            } else {
-                ContractResult result = gson.fromJson(res.get("result"), ContractResult.class);
-                if (result == null || result.patternResults == null) {
-                    continue;
-                }
+            countResult(gson.fromJson(je, JsonObject.class));
+        }
+    }
 
-                /* Iterate over all the pattern names */
-                for (String key : result.patternResults.keySet()) {
+    private static boolean isJSONLines(File fileJSON) throws IOException {
+        try (Reader reader = new FileReader(fileJSON)) {
+            int c;
+            do {
+                c = reader.read();
+            } while (c != -1 && Character.isWhitespace(c));
+            return c == '{';
+        }
+    }
 
-                    /* Update total number of violations, compliances and warnings */
-                    int old = totalNumViolations.getOrDefault(key, 0);
-                    int n = (new HashSet<>(result.patternResults.get(key).violations)).size();
-                    totalNumViolations.put(key, old + n);
+    private static void countResult(JsonObject res) {
 
-                    old = totalNumWarnings.getOrDefault(key, 0);
-                    n = (new HashSet<>(result.patternResults.get(key).warnings)).size();
-                    totalNumWarnings.put(key, old + n);
+        String address = gson.fromJson(res.get("address"), String.class);
+        String status = gson.fromJson(res.get("status"), String.class);
 
-                    old = totalNumCompliant.getOrDefault(key, 0);
-                    n = (new HashSet<>(result.patternResults.get(key).safe)).size();
-                    totalNumCompliant.put(key, old + n);
+        if (!status.equals("success")) {
+            /* ? */
+            System.out.println(status);
+        } else {
+            ContractResult result = gson.fromJson(res.get("result"), ContractResult.class);
+            if (result == null || result.patternResults == null) {
+                return;
+            }
 
-                    // The contract contains at least one violation
-                    incValueIfTrue(result.patternResults.get(key).hasViolations, numContractsWithViolation, key);
+            /* Iterate over all the pattern names */
+            for (String key : result.patternResults.keySet()) {
 
-                    incValueIfTrue(!result.patternResults.get(key).hasViolations &&
-                                        !result.patternResults.get(key).hasWarnings,
-                                    numContractsCompliant, key);
-                }
+                /* Update total number of violations, compliances and warnings */
+                int old = totalNumViolations.getOrDefault(key, 0);
+                int n = (new HashSet<>(result.patternResults.get(key).violations)).size();
+                totalNumViolations.put(key, old + n);
+
+                old = totalNumWarnings.getOrDefault(key, 0);
+                n = (new HashSet<>(result.patternResults.get(key).warnings)).size();
+                totalNumWarnings.put(key, old + n);
+
+                old = totalNumCompliant.getOrDefault(key, 0);
+                n = (new HashSet<>(result.patternResults.get(key).safe)).size();
+                totalNumCompliant.put(key, old + n);
+
+                // The contract contains at least one violation
+                incValueIfTrue(result.patternResults.get(key).hasViolations, numContractsWithViolation, key);
+
+                incValueIfTrue(!result.patternResults.get(key).hasViolations &&
+                                    !result.patternResults.get(key).hasWarnings,
+                                numContractsCompliant, key);
             }
         }
     }
@@ -156,7 +187,8 @@ public class SummarizeResults {
     /**
      * @param args
      *            List of JSON files. Each file contains the output of the
-     *            analyser on a list of contracts.
+     *            analyser on a list of contracts, either as JSON array or
+     *            as one JSON object per line (see --batch).
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
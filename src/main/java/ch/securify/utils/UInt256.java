@@ -0,0 +1,337 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+/**
+ * Immutable unsigned 256-bit word, with the modular arithmetic of the EVM.
+ * Stored as four 64-bit limbs, u3 being the most significant one.
+ */
+public final class UInt256 implements Comparable<UInt256> {
+
+	public static final UInt256 ZERO = new UInt256(0, 0, 0, 0);
+	public static final UInt256 ONE = new UInt256(0, 0, 0, 1);
+	public static final UInt256 MAX_VALUE = new UInt256(-1, -1, -1, -1);
+
+	private static final UInt256 BITS = valueOf(256);
+
+	private final long u3, u2, u1, u0;
+
+
+	public UInt256(long u3, long u2, long u1, long u0) {
+		this.u3 = u3;
+		this.u2 = u2;
+		this.u1 = u1;
+		this.u0 = u0;
+	}
+
+
+	/**
+	 * @param value signed value, negative values are represented in two's complement.
+	 */
+	public static UInt256 valueOf(long value) {
+		long sign = value >> 63;
+		return new UInt256(sign, sign, sign, value);
+	}
+
+
+	/**
+	 * Convert a big-endian byte array, e.g. push data, to a word.
+	 * Only the last 32 bytes of longer arrays are considered.
+	 */
+	public static UInt256 fromBytes(byte[] bytes) {
+		long[] limbs = new long[4];
+		int count = Math.min(bytes.length, 32);
+		for (int i = 0; i < count; i++) {
+			limbs[i / 8] |= (bytes[bytes.length - 1 - i] & 0xFFL) << (8 * (i % 8));
+		}
+		return new UInt256(limbs[3], limbs[2], limbs[1], limbs[0]);
+	}
+
+
+	/**
+	 * @return the word as 32 big-endian bytes.
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = new byte[32];
+		for (int i = 0; i < 32; i++) {
+			bytes[31 - i] = (byte) (limb(i / 8) >>> (8 * (i % 8)));
+		}
+		return bytes;
+	}
+
+
+	private long limb(int index) {
+		switch (index) {
+			case 0: return u0;
+			case 1: return u1;
+			case 2: return u2;
+			case 3: return u3;
+			default: return 0;
+		}
+	}
+
+
+	public boolean isZero() {
+		return (u0 | u1 | u2 | u3) == 0;
+	}
+
+
+	/**
+	 * @return true if the word is negative when interpreted as a signed two's complement number.
+	 */
+	public boolean isNegative() {
+		return u3 < 0;
+	}
+
+
+	/**
+	 * @return the lowest 32 bits.
+	 */
+	public int intValue() {
+		return (int) u0;
+	}
+
+
+	/**
+	 * @return the value if it is at most Integer.MAX_VALUE, Integer.MAX_VALUE otherwise.
+	 */
+	public int clampedIntValue() {
+		if ((u3 | u2 | u1) != 0 || Long.compareUnsigned(u0, Integer.MAX_VALUE) > 0) {
+			return Integer.MAX_VALUE;
+		}
+		return (int) u0;
+	}
+
+
+	/**
+	 * @return the lowest 64 bits.
+	 */
+	public long longValue() {
+		return u0;
+	}
+
+
+	public UInt256 add(UInt256 other) {
+		long r0 = u0 + other.u0;
+		long c = Long.compareUnsigned(r0, u0) < 0 ? 1 : 0;
+		long s1 = u1 + other.u1;
+		long r1 = s1 + c;
+		c = (Long.compareUnsigned(s1, u1) < 0 ? 1 : 0) + (Long.compareUnsigned(r1, s1) < 0 ? 1 : 0);
+		long s2 = u2 + other.u2;
+		long r2 = s2 + c;
+		c = (Long.compareUnsigned(s2, u2) < 0 ? 1 : 0) + (Long.compareUnsigned(r2, s2) < 0 ? 1 : 0);
+		long r3 = u3 + other.u3 + c;
+		return new UInt256(r3, r2, r1, r0);
+	}
+
+
+	public UInt256 subtract(UInt256 other) {
+		long r0 = u0 - other.u0;
+		long b = Long.compareUnsigned(u0, other.u0) < 0 ? 1 : 0;
+		long d1 = u1 - other.u1;
+		long r1 = d1 - b;
+		b = (Long.compareUnsigned(u1, other.u1) < 0 ? 1 : 0) + (Long.compareUnsigned(d1, b) < 0 ? 1 : 0);
+		long d2 = u2 - other.u2;
+		long r2 = d2 - b;
+		b = (Long.compareUnsigned(u2, other.u2) < 0 ? 1 : 0) + (Long.compareUnsigned(d2, b) < 0 ? 1 : 0);
+		long r3 = u3 - other.u3 - b;
+		return new UInt256(r3, r2, r1, r0);
+	}
+
+
+	public UInt256 multiply(UInt256 other) {
+		// schoolbook multiplication, dropping everything above 256 bits
+		long r0 = 0, r1 = 0, r2 = 0, r3 = 0;
+		for (int i = 0; i < 4; i++) {
+			long a = limb(i);
+			if (a == 0) {
+				continue;
+			}
+			long carry = 0;
+			for (int j = 0; i + j < 4; j++) {
+				long b = other.limb(j);
+				long lo = a * b;
+				long hi = unsignedMultiplyHigh(a, b);
+				// add lo and the carry to limb i + j, the overflow goes to the next limb
+				long sum = lo + carry;
+				hi += Long.compareUnsigned(sum, lo) < 0 ? 1 : 0;
+				switch (i + j) {
+					case 0: r0 += sum; hi += Long.compareUnsigned(r0, sum) < 0 ? 1 : 0; break;
+					case 1: r1 += sum; hi += Long.compareUnsigned(r1, sum) < 0 ? 1 : 0; break;
+					case 2: r2 += sum; hi += Long.compareUnsigned(r2, sum) < 0 ? 1 : 0; break;
+					default: r3 += sum; break;
+				}
+				carry = hi;
+			}
+		}
+		return new UInt256(r3, r2, r1, r0);
+	}
+
+
+	private static long unsignedMultiplyHigh(long x, long y) {
+		long x1 = x >>> 32, x0 = x & 0xFFFFFFFFL;
+		long y1 = y >>> 32, y0 = y & 0xFFFFFFFFL;
+		long p00 = x0 * y0;
+		long p01 = x0 * y1;
+		long p10 = x1 * y0;
+		long p11 = x1 * y1;
+		long middle = (p00 >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+		return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+	}
+
+
+	public UInt256 and(UInt256 other) {
+		return new UInt256(u3 & other.u3, u2 & other.u2, u1 & other.u1, u0 & other.u0);
+	}
+
+
+	public UInt256 or(UInt256 other) {
+		return new UInt256(u3 | other.u3, u2 | other.u2, u1 | other.u1, u0 | other.u0);
+	}
+
+
+	public UInt256 xor(UInt256 other) {
+		return new UInt256(u3 ^ other.u3, u2 ^ other.u2, u1 ^ other.u1, u0 ^ other.u0);
+	}
+
+
+	public UInt256 not() {
+		return new UInt256(~u3, ~u2, ~u1, ~u0);
+	}
+
+
+	/**
+	 * @param bits shift distance, 0 or more.
+	 */
+	public UInt256 shiftLeft(int bits) {
+		if (bits >= 256) {
+			return ZERO;
+		}
+		int words = bits >>> 6;
+		int shift = bits & 63;
+		return new UInt256(shiftedLeft(3 - words, shift), shiftedLeft(2 - words, shift),
+				shiftedLeft(1 - words, shift), shiftedLeft(-words, shift));
+	}
+
+
+	private long shiftedLeft(int index, int shift) {
+		if (index < 0) {
+			return 0;
+		}
+		return shift == 0 ? limb(index) : (limb(index) << shift) | (index > 0 ? limb(index - 1) >>> (64 - shift) : 0);
+	}
+
+
+	/**
+	 * Logical right shift.
+	 * @param bits shift distance, 0 or more.
+	 */
+	public UInt256 shiftRight(int bits) {
+		if (bits >= 256) {
+			return ZERO;
+		}
+		int words = bits >>> 6;
+		int shift = bits & 63;
+		return new UInt256(shiftedRight(3 + words, shift), shiftedRight(2 + words, shift),
+				shiftedRight(1 + words, shift), shiftedRight(words, shift));
+	}
+
+
+	private long shiftedRight(int index, int shift) {
+		return shift == 0 ? limb(index) : (limb(index) >>> shift) | (limb(index + 1) << (64 - shift));
+	}
+
+
+	/**
+	 * EVM SHL: this value shifted left by the given amount.
+	 */
+	public UInt256 shl(UInt256 shift) {
+		return shift.compareTo(BITS) >= 0 ? ZERO : shiftLeft(shift.intValue());
+	}
+
+
+	/**
+	 * EVM SHR: this value shifted right by the given amount, filling with zeros.
+	 */
+	public UInt256 shr(UInt256 shift) {
+		return shift.compareTo(BITS) >= 0 ? ZERO : shiftRight(shift.intValue());
+	}
+
+
+	/**
+	 * EVM SAR: this value shifted right by the given amount, filling with the sign bit.
+	 */
+	public UInt256 sar(UInt256 shift) {
+		if (!isNegative()) {
+			return shr(shift);
+		}
+		return not().shr(shift).not();
+	}
+
+
+	@Override
+	public int compareTo(UInt256 other) {
+		int c = Long.compareUnsigned(u3, other.u3);
+		if (c == 0) c = Long.compareUnsigned(u2, other.u2);
+		if (c == 0) c = Long.compareUnsigned(u1, other.u1);
+		if (c == 0) c = Long.compareUnsigned(u0, other.u0);
+		return c;
+	}
+
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof UInt256)) return false;
+		UInt256 other = (UInt256) o;
+		return u0 == other.u0 && u1 == other.u1 && u2 == other.u2 && u3 == other.u3;
+	}
+
+
+	@Override
+	public int hashCode() {
+		int result = Long.hashCode(u3);
+		result = 31 * result + Long.hashCode(u2);
+		result = 31 * result + Long.hashCode(u1);
+		result = 31 * result + Long.hashCode(u0);
+		return result;
+	}
+
+
+	/**
+	 * @return hexadecimal representation without leading zero bytes, at least one byte.
+	 */
+	public String toHexString() {
+		byte[] bytes = toBytes();
+		int start = 0;
+		while (start < 31 && bytes[start] == 0) {
+			start++;
+		}
+		byte[] trimmed = new byte[32 - start];
+		System.arraycopy(bytes, start, trimmed, 0, trimmed.length);
+		return Hex.encode(trimmed);
+	}
+
+
+	@Override
+	public String toString() {
+		return "0x" + toHexString();
+	}
+
+}
@@ -0,0 +1,80 @@
+package ch.securify;
+
+import ch.securify.analysis.AbstractDataflow;
+import ch.securify.model.Contract;
+import ch.securify.patterns.InstructionIndex;
+import ch.securify.patterns.LockedEther;
+import ch.securify.patterns.UnrestrictedWrite;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnalysisPipelineTest {
+
+    @Test(timeout = 60000)
+    public void failingContractDoesNotStopThePipeline() throws InterruptedException {
+        List<String> results = new ArrayList<>();
+        AnalysisPipeline pipeline = new AnalysisPipeline(() -> {
+            throw new IllegalStateException("no patterns");
+        }, 1, 1, 1, (address, line) -> results.add(line));
+        pipeline.start();
+        pipeline.submit(new Contract("0x01", "6000"));
+        pipeline.submit(new Contract("0x02", "6001"));
+        pipeline.finish();
+
+        assertEquals(2, results.size());
+        for (String line : results) {
+            assertTrue(line, line.contains("\"status\":\"error\""));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void contractWithFailingCheckIsWrittenOnce() throws InterruptedException, IOException {
+        // decompiles into several method units and a contract unit
+        String hex = new String(Files.readAllBytes(Paths.get("src/test/resources/solidity/reentrancy.bin.hex"))).trim();
+        AtomicInteger checks = new AtomicInteger();
+        List<StubDataflow> computed = Collections.synchronizedList(new ArrayList<>());
+        List<String> results = new ArrayList<>();
+        AnalysisPipeline pipeline = new AnalysisPipeline(
+                () -> Arrays.asList(new FailingCheck(checks), new LockedEther()),
+                unit -> {
+                    StubDataflow dataflow = new StubDataflow();
+                    computed.add(dataflow);
+                    return dataflow;
+                }, 1, 1, 1, (address, line) -> results.add(line));
+        pipeline.start();
+        pipeline.submit(new Contract("0x01", hex));
+        pipeline.finish();
+
+        assertEquals(1, checks.get());
+        assertEquals(1, results.size());
+        assertTrue(results.get(0), results.get(0).contains("\"status\":\"error\""));
+        for (StubDataflow dataflow : computed) {
+            assertEquals(1, dataflow.disposals.get());
+        }
+    }
+
+    // pattern whose check fails with an error that the unit check does not handle
+    private static class FailingCheck extends UnrestrictedWrite {
+        private final AtomicInteger checks;
+
+        FailingCheck(AtomicInteger checks) {
+            this.checks = checks;
+        }
+
+        @Override
+        public void checkPattern(InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
+            checks.incrementAndGet();
+            throw new AssertionError("check failed");
+        }
+    }
+}
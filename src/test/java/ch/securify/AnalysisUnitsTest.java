@@ -0,0 +1,142 @@
+package ch.securify;
+
+import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.MethodSummary;
+import ch.securify.analysis.Status;
+import ch.securify.decompiler.IndexedProgram;
+import ch.securify.decompiler.OpcodeHistogram;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.JumpDest;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
+import ch.securify.model.ContractResult;
+import ch.securify.model.PatternResult;
+import ch.securify.patterns.AbstractPattern;
+import ch.securify.patterns.DAO;
+import ch.securify.patterns.InstructionIndex;
+import ch.securify.patterns.LockedEther;
+import ch.securify.patterns.MissingInputValidation;
+import ch.securify.patterns.UnhandledException;
+import ch.securify.patterns.UnrestrictedWrite;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnalysisUnitsTest {
+
+    @Test
+    public void skipPatternsWithoutRequiredOpcodes() throws IOException {
+        // neither calls nor writes storage
+        byte[] bin = CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/LockedEther.bin.hex");
+        IndexedProgram program = Main.decompileProgram(bin, new HashMap<>());
+        LockedEther lockedEther = new LockedEther();
+        List<AbstractPattern> patterns = Arrays.asList(new DAO(), new UnrestrictedWrite(), lockedEther);
+        ContractResult contractResult = new ContractResult();
+
+        List<Main.AnalysisUnit> units = Main.splitIntoAnalysisUnits(program, Collections.emptyMap(), patterns, OpcodeHistogram.of(bin), contractResult);
+
+        // the method bodies have no pattern to check, only the contract is analyzed
+        assertEquals(1, units.size());
+        assertEquals(Arrays.asList(lockedEther), units.get(0).patterns);
+        for (String skipped : Arrays.asList("DAO", "UnrestrictedWrite")) {
+            PatternResult result = contractResult.patternResults.get(skipped);
+            assertTrue(result.completed);
+            assertTrue(result.violations.isEmpty() && result.warnings.isEmpty() && result.safe.isEmpty());
+        }
+        assertFalse(contractResult.patternResults.get("LockedEther").completed);
+        assertEquals(2L, (long) contractResult.metrics.get("prefilter.skippedPatterns"));
+    }
+
+    @Test
+    public void failFastOrdersSmallUnitsAndCriticalPatternsFirst() throws IOException {
+        byte[] bin = CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/TODReceiver.bin.hex");
+        IndexedProgram program = Main.decompileProgram(bin, new HashMap<>());
+        List<AbstractPattern> patterns = Arrays.asList(new MissingInputValidation(), new UnhandledException(),
+                new UnrestrictedWrite());
+        List<Main.AnalysisUnit> units = Main.splitIntoAnalysisUnits(program, Collections.emptyMap(), patterns, OpcodeHistogram.of(bin), new ContractResult());
+        assertTrue(units.size() > 1);
+
+        Main.orderForFailFast(units);
+        for (int i = 0; i + 1 < units.size(); i++) {
+            assertTrue(units.get(i).body.size() <= units.get(i + 1).body.size());
+        }
+        for (Main.AnalysisUnit unit : units) {
+            for (int i = 0; i + 1 < unit.patterns.size(); i++) {
+                assertTrue(unit.patterns.get(i).isCritical() || !unit.patterns.get(i + 1).isCritical());
+            }
+        }
+    }
+
+    @Test
+    public void failFastDisposesDataflowCompletedAfterCancellation() throws IOException, InterruptedException {
+        ContractResult contractResult = new ContractResult();
+        contractResult.patternResults.put(ViolatedEverywhere.class.getSimpleName(), new PatternResult());
+        CountDownLatch pendingStarted = new CountDownLatch(1);
+        CountDownLatch pendingReleased = new CountDownLatch(1);
+        CountDownLatch disposed = new CountDownLatch(2);
+        Main.AnalysisUnit first = new Main.AnalysisUnit(null, Collections.emptyMap(), Arrays.asList(new JumpDest("a")),
+                new ArrayList<>(Arrays.asList(new ViolatedEverywhere(pendingStarted))), true, null);
+        Main.AnalysisUnit second = new Main.AnalysisUnit(null, Collections.emptyMap(), Arrays.asList(new JumpDest("a"), new JumpDest("b")),
+                new ArrayList<>(Arrays.asList(new ViolatedEverywhere(pendingStarted))), true, null);
+        List<StubDataflow> computed = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            Main.checkPatternsFailFast(new ArrayList<>(Arrays.asList(second, first)), contractResult, null, unit -> {
+                if (unit == second) {
+                    pendingStarted.countDown();
+                    // completes only after the analysis has given up waiting for it
+                    Uninterruptibles.awaitUninterruptibly(pendingReleased);
+                    Thread.currentThread().interrupt();
+                }
+                StubDataflow dataflow = new StubDataflow(disposed);
+                computed.add(dataflow);
+                return dataflow;
+            });
+            fail("the analysis has been interrupted");
+        } catch (InterruptedException expected) {
+            // while waiting for the pending computation to terminate
+        }
+        assertTrue(contractResult.partial);
+        pendingReleased.countDown();
+
+        assertTrue(disposed.await(1, TimeUnit.MINUTES));
+        assertEquals(2, computed.size());
+        for (StubDataflow dataflow : computed) {
+            assertEquals(1, dataflow.disposals.get());
+        }
+        assertNull(first.dataflow);
+        assertNull(second.dataflow);
+    }
+
+    // critical pattern that is violated by the first instruction of every unit
+    private static class ViolatedEverywhere extends UnrestrictedWrite {
+        private final CountDownLatch pendingStarted;
+
+        ViolatedEverywhere(CountDownLatch pendingStarted) {
+            this.pendingStarted = pendingStarted;
+        }
+
+        @Override
+        public void checkPattern(InstructionIndex methodInstructions, InstructionIndex contractInstructions, AbstractDataflow dataflow) {
+            try {
+                // the dataflow of the next unit is being computed when the violation is found
+                pendingStarted.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            addViolation(methodInstructions.getInstructions().get(0));
+            // the analysis is interrupted before the pending computation terminates
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ch.securify;
+
+import ch.securify.model.Contract;
+import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.PackedCorpus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BatchAnalysisTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readJSONLinesCorpus() throws IOException {
+        File corpus = write("corpus.jsonl",
+                "{\"address\": \"0x01\", \"code\": \"0x6000\"}\n\n{\"address\": \"0x02\", \"bytecode\": \"6001\"}\n");
+        try (Stream<Contract> contracts = BatchAnalysis.readCorpus(corpus)) {
+            List<Contract> list = contracts.collect(Collectors.toList());
+            assertEquals(2, list.size());
+            assertEquals("0x01", list.get(0).getContractAddress());
+            assertEquals("6000", list.get(0).getCode());
+            assertEquals("6001", list.get(1).getCode());
+        }
+    }
+
+    @Test
+    public void readCSVCorpus() throws IOException {
+        File corpus = write("corpus.csv", "bytecode,address\n0x6000,0x01\n6001,0x02\n");
+        try (Stream<Contract> contracts = BatchAnalysis.readCorpus(corpus)) {
+            List<Contract> list = contracts.collect(Collectors.toList());
+            assertEquals(2, list.size());
+            assertEquals("0x02", list.get(1).getContractAddress());
+            assertEquals("6000", list.get(0).getCode());
+        }
+    }
+
+    @Test
+    public void readPackedCorpus() throws IOException {
+        File corpus = folder.newFile("corpus" + PackedCorpus.EXTENSION);
+        File jsonl = write("corpus.jsonl",
+                "{\"address\": \"0x01\", \"code\": \"0x6000\"}\n{\"address\": \"0x02\", \"code\": \"\"}\n"
+                        + "{\"address\": \"0x03\", \"code\": \"60016002\"}\n");
+        try (Stream<Contract> contracts = BatchAnalysis.readCorpus(jsonl)) {
+            assertEquals(3, PackedCorpus.write(contracts, corpus));
+        }
+
+        try (PackedCorpus packedCorpus = PackedCorpus.open(corpus)) {
+            assertEquals(3, packedCorpus.size());
+            assertEquals("0x03", packedCorpus.getAddress(2));
+            assertArrayEquals(new byte[]{0x60, 0x01, 0x60, 0x02}, packedCorpus.getCode(2));
+            assertEquals(0, packedCorpus.getCode(1).length);
+        }
+
+        try (Stream<Contract> contracts = BatchAnalysis.readCorpus(corpus, 1, 5)) {
+            List<Contract> list = contracts.collect(Collectors.toList());
+            assertEquals(2, list.size());
+            assertEquals("0x02", list.get(0).getContractAddress());
+            assertEquals("60016002", list.get(1).getCode());
+        }
+    }
+
+    @Test
+    public void shardsPartitionCorpus() {
+        for (int i = 0; i < 100; i++) {
+            String address = "0x" + Integer.toHexString(i * 7919);
+            int shards = 0;
+            for (int shard = 0; shard < 3; shard++) {
+                if (BatchAnalysis.isInShard(address, shard, 3)) {
+                    shards++;
+                }
+            }
+            assertEquals(1, shards);
+        }
+    }
+
+    @Test
+    public void resumeDropsIncompleteLine() throws IOException {
+        File output = write("results.jsonl",
+                "{\"address\":\"0x01\",\"status\":\"success\"}\n{\"address\":\"0x02\",\"stat");
+        Set<String> completed = BatchAnalysis.readCompletedAddresses(output);
+        assertEquals(1, completed.size());
+        assertTrue(completed.contains("0x01"));
+        assertEquals("{\"address\":\"0x01\",\"status\":\"success\"}\n",
+                new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void resumeIgnoresAddressCase() throws IOException {
+        File output = write("results.jsonl", "{\"address\":\"0xAbC\",\"status\":\"success\"}\n");
+        Set<String> completed = BatchAnalysis.readCompletedAddresses(output);
+        assertTrue(completed.contains(BatchAnalysis.normalizeAddress("0xabc")));
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(BatchAnalysis.isInShard("0xAbC", shard, 3), BatchAnalysis.isInShard("0xabc", shard, 3));
+        }
+    }
+
+    @Test
+    public void invalidEntryFailsOnlyItself() throws IOException, InterruptedException {
+        File corpus = write("corpus.jsonl", "{\"address\": \"0x01\"}\n{\"code\": \"0x6000\"}\n{\"address\": \"0x02\", \"code\": \"\"}\n"
+                + "{\"address\": \"0x03\", \"co\n");
+        File output = new File(folder.getRoot(), "results.jsonl");
+        new BatchAnalysis(() -> Main.createPatterns(null), 1, 0, 1, new DevNullPrintStream()).run(corpus, output);
+
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals(3, lines.stream().filter(line -> line.contains("\"status\":\"error\"")).count());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("\"address\":\"0x02\",\"status\":\"empty\"")));
+
+        // resuming does not repeat the results of the malformed entries
+        new BatchAnalysis(() -> Main.createPatterns(null), 1, 0, 1, new DevNullPrintStream()).run(corpus, output);
+        assertEquals(lines, Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readInvalidJSONLine() throws IOException {
+        File corpus = write("corpus.jsonl", "{\"address\": \"0x01\", \"co\n{\"address\": \"0x02\", \"code\": \"6001\"}\n");
+        try (Stream<Contract> contracts = BatchAnalysis.readCorpus(corpus)) {
+            List<Contract> list = contracts.collect(Collectors.toList());
+            assertEquals(2, list.size());
+            assertNull(list.get(0).getContractAddress());
+            assertFalse(list.get(0).hasCode());
+            assertEquals("6001", list.get(1).getCode());
+        }
+    }
+
+    @Test
+    public void resumeDropsIncompleteLongLine() throws IOException {
+        StringBuilder content = new StringBuilder("{\"address\":\"0x01\",\"status\":\"success\"}\n{\"address\":\"0x02\",\"error\":\"");
+        for (int i = 0; i < 20000; i++) {
+            content.append('x');
+        }
+        File output = write("results.jsonl", content.toString());
+        Set<String> completed = BatchAnalysis.readCompletedAddresses(output);
+        assertEquals(Collections.singleton("0x01"), completed);
+        assertEquals("{\"address\":\"0x01\",\"status\":\"success\"}\n",
+                new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+
+        File partial = write("partial.jsonl", content.substring(50));
+        assertTrue(BatchAnalysis.readCompletedAddresses(partial).isEmpty());
+        assertEquals(0, partial.length());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,93 @@
+package ch.securify;
+
+import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.MethodSummary;
+import ch.securify.analysis.Status;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dataflow without a Soufflé process that counts its disposals.
+ */
+class StubDataflow extends AbstractDataflow {
+    final AtomicInteger disposals = new AtomicInteger();
+    private final CountDownLatch disposed;
+
+    StubDataflow() {
+        this(new CountDownLatch(1));
+    }
+
+    StubDataflow(CountDownLatch disposed) {
+        this.disposed = disposed;
+    }
+
+    @Override
+    public void dispose() {
+        disposals.incrementAndGet();
+        disposed.countDown();
+    }
+
+    @Override
+    public int mayFollow(Instruction instr1, Instruction instr2) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int instrMayDepOn(Instruction instr, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int varMayDepOn(Instruction instr1, Variable lhs, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr1, int offset, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int mustPrecede(Instruction instr1, Instruction instr2) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMustDepOn(Instruction instr1, int offset, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    protected void deriveFollowsPredicates() {
+    }
+
+    @Override
+    protected void deriveIfPredicates() {
+    }
+
+    @Override
+    protected void createSLoadRule(Instruction instr, Variable index, Variable var) {
+    }
+
+    @Override
+    protected void createMLoadRule(Instruction instr, Variable offset, Variable var) {
+    }
+
+    @Override
+    protected void createMethodSummaryRules(_VirtualMethodInvoke invoke, MethodSummary summary) {
+    }
+}
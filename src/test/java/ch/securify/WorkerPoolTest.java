@@ -0,0 +1,38 @@
+package ch.securify;
+
+import ch.securify.model.Contract;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class WorkerPoolTest {
+
+    @Test
+    public void requestsKeepTheStoredCode() throws IOException {
+        byte[] binary = {0x60, 0x01, 0x60, 0x02};
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        WorkerPool.writeRequest(out, new Contract("0x01", binary));
+        WorkerPool.writeRequest(out, new Contract("0x02", "0x6003"));
+        WorkerPool.writeRequest(out, new Contract("0x03", new byte[0]));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        Contract first = WorkerPool.readRequest(in);
+        assertEquals("0x01", first.getContractAddress());
+        assertArrayEquals(binary, first.getBinary());
+
+        Contract second = WorkerPool.readRequest(in);
+        assertEquals("0x02", second.getContractAddress());
+        assertNull(second.getBinary());
+        assertEquals("6003", second.getCode());
+
+        assertEquals(0, WorkerPool.readRequest(in).getBinary().length);
+        assertNull(WorkerPool.readRequest(in));
+    }
+}
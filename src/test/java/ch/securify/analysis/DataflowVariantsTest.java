@@ -0,0 +1,97 @@
+package ch.securify.analysis;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests of the Datalog encodings selectable via {@link DataflowFactory} against the default encoding.
+ */
+public class DataflowVariantsTest {
+
+    private static final String[] CONTRACTS = {
+            "src/test/resources/solidity/reentrancy.bin.hex",
+            "src/test/resources/solidity/TODReceiver.bin.hex",
+            "src/test/resources/solidity/UnrestrictedWrite.bin.hex",
+            "src/test/resources/solidity/repeated-calls-tp.bin.hex",
+    };
+
+    @After
+    public void resetDataflow() {
+        DataflowFactory.setDataflowInstanceClass(null);
+    }
+
+    @Test
+    public void blockEncoding() throws IOException, InterruptedException {
+        for (String contract : CONTRACTS) {
+            assertSameAnswers(contract, "block");
+        }
+    }
+
+    @Test
+    public void sparseEncoding() throws IOException, InterruptedException {
+        for (String contract : CONTRACTS) {
+            assertSameAnswers(contract, "sparse");
+        }
+    }
+
+    private static void assertSameAnswers(String hexFile, String variant) throws IOException, InterruptedException {
+        List<Instruction> instructions = Main.decompileContract(CompilationHelpers.extractBinaryFromHexFile(hexFile));
+        DataflowFactory.setDataflowInstanceClass(null);
+        AbstractDataflow expected = DataflowFactory.getDataflow(instructions);
+        DataflowFactory.setDataflowInstanceClass(variant);
+        AbstractDataflow actual = DataflowFactory.getDataflow(instructions);
+
+        // the types of the instructions and some abstract types, i.e. variables
+        List<Object> types = new ArrayList<>();
+        Set<Variable> variables = new LinkedHashSet<>();
+        for (Instruction instruction : instructions) {
+            if (!types.contains(instruction.getClass())) {
+                types.add(instruction.getClass());
+            }
+            variables.addAll(Arrays.asList(instruction.getOutput()));
+        }
+        List<Variable> variableList = new ArrayList<>(variables);
+        Random random = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            types.add(variableList.get(random.nextInt(variableList.size())));
+        }
+
+        int satisfiable = 0;
+        for (Instruction instruction : instructions) {
+            for (Instruction other : instructions) {
+                satisfiable += assertSame(hexFile, expected.mustPrecede(instruction, other), actual.mustPrecede(instruction, other));
+                satisfiable += assertSame(hexFile, expected.mayFollow(instruction, other), actual.mayFollow(instruction, other));
+            }
+            for (Object type : types) {
+                satisfiable += assertSame(hexFile, expected.instrMayDepOn(instruction, type), actual.instrMayDepOn(instruction, type));
+                satisfiable += assertSame(hexFile, expected.memoryMayDepOn(instruction, type), actual.memoryMayDepOn(instruction, type));
+                for (int offset = 0; offset <= 0x80; offset += 0x20) {
+                    satisfiable += assertSame(hexFile, expected.memoryMustDepOn(instruction, offset, type), actual.memoryMustDepOn(instruction, offset, type));
+                    satisfiable += assertSame(hexFile, expected.memoryMayDepOn(instruction, offset, type), actual.memoryMayDepOn(instruction, offset, type));
+                }
+                for (Variable variable : instruction.getInput()) {
+                    satisfiable += assertSame(hexFile, expected.varMustDepOn(instruction, variable, type), actual.varMustDepOn(instruction, variable, type));
+                    satisfiable += assertSame(hexFile, expected.varMayDepOn(instruction, variable, type), actual.varMayDepOn(instruction, variable, type));
+                }
+            }
+        }
+        assertTrue(satisfiable > 0);
+
+        expected.dispose();
+        actual.dispose();
+    }
+
+    private static int assertSame(String hexFile, int expected, int actual) {
+        assertEquals(hexFile, expected, actual);
+        return expected == Status.SATISFIABLE ? 1 : 0;
+    }
+}
@@ -0,0 +1,141 @@
+package ch.securify.analysis;
+
+import ch.securify.Main;
+import ch.securify.decompiler.ConstantPropagation;
+import ch.securify.decompiler.ControlFlowGraph;
+import ch.securify.decompiler.Decompiler;
+import ch.securify.decompiler.IndexedProgram;
+import ch.securify.decompiler.MethodInliner;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.CallDataLoad;
+import ch.securify.decompiler.instructions.Caller;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.SStore;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
+import ch.securify.decompiler.instructions._VirtualMethodInvoke;
+import ch.securify.decompiler.instructions._VirtualMethodReturn;
+import ch.securify.utils.Hex;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MethodSummaryTest {
+
+    /**
+     * sstore(0, f(f(calldataload(4)))) with the internal method f(x) = x + 1
+     */
+    private static final String CONTRACT = "60086004356014565b600f906014565b600055005b6001019056";
+
+    /**
+     * sstore(0, g(calldataload(4))) with the internal methods g(x) = { sstore(1, caller); return f(x) } and
+     * f(x) = x + 1, so the summary of f is applied while g is summarized
+     */
+    private static final String CONTRACT_WITH_HELPERS = "6008600435600d565b600055005b601481601d565b33600155905090565b6001019056";
+
+    @Test
+    public void summaryOfInternalMethod() throws IOException, InterruptedException {
+        PrintStream log = new PrintStream(new ByteArrayOutputStream());
+        List<Instruction> instructions = Decompiler.decompile(Hex.decode(CONTRACT), log);
+        IndexedProgram program = IndexedProgram.build(instructions);
+
+        Map<_VirtualMethodHead, MethodSummary> summaries = MethodSummary.summarize(program);
+        assertEquals(1, summaries.size());
+
+        _VirtualMethodInvoke invoke = (_VirtualMethodInvoke) instructions.stream()
+                .filter(instruction -> instruction instanceof _VirtualMethodInvoke)
+                .findFirst().get();
+        MethodSummary summary = summaries.get(invoke.getOutgoingBranches().iterator().next());
+        assertNotNull(summary);
+        assertTrue(summary.mayReturnFacts.get(0).contains(new MethodSummary.Argument(0)));
+        assertTrue(summary.mustReturnFacts.get(0).contains(new MethodSummary.Argument(0)));
+        assertTrue(summary.mayStorageWrites.isEmpty());
+
+        // the argument flows through both invocations into the stored value
+        SStore sstore = (SStore) instructions.stream()
+                .filter(instruction -> instruction instanceof SStore)
+                .findFirst().get();
+        AbstractDataflow dataflow = DataflowFactory.getDataflow(program, instructions, null, summaries);
+        assertEquals(Status.SATISFIABLE, dataflow.varMustDepOn(sstore, sstore.getInput()[1], CallDataLoad.class));
+        assertEquals(Status.SATISFIABLE, dataflow.varMayDepOn(sstore, sstore.getInput()[1], CallDataLoad.class));
+        dataflow.dispose();
+    }
+
+    @Test
+    public void summariesOfNestedInternalMethods() throws IOException, InterruptedException {
+        IndexedProgram program = decompile(CONTRACT_WITH_HELPERS, false);
+        assertTrue(MethodInliner.countInlinedInstructions(program.getInstructions()) > 0);
+
+        Map<_VirtualMethodHead, MethodSummary> summaries = MethodSummary.summarize(program);
+        assertEquals(2, summaries.size());
+        // g, the caller of f, is summarized last
+        MethodSummary g = new ArrayList<>(summaries.values()).get(1);
+        assertTrue(g.mayReturnFacts.get(0).contains(new MethodSummary.Argument(0)));
+        assertTrue(g.mustReturnFacts.get(0).contains(new MethodSummary.Argument(0)));
+        assertFalse(g.mayReturnFacts.get(0).contains(Caller.class));
+        assertEquals(Collections.singleton(Caller.class), g.mayStorageWrites.get(1));
+        assertEquals(Collections.singleton(Caller.class), g.mustStorageWrites.get(1));
+    }
+
+    /**
+     * The method bodies are analyzed as by {@link ch.securify.Main#splitIntoAnalysisUnits}, once with the invoked
+     * methods inlined and once with their summaries, and the stores and returns must depend on the same types.
+     */
+    @Test
+    public void summariesAgreeWithInlining() throws IOException, InterruptedException {
+        List<String> inlinedAnswers = getAnswers(decompile(CONTRACT_WITH_HELPERS, true), Collections.emptyMap());
+        IndexedProgram program = decompile(CONTRACT_WITH_HELPERS, false);
+        List<String> summarizedAnswers = getAnswers(program, MethodSummary.summarize(program));
+
+        assertFalse(inlinedAnswers.isEmpty());
+        assertEquals(inlinedAnswers, summarizedAnswers);
+    }
+
+    /**
+     * Decompile like {@link ch.securify.Main#decompileProgram}, with or without inlining the methods.
+     */
+    private static IndexedProgram decompile(String contract, boolean inline) {
+        PrintStream log = new PrintStream(new ByteArrayOutputStream());
+        List<Instruction> instructions = Decompiler.decompile(Hex.decode(contract), log);
+        if (inline) {
+            instructions = MethodInliner.inline(instructions, log);
+        }
+        ControlFlowGraph controlFlowGraph = ControlFlowGraph.build(instructions);
+        ConstantPropagation.propagate(instructions, controlFlowGraph, new HashMap<>());
+        return IndexedProgram.build(instructions, controlFlowGraph);
+    }
+
+    private static List<String> getAnswers(IndexedProgram program, Map<_VirtualMethodHead, MethodSummary> summaries)
+            throws IOException, InterruptedException {
+        List<String> answers = new ArrayList<>();
+        for (List<Instruction> body : Main.splitInstructionsIntoMethods(program.getInstructions())) {
+            if (!(body.get(0) instanceof _VirtualMethodHead)) {
+                continue;
+            }
+            AbstractDataflow dataflow = DataflowFactory.getDataflow(program, body, null, summaries);
+            for (Instruction instruction : body) {
+                if (!(instruction instanceof SStore || instruction instanceof _VirtualMethodReturn)) {
+                    continue;
+                }
+                for (Variable input : instruction.getInput()) {
+                    for (Class<?> type : Arrays.asList(CallDataLoad.class, Caller.class)) {
+                        answers.add(((_VirtualMethodHead) body.get(0)).getLabel() + " " + instruction.getClass().getSimpleName() + " " + type.getSimpleName()
+                                + " may " + dataflow.varMayDepOn(instruction, input, type)
+                                + " must " + dataflow.varMustDepOn(instruction, input, type));
+                    }
+                }
+            }
+            dataflow.dispose();
+        }
+        return answers;
+    }
+}
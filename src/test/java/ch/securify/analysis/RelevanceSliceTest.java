@@ -0,0 +1,104 @@
+package ch.securify.analysis;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.*;
+import ch.securify.patterns.*;
+import ch.securify.utils.Hex;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RelevanceSliceTest {
+
+    // loop { call(gas(), calldataload(4), 0, 0, 0, 0, 0) preceded by log0(0, 0) } while calldataload(0) != 0
+    private static final String LOG_BEFORE_CALL = "60006000525b600060006000600060006004355a60006000a0f15060003560055700";
+
+    @Test
+    public void dropsOnlyUnqueriedInstructions() throws IOException {
+        List<Instruction> instructions = Main.decompileContract(
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/reentrancy2.bin.hex"));
+        InstructionIndex index = InstructionIndex.of(instructions);
+        Set<Instruction> queried = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AbstractPattern pattern : Arrays.asList(new DAO(), new DAOConstantGas(), new LockedEther(),
+                new MissingInputValidation(), new TODAmount(), new TODReceiver(), new UnhandledException(),
+                new UnrestrictedEtherFlow(), new UnrestrictedWrite(), new RepeatedCall())) {
+            queried.addAll(pattern.getQueriedInstructions(index));
+        }
+        RelevanceSlice slice = RelevanceSlice.of(instructions, queried);
+
+        assertTrue(slice.getDroppedCount() > 0);
+        assertEquals(instructions.size(), slice.size() + slice.getDroppedCount());
+
+        Set<Instruction> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(slice.getInstructions());
+        assertTrue(kept.containsAll(queried));
+        Set<Variable> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instruction : slice.getInstructions()) {
+            used.addAll(Arrays.asList(instruction.getInput()));
+        }
+        for (Instruction instruction : instructions) {
+            if (kept.contains(instruction)) {
+                // the contracted flow only leads to instructions in the slice
+                assertTrue(slice.getNext(instruction) == null || kept.contains(slice.getNext(instruction)));
+                assertTrue(slice.getPrev(instruction) == null || kept.contains(slice.getPrev(instruction)));
+                assertEquals(instruction.getPrev() == null, slice.getPrev(instruction) == null);
+            } else {
+                assertFalse(instruction instanceof JumpDest || instruction instanceof BranchInstruction
+                        || instruction instanceof SStore || instruction instanceof CallingInstruction);
+                for (Variable output : instruction.getOutput()) {
+                    assertFalse(used.contains(output));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsAllInstructionsWithoutDeclaredQueries() throws IOException {
+        List<Instruction> instructions = Main.decompileContract(
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/reentrancy2.bin.hex"));
+        RelevanceSlice slice = RelevanceSlice.of(instructions, null);
+
+        assertEquals(0, slice.getDroppedCount());
+        assertEquals(instructions, slice.getInstructions());
+    }
+
+    @Test
+    public void keepsPredecessorOfRepeatedCall() throws IOException, InterruptedException {
+        List<Instruction> instructions = Main.decompileContract(Hex.decode(LOG_BEFORE_CALL));
+        InstructionIndex index = InstructionIndex.of(instructions);
+        Call call = index.get(Call.class).get(0);
+        assertTrue(call.getPrev() instanceof Log0);
+
+        // RepeatedCall checks whether the call is in a loop by the flow from the call to its predecessor
+        AbstractDataflow dataflow = DataflowFactory.getDataflow(instructions,
+                new RepeatedCall().getQueriedInstructions(index));
+        try {
+            assertTrue(dataflow.getSlice().contains(call.getPrev()));
+            assertEquals(Status.SATISFIABLE, dataflow.mayFollow(call, call.getPrev()));
+        } finally {
+            dataflow.dispose();
+        }
+    }
+
+    @Test
+    public void rejectsQueriesOnDroppedInstructions() throws IOException, InterruptedException {
+        List<Instruction> instructions = Main.decompileContract(Hex.decode(LOG_BEFORE_CALL));
+        Call call = InstructionIndex.of(instructions).get(Call.class).get(0);
+
+        AbstractDataflow dataflow = DataflowFactory.getDataflow(instructions, Collections.singletonList(call));
+        try {
+            assertFalse(dataflow.getSlice().contains(call.getPrev()));
+            dataflow.mayFollow(call, call.getPrev());
+            fail("query on a dropped instruction");
+        } catch (IllegalArgumentException expected) {
+            // the predecessor has not been declared as queried
+        } finally {
+            dataflow.dispose();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ch.securify.decompiler;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.instructions.Instruction;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ControlFlowGraphTest {
+
+    @Test
+    public void blocksOfDecompiledContract() throws IOException {
+        checkGraph("src/test/resources/solidity/reentrancy.bin.hex");
+        checkGraph("src/test/resources/solidity/TODAmount.bin.hex");
+    }
+
+    private static void checkGraph(String hexFile) throws IOException {
+        List<Instruction> instructions = Main.decompileContract(CompilationHelpers.extractBinaryFromHexFile(hexFile));
+        ControlFlowGraph graph = ControlFlowGraph.build(instructions);
+
+        assertSame(graph.getEntry(), instructions.get(0).getBasicBlock());
+        assertEquals(graph.getEntry(), graph.getReversePostOrder().get(0));
+
+        for (Instruction instruction : instructions) {
+            BasicBlock block = instruction.getBasicBlock();
+            assertNotNull(block);
+            assertTrue(block.getInstructions().contains(instruction));
+        }
+
+        for (BasicBlock block : graph.getBlocks()) {
+            assertSame(block, graph.getBlocks().get(block.getId()));
+            for (BasicBlock successor : block.getSuccessors()) {
+                assertTrue(Arrays.asList(successor.getPredecessors()).contains(block));
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                assertTrue(Arrays.asList(predecessor.getSuccessors()).contains(block));
+            }
+            for (BasicBlock successor : block.getLocalSuccessors()) {
+                assertTrue(Arrays.asList(block.getSuccessors()).contains(successor));
+            }
+        }
+    }
+}
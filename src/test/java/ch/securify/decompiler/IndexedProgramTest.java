@@ -0,0 +1,59 @@
+package ch.securify.decompiler;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexedProgramTest {
+
+    @Test
+    public void idsOfDecompiledContract() throws IOException {
+        List<Instruction> instructions = Main.decompileContract(
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/reentrancy.bin.hex"));
+        IndexedProgram program = IndexedProgram.build(instructions);
+
+        assertEquals(instructions.size(), program.size());
+        for (int id = 0; id < program.size(); id++) {
+            Instruction instruction = program.getInstruction(id);
+            assertSame(instructions.get(id), instruction);
+            assertEquals(id, instruction.getId());
+
+            assertEquals(instruction.getInput().length, program.getInputCount(id));
+            for (int i = 0; i < program.getInputCount(id); i++) {
+                Variable input = instruction.getInput()[i];
+                assertEquals(input == null ? IndexedProgram.NONE : input.getId(), program.getInput(id, i));
+            }
+            int[] outputs = program.getOutputs(id);
+            assertEquals(instruction.getOutput().length, outputs.length);
+            for (int i = 0; i < outputs.length; i++) {
+                assertSame(instruction.getOutput()[i], program.getVariable(outputs[i]));
+            }
+
+            if (instruction instanceof BranchInstruction) {
+                for (int target : program.getTargets(id)) {
+                    if (target == IndexedProgram.NONE) {
+                        continue;
+                    }
+                    assertTrue(((BranchInstruction) instruction).getOutgoingBranches().contains(program.getInstruction(target)));
+                }
+            }
+            int label = program.getLabel(id);
+            if (instruction instanceof JumpDest) {
+                assertEquals(((JumpDest) instruction).getLabel(), program.getLabelName(label));
+            } else {
+                assertEquals(IndexedProgram.NONE, label);
+            }
+        }
+        for (int id = 0; id < program.getVariableCount(); id++) {
+            assertEquals(id, program.getVariable(id).getId());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.securify.decompiler;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.instructions.Call;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+import ch.securify.decompiler.instructions.JumpI;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
+import ch.securify.decompiler.printer.DecompilationPrinter;
+import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Hex;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class MethodInlinerTest {
+
+    // sstore(0, f(calldataload(4))) with f(x) = g(g(x)) and g(x) = (x == 0 ? x + 1 : x) * 2
+    private static final String CONTRACT = "6008600435600d565b600055005b6014816020565b601b906020565b919050565b806028576001015b6002029056";
+
+    @Test
+    public void inlinedCopiesKeepTheirBranches() {
+        List<Instruction> instructions = MethodInliner.inline(
+                Decompiler.decompile(Hex.decode(CONTRACT), new DevNullPrintStream()), new DevNullPrintStream());
+
+        List<JumpI> jumps = instructions.stream()
+                .filter(instruction -> instruction instanceof JumpI)
+                .map(instruction -> (JumpI) instruction)
+                .collect(Collectors.toList());
+        // g inlined twice into f, and g itself
+        assertEquals(3, jumps.size());
+        for (JumpI jump : jumps) {
+            assertEquals(1, jump.getOutgoingBranches().size());
+            JumpDest target = (JumpDest) jump.getOutgoingBranches().iterator().next();
+            assertTrue(instructions.contains(target));
+            assertTrue(target.getIncomingBranches().contains(jump));
+            // the jump and its target belong to the same method
+            assertSame(methodOf(instructions, jump), methodOf(instructions, target));
+        }
+    }
+
+    @Test
+    public void deterministicOrder() {
+        List<String> first = print(MethodInliner.inline(
+                Decompiler.decompile(Hex.decode(CONTRACT), new DevNullPrintStream()), new DevNullPrintStream()));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, print(MethodInliner.inline(
+                    Decompiler.decompile(Hex.decode(CONTRACT), new DevNullPrintStream()), new DevNullPrintStream())));
+        }
+    }
+
+    /**
+     * Inlining in a pool with several threads gives the same program, including the names of the copied variables, as
+     * inlining on a single thread.
+     */
+    @Test
+    public void parallelInliningMatchesSequentialInlining() throws Exception {
+        List<byte[]> contracts = Arrays.asList(Hex.decode(CONTRACT),
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/transaction-reordering.bin.hex"),
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/TODAmount.bin.hex"));
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (byte[] contract : contracts) {
+                String expected = sequential.submit(() -> decompileAndInline(contract)).get();
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(expected, parallel.submit(() -> decompileAndInline(contract)).get());
+                }
+            }
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void methodsKeepTheBytecodeOrder() throws IOException {
+        byte[] bin = CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/transaction-reordering.bin.hex");
+        List<List<Instruction>> methodBodies = Main.splitInstructionsIntoMethods(Main.decompileContract(bin));
+
+        // one call per method, in the order of the methods in the bytecode
+        List<Integer> calls = methodBodies.stream()
+                .flatMap(List::stream)
+                .filter(instruction -> instruction instanceof Call)
+                .map(instruction -> instruction.getRawInstruction().offset)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(214, 299, 369), calls);
+    }
+
+    private static _VirtualMethodHead methodOf(List<Instruction> instructions, Instruction instruction) {
+        _VirtualMethodHead methodHead = null;
+        for (Instruction other : instructions) {
+            if (other instanceof _VirtualMethodHead) {
+                methodHead = (_VirtualMethodHead) other;
+            }
+            if (other == instruction) {
+                return methodHead;
+            }
+        }
+        return null;
+    }
+
+    private static String decompileAndInline(byte[] contract) {
+        List<Instruction> instructions = MethodInliner.inline(
+                Decompiler.decompile(contract, new DevNullPrintStream()), new DevNullPrintStream());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DecompilationPrinter.printInstructions(instructions, new PrintStream(out));
+        return out.toString();
+    }
+
+    private static List<String> print(List<Instruction> instructions) {
+        return instructions.stream()
+                .map(instruction -> instruction.getClass().getSimpleName()
+                        + (instruction.getRawInstruction() != null ? "@" + instruction.getRawInstruction().offset : "")
+                        + (instruction instanceof JumpDest ? " " + ((JumpDest) instruction).getLabel() : ""))
+                .collect(Collectors.toList());
+    }
+}
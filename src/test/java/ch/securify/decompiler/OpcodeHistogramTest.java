@@ -0,0 +1,41 @@
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.evm.OpCodes;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.utils.DevNullPrintStream;
+import ch.securify.utils.Hex;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OpcodeHistogramTest {
+
+    @Test
+    public void countBytecode() {
+        // PUSH1 0x55 PUSH1 0x00 SSTORE STOP
+        OpcodeHistogram histogram = OpcodeHistogram.of(Hex.decode("6055600055" + "00"));
+
+        assertEquals(2, histogram.getCount(OpCodes.PUSH(1)));
+        // push data is not counted
+        assertEquals(1, histogram.getCount(OpCodes.SSTORE));
+        assertEquals(1, histogram.getCount(OpCodes.STOP));
+        assertEquals(0, histogram.getCount(OpCodes.CALL));
+
+        assertTrue(histogram.containsAny(new int[]{OpCodes.CALL, OpCodes.SSTORE}));
+        assertFalse(histogram.containsAny(new int[]{OpCodes.CALL, OpCodes.SELFDESTRUCT}));
+        assertTrue(histogram.containsAny(new int[0]));
+    }
+
+    @Test
+    public void countInstructions() {
+        String contract = "6008600435600d565b600055005b6014816020565b601b906020565b919050565b806028576001015b6002029056";
+        List<Instruction> instructions = Decompiler.decompile(Hex.decode(contract), new DevNullPrintStream());
+        OpcodeHistogram histogram = OpcodeHistogram.of(instructions);
+
+        assertEquals(1, histogram.getCount(OpCodes.SSTORE));
+        assertEquals(1, histogram.getCount(OpCodes.CALLDATALOAD));
+        assertEquals(0, histogram.getCount(OpCodes.CALL));
+    }
+}
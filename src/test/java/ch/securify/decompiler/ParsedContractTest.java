@@ -0,0 +1,37 @@
+package ch.securify.decompiler;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+import ch.securify.utils.Log;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParsedContractTest {
+
+    private static final Log log = Log.OFF;
+
+    @Test
+    public void sharedByBothDecompilers() throws IOException {
+        byte[] binary = CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/reentrancy.bin.hex");
+        ParsedContract contract = ParsedContract.parse(binary, log);
+
+        // the method labels set by the decompiler do not leak into the fallback
+        assertEquals(shape(Decompiler.decompile(binary, log)), shape(Decompiler.decompile(contract, log)));
+        assertEquals(shape(DecompilerFallback.decompile(binary, log)), shape(DecompilerFallback.decompile(contract, log)));
+        assertEquals(shape(Decompiler.decompile(binary, log)), shape(Decompiler.decompile(contract, log)));
+    }
+
+    private static List<String> shape(List<Instruction> instructions) {
+        return instructions.stream()
+                .map(instruction -> instruction.getClass().getSimpleName()
+                        + (instruction.getRawInstruction() != null ? "@" + instruction.getRawInstruction().offset : "")
+                        + (instruction instanceof JumpDest ? " " + ((JumpDest) instruction).getLabel() : ""))
+                .collect(Collectors.toList());
+    }
+}
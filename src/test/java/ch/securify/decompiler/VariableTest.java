@@ -0,0 +1,53 @@
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.Add;
+import ch.securify.utils.UInt256;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VariableTest {
+
+    @Test
+    public void constantValueStates() {
+        Variable variable = new Variable();
+        assertTrue(variable.isConstantValueUndefined());
+        assertFalse(variable.hasConstantValue());
+
+        variable.setConstantValue(UInt256.ZERO);
+        assertTrue(variable.hasConstantValue());
+        assertFalse(variable.isConstantValueUndefined());
+        assertEquals(UInt256.ZERO, variable.getConstantValue());
+
+        variable.setConstantValueAny();
+        assertFalse(variable.hasConstantValue());
+        assertFalse(variable.isConstantValueUndefined());
+
+        Variable copy = new Variable();
+        copy.copyConstantValue(variable);
+        assertFalse(copy.hasConstantValue());
+        assertFalse(copy.isConstantValueUndefined());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownValueIsNotZero() {
+        Variable variable = new Variable();
+        variable.setConstantValueAny();
+        variable.getConstantValue();
+    }
+
+    @Test
+    public void arithmeticOnUnknownValueIsUnknown() {
+        Variable known = new Variable();
+        known.setConstantValue(UInt256.ONE);
+        Variable unknown = new Variable();
+        unknown.setConstantValueAny();
+
+        Add add = new Add();
+        add.setInput(known, unknown);
+        add.setOutput(new Variable());
+        add.computeResultValues();
+        assertFalse(add.getOutput()[0].hasConstantValue());
+        assertFalse(add.getOutput()[0].isConstantValueUndefined());
+    }
+}
@@ -0,0 +1,47 @@
+package ch.securify.patterns;
+
+import ch.securify.decompiler.instructions.Instruction;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class EvaluationTest {
+
+    private static final String HEX = "src/test/resources/solidity/TODReceiver.bin.hex";
+
+    @Test
+    public void sameViolationsWithFewerChecks() throws IOException {
+        HelperTestInput input = new HelperTestInput(HEX);
+        AbstractPattern full = check(input, new UnrestrictedWrite(), AbstractPattern.Evaluation.FULL);
+        AbstractPattern shortCircuit = check(input, new UnrestrictedWrite(), AbstractPattern.Evaluation.SHORT_CIRCUIT);
+        AbstractPattern violationsOnly = check(input, new UnrestrictedWrite(), AbstractPattern.Evaluation.VIOLATIONS_ONLY);
+
+        Set<Instruction> expected = new HashSet<>(full.getViolations());
+        expected.addAll(full.getConflicts());
+        assertFalse(expected.isEmpty());
+        assertEquals(0, full.getSkippedComplianceChecks());
+
+        assertEquals(expected, new HashSet<>(shortCircuit.getViolations()));
+        assertEquals(new HashSet<>(full.getSafe()), new HashSet<>(shortCircuit.getSafe()));
+        assertEquals(expected.size(), shortCircuit.getSkippedComplianceChecks());
+
+        assertEquals(expected, new HashSet<>(violationsOnly.getViolations()));
+        assertTrue(violationsOnly.getSafe().isEmpty());
+        assertTrue(violationsOnly.getWarnings().isEmpty());
+        assertEquals(full.getViolations().size() + full.getConflicts().size() + full.getSafe().size()
+                + full.getWarnings().size(), violationsOnly.getSkippedComplianceChecks());
+    }
+
+    private static AbstractPattern check(HelperTestInput input, AbstractPattern pattern, AbstractPattern.Evaluation evaluation) {
+        pattern.setEvaluation(evaluation);
+        for (List<Instruction> methodBody : input.methodBodies) {
+            pattern.checkPattern(methodBody, input.instructions, input.dataflow);
+        }
+        return pattern;
+    }
+}
@@ -0,0 +1,39 @@
+package ch.securify.patterns;
+
+import ch.securify.CompilationHelpers;
+import ch.securify.Main;
+import ch.securify.decompiler.instructions.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class InstructionIndexTest {
+
+    @Test
+    public void instructionsByKind() throws IOException {
+        List<Instruction> instructions = Main.decompileContract(
+                CompilationHelpers.extractBinaryFromHexFile("src/test/resources/solidity/repeated-calls-tp.bin.hex"));
+        InstructionIndex index = InstructionIndex.of(instructions);
+
+        assertEquals(filter(instructions, JumpI.class), index.get(JumpI.class));
+        assertEquals(filter(instructions, SStore.class), index.get(SStore.class));
+        // subclasses are indexed under their superclasses
+        assertEquals(filter(instructions, CallingInstruction.class), index.get(CallingInstruction.class));
+        assertFalse(index.get(CallingInstruction.class).isEmpty());
+        assertEquals(instructions, index.get(Instruction.class));
+        assertTrue(index.get(SelfDestruct.class).isEmpty());
+
+        List<Instruction> halts = instructions.stream()
+                .filter(instruction -> instruction instanceof Stop || instruction instanceof Return)
+                .collect(Collectors.toList());
+        assertEquals(halts, index.getAny(Stop.class, Return.class));
+    }
+
+    private static List<Instruction> filter(List<Instruction> instructions, Class<?> kind) {
+        return instructions.stream().filter(kind::isInstance).collect(Collectors.toList());
+    }
+}
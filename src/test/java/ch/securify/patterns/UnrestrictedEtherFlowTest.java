@@ -20,6 +20,7 @@ package ch.securify.patterns;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
 
@@ -39,4 +40,15 @@ public class UnrestrictedEtherFlowTest {
         HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern(hex, new UnrestrictedEtherFlow());
         assertEquals(1, helperInstructionPattern.pattern.violations.size());
     }
+
+    @Test
+    public void isViolationWithWideAmount() throws IOException {
+        // sends 1 ether, a constant whose lowest 32 bits are negative as an int
+        for (String hex : Arrays.asList("src/test/resources/solidity/TODTransfer.bin.hex",
+                "src/test/resources/solidity/TODTransfer2.bin.hex")) {
+            HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern(hex, new UnrestrictedEtherFlow());
+            assertEquals(hex, 1, helperInstructionPattern.pattern.violations.size());
+            assertEquals(hex, 0, helperInstructionPattern.pattern.warnings.size());
+        }
+    }
 }
\ No newline at end of file
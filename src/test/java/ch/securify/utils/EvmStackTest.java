@@ -0,0 +1,69 @@
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.util.EmptyStackException;
+import java.util.Random;
+import java.util.Stack;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EvmStackTest {
+
+    @Test
+    public void behavesLikeStack() {
+        Random random = new Random(3);
+        EvmStack<Integer> stack = new EvmStack<>();
+        Stack<Integer> expected = new Stack<>();
+
+        for (int i = 0; i < 5000; i++) {
+            int operation = random.nextInt(5);
+            if (operation == 0 && !expected.isEmpty()) {
+                assertEquals(expected.pop(), stack.pop());
+            } else if (operation == 1 && !expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                expected.set(index, i);
+                stack.set(index, i);
+            } else if (operation == 2) {
+                expected.insertElementAt(i, 0);
+                stack.insertAtBottom(i);
+            } else {
+                expected.push(i);
+                stack.push(i);
+            }
+            assertEquals(expected.size(), stack.size());
+            if (!expected.isEmpty()) {
+                assertEquals(expected.peek(), stack.peek());
+            }
+        }
+        assertEquals(expected, stack.stream().collect(Collectors.toList()));
+        assertTrue(stack.contains(expected.get(0)));
+        assertFalse(stack.contains(-1));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        EvmStack<String> stack = StackUtil.create("a", "b", "c");
+        EvmStack<String> copy = stack.copy();
+        EvmStack<String> copyOfCopy = copy.copy();
+
+        copy.push("d");
+        stack.set(0, "x");
+        copyOfCopy.pop();
+
+        assertEquals("[x, b, c]", stack.toString());
+        assertEquals("[a, b, c, d]", copy.toString());
+        assertEquals("[a, b]", copyOfCopy.toString());
+    }
+
+    @Test(expected = EmptyStackException.class)
+    public void popOfEmptyStack() {
+        new EvmStack<>().pop();
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void getBelowBottom() {
+        StackUtil.create(1, 2).get(-1);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PersistentTreeMapTest {
+
+    @Test
+    public void behavesLikeTreeMap() {
+        Random random = new Random(7);
+        PersistentTreeMap<Integer, String> map = PersistentTreeMap.empty();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        String[] values = {"a", "b", "c"};
+
+        for (int i = 0; i < 2000; i++) {
+            int key = random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                String value = values[random.nextInt(values.length)];
+                map = map.put(key, value);
+                expected.put(key, value);
+            }
+            if (i % 100 == 0) {
+                assertEquals(expected, toTreeMap(map));
+            }
+        }
+
+        map = map.removeIf((key, value) -> key % 3 == 0);
+        expected.entrySet().removeIf(entry -> entry.getKey() % 3 == 0);
+        assertEquals(expected, toTreeMap(map));
+        assertEquals(expected.get(100), map.get(100));
+    }
+
+    @Test
+    public void mergeBranches() {
+        PersistentTreeMap<Integer, String> base = PersistentTreeMap.empty();
+        for (int i = 0; i < 100; i++) {
+            base = base.put(i, "v" + i);
+        }
+        // values are compared by identity
+        PersistentTreeMap<Integer, String> left = base.put(10, new String("x")).remove(20).put(200, "y");
+        PersistentTreeMap<Integer, String> right = base.put(10, new String("x")).put(30, "z");
+
+        PersistentTreeMap<Integer, String> intersection = left.intersection(right);
+        assertNull(intersection.get(10));
+        assertNull(intersection.get(20));
+        assertNull(intersection.get(30));
+        assertNull(intersection.get(200));
+        assertEquals("v40", intersection.get(40));
+        assertEquals(97, toTreeMap(intersection).size());
+
+        PersistentTreeMap<Integer, String> merged = left.removeConflicts(right);
+        assertNull(merged.get(10));
+        assertNull(merged.get(30));
+        assertEquals("y", merged.get(200));
+        assertEquals(98, toTreeMap(merged).size());
+
+        assertSame(base, base.intersection(base));
+    }
+
+    private static <K extends Comparable<K>, V> Map<K, V> toTreeMap(PersistentTreeMap<K, V> map) {
+        TreeMap<K, V> result = new TreeMap<>();
+        List<K> order = new ArrayList<>();
+        map.forEach((key, value) -> {
+            result.put(key, value);
+            order.add(key);
+        });
+        assertEquals(new ArrayList<>(result.keySet()), order);
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UInt256Test {
+
+    private static final BigInteger MODULUS = BigInteger.ONE.shiftLeft(256);
+
+    @Test
+    public void arithmeticMatchesBigInteger() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            BigInteger a = randomValue(random);
+            BigInteger b = randomValue(random);
+            UInt256 x = fromBigInteger(a);
+            UInt256 y = fromBigInteger(b);
+
+            assertEquals(a.add(b).mod(MODULUS), toBigInteger(x.add(y)));
+            assertEquals(a.subtract(b).mod(MODULUS), toBigInteger(x.subtract(y)));
+            assertEquals(a.multiply(b).mod(MODULUS), toBigInteger(x.multiply(y)));
+            assertEquals(a.and(b), toBigInteger(x.and(y)));
+            assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(x.compareTo(y)));
+
+            int shift = random.nextInt(300);
+            assertEquals(a.shiftLeft(shift).mod(MODULUS), toBigInteger(x.shl(UInt256.valueOf(shift))));
+            assertEquals(a.shiftRight(shift), toBigInteger(x.shr(UInt256.valueOf(shift))));
+            BigInteger signed = a.testBit(255) ? a.subtract(MODULUS) : a;
+            assertEquals(signed.shiftRight(Math.min(shift, 256)).mod(MODULUS), toBigInteger(x.sar(UInt256.valueOf(shift))));
+        }
+    }
+
+    @Test
+    public void conversions() {
+        assertEquals(UInt256.valueOf(0x1234), UInt256.fromBytes(new byte[]{0x00, 0x12, 0x34}));
+        assertEquals(UInt256.MAX_VALUE, UInt256.valueOf(-1));
+        assertEquals(UInt256.MAX_VALUE, UInt256.ZERO.subtract(UInt256.ONE));
+        assertEquals("0x00", UInt256.ZERO.toString());
+        assertEquals("0x1234", UInt256.valueOf(0x1234).toString());
+        assertEquals(0x40, UInt256.fromBytes(new byte[]{0x40}).intValue());
+        assertEquals(UInt256.valueOf(7).hashCode(), UInt256.fromBytes(new byte[]{7}).hashCode());
+    }
+
+    @Test
+    public void wideValuesAreNotSmall() {
+        // 10^18 wei, whose lowest 32 bits are negative as an int
+        UInt256 ether = UInt256.fromBytes(Hex.decode("0de0b6b3a7640000"));
+        assertFalse(ether.isZero());
+        assertEquals(Integer.MAX_VALUE, ether.clampedIntValue());
+        // lowest 32 bits are zero
+        UInt256 shifted = UInt256.ONE.shiftLeft(32);
+        assertFalse(shifted.isZero());
+        assertEquals(Integer.MAX_VALUE, shifted.clampedIntValue());
+        assertEquals(Integer.MAX_VALUE, UInt256.valueOf(0x80000000L).clampedIntValue());
+        assertEquals(Integer.MAX_VALUE, UInt256.valueOf(Integer.MAX_VALUE).clampedIntValue());
+        assertEquals(0x40, UInt256.valueOf(0x40).clampedIntValue());
+        assertTrue(UInt256.ZERO.isZero());
+    }
+
+    private static BigInteger randomValue(Random random) {
+        // mix small values and full words, so that carries and borrows are exercised
+        switch (random.nextInt(3)) {
+            case 0: return BigInteger.valueOf(random.nextInt(1000));
+            case 1: return MODULUS.subtract(BigInteger.valueOf(random.nextInt(1000) + 1));
+            default: return new BigInteger(256, random);
+        }
+    }
+
+    private static UInt256 fromBigInteger(BigInteger value) {
+        return UInt256.fromBytes(value.toByteArray());
+    }
+
+    private static BigInteger toBigInteger(UInt256 value) {
+        return new BigInteger(1, value.toBytes());
+    }
+}